@@ -0,0 +1,21 @@
+package com.druglogger.app;
+
+import android.os.Trace;
+
+/**
+ * Forwards {@link Metrics} timer sections to {@link Trace}, so they appear in
+ * systrace and Perfetto captures next to the framework's own sections. The
+ * platform drops them cheaply when no trace is being recorded.
+ */
+final class AndroidTracer implements Metrics.Tracer {
+
+    @Override
+    public void beginSection(String name) {
+        Trace.beginSection(name);
+    }
+
+    @Override
+    public void endSection() {
+        Trace.endSection();
+    }
+}
@@ -0,0 +1,100 @@
+package com.druglogger.app;
+
+import java.util.List;
+
+/**
+ * Summaries of the log over a time range, aggregated by SQLite (see
+ * {@link DrugLogDatabase#getDailyTotals}, {@link DrugLogDatabase#getDoseCounts}
+ * and {@link DrugLogDatabase#getHourOfDayHistogram}). Days, weeks and hours
+ * are local to the time zone the statistics were computed in.
+ */
+public class DoseStatistics {
+
+    public enum Period { DAY, WEEK }
+
+    /** Total amount of one medication, in one unit, taken on one local day. */
+    public static class DailyTotal {
+        public final String drugName;
+        public final String doseUnit;
+        /** Local day, in days since 1970-01-01 */
+        public final long day;
+        public final double totalDose;
+        public final int doseCount;
+
+        DailyTotal(String drugName, String doseUnit, long day, double totalDose, int doseCount) {
+            this.drugName = drugName;
+            this.doseUnit = doseUnit;
+            this.day = day;
+            this.totalDose = totalDose;
+            this.doseCount = doseCount;
+        }
+    }
+
+    /**
+     * Number of doses in each consecutive day or week of a range, including
+     * those with none. Weeks run Monday to Sunday.
+     */
+    public static class DoseCounts {
+        public final Period period;
+        /** Day or week of {@code counts[0]}, counted from 1970-01-01 or the week containing it */
+        public final long first;
+        public final int[] counts;
+
+        DoseCounts(Period period, long first, int[] counts) {
+            this.period = period;
+            this.first = first;
+            this.counts = counts;
+        }
+
+        /** Returns the largest count, or 0 when the range has no doses. */
+        public int max() {
+            int max = 0;
+            for (int count : counts) {
+                if (count > max) max = count;
+            }
+            return max;
+        }
+    }
+
+    /**
+     * Doses of one medication summed into fixed-length buckets of time, in
+     * time order. Only buckets with doses are listed.
+     */
+    public static class DoseBuckets {
+        public final long bucketMillis;
+        /** Bucket of each row, as {@code timestamp / bucketMillis} */
+        public final long[] buckets;
+        public final double[] totals;
+        public final int size;
+
+        DoseBuckets(long bucketMillis, long[] buckets, double[] totals, int size) {
+            this.bucketMillis = bucketMillis;
+            this.buckets = buckets;
+            this.totals = totals;
+            this.size = size;
+        }
+    }
+
+    public final long from;
+    public final long to;
+    /** Sorted by drug name, unit, then day */
+    public final List<DailyTotal> dailyTotals;
+    public final DoseCounts dailyCounts;
+    public final DoseCounts weeklyCounts;
+    /** Doses per local hour of day, 0 to 23 */
+    public final int[] hourOfDay;
+    /** Time of the oldest entry in the whole log, or -1 if it is empty */
+    public final long historyStart;
+
+    public DoseStatistics(long from, long to, List<DailyTotal> dailyTotals,
+                          DoseCounts dailyCounts, DoseCounts weeklyCounts, int[] hourOfDay,
+                          long historyStart) {
+        this.from = from;
+        this.to = to;
+        this.dailyTotals = dailyTotals;
+        this.dailyCounts = dailyCounts;
+        this.weeklyCounts = weeklyCounts;
+        this.hourOfDay = hourOfDay;
+        this.historyStart = historyStart;
+    }
+}
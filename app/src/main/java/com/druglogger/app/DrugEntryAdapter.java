@@ -7,20 +7,40 @@ import android.widget.ImageButton;
 import android.widget.TextView;
 
 import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.AsyncListDiffer;
+import androidx.recyclerview.widget.DiffUtil;
 import androidx.recyclerview.widget.RecyclerView;
 
 import java.util.List;
 
 public class DrugEntryAdapter extends RecyclerView.Adapter<DrugEntryAdapter.ViewHolder> {
-    private List<DrugEntry> entries;
+    private static final DiffUtil.ItemCallback<DrugEntry> DIFF_CALLBACK =
+            new DiffUtil.ItemCallback<DrugEntry>() {
+                @Override
+                public boolean areItemsTheSame(@NonNull DrugEntry oldItem, @NonNull DrugEntry newItem) {
+                    return oldItem.getId() == newItem.getId();
+                }
+
+                @Override
+                public boolean areContentsTheSame(@NonNull DrugEntry oldItem, @NonNull DrugEntry newItem) {
+                    return oldItem.getTimestamp() == newItem.getTimestamp()
+                            && equalStrings(oldItem.getDrugName(), newItem.getDrugName())
+                            && equalStrings(oldItem.getDosage(), newItem.getDosage())
+                            && equalStrings(oldItem.getReason(), newItem.getReason())
+                            && equalStrings(oldItem.getNotes(), newItem.getNotes());
+                }
+            };
+
+    // Diffs are computed on a background thread, so a single inserted or
+    // removed entry only touches that one row.
+    private final AsyncListDiffer<DrugEntry> differ = new AsyncListDiffer<>(this, DIFF_CALLBACK);
     private OnDeleteClickListener deleteListener;
 
     public interface OnDeleteClickListener {
         void onDeleteClick(DrugEntry entry);
     }
 
-    public DrugEntryAdapter(List<DrugEntry> entries, OnDeleteClickListener deleteListener) {
-        this.entries = entries;
+    public DrugEntryAdapter(OnDeleteClickListener deleteListener) {
         this.deleteListener = deleteListener;
     }
 
@@ -29,32 +49,52 @@ public class DrugEntryAdapter extends RecyclerView.Adapter<DrugEntryAdapter.View
     public ViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
         View view = LayoutInflater.from(parent.getContext())
                 .inflate(R.layout.item_drug_entry, parent, false);
-        return new ViewHolder(view);
+        ViewHolder holder = new ViewHolder(view);
+        // One listener per row view, which looks up the entry when clicked
+        holder.deleteButton.setOnClickListener(v -> {
+            int position = holder.getBindingAdapterPosition();
+            if (deleteListener != null && position != RecyclerView.NO_POSITION) {
+                deleteListener.onDeleteClick(differ.getCurrentList().get(position));
+            }
+        });
+        return holder;
     }
 
+    /** Only sets the row's texts; nothing is allocated once the entry's date is formatted. */
     @Override
     public void onBindViewHolder(@NonNull ViewHolder holder, int position) {
-        DrugEntry entry = entries.get(position);
+        DrugEntry entry = differ.getCurrentList().get(position);
         holder.drugNameText.setText(entry.getDrugName());
         holder.dosageText.setText(entry.getDosage());
-        holder.notesText.setText(entry.getNotes());
+        // Entries logged before the reason column, and imported ones, may only have notes
+        holder.notesText.setText(entry.getReason() != null ? entry.getReason() : entry.getNotes());
         holder.timestampText.setText(entry.getFormattedDate());
+    }
 
-        holder.deleteButton.setOnClickListener(v -> {
-            if (deleteListener != null) {
-                deleteListener.onDeleteClick(entry);
-            }
-        });
+    /**
+     * Rebinds every row with freshly formatted dates, after the locale or
+     * time zone changed.
+     */
+    public void refreshDates() {
+        EntryDateFormat.invalidate();
+        notifyItemRangeChanged(0, getItemCount());
     }
 
     @Override
     public int getItemCount() {
-        return entries.size();
+        return differ.getCurrentList().size();
     }
 
+    /**
+     * Replaces the displayed entries. The list must be a new instance each time;
+     * it is diffed against the current one off the main thread.
+     */
     public void updateEntries(List<DrugEntry> newEntries) {
-        this.entries = newEntries;
-        notifyDataSetChanged();
+        differ.submitList(newEntries);
+    }
+
+    private static boolean equalStrings(String a, String b) {
+        return a == null ? b == null : a.equals(b);
     }
 
     static class ViewHolder extends RecyclerView.ViewHolder {
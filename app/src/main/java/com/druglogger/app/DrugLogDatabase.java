@@ -3,25 +3,131 @@ package com.druglogger.app;
 import android.content.ContentValues;
 import android.content.Context;
 import android.database.Cursor;
+import android.database.DatabaseUtils;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
 
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.TimeZone;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 public class DrugLogDatabase extends SQLiteOpenHelper {
     private static final String DATABASE_NAME = "drug_log.db";
-    private static final int DATABASE_VERSION = 1;
+
+    /** Schema steps in order; entry i upgrades version i + 1 to i + 2. */
+    private static final Migration[] MIGRATIONS = {
+            // 2: indexes for the windowed history queries
+            DrugLogDatabase::createIndexes,
+            // 3: numeric dose columns, filled from the dosage strings
+            DrugLogDatabase::addDoseColumns,
+            // 4: Google Sheets outbox
+            DrugLogDatabase::createOutbox,
+            // 5: sheet mirror, replaced by version 6
+            DrugLogDatabase::createRemoteLogsV5,
+            // 6: sheet mirror with parsed timestamps and medication ids
+            DrugLogDatabase::recreateRemoteLogs,
+            // 7: medication id and reason on entries
+            DrugLogDatabase::addMedicationColumns,
+            // 8: covering index for the statistics
+            DrugLogDatabase::createStatisticsIndex,
+            // 9: reasons no longer copied into the notes
+            DrugLogDatabase::clearCopiedNotes,
+    };
+
+    private static final int DATABASE_VERSION = MIGRATIONS.length + 1;
+
+    /** One schema step. Steps run inside the upgrade transaction and must keep existing rows. */
+    private interface Migration {
+        void migrate(SQLiteDatabase db);
+    }
 
     private static final String TABLE_ENTRIES = "entries";
     private static final String COLUMN_ID = "id";
     private static final String COLUMN_DRUG_NAME = "drug_name";
     private static final String COLUMN_DOSAGE = "dosage";
+    private static final String COLUMN_DOSE_VALUE = "dose_value";
+    private static final String COLUMN_DOSE_UNIT = "dose_unit";
     private static final String COLUMN_NOTES = "notes";
     private static final String COLUMN_TIMESTAMP = "timestamp";
+    private static final String COLUMN_MED_ID = "med_id";
+
+    private static final String TABLE_OUTBOX = "outbox";
+    private static final String COLUMN_IDEMPOTENCY_KEY = "idempotency_key";
+    private static final String COLUMN_MEDICATION_NAME = "medication_name";
+    private static final String COLUMN_DOSE = "dose";
+    private static final String COLUMN_REASON = "reason";
+    private static final String COLUMN_ATTEMPTS = "attempts";
+    private static final String COLUMN_NEXT_ATTEMPT_AT = "next_attempt_at";
+
+    private static final String TABLE_REMOTE_LOGS = "remote_logs";
+    private static final String COLUMN_REMOTE_ID = "remote_id";
+    private static final String COLUMN_TIMESTAMP_MILLIS = "timestamp_millis";
+    private static final String COLUMN_GENERIC_NAME = "generic_name";
+
+    private static final String TABLE_SYNC_STATE = "sync_state";
+    private static final String COLUMN_KEY = "key";
+    private static final String COLUMN_VALUE = "value";
+    private static final String KEY_REMOTE_LOGS_CURSOR = "remote_logs_cursor";
+    private static final String KEY_MED_ID_CATALOG = "med_id_catalog";
+
+    private static final String INDEX_TIMESTAMP = "idx_entries_timestamp";
+    private static final String INDEX_DRUG_TIMESTAMP = "idx_entries_drug_timestamp";
+    private static final String INDEX_TIMESTAMP_DOSE = "idx_entries_timestamp_dose";
+    private static final String INDEX_REMOTE_TIMESTAMP = "idx_remote_logs_timestamp_millis";
+
+    /** Leading number of a legacy dosage string such as "50 mg", and the unit after it. */
+    private static final Pattern DOSAGE_PATTERN =
+            Pattern.compile("(\\d+(?:\\.\\d+)?)\\s*(.*)");
+
+    /** Rows committed per transaction by {@link #importEntries}. */
+    static final int IMPORT_BATCH_SIZE = 1000;
+
+    private static final Metrics.Timer ADD_ENTRY_TIMER = Metrics.timer("db.addEntry");
+    private static final Metrics.Timer DELETE_ENTRY_TIMER = Metrics.timer("db.deleteEntry");
+    private static final Metrics.Timer ENTRIES_PAGE_TIMER = Metrics.timer("db.getEntriesPage");
+    private static final Metrics.Timer IMPORT_TIMER = Metrics.timer("db.importEntries");
+    private static final Metrics.Timer EXPORT_TIMER = Metrics.timer("db.exportEntries");
+    private static final Metrics.Timer LEDGER_LOAD_TIMER = Metrics.timer("db.loadDoseLedger");
+    private static final Metrics.Timer MERGE_REMOTE_TIMER = Metrics.timer("db.mergeRemoteLogs");
+    private static final Metrics.Timer DAILY_TOTALS_TIMER = Metrics.timer("db.getDailyTotals");
+    private static final Metrics.Timer DOSE_COUNTS_TIMER = Metrics.timer("db.getDoseCounts");
+    private static final Metrics.Timer DOSE_BUCKETS_TIMER = Metrics.timer("db.getDoseBuckets");
+    private static final Metrics.Timer HOUR_HISTOGRAM_TIMER =
+            Metrics.timer("db.getHourOfDayHistogram");
+
+    private static DrugLogDatabase instance;
 
-    public DrugLogDatabase(Context context) {
-        super(context, DATABASE_NAME, null, DATABASE_VERSION);
+    // Compiled once against the long-lived connection and reused for every call.
+    private SQLiteStatement insertStatement;
+    private SQLiteStatement deleteStatement;
+
+    private DoseLedger doseLedger;
+
+    /**
+     * Returns the app-wide helper. The underlying connection stays open for the
+     * lifetime of the process so the schema and page cache are not reloaded on
+     * every read or write.
+     */
+    public static synchronized DrugLogDatabase getInstance(Context context) {
+        if (instance == null) {
+            instance = new DrugLogDatabase(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private DrugLogDatabase(Context context) {
+        this(context, DATABASE_NAME);
+    }
+
+    /** Opens the database file {@code name} instead of the app's, e.g. in tests. */
+    DrugLogDatabase(Context context, String name) {
+        super(context, name, null, DATABASE_VERSION);
+        setWriteAheadLoggingEnabled(true);
     }
 
     @Override
@@ -30,64 +136,979 @@ public class DrugLogDatabase extends SQLiteOpenHelper {
                 COLUMN_ID + " INTEGER PRIMARY KEY AUTOINCREMENT, " +
                 COLUMN_DRUG_NAME + " TEXT NOT NULL, " +
                 COLUMN_DOSAGE + " TEXT, " +
+                COLUMN_DOSE_VALUE + " REAL, " +
+                COLUMN_DOSE_UNIT + " TEXT, " +
                 COLUMN_NOTES + " TEXT, " +
-                COLUMN_TIMESTAMP + " INTEGER NOT NULL)";
+                COLUMN_TIMESTAMP + " INTEGER NOT NULL, " +
+                COLUMN_MED_ID + " INTEGER, " +
+                COLUMN_REASON + " TEXT)";
         db.execSQL(createTable);
+        createIndexes(db);
+        createStatisticsIndex(db);
+        createOutbox(db);
+        createRemoteLogs(db);
+        createSyncState(db);
     }
 
+    /**
+     * Runs every migration above {@code oldVersion} in order. The helper wraps
+     * the call in one transaction, so a failing step leaves the database at
+     * its old version with all its rows.
+     */
     @Override
     public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
-        db.execSQL("DROP TABLE IF EXISTS " + TABLE_ENTRIES);
-        onCreate(db);
+        for (int version = oldVersion; version < newVersion; version++) {
+            MIGRATIONS[version - 1].migrate(db);
+        }
     }
 
-    public long addEntry(DrugEntry entry) {
-        SQLiteDatabase db = this.getWritableDatabase();
-        ContentValues values = new ContentValues();
-        values.put(COLUMN_DRUG_NAME, entry.getDrugName());
-        values.put(COLUMN_DOSAGE, entry.getDosage());
-        values.put(COLUMN_NOTES, entry.getNotes());
-        values.put(COLUMN_TIMESTAMP, entry.getTimestamp());
+    /** The mirror only caches the sheet, so it is rebuilt by the next full fetch. */
+    private static void recreateRemoteLogs(SQLiteDatabase db) {
+        db.execSQL("DROP TABLE IF EXISTS " + TABLE_REMOTE_LOGS);
+        db.execSQL("DROP TABLE IF EXISTS " + TABLE_SYNC_STATE);
+        createRemoteLogs(db);
+        createSyncState(db);
+    }
 
-        long id = db.insert(TABLE_ENTRIES, null, values);
-        db.close();
-        return id;
+    /**
+     * Adds the medication id and reason columns. The reason picked when
+     * logging was stored in the notes until now, so the notes are copied over
+     * in one statement. Nothing records whether a row was logged or imported,
+     * so imported notes are copied too. Medication ids need the catalog and
+     * are filled in later by {@link #resolveMedicationIds}.
+     */
+    private static void addMedicationColumns(SQLiteDatabase db) {
+        db.execSQL("ALTER TABLE " + TABLE_ENTRIES + " ADD COLUMN " + COLUMN_MED_ID + " INTEGER");
+        db.execSQL("ALTER TABLE " + TABLE_ENTRIES + " ADD COLUMN " + COLUMN_REASON + " TEXT");
+        db.execSQL("UPDATE " + TABLE_ENTRIES + " SET " + COLUMN_REASON + " = " + COLUMN_NOTES);
+    }
+
+    /**
+     * Until now a dose's reason was also saved as its notes, so version 7
+     * copied the notes to the reason column and new doses kept writing both.
+     * Notes that repeat the reason are cleared. That includes the notes of
+     * rows imported before version 7, which were copied the same way and
+     * cannot be told apart from logged ones: their text is kept only as the
+     * reason, which the list and exports show in its place. Rows imported
+     * under versions 7 and 8 have no reason and keep their notes.
+     */
+    private static void clearCopiedNotes(SQLiteDatabase db) {
+        db.execSQL("UPDATE " + TABLE_ENTRIES + " SET " + COLUMN_NOTES + " = NULL WHERE " +
+                COLUMN_NOTES + " = " + COLUMN_REASON);
+    }
+
+    /**
+     * Doses waiting to be sent to the Google Sheet. Rows are deleted once the
+     * sheet has accepted them; until then they survive restarts and failed
+     * attempts.
+     */
+    private static void createOutbox(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + TABLE_OUTBOX + " (" +
+                COLUMN_ID + " INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                COLUMN_IDEMPOTENCY_KEY + " TEXT NOT NULL UNIQUE, " +
+                COLUMN_MEDICATION_NAME + " TEXT NOT NULL, " +
+                COLUMN_DOSE + " REAL NOT NULL, " +
+                COLUMN_REASON + " TEXT, " +
+                COLUMN_TIMESTAMP + " INTEGER NOT NULL, " +
+                COLUMN_ATTEMPTS + " INTEGER NOT NULL DEFAULT 0, " +
+                COLUMN_NEXT_ATTEMPT_AT + " INTEGER NOT NULL DEFAULT 0)");
+    }
+
+    /**
+     * Version 5 of the sheet mirror, which kept the timestamp only as the
+     * sheet sent it. Upgrades still pass through it on their way to
+     * {@link #recreateRemoteLogs}, so it must stay as it shipped.
+     */
+    private static void createRemoteLogsV5(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + TABLE_REMOTE_LOGS + " (" +
+                COLUMN_ID + " INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                COLUMN_REMOTE_ID + " TEXT UNIQUE, " +
+                COLUMN_TIMESTAMP + " TEXT, " +
+                COLUMN_MEDICATION_NAME + " TEXT, " +
+                COLUMN_DOSE + " REAL, " +
+                COLUMN_REASON + " TEXT)");
+        db.execSQL("CREATE TABLE " + TABLE_SYNC_STATE + " (" +
+                COLUMN_KEY + " TEXT PRIMARY KEY, " +
+                COLUMN_VALUE + " TEXT)");
+    }
+
+    /**
+     * Local copy of the Google Sheet's rows; the cursor up to which it is
+     * current is kept in {@link #createSyncState}. Rows are stored with the timestamp parsed to epoch millis and
+     * the medication resolved against the catalog, so windowed reads go
+     * through an index like the entries table. Rows without a sheet id have a
+     * null remote_id and are only replaced by a full fetch.
+     */
+    private static void createRemoteLogs(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + TABLE_REMOTE_LOGS + " (" +
+                COLUMN_ID + " INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                COLUMN_REMOTE_ID + " TEXT UNIQUE, " +
+                COLUMN_TIMESTAMP + " TEXT, " +
+                COLUMN_TIMESTAMP_MILLIS + " INTEGER NOT NULL, " +
+                COLUMN_MEDICATION_NAME + " TEXT, " +
+                COLUMN_MED_ID + " INTEGER, " +
+                COLUMN_GENERIC_NAME + " TEXT, " +
+                COLUMN_DOSE + " REAL, " +
+                COLUMN_REASON + " TEXT)");
+        db.execSQL("CREATE INDEX " + INDEX_REMOTE_TIMESTAMP + " ON " +
+                TABLE_REMOTE_LOGS + " (" + COLUMN_TIMESTAMP_MILLIS + ")");
+    }
+
+    /** Key-value pairs of sync progress, e.g. the sheet mirror's cursor. */
+    private static void createSyncState(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + TABLE_SYNC_STATE + " (" +
+                COLUMN_KEY + " TEXT PRIMARY KEY, " +
+                COLUMN_VALUE + " TEXT)");
+    }
+
+    /**
+     * Adds numeric dose columns and fills them from the existing dosage strings,
+     * so nothing downstream has to parse "50 mg" again.
+     */
+    private static void addDoseColumns(SQLiteDatabase db) {
+        db.execSQL("ALTER TABLE " + TABLE_ENTRIES + " ADD COLUMN " + COLUMN_DOSE_VALUE + " REAL");
+        db.execSQL("ALTER TABLE " + TABLE_ENTRIES + " ADD COLUMN " + COLUMN_DOSE_UNIT + " TEXT");
+
+        SQLiteStatement update = db.compileStatement("UPDATE " + TABLE_ENTRIES + " SET " +
+                COLUMN_DOSE_VALUE + " = ?, " + COLUMN_DOSE_UNIT + " = ? WHERE " + COLUMN_ID + " = ?");
+        Cursor cursor = db.rawQuery("SELECT " + COLUMN_ID + ", " + COLUMN_DOSAGE +
+                " FROM " + TABLE_ENTRIES, null);
+        try {
+            while (cursor.moveToNext()) {
+                String dosage = cursor.getString(1);
+                Matcher m = dosage == null ? null : DOSAGE_PATTERN.matcher(dosage);
+                if (m == null || !m.find()) continue;
+
+                update.clearBindings();
+                update.bindDouble(1, Double.parseDouble(m.group(1)));
+                bindNullableString(update, 2, m.group(2).trim().isEmpty() ? null : m.group(2).trim());
+                update.bindLong(3, cursor.getLong(0));
+                update.executeUpdateDelete();
+            }
+        } finally {
+            cursor.close();
+            update.close();
+        }
+    }
+
+    /**
+     * Indexes backing the windowed history queries. The timestamp index serves
+     * "everything since X" scans; the (drug_name, timestamp) index serves
+     * per-medication lookups without touching other drugs' rows.
+     */
+    private static void createIndexes(SQLiteDatabase db) {
+        db.execSQL("CREATE INDEX IF NOT EXISTS " + INDEX_TIMESTAMP + " ON " +
+                TABLE_ENTRIES + " (" + COLUMN_TIMESTAMP + ")");
+        db.execSQL("CREATE INDEX IF NOT EXISTS " + INDEX_DRUG_TIMESTAMP + " ON " +
+                TABLE_ENTRIES + " (" + COLUMN_DRUG_NAME + ", " + COLUMN_TIMESTAMP + ")");
+    }
+
+    /**
+     * Holds every column the daily totals read, so they are computed from the
+     * index alone without visiting the table. Counts and histograms only need
+     * the timestamp, which the history indexes already cover.
+     */
+    private static void createStatisticsIndex(SQLiteDatabase db) {
+        db.execSQL("CREATE INDEX IF NOT EXISTS " + INDEX_TIMESTAMP_DOSE + " ON " +
+                TABLE_ENTRIES + " (" + COLUMN_TIMESTAMP + ", " + COLUMN_DRUG_NAME + ", " +
+                COLUMN_DOSE_UNIT + ", " + COLUMN_DOSE_VALUE + ")");
+    }
+
+    public synchronized long addEntry(DrugEntry entry) {
+        long started = ADD_ENTRY_TIMER.start();
+        try {
+            long id = insertEntry(entry);
+
+            if (doseLedger != null && id != -1) {
+                entry.setId(id);
+                doseLedger.add(entry);
+            }
+            return id;
+        } finally {
+            ADD_ENTRY_TIMER.stop(started);
+        }
+    }
+
+    /** Inserts an entry through the shared compiled statement. Callers hold the lock. */
+    private long insertEntry(DrugEntry entry) {
+        if (insertStatement == null) {
+            insertStatement = getWritableDatabase().compileStatement(
+                    "INSERT INTO " + TABLE_ENTRIES + " (" +
+                            COLUMN_DRUG_NAME + ", " + COLUMN_DOSAGE + ", " +
+                            COLUMN_DOSE_VALUE + ", " + COLUMN_DOSE_UNIT + ", " +
+                            COLUMN_NOTES + ", " + COLUMN_TIMESTAMP + ", " +
+                            COLUMN_MED_ID + ", " + COLUMN_REASON +
+                            ") VALUES (?, ?, ?, ?, ?, ?, ?, ?)");
+        }
+        insertStatement.clearBindings();
+        insertStatement.bindString(1, entry.getDrugName());
+        bindNullableString(insertStatement, 2, entry.getDosage());
+        insertStatement.bindDouble(3, entry.getDoseValue());
+        bindNullableString(insertStatement, 4, entry.getDoseUnit());
+        bindNullableString(insertStatement, 5, entry.getNotes());
+        insertStatement.bindLong(6, entry.getTimestamp());
+        if (entry.getMedId() >= 0) {
+            insertStatement.bindLong(7, entry.getMedId());
+        } else {
+            insertStatement.bindNull(7);
+        }
+        bindNullableString(insertStatement, 8, entry.getReason());
+        return insertStatement.executeInsert();
+    }
+
+    /** Supplies entries to {@link #importEntries}, one at a time. */
+    public interface EntrySource {
+        /**
+         * Fills {@code entry} with the next row. The same instance is passed
+         * for every row. Returns false when there are no more rows.
+         */
+        boolean next(DrugEntry entry) throws IOException;
+    }
+
+    /** Receives entries from {@link #exportEntries}, one at a time. */
+    public interface EntrySink {
+        /** Called for each row. The same instance is passed for every row, so it must not be kept. */
+        void accept(DrugEntry entry) throws IOException;
+    }
+
+    /**
+     * Adds every entry the source supplies, as new entries with new ids.
+     * Rows are inserted through one compiled statement and committed every
+     * {@link #IMPORT_BATCH_SIZE} rows, so the journal stays small and other
+     * connections can read between batches. If the source fails, the
+     * batches committed so far stay imported.
+     *
+     * @return the number of entries added
+     */
+    public synchronized int importEntries(EntrySource source) throws IOException {
+        SQLiteDatabase db = getWritableDatabase();
+        DrugEntry entry = new DrugEntry(0, "", null, 0, null, null, 0);
+        int count = 0;
+        long started = IMPORT_TIMER.start();
+        try {
+            boolean more = true;
+            while (more) {
+                db.beginTransaction();
+                try {
+                    int inBatch = 0;
+                    while (inBatch < IMPORT_BATCH_SIZE && (more = source.next(entry))) {
+                        insertEntry(entry);
+                        inBatch++;
+                    }
+                    db.setTransactionSuccessful();
+                    count += inBatch;
+                } finally {
+                    db.endTransaction();
+                }
+            }
+        } finally {
+            if (doseLedger != null && count > 0) {
+                doseLedger.rebuild(getEntriesSince(
+                        System.currentTimeMillis() - DoseLedger.RETENTION_MILLIS));
+            }
+            IMPORT_TIMER.stop(started);
+        }
+        return count;
+    }
+
+    /**
+     * Passes every entry to the sink, oldest first, straight from the cursor.
+     * One {@link DrugEntry} is reused for all rows, so memory use does not
+     * grow with the size of the log.
+     *
+     * @return the number of entries exported
+     */
+    public int exportEntries(EntrySink sink) throws IOException {
+        Cursor cursor = getReadableDatabase().rawQuery("SELECT * FROM " + TABLE_ENTRIES +
+                " ORDER BY " + COLUMN_TIMESTAMP + ", " + COLUMN_ID, null);
+        int count = 0;
+        long started = EXPORT_TIMER.start();
+        try {
+            int idIndex = cursor.getColumnIndexOrThrow(COLUMN_ID);
+            int drugNameIndex = cursor.getColumnIndexOrThrow(COLUMN_DRUG_NAME);
+            int dosageIndex = cursor.getColumnIndexOrThrow(COLUMN_DOSAGE);
+            int doseValueIndex = cursor.getColumnIndexOrThrow(COLUMN_DOSE_VALUE);
+            int doseUnitIndex = cursor.getColumnIndexOrThrow(COLUMN_DOSE_UNIT);
+            int notesIndex = cursor.getColumnIndexOrThrow(COLUMN_NOTES);
+            int timestampIndex = cursor.getColumnIndexOrThrow(COLUMN_TIMESTAMP);
+            int reasonIndex = cursor.getColumnIndexOrThrow(COLUMN_REASON);
+
+            DrugEntry entry = new DrugEntry(0, "", null, 0, null, null, 0);
+            while (cursor.moveToNext()) {
+                entry.setId(cursor.getLong(idIndex));
+                entry.setDrugName(cursor.getString(drugNameIndex));
+                entry.setDosage(cursor.getString(dosageIndex));
+                entry.setDoseValue(cursor.getDouble(doseValueIndex));
+                entry.setDoseUnit(cursor.getString(doseUnitIndex));
+                entry.setNotes(cursor.getString(notesIndex));
+                entry.setTimestamp(cursor.getLong(timestampIndex));
+                entry.setReason(cursor.getString(reasonIndex));
+                sink.accept(entry);
+                count++;
+            }
+        } finally {
+            cursor.close();
+            EXPORT_TIMER.stop(started);
+        }
+        return count;
+    }
+
+    /**
+     * Returns the in-memory ledger of recent doses, loading it from the table and
+     * the sheet mirror on first use. It is kept current by {@link #addEntry},
+     * the delete methods and {@link #reloadRemoteDoses}.
+     */
+    public synchronized DoseLedger getDoseLedger() {
+        if (doseLedger == null) {
+            long started = LEDGER_LOAD_TIMER.start();
+            try {
+                long since = System.currentTimeMillis() - DoseLedger.RETENTION_MILLIS;
+                DoseLedger ledger = new DoseLedger();
+                ledger.rebuild(getEntriesSince(since));
+                ledger.replaceRemote(getRemoteDosesSince(since));
+                doseLedger = ledger;
+            } finally {
+                LEDGER_LOAD_TIMER.stop(started);
+            }
+        }
+        return doseLedger;
     }
 
     public List<DrugEntry> getAllEntries() {
-        List<DrugEntry> entries = new ArrayList<>();
         String selectQuery = "SELECT * FROM " + TABLE_ENTRIES + " ORDER BY " + COLUMN_TIMESTAMP + " DESC";
 
         SQLiteDatabase db = this.getReadableDatabase();
-        Cursor cursor = db.rawQuery(selectQuery, null);
-
-        if (cursor.moveToFirst()) {
-            do {
-                DrugEntry entry = new DrugEntry(
-                        cursor.getLong(cursor.getColumnIndexOrThrow(COLUMN_ID)),
-                        cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_DRUG_NAME)),
-                        cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_DOSAGE)),
-                        cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_NOTES)),
-                        cursor.getLong(cursor.getColumnIndexOrThrow(COLUMN_TIMESTAMP))
-                );
-                entries.add(entry);
-            } while (cursor.moveToNext());
-        }
-
-        cursor.close();
-        db.close();
+        return readEntries(db.rawQuery(selectQuery, null));
+    }
+
+    /** Returns entries logged at or after {@code sinceMillis}, newest first. */
+    public List<DrugEntry> getEntriesSince(long sinceMillis) {
+        String selectQuery = "SELECT * FROM " + TABLE_ENTRIES +
+                " WHERE " + COLUMN_TIMESTAMP + " >= ?" +
+                " ORDER BY " + COLUMN_TIMESTAMP + " DESC";
+
+        SQLiteDatabase db = this.getReadableDatabase();
+        return readEntries(db.rawQuery(selectQuery,
+                new String[]{String.valueOf(sinceMillis)}));
+    }
+
+    /** Returns entries for one drug logged at or after {@code sinceMillis}, newest first. */
+    public List<DrugEntry> getEntriesForDrugSince(String drugName, long sinceMillis) {
+        String selectQuery = "SELECT * FROM " + TABLE_ENTRIES +
+                " WHERE " + COLUMN_DRUG_NAME + " = ? AND " + COLUMN_TIMESTAMP + " >= ?" +
+                " ORDER BY " + COLUMN_TIMESTAMP + " DESC";
+
+        SQLiteDatabase db = this.getReadableDatabase();
+        return readEntries(db.rawQuery(selectQuery,
+                new String[]{drugName, String.valueOf(sinceMillis)}));
+    }
+
+    /** Returns the time of the oldest entry, or -1 if there are none. */
+    public long getOldestEntryTimestamp() {
+        Cursor cursor = getReadableDatabase().rawQuery("SELECT MIN(" + COLUMN_TIMESTAMP +
+                ") FROM " + TABLE_ENTRIES, null);
+        try {
+            return cursor.moveToFirst() && !cursor.isNull(0) ? cursor.getLong(0) : -1;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Returns the total dose of each medication per local day for entries in
+     * [{@code from}, {@code to}), sorted by drug name, unit and day. Doses in
+     * different units are totalled separately. SQLite does the grouping, so
+     * the result has one row per medication and day however many doses
+     * were logged.
+     */
+    public List<DoseStatistics.DailyTotal> getDailyTotals(long from, long to, TimeZone zone) {
+        LocalTimeSql local = new LocalTimeSql(COLUMN_TIMESTAMP, zone, from, to);
+        Cursor cursor = getReadableDatabase().rawQuery("SELECT " + COLUMN_DRUG_NAME + ", " +
+                COLUMN_DOSE_UNIT + ", " + local.localDay() + " AS day, SUM(" +
+                COLUMN_DOSE_VALUE + "), COUNT(*) FROM " + TABLE_ENTRIES +
+                " WHERE " + COLUMN_TIMESTAMP + " >= ? AND " + COLUMN_TIMESTAMP + " < ?" +
+                " GROUP BY " + COLUMN_DRUG_NAME + ", " + COLUMN_DOSE_UNIT + ", day" +
+                " ORDER BY " + COLUMN_DRUG_NAME + ", " + COLUMN_DOSE_UNIT + ", day",
+                new String[]{String.valueOf(from), String.valueOf(to)});
+        long started = DAILY_TOTALS_TIMER.start();
+        try {
+            List<DoseStatistics.DailyTotal> totals = new ArrayList<>(cursor.getCount());
+            while (cursor.moveToNext()) {
+                totals.add(new DoseStatistics.DailyTotal(cursor.getString(0),
+                        cursor.getString(1), cursor.getLong(2), cursor.getDouble(3),
+                        cursor.getInt(4)));
+            }
+            return totals;
+        } finally {
+            cursor.close();
+            DAILY_TOTALS_TIMER.stop(started);
+        }
+    }
+
+    /**
+     * Counts the entries in [{@code from}, {@code to}) per local day or week.
+     * Every day or week of the range has a slot, including those without
+     * doses, so the result can be charted directly.
+     */
+    public DoseStatistics.DoseCounts getDoseCounts(long from, long to,
+                                                   DoseStatistics.Period period,
+                                                   TimeZone zone) {
+        LocalTimeSql local = new LocalTimeSql(COLUMN_TIMESTAMP, zone, from, to);
+        boolean weekly = period == DoseStatistics.Period.WEEK;
+        long first = local.dayOf(from);
+        long last = local.dayOf(Math.max(from, to - 1));
+        if (weekly) {
+            first = LocalTimeSql.weekOfDay(first);
+            last = LocalTimeSql.weekOfDay(last);
+        }
+        int[] counts = new int[(int) (last - first + 1)];
+
+        String bucket = weekly ? local.localWeek() : local.localDay();
+        Cursor cursor = getReadableDatabase().rawQuery("SELECT " + bucket + " AS bucket, " +
+                "COUNT(*) FROM " + TABLE_ENTRIES +
+                " WHERE " + COLUMN_TIMESTAMP + " >= ? AND " + COLUMN_TIMESTAMP + " < ?" +
+                " GROUP BY bucket",
+                new String[]{String.valueOf(from), String.valueOf(to)});
+        long started = DOSE_COUNTS_TIMER.start();
+        try {
+            while (cursor.moveToNext()) {
+                long slot = cursor.getLong(0) - first;
+                if (slot >= 0 && slot < counts.length) {
+                    counts[(int) slot] = cursor.getInt(1);
+                }
+            }
+        } finally {
+            cursor.close();
+            DOSE_COUNTS_TIMER.stop(started);
+        }
+        return new DoseStatistics.DoseCounts(period, first, counts);
+    }
+
+    /**
+     * Sums one drug's doses in [{@code from}, {@code to}) into buckets of
+     * {@code bucketMillis}, so a chart reads one row per bucket with doses
+     * rather than one per entry. Served by the (drug_name, timestamp) index.
+     */
+    public DoseStatistics.DoseBuckets getDoseBuckets(String drugName, long from, long to,
+                                                     long bucketMillis) {
+        Cursor cursor = getReadableDatabase().rawQuery("SELECT " + COLUMN_TIMESTAMP + " / " +
+                bucketMillis + " AS bucket, SUM(" + COLUMN_DOSE_VALUE + ") FROM " +
+                TABLE_ENTRIES + " WHERE " + COLUMN_TIMESTAMP + " >= ? AND " +
+                COLUMN_TIMESTAMP + " < ? AND " + COLUMN_DRUG_NAME + " = ?" +
+                " GROUP BY bucket ORDER BY bucket",
+                new String[]{String.valueOf(from), String.valueOf(to), drugName});
+        long started = DOSE_BUCKETS_TIMER.start();
+        try {
+            int size = cursor.getCount();
+            long[] buckets = new long[size];
+            double[] totals = new double[size];
+            for (int i = 0; cursor.moveToNext(); i++) {
+                buckets[i] = cursor.getLong(0);
+                totals[i] = cursor.getDouble(1);
+            }
+            return new DoseStatistics.DoseBuckets(bucketMillis, buckets, totals, size);
+        } finally {
+            cursor.close();
+            DOSE_BUCKETS_TIMER.stop(started);
+        }
+    }
+
+    /**
+     * Counts the entries in [{@code from}, {@code to}) per local hour of day,
+     * for one drug or, when {@code drugName} is null, all of them.
+     *
+     * @return 24 counts, starting at midnight
+     */
+    public int[] getHourOfDayHistogram(long from, long to, String drugName, TimeZone zone) {
+        LocalTimeSql local = new LocalTimeSql(COLUMN_TIMESTAMP, zone, from, to);
+        String query = "SELECT " + local.localHour() + " AS hour, COUNT(*) FROM " +
+                TABLE_ENTRIES + " WHERE " + COLUMN_TIMESTAMP + " >= ? AND " +
+                COLUMN_TIMESTAMP + " < ?";
+        String[] args;
+        if (drugName == null) {
+            args = new String[]{String.valueOf(from), String.valueOf(to)};
+        } else {
+            query += " AND " + COLUMN_DRUG_NAME + " = ?";
+            args = new String[]{String.valueOf(from), String.valueOf(to), drugName};
+        }
+        int[] histogram = new int[24];
+        Cursor cursor = getReadableDatabase().rawQuery(query + " GROUP BY hour", args);
+        long started = HOUR_HISTOGRAM_TIMER.start();
+        try {
+            while (cursor.moveToNext()) {
+                int hour = cursor.getInt(0);
+                if (hour >= 0 && hour < 24) {
+                    histogram[hour] = cursor.getInt(1);
+                }
+            }
+        } finally {
+            cursor.close();
+            HOUR_HISTOGRAM_TIMER.stop(started);
+        }
+        return histogram;
+    }
+
+    /**
+     * Returns up to {@code limit} entries older than the given (timestamp, id)
+     * key, newest first. Pass {@link Long#MAX_VALUE} for both to get the first
+     * page. Because id is the rowid, the timestamp index already orders ties by
+     * id, so each page is a single index range scan regardless of how deep the
+     * user has scrolled.
+     */
+    public List<DrugEntry> getEntriesPage(long beforeTimestamp, long beforeId, int limit) {
+        String selectQuery = "SELECT * FROM " + TABLE_ENTRIES +
+                " WHERE " + COLUMN_TIMESTAMP + " <= ? AND (" +
+                COLUMN_TIMESTAMP + " < ? OR " + COLUMN_ID + " < ?)" +
+                " ORDER BY " + COLUMN_TIMESTAMP + " DESC, " + COLUMN_ID + " DESC" +
+                " LIMIT " + limit;
+
+        SQLiteDatabase db = this.getReadableDatabase();
+        String timestamp = String.valueOf(beforeTimestamp);
+        long started = ENTRIES_PAGE_TIMER.start();
+        try {
+            return readEntries(db.rawQuery(selectQuery,
+                    new String[]{timestamp, timestamp, String.valueOf(beforeId)}));
+        } finally {
+            ENTRIES_PAGE_TIMER.stop(started);
+        }
+    }
+
+    /**
+     * Returns up to {@code limit} entries newer than the given (timestamp, id)
+     * key, the ones closest to it, newest first. The list uses this to page
+     * back up after dropping pages the user scrolled past.
+     */
+    public List<DrugEntry> getNewerEntriesPage(long afterTimestamp, long afterId, int limit) {
+        String selectQuery = "SELECT * FROM " + TABLE_ENTRIES +
+                " WHERE " + COLUMN_TIMESTAMP + " >= ? AND (" +
+                COLUMN_TIMESTAMP + " > ? OR " + COLUMN_ID + " > ?)" +
+                " ORDER BY " + COLUMN_TIMESTAMP + " ASC, " + COLUMN_ID + " ASC" +
+                " LIMIT " + limit;
+
+        SQLiteDatabase db = this.getReadableDatabase();
+        String timestamp = String.valueOf(afterTimestamp);
+        long started = ENTRIES_PAGE_TIMER.start();
+        try {
+            List<DrugEntry> entries = readEntries(db.rawQuery(selectQuery,
+                    new String[]{timestamp, timestamp, String.valueOf(afterId)}));
+            Collections.reverse(entries);
+            return entries;
+        } finally {
+            ENTRIES_PAGE_TIMER.stop(started);
+        }
+    }
+
+    private List<DrugEntry> readEntries(Cursor cursor) {
+        List<DrugEntry> entries = new ArrayList<>(cursor.getCount());
+        try {
+            // Resolve column positions once per cursor rather than once per row.
+            int idIndex = cursor.getColumnIndexOrThrow(COLUMN_ID);
+            int drugNameIndex = cursor.getColumnIndexOrThrow(COLUMN_DRUG_NAME);
+            int dosageIndex = cursor.getColumnIndexOrThrow(COLUMN_DOSAGE);
+            int doseValueIndex = cursor.getColumnIndexOrThrow(COLUMN_DOSE_VALUE);
+            int doseUnitIndex = cursor.getColumnIndexOrThrow(COLUMN_DOSE_UNIT);
+            int notesIndex = cursor.getColumnIndexOrThrow(COLUMN_NOTES);
+            int timestampIndex = cursor.getColumnIndexOrThrow(COLUMN_TIMESTAMP);
+            int medIdIndex = cursor.getColumnIndexOrThrow(COLUMN_MED_ID);
+            int reasonIndex = cursor.getColumnIndexOrThrow(COLUMN_REASON);
+
+            while (cursor.moveToNext()) {
+                entries.add(new DrugEntry(
+                        cursor.getLong(idIndex),
+                        cursor.getString(drugNameIndex),
+                        cursor.getString(dosageIndex),
+                        cursor.getDouble(doseValueIndex),
+                        cursor.getString(doseUnitIndex),
+                        cursor.getString(notesIndex),
+                        cursor.getLong(timestampIndex),
+                        cursor.isNull(medIdIndex) ? -1 : cursor.getInt(medIdIndex),
+                        cursor.getString(reasonIndex)
+                ));
+            }
+        } finally {
+            cursor.close();
+        }
         return entries;
     }
 
-    public void deleteEntry(long id) {
-        SQLiteDatabase db = this.getWritableDatabase();
-        db.delete(TABLE_ENTRIES, COLUMN_ID + " = ?", new String[]{String.valueOf(id)});
-        db.close();
+    public synchronized void deleteEntry(long id) {
+        if (deleteStatement == null) {
+            deleteStatement = getWritableDatabase().compileStatement(
+                    "DELETE FROM " + TABLE_ENTRIES + " WHERE " + COLUMN_ID + " = ?");
+        }
+        long started = DELETE_ENTRY_TIMER.start();
+        try {
+            deleteStatement.bindLong(1, id);
+            deleteStatement.executeUpdateDelete();
+
+            if (doseLedger != null) {
+                doseLedger.remove(id);
+            }
+        } finally {
+            DELETE_ENTRY_TIMER.stop(started);
+        }
     }
 
-    public void deleteAllEntries() {
+    public synchronized void deleteAllEntries() {
         SQLiteDatabase db = this.getWritableDatabase();
         db.delete(TABLE_ENTRIES, null, null);
-        db.close();
+
+        if (doseLedger != null) {
+            doseLedger.clear();
+        }
+    }
+
+    /** Queues a dose for the Google Sheet and returns its outbox row id. */
+    public long enqueueOutbox(OutboxItem item) {
+        ContentValues values = new ContentValues();
+        values.put(COLUMN_IDEMPOTENCY_KEY, item.getIdempotencyKey());
+        values.put(COLUMN_MEDICATION_NAME, item.getMedicationName());
+        values.put(COLUMN_DOSE, item.getDose());
+        values.put(COLUMN_REASON, item.getReason());
+        values.put(COLUMN_TIMESTAMP, item.getTimestamp());
+        long id = getWritableDatabase().insertOrThrow(TABLE_OUTBOX, null, values);
+        item.setId(id);
+        return id;
+    }
+
+    /**
+     * Returns up to {@code limit} queued items whose next attempt is due at
+     * {@code nowMillis}, oldest first.
+     */
+    public List<OutboxItem> getDueOutboxItems(long nowMillis, int limit) {
+        String selectQuery = "SELECT * FROM " + TABLE_OUTBOX +
+                " WHERE " + COLUMN_NEXT_ATTEMPT_AT + " <= ?" +
+                " ORDER BY " + COLUMN_ID +
+                " LIMIT " + limit;
+
+        Cursor cursor = getReadableDatabase().rawQuery(selectQuery,
+                new String[]{String.valueOf(nowMillis)});
+        List<OutboxItem> items = new ArrayList<>(cursor.getCount());
+        try {
+            int idIndex = cursor.getColumnIndexOrThrow(COLUMN_ID);
+            int keyIndex = cursor.getColumnIndexOrThrow(COLUMN_IDEMPOTENCY_KEY);
+            int nameIndex = cursor.getColumnIndexOrThrow(COLUMN_MEDICATION_NAME);
+            int doseIndex = cursor.getColumnIndexOrThrow(COLUMN_DOSE);
+            int reasonIndex = cursor.getColumnIndexOrThrow(COLUMN_REASON);
+            int timestampIndex = cursor.getColumnIndexOrThrow(COLUMN_TIMESTAMP);
+            int attemptsIndex = cursor.getColumnIndexOrThrow(COLUMN_ATTEMPTS);
+
+            while (cursor.moveToNext()) {
+                items.add(new OutboxItem(
+                        cursor.getLong(idIndex),
+                        cursor.getString(keyIndex),
+                        cursor.getString(nameIndex),
+                        cursor.getDouble(doseIndex),
+                        cursor.getString(reasonIndex),
+                        cursor.getLong(timestampIndex),
+                        cursor.getInt(attemptsIndex)
+                ));
+            }
+        } finally {
+            cursor.close();
+        }
+        return items;
+    }
+
+    /** Removes items the sheet has accepted. */
+    public void deleteOutboxItems(List<OutboxItem> items) {
+        SQLiteDatabase db = getWritableDatabase();
+        db.beginTransaction();
+        try {
+            for (OutboxItem item : items) {
+                db.delete(TABLE_OUTBOX, COLUMN_ID + " = ?",
+                        new String[]{String.valueOf(item.getId())});
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * Records a failed attempt to send {@code attempted} and holds back the
+     * whole outbox until {@code nextAttemptMillis}. A failure is a property
+     * of the connection or the sheet, not of one row, so rows that were not
+     * in the failed batch wait as well.
+     */
+    public void deferOutbox(List<OutboxItem> attempted, long nextAttemptMillis) {
+        SQLiteDatabase db = getWritableDatabase();
+        db.beginTransaction();
+        try {
+            for (OutboxItem item : attempted) {
+                db.execSQL("UPDATE " + TABLE_OUTBOX + " SET " + COLUMN_ATTEMPTS + " = " +
+                                COLUMN_ATTEMPTS + " + 1 WHERE " + COLUMN_ID + " = ?",
+                        new Object[]{item.getId()});
+            }
+            ContentValues values = new ContentValues();
+            values.put(COLUMN_NEXT_ATTEMPT_AT, nextAttemptMillis);
+            db.update(TABLE_OUTBOX, values, null, null);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /** Makes every queued item due now, e.g. when the network comes back. */
+    public void resetOutboxBackoff() {
+        ContentValues values = new ContentValues();
+        values.put(COLUMN_NEXT_ATTEMPT_AT, 0);
+        getWritableDatabase().update(TABLE_OUTBOX, values, null, null);
+    }
+
+    /** Returns the earliest time a queued item is due, or -1 if the outbox is empty. */
+    public long getNextOutboxAttempt() {
+        Cursor cursor = getReadableDatabase().rawQuery("SELECT MIN(" + COLUMN_NEXT_ATTEMPT_AT +
+                ") FROM " + TABLE_OUTBOX, null);
+        try {
+            return cursor.moveToFirst() && !cursor.isNull(0) ? cursor.getLong(0) : -1;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    public long getOutboxSize() {
+        return DatabaseUtils.queryNumEntries(getReadableDatabase(), TABLE_OUTBOX);
+    }
+
+    /** Maps a drug name to its catalog medication id, or -1. */
+    public interface MedicationResolver {
+        int findId(String drugName);
+    }
+
+    /**
+     * Fills in the medication id of entries that have none, resolving each
+     * distinct drug name once and updating its rows with one statement, all
+     * in one transaction. Ids are catalog positions, so when
+     * {@code catalogFingerprint} differs from the one the stored ids were
+     * resolved against, every id is resolved again.
+     *
+     * @return the number of entries updated
+     */
+    public int resolveMedicationIds(String catalogFingerprint, MedicationResolver resolver) {
+        SQLiteDatabase db = getWritableDatabase();
+        db.beginTransaction();
+        try {
+            if (!catalogFingerprint.equals(getState(db, KEY_MED_ID_CATALOG))) {
+                db.execSQL("UPDATE " + TABLE_ENTRIES + " SET " + COLUMN_MED_ID + " = NULL");
+                putState(db, KEY_MED_ID_CATALOG, catalogFingerprint);
+            }
+
+            List<String> names = new ArrayList<>();
+            Cursor cursor = db.rawQuery("SELECT DISTINCT " + COLUMN_DRUG_NAME + " FROM " +
+                    TABLE_ENTRIES + " WHERE " + COLUMN_MED_ID + " IS NULL", null);
+            try {
+                while (cursor.moveToNext()) {
+                    names.add(cursor.getString(0));
+                }
+            } finally {
+                cursor.close();
+            }
+
+            int updated = 0;
+            SQLiteStatement update = db.compileStatement("UPDATE " + TABLE_ENTRIES + " SET " +
+                    COLUMN_MED_ID + " = ? WHERE " + COLUMN_DRUG_NAME + " = ? AND " +
+                    COLUMN_MED_ID + " IS NULL");
+            try {
+                for (String name : names) {
+                    int id = resolver.findId(name);
+                    if (id < 0) continue;
+                    update.bindLong(1, id);
+                    update.bindString(2, name);
+                    updated += update.executeUpdateDelete();
+                }
+            } finally {
+                update.close();
+            }
+            db.setTransactionSuccessful();
+            return updated;
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    private static String getState(SQLiteDatabase db, String key) {
+        Cursor cursor = db.query(TABLE_SYNC_STATE, new String[]{COLUMN_VALUE},
+                COLUMN_KEY + " = ?", new String[]{key}, null, null, null);
+        try {
+            return cursor.moveToFirst() ? cursor.getString(0) : null;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private static void putState(SQLiteDatabase db, String key, String value) {
+        if (value == null) {
+            db.delete(TABLE_SYNC_STATE, COLUMN_KEY + " = ?", new String[]{key});
+            return;
+        }
+        ContentValues values = new ContentValues();
+        values.put(COLUMN_KEY, key);
+        values.put(COLUMN_VALUE, value);
+        db.insertWithOnConflict(TABLE_SYNC_STATE, null, values, SQLiteDatabase.CONFLICT_REPLACE);
+    }
+
+    /**
+     * Returns the cursor the local copy of the sheet is current up to, or null
+     * if the sheet has not been fetched yet.
+     */
+    public String getRemoteLogsCursor() {
+        return getState(getReadableDatabase(), KEY_REMOTE_LOGS_CURSOR);
+    }
+
+    /**
+     * Adds rows fetched after the stored cursor and moves the cursor to
+     * {@code cursor}, in one transaction, so a crash cannot store the rows
+     * without the cursor or the other way round. Rows whose sheet id is
+     * already stored are skipped, so a delta that overlaps the last one is
+     * harmless. Returns the number of rows added.
+     */
+    public int appendRemoteLogs(List<GoogleSheetsLogger.LogEntry> logs, String cursor) {
+        return mergeRemoteLogs(logs, cursor, false);
+    }
+
+    /** Replaces the local copy of the sheet with a full fetch and stores its cursor. */
+    public int replaceRemoteLogs(List<GoogleSheetsLogger.LogEntry> logs, String cursor) {
+        return mergeRemoteLogs(logs, cursor, true);
+    }
+
+    private int mergeRemoteLogs(List<GoogleSheetsLogger.LogEntry> logs, String cursor,
+                                boolean replace) {
+        SQLiteDatabase db = getWritableDatabase();
+        db.beginTransaction();
+        SQLiteStatement insert = db.compileStatement("INSERT OR IGNORE INTO " +
+                TABLE_REMOTE_LOGS + " (" + COLUMN_REMOTE_ID + ", " + COLUMN_TIMESTAMP + ", " +
+                COLUMN_TIMESTAMP_MILLIS + ", " + COLUMN_MEDICATION_NAME + ", " +
+                COLUMN_MED_ID + ", " + COLUMN_GENERIC_NAME + ", " + COLUMN_DOSE + ", " +
+                COLUMN_REASON + ") VALUES (?, ?, ?, ?, ?, ?, ?, ?)");
+        long started = MERGE_REMOTE_TIMER.start();
+        try {
+            if (replace) {
+                db.delete(TABLE_REMOTE_LOGS, null, null);
+            }
+            int added = 0;
+            for (GoogleSheetsLogger.LogEntry log : logs) {
+                insert.clearBindings();
+                bindNullableString(insert, 1, log.id);
+                bindNullableString(insert, 2, log.timestamp);
+                insert.bindLong(3, log.timestampMillis);
+                bindNullableString(insert, 4, log.medicationName);
+                if (log.medicationId >= 0) {
+                    insert.bindLong(5, log.medicationId);
+                } else {
+                    insert.bindNull(5);
+                }
+                bindNullableString(insert, 6, log.genericName);
+                insert.bindDouble(7, log.dose);
+                bindNullableString(insert, 8, log.reason);
+                if (insert.executeInsert() != -1) added++;
+            }
+
+            putState(db, KEY_REMOTE_LOGS_CURSOR, cursor);
+            db.setTransactionSuccessful();
+            return added;
+        } finally {
+            insert.close();
+            db.endTransaction();
+            MERGE_REMOTE_TIMER.stop(started);
+        }
+    }
+
+    /**
+     * Hands the sheet mirror's recent doses to the dose ledger, if it is
+     * loaded, after the mirror has changed.
+     */
+    public void reloadRemoteDoses() {
+        DoseLedger ledger;
+        synchronized (this) {
+            ledger = doseLedger;
+        }
+        if (ledger == null) return;
+        ledger.replaceRemote(getRemoteDosesSince(
+                System.currentTimeMillis() - DoseLedger.RETENTION_MILLIS));
+    }
+
+    /**
+     * Returns the sheet mirror's doses at or after {@code sinceMillis} as
+     * entries with negative ids, so they cannot be mistaken for local ones.
+     * Rows whose timestamp could not be read are never in a window.
+     */
+    List<DrugEntry> getRemoteDosesSince(long sinceMillis) {
+        Cursor cursor = getReadableDatabase().rawQuery("SELECT " + COLUMN_ID + ", " +
+                COLUMN_GENERIC_NAME + ", " + COLUMN_DOSE + ", " + COLUMN_REASON + ", " +
+                COLUMN_TIMESTAMP_MILLIS + " FROM " + TABLE_REMOTE_LOGS +
+                " WHERE " + COLUMN_TIMESTAMP_MILLIS + " >= ?",
+                new String[]{String.valueOf(sinceMillis)});
+        List<DrugEntry> doses = new ArrayList<>(cursor.getCount());
+        try {
+            while (cursor.moveToNext()) {
+                doses.add(new DrugEntry(
+                        -cursor.getLong(0),
+                        cursor.getString(1),
+                        null,
+                        cursor.getDouble(2),
+                        null,
+                        cursor.getString(3),
+                        cursor.getLong(4)
+                ));
+            }
+        } finally {
+            cursor.close();
+        }
+        return doses;
+    }
+
+    /** Returns the local copy of the sheet in sheet order. */
+    public List<GoogleSheetsLogger.LogEntry> getRemoteLogs() {
+        Cursor cursor = getReadableDatabase().rawQuery("SELECT * FROM " + TABLE_REMOTE_LOGS +
+                " ORDER BY " + COLUMN_ID, null);
+        List<GoogleSheetsLogger.LogEntry> logs = new ArrayList<>(cursor.getCount());
+        try {
+            int remoteIdIndex = cursor.getColumnIndexOrThrow(COLUMN_REMOTE_ID);
+            int timestampIndex = cursor.getColumnIndexOrThrow(COLUMN_TIMESTAMP);
+            int millisIndex = cursor.getColumnIndexOrThrow(COLUMN_TIMESTAMP_MILLIS);
+            int nameIndex = cursor.getColumnIndexOrThrow(COLUMN_MEDICATION_NAME);
+            int medIdIndex = cursor.getColumnIndexOrThrow(COLUMN_MED_ID);
+            int genericNameIndex = cursor.getColumnIndexOrThrow(COLUMN_GENERIC_NAME);
+            int doseIndex = cursor.getColumnIndexOrThrow(COLUMN_DOSE);
+            int reasonIndex = cursor.getColumnIndexOrThrow(COLUMN_REASON);
+
+            while (cursor.moveToNext()) {
+                logs.add(new GoogleSheetsLogger.LogEntry(
+                        cursor.getString(remoteIdIndex),
+                        cursor.getString(timestampIndex),
+                        cursor.getLong(millisIndex),
+                        cursor.getString(nameIndex),
+                        cursor.isNull(medIdIndex) ? -1 : cursor.getInt(medIdIndex),
+                        cursor.getString(genericNameIndex),
+                        cursor.getDouble(doseIndex),
+                        cursor.getString(reasonIndex)
+                ));
+            }
+        } finally {
+            cursor.close();
+        }
+        return logs;
+    }
+
+    @Override
+    public synchronized void close() {
+        if (insertStatement != null) {
+            insertStatement.close();
+            insertStatement = null;
+        }
+        if (deleteStatement != null) {
+            deleteStatement.close();
+            deleteStatement = null;
+        }
+        super.close();
+    }
+
+    private static void bindNullableString(SQLiteStatement statement, int index, String value) {
+        if (value == null) {
+            statement.bindNull(index);
+        } else {
+            statement.bindString(index, value);
+        }
     }
 }
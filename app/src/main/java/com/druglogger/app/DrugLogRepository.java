@@ -0,0 +1,190 @@
+package com.druglogger.app;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.List;
+import java.util.TimeZone;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Asynchronous front for {@link DrugLogDatabase} and {@link WarningChecker}.
+ *
+ * Work runs on a small bounded executor and results are delivered through a
+ * callback executor, which is the main looper in the app. Both executors can be
+ * injected so the repository can be driven synchronously on the JVM.
+ */
+public class DrugLogRepository {
+
+    private static final int THREAD_COUNT = 2;
+    private static final int QUEUE_CAPACITY = 32;
+
+    private final DrugLogDatabase database;
+    private final Executor backgroundExecutor;
+    private final Executor callbackExecutor;
+
+    public interface Callback<T> {
+        void onSuccess(T result);
+        void onError(String errorMessage);
+    }
+
+    public DrugLogRepository(DrugLogDatabase database) {
+        this(database, newBoundedExecutor(), new Handler(Looper.getMainLooper())::post);
+    }
+
+    DrugLogRepository(DrugLogDatabase database, Executor backgroundExecutor,
+                      Executor callbackExecutor) {
+        this.database = database;
+        this.backgroundExecutor = backgroundExecutor;
+        this.callbackExecutor = callbackExecutor;
+    }
+
+    /**
+     * Loads the page of entries that follows {@code after} in newest-first order,
+     * or the first page when {@code after} is null. Display dates are formatted
+     * here, so binding the rows does not format them on the main thread.
+     */
+    public void loadPage(DrugEntry after, int pageSize, Callback<List<DrugEntry>> callback) {
+        long beforeTimestamp = after == null ? Long.MAX_VALUE : after.getTimestamp();
+        long beforeId = after == null ? Long.MAX_VALUE : after.getId();
+        submit(() -> {
+            List<DrugEntry> page = database.getEntriesPage(beforeTimestamp, beforeId, pageSize);
+            for (int i = 0; i < page.size(); i++) {
+                page.get(i).getFormattedDate();
+            }
+            return page;
+        }, callback);
+    }
+
+    /**
+     * Loads the page of entries just before {@code before} in newest-first
+     * order, i.e. the ones newer than it, for scrolling back up.
+     */
+    public void loadNewerPage(DrugEntry before, int pageSize, Callback<List<DrugEntry>> callback) {
+        long afterTimestamp = before.getTimestamp();
+        long afterId = before.getId();
+        submit(() -> {
+            List<DrugEntry> page =
+                    database.getNewerEntriesPage(afterTimestamp, afterId, pageSize);
+            for (int i = 0; i < page.size(); i++) {
+                page.get(i).getFormattedDate();
+            }
+            return page;
+        }, callback);
+    }
+
+    /** Saves a new entry and returns it with its database id assigned. */
+    public void addEntry(DrugEntry entry, Callback<DrugEntry> callback) {
+        submit(() -> {
+            entry.setId(database.addEntry(entry));
+            entry.getFormattedDate();
+            return entry;
+        }, callback);
+    }
+
+    public void deleteEntry(DrugEntry entry, Callback<Void> callback) {
+        submit(() -> {
+            database.deleteEntry(entry.getId());
+            return null;
+        }, callback);
+    }
+
+    /**
+     * Evaluates the safety warnings for a proposed dose against the dose ledger, which
+     * includes doses mirrored from Google Sheets. No request is made. The catalog's
+     * interaction graph is loaded in the background too, if startup has not yet.
+     */
+    public void checkWarnings(MedicationInfo medication, double dose,
+                              MedListRepository medications,
+                              Callback<List<String>> callback) {
+        submit(() -> {
+            medications.loadInteractionGraph();
+            return WarningChecker.checkWarnings(medication, dose, database.getDoseLedger());
+        }, callback);
+    }
+
+    /**
+     * Loads one drug's doses and estimated level over [{@code from}, {@code to})
+     * reduced to about {@code columns} columns, for {@link TimelineChartView}.
+     *
+     * @param decayPerMilli The drug's elimination rate, or 0 to load doses only
+     */
+    public void loadTimeline(String drugName, double decayPerMilli, long from, long to,
+                             int columns, Callback<TimelineData> callback) {
+        submit(() -> TimelineData.load(database, drugName, decayPerMilli, from, to, columns),
+                callback);
+    }
+
+    /**
+     * Loads what logging a dose needs: the medication catalog with its name
+     * index and interaction graph, and the dose ledger the warnings read.
+     * Called once at startup, so the first dose logged does not wait on them.
+     */
+    public void prepareLogging(MedListRepository medications, Callback<Void> callback) {
+        submit(() -> {
+            medications.loadInteractionGraph();
+            database.getDoseLedger();
+            return null;
+        }, callback);
+    }
+
+    /**
+     * Links entries that have no medication id to the catalog, by drug name.
+     * All ids are resolved again when the catalog has changed since the last run.
+     */
+    public void resolveMedicationIds(MedListRepository medications, Callback<Integer> callback) {
+        submit(() -> database.resolveMedicationIds(medications.getCatalogFingerprint(),
+                medications::findIdBySheetName), callback);
+    }
+
+    /**
+     * Loads the statistics for entries in [{@code from}, {@code to}), in the
+     * device's current time zone. All grouping is done by SQLite, so the
+     * result is small however long the history is.
+     */
+    public void loadStatistics(long from, long to, Callback<DoseStatistics> callback) {
+        TimeZone zone = TimeZone.getDefault();
+        submit(() -> new DoseStatistics(from, to,
+                database.getDailyTotals(from, to, zone),
+                database.getDoseCounts(from, to, DoseStatistics.Period.DAY, zone),
+                database.getDoseCounts(from, to, DoseStatistics.Period.WEEK, zone),
+                database.getHourOfDayHistogram(from, to, null, zone),
+                database.getOldestEntryTimestamp()), callback);
+    }
+
+    /** Stops accepting new work. Already queued tasks still run. */
+    public void shutdown() {
+        if (backgroundExecutor instanceof ExecutorService) {
+            ((ExecutorService) backgroundExecutor).shutdown();
+        }
+    }
+
+    private <T> void submit(Callable<T> task, Callback<T> callback) {
+        try {
+            backgroundExecutor.execute(() -> {
+                try {
+                    T result = task.call();
+                    callbackExecutor.execute(() -> callback.onSuccess(result));
+                } catch (Exception e) {
+                    callbackExecutor.execute(() -> callback.onError(e.getMessage()));
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            callbackExecutor.execute(() -> callback.onError("Too many pending operations"));
+        }
+    }
+
+    private static ExecutorService newBoundedExecutor() {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(
+                THREAD_COUNT, THREAD_COUNT, 30, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(QUEUE_CAPACITY));
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+}
@@ -0,0 +1,468 @@
+package com.druglogger.app;
+
+import android.util.JsonReader;
+import android.util.JsonToken;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Moves the dose log in and out of {@link DrugLogDatabase} as CSV or JSON
+ * Lines, for backups and for moving a history to another device.
+ *
+ * Both directions stream: an export writes each row as the cursor reaches
+ * it, and an import parses one row at a time into a reused entry, so neither
+ * holds more than one row in memory. Callers should pass buffered streams.
+ *
+ * CSV files start with a header row naming the columns, which may come in
+ * any order on import; quoting follows RFC 4180. JSON Lines files hold one
+ * object per line with the same names as keys. Imported rows get new ids;
+ * an "id" column or key is ignored. The reason column comes last, so files
+ * written before it existed still import.
+ */
+public final class EntryTransfer {
+
+    public enum Format {
+        CSV,
+        JSON_LINES;
+
+        /** Picks the format from a file name's extension, or null if it is neither. */
+        public static Format forFileName(String fileName) {
+            String lower = fileName.toLowerCase(Locale.ROOT);
+            if (lower.endsWith(".csv")) return CSV;
+            if (lower.endsWith(".jsonl") || lower.endsWith(".ndjson")) return JSON_LINES;
+            return null;
+        }
+    }
+
+    static final String ID = "id";
+    static final String DRUG_NAME = "drug_name";
+    static final String DOSAGE = "dosage";
+    static final String DOSE_VALUE = "dose_value";
+    static final String DOSE_UNIT = "dose_unit";
+    static final String NOTES = "notes";
+    static final String TIMESTAMP = "timestamp";
+    static final String REASON = "reason";
+
+    private static final String[] COLUMNS =
+            {ID, DRUG_NAME, DOSAGE, DOSE_VALUE, DOSE_UNIT, NOTES, TIMESTAMP, REASON};
+    // Positions in COLUMNS
+    private static final int DRUG_NAME_COLUMN = 1;
+    private static final int DOSAGE_COLUMN = 2;
+    private static final int DOSE_VALUE_COLUMN = 3;
+    private static final int DOSE_UNIT_COLUMN = 4;
+    private static final int NOTES_COLUMN = 5;
+    private static final int TIMESTAMP_COLUMN = 6;
+    private static final int REASON_COLUMN = 7;
+
+    private EntryTransfer() {
+    }
+
+    /**
+     * Writes every entry to {@code out}, oldest first. {@code out} is flushed
+     * but not closed.
+     *
+     * @return the number of entries written
+     */
+    public static int export(DrugLogDatabase database, Writer out, Format format)
+            throws IOException {
+        DrugLogDatabase.EntrySink sink = format == Format.CSV ? csvSink(out) : jsonLinesSink(out);
+        if (format == Format.CSV) {
+            for (int i = 0; i < COLUMNS.length; i++) {
+                if (i > 0) out.write(',');
+                out.write(COLUMNS[i]);
+            }
+            out.write("\r\n");
+        }
+        int count = database.exportEntries(sink);
+        out.flush();
+        return count;
+    }
+
+    /**
+     * Adds every entry in {@code in} to the database. {@code in} is not
+     * closed.
+     *
+     * @return the number of entries added
+     * @throws IOException if the input is malformed, with the line or record
+     *                     it failed on; entries in already committed batches
+     *                     stay imported
+     */
+    public static int importFrom(DrugLogDatabase database, Reader in, Format format)
+            throws IOException {
+        return database.importEntries(format == Format.CSV
+                ? new CsvSource(in) : new JsonLinesSource(in));
+    }
+
+    // --- Export ---
+
+    private static DrugLogDatabase.EntrySink csvSink(Writer out) {
+        return entry -> {
+            out.write(Long.toString(entry.getId()));
+            out.write(',');
+            writeCsvField(out, entry.getDrugName());
+            out.write(',');
+            writeCsvField(out, entry.getDosage());
+            out.write(',');
+            out.write(formatNumber(entry.getDoseValue()));
+            out.write(',');
+            writeCsvField(out, entry.getDoseUnit());
+            out.write(',');
+            writeCsvField(out, entry.getNotes());
+            out.write(',');
+            out.write(Long.toString(entry.getTimestamp()));
+            out.write(',');
+            writeCsvField(out, entry.getReason());
+            out.write("\r\n");
+        };
+    }
+
+    /** Writes a field, quoted only if it contains a comma, quote or line break. */
+    private static void writeCsvField(Writer out, String value) throws IOException {
+        if (value == null) return;
+        boolean quote = false;
+        for (int i = 0; i < value.length() && !quote; i++) {
+            char c = value.charAt(i);
+            quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!quote) {
+            out.write(value);
+            return;
+        }
+        out.write('"');
+        int start = 0;
+        for (int i = 0; i < value.length(); i++) {
+            if (value.charAt(i) == '"') {
+                out.write(value, start, i + 1 - start);
+                out.write('"');
+                start = i + 1;
+            }
+        }
+        out.write(value, start, value.length() - start);
+        out.write('"');
+    }
+
+    private static DrugLogDatabase.EntrySink jsonLinesSink(Writer out) {
+        return entry -> {
+            out.write("{\"" + ID + "\":");
+            out.write(Long.toString(entry.getId()));
+            out.write(",\"" + DRUG_NAME + "\":");
+            writeJsonString(out, entry.getDrugName());
+            out.write(",\"" + DOSAGE + "\":");
+            writeJsonString(out, entry.getDosage());
+            out.write(",\"" + DOSE_VALUE + "\":");
+            out.write(formatNumber(entry.getDoseValue()));
+            out.write(",\"" + DOSE_UNIT + "\":");
+            writeJsonString(out, entry.getDoseUnit());
+            out.write(",\"" + NOTES + "\":");
+            writeJsonString(out, entry.getNotes());
+            out.write(",\"" + TIMESTAMP + "\":");
+            out.write(Long.toString(entry.getTimestamp()));
+            out.write(",\"" + REASON + "\":");
+            writeJsonString(out, entry.getReason());
+            out.write("}\n");
+        };
+    }
+
+    private static void writeJsonString(Writer out, String value) throws IOException {
+        if (value == null) {
+            out.write("null");
+            return;
+        }
+        out.write('"');
+        int start = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            String escape;
+            if (c == '"') {
+                escape = "\\\"";
+            } else if (c == '\\') {
+                escape = "\\\\";
+            } else if (c == '\n') {
+                escape = "\\n";
+            } else if (c == '\r') {
+                escape = "\\r";
+            } else if (c == '\t') {
+                escape = "\\t";
+            } else if (c < 0x20) {
+                escape = String.format("\\u%04x", (int) c);
+            } else {
+                continue;
+            }
+            out.write(value, start, i - start);
+            out.write(escape);
+            start = i + 1;
+        }
+        out.write(value, start, value.length() - start);
+        out.write('"');
+    }
+
+    /** Whole numbers without a fraction, so "50" rather than "50.0". */
+    private static String formatNumber(double value) {
+        return value == Math.rint(value) && Math.abs(value) < 1e15
+                ? Long.toString((long) value) : Double.toString(value);
+    }
+
+    // --- Import ---
+
+    /**
+     * Fills an entry from parsed fields. A missing dosage string is built
+     * from the numeric dose, as {@link DrugEntry} does for new entries.
+     */
+    private static void fill(DrugEntry entry, String drugName, String dosage, double doseValue,
+                             String doseUnit, String notes, long timestamp, String reason,
+                             String where) throws IOException {
+        if (drugName == null || drugName.isEmpty()) {
+            throw new IOException(where + ": missing " + DRUG_NAME);
+        }
+        if (timestamp < 0) {
+            throw new IOException(where + ": missing or invalid " + TIMESTAMP);
+        }
+        entry.setId(0);
+        entry.setDrugName(drugName);
+        entry.setDosage(dosage != null ? dosage : DrugEntry.formatDose(doseValue, doseUnit));
+        entry.setDoseValue(doseValue);
+        entry.setDoseUnit(doseUnit);
+        entry.setNotes(notes);
+        entry.setTimestamp(timestamp);
+        entry.setMedId(-1);
+        entry.setReason(reason);
+    }
+
+    private static double parseDouble(String value, String where) throws IOException {
+        if (value == null) return 0;
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            throw new IOException(where + ": invalid " + DOSE_VALUE + " \"" + value + "\"");
+        }
+    }
+
+    private static long parseLong(String value, String where) throws IOException {
+        if (value == null) return -1;
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            throw new IOException(where + ": invalid " + TIMESTAMP + " \"" + value + "\"");
+        }
+    }
+
+    /** Reads RFC 4180 records straight from the reader, one field at a time. */
+    private static final class CsvSource implements DrugLogDatabase.EntrySource {
+        private final Reader in;
+        private final char[] buffer = new char[8192];
+        private int position;
+        private int limit;
+        private final StringBuilder field = new StringBuilder();
+        /** Line the current record starts on, for error messages. */
+        private int line = 1;
+        private int nextLine = 1;
+        private boolean endOfRecord;
+        private boolean endOfInput;
+
+        /** Column of each field in the file, as indexes into {@link #COLUMNS}, or -1. */
+        private int[] columnOf;
+        private final String[] values = new String[COLUMNS.length];
+
+        CsvSource(Reader in) {
+            this.in = in;
+        }
+
+        @Override
+        public boolean next(DrugEntry entry) throws IOException {
+            if (columnOf == null) readHeader();
+            if (!startRecord()) return false;
+
+            Arrays.fill(values, null);
+            int fieldIndex = 0;
+            do {
+                String value = readField();
+                if (fieldIndex < columnOf.length && columnOf[fieldIndex] >= 0) {
+                    values[columnOf[fieldIndex]] = value.isEmpty() ? null : value;
+                }
+                fieldIndex++;
+            } while (!endOfRecord);
+
+            String where = "Line " + line;
+            fill(entry, values[DRUG_NAME_COLUMN], values[DOSAGE_COLUMN],
+                    parseDouble(values[DOSE_VALUE_COLUMN], where), values[DOSE_UNIT_COLUMN],
+                    values[NOTES_COLUMN], parseLong(values[TIMESTAMP_COLUMN], where),
+                    values[REASON_COLUMN], where);
+            return true;
+        }
+
+        private void readHeader() throws IOException {
+            if (!startRecord()) throw new IOException("Empty file");
+            List<String> names = new ArrayList<>();
+            do {
+                names.add(readField().trim());
+            } while (!endOfRecord);
+
+            columnOf = new int[names.size()];
+            boolean hasName = false;
+            boolean hasTimestamp = false;
+            for (int i = 0; i < columnOf.length; i++) {
+                columnOf[i] = -1;
+                for (int c = 0; c < COLUMNS.length; c++) {
+                    if (COLUMNS[c].equalsIgnoreCase(names.get(i))) columnOf[i] = c;
+                }
+                hasName |= columnOf[i] == DRUG_NAME_COLUMN;
+                hasTimestamp |= columnOf[i] == TIMESTAMP_COLUMN;
+            }
+            if (!hasName || !hasTimestamp) {
+                throw new IOException("Header must name the " + DRUG_NAME + " and "
+                        + TIMESTAMP + " columns");
+            }
+        }
+
+        /** Skips blank lines and returns false at the end of the input. */
+        private boolean startRecord() throws IOException {
+            while (true) {
+                int c = peek();
+                if (c == -1) return false;
+                if (c == '\r' || c == '\n') {
+                    consumeLineBreak();
+                    continue;
+                }
+                line = nextLine;
+                endOfRecord = false;
+                return true;
+            }
+        }
+
+        private String readField() throws IOException {
+            field.setLength(0);
+            int c = peek();
+            if (c == '"') {
+                position++;
+                int quoteLine = nextLine;
+                while (true) {
+                    c = read();
+                    if (c == -1) throw new IOException("Line " + quoteLine + ": unterminated quote");
+                    if (c == '"') {
+                        if (peek() != '"') break;
+                        position++;
+                    } else if (c == '\n') {
+                        nextLine++;
+                    }
+                    field.append((char) c);
+                }
+                c = peek();
+                if (c != ',' && c != '\r' && c != '\n' && c != -1) {
+                    throw new IOException("Line " + nextLine + ": text after closing quote");
+                }
+            } else {
+                while ((c = peek()) != ',' && c != '\r' && c != '\n' && c != -1) {
+                    field.append((char) c);
+                    position++;
+                }
+            }
+            if (c == ',') {
+                position++;
+            } else {
+                if (c != -1) consumeLineBreak();
+                endOfRecord = true;
+            }
+            return field.toString();
+        }
+
+        private void consumeLineBreak() throws IOException {
+            if (read() == '\r' && peek() == '\n') position++;
+            nextLine++;
+        }
+
+        private int peek() throws IOException {
+            if (position == limit) {
+                if (endOfInput) return -1;
+                limit = in.read(buffer, 0, buffer.length);
+                position = 0;
+                if (limit <= 0) {
+                    limit = 0;
+                    endOfInput = true;
+                    return -1;
+                }
+            }
+            return buffer[position];
+        }
+
+        private int read() throws IOException {
+            int c = peek();
+            if (c != -1) position++;
+            return c;
+        }
+    }
+
+    /** Reads one JSON object per line; blank lines between objects are skipped. */
+    private static final class JsonLinesSource implements DrugLogDatabase.EntrySource {
+        private final JsonReader reader;
+        private int record;
+
+        JsonLinesSource(Reader in) {
+            reader = new JsonReader(in);
+            // Lenient mode accepts a sequence of top-level values
+            reader.setLenient(true);
+        }
+
+        @Override
+        public boolean next(DrugEntry entry) throws IOException {
+            try {
+                if (reader.peek() == JsonToken.END_DOCUMENT) return false;
+                record++;
+                String where = "Record " + record;
+                String drugName = null;
+                String dosage = null;
+                double doseValue = 0;
+                String doseUnit = null;
+                String notes = null;
+                long timestamp = -1;
+                String reason = null;
+
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    String name = reader.nextName();
+                    if (reader.peek() == JsonToken.NULL) {
+                        reader.skipValue();
+                        continue;
+                    }
+                    switch (name) {
+                        case DRUG_NAME:
+                            drugName = reader.nextString();
+                            break;
+                        case DOSAGE:
+                            dosage = reader.nextString();
+                            break;
+                        case DOSE_VALUE:
+                            doseValue = parseDouble(reader.nextString(), where);
+                            break;
+                        case DOSE_UNIT:
+                            doseUnit = reader.nextString();
+                            break;
+                        case NOTES:
+                            notes = reader.nextString();
+                            break;
+                        case TIMESTAMP:
+                            timestamp = parseLong(reader.nextString(), where);
+                            break;
+                        case REASON:
+                            reason = reader.nextString();
+                            break;
+                        default:
+                            reader.skipValue();
+                            break;
+                    }
+                }
+                reader.endObject();
+                fill(entry, drugName, dosage, doseValue, doseUnit, notes, timestamp, reason,
+                        where);
+                return true;
+            } catch (IllegalStateException e) {
+                throw new IOException("Record " + record + ": " + e.getMessage(), e);
+            }
+        }
+    }
+}
@@ -1,166 +1,348 @@
 package com.druglogger.app;
 
-import android.os.Handler;
-import android.os.Looper;
+import android.util.JsonReader;
+import android.util.JsonToken;
 
 import org.json.JSONArray;
+import org.json.JSONException;
 import org.json.JSONObject;
 
-import java.io.BufferedReader;
-import java.io.InputStreamReader;
-import java.io.OutputStream;
-import java.net.HttpURLConnection;
-import java.net.URL;
-import java.nio.charset.StandardCharsets;
+import java.io.IOException;
+import java.io.Reader;
+import java.net.URLEncoder;
+import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Date;
 import java.util.List;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.Locale;
+import java.util.TimeZone;
 
 /**
  * Sends medication log entries to the Google Apps Script web app
- * and retrieves existing logs.
+ * and retrieves existing logs. The web app's source is apps-script/Code.gs;
+ * the requests it answers are described in TECHNICAL.md.
+ *
+ * Every request runs on the calling thread: {@link SheetsOutbox} and
+ * {@link RemoteLogSync} call it from their own background threads.
  */
 public class GoogleSheetsLogger {
 
     private static final String SCRIPT_URL =
             "https://script.google.com/macros/s/AKfycbwNeAFxg6IpfzQf9iDxAx3spavPA0cwNvwvAEFKdBEgt4OmndJREHGT10TOVUVFt4Nsbg/exec";
 
-    private final ExecutorService executor = Executors.newSingleThreadExecutor();
-    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    /** {@link Response#stored} of a response without "stored". */
+    private static final int NOT_CONFIRMED = -1;
 
-    public interface LogCallback {
-        void onSuccess();
-        void onError(String errorMessage);
+    private static final Metrics.Counter ROWS_SENT = Metrics.counter("sheets.rowsSent");
+    private static final Metrics.Counter ROWS_RECEIVED = Metrics.counter("sheets.rowsReceived");
+    private static final Metrics.Counter ERROR_RESPONSES = Metrics.counter("sheets.errorResponses");
+
+    private final SheetsHttpClient http;
+    /** Set once the web app has answered a logBatch request without confirming the rows. */
+    private volatile boolean batchUnsupported;
+
+    public GoogleSheetsLogger() {
+        this(SCRIPT_URL);
     }
 
-    public interface FetchLogsCallback {
-        void onSuccess(List<LogEntry> logs);
-        void onError(String errorMessage);
+    /** Talks to the web app at {@code scriptUrl}, e.g. a local stand-in server. */
+    public GoogleSheetsLogger(String scriptUrl) {
+        this.http = new SheetsHttpClient(scriptUrl);
+    }
+
+    /** The web app answered, but with {"success": false}. */
+    public static class RejectedException extends IOException {
+        public RejectedException(String message) {
+            super(message);
+        }
     }
 
     public static class LogEntry {
+        /** Stable row identifier from the sheet, or null if the web app does not send one. */
+        public final String id;
+        /** The timestamp as the sheet sent it. */
         public final String timestamp;
+        /** {@link #timestamp} in epoch millis, or -1 if it could not be read. */
+        public final long timestampMillis;
+        /** The name as logged, e.g. "Ibuprofen [Advil, Motrin]". */
         public final String medicationName;
+        /** Catalog position of the medication, or -1 if it has not been or cannot be resolved. */
+        public final int medicationId;
+        /** The catalog's generic name, or {@link #medicationName} without its brand names. */
+        public final String genericName;
         public final double dose;
         public final String reason;
 
         public LogEntry(String timestamp, String medicationName, double dose, String reason) {
+            this(null, timestamp, medicationName, dose, reason);
+        }
+
+        public LogEntry(String id, String timestamp, String medicationName, double dose,
+                        String reason) {
+            this(id, timestamp, SheetTimestamps.forDefaultZone().parse(timestamp),
+                    medicationName, -1, MedicationInfo.genericNameOfSheetName(medicationName),
+                    dose, reason);
+        }
+
+        public LogEntry(String id, String timestamp, long timestampMillis, String medicationName,
+                        int medicationId, String genericName, double dose, String reason) {
+            this.id = id;
             this.timestamp = timestamp;
+            this.timestampMillis = timestampMillis;
             this.medicationName = medicationName;
+            this.medicationId = medicationId;
+            this.genericName = genericName;
             this.dose = dose;
             this.reason = reason;
         }
+
+        /** Returns a copy resolved to a catalog medication. */
+        public LogEntry withMedication(int medicationId, String genericName) {
+            return new LogEntry(id, timestamp, timestampMillis, medicationName,
+                    medicationId, genericName, dose, reason);
+        }
+    }
+
+    /** Rows returned by one logs request. */
+    public static class LogsPage {
+        public final List<LogEntry> logs;
+        /** Position after the last returned row, or null if the web app has no delta support. */
+        public final String cursor;
+        /**
+         * True if {@link #logs} is the whole sheet rather than the rows after the
+         * requested cursor: on a full fetch, when the web app does not know the
+         * cursor (e.g. rows were deleted), or when it has no delta support.
+         */
+        public final boolean complete;
+
+        LogsPage(List<LogEntry> logs, String cursor, boolean complete) {
+            this.logs = logs;
+            this.cursor = cursor;
+            this.complete = complete;
+        }
     }
 
     /**
-     * Posts a medication log entry to the Google Sheet.
+     * Posts queued doses to the Google Sheet, on the calling thread. Each row
+     * carries its idempotency key, which the web app uses to skip rows it
+     * already stored, so a retried batch is not duplicated.
+     *
+     * The rows go out in one logBatch request, which counts as delivered only
+     * when the response confirms every row in "stored". Otherwise, e.g. when
+     * the deployed web app predates logBatch, they are sent again one "log"
+     * request each. A web app that answered logBatch without confirming it is
+     * sent single rows from then on.
+     *
+     * @throws IOException if a request fails or the sheet rejects a row
      */
-    public void logMedication(String medicationName, double dose, String reason, LogCallback callback) {
-        executor.execute(() -> {
-            try {
+    public void logBatch(List<OutboxItem> items) throws IOException {
+        // Rows can be sent long after they were logged, so they carry their own time
+        SimpleDateFormat iso = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'", Locale.US);
+        iso.setTimeZone(TimeZone.getTimeZone("UTC"));
+        try {
+            if (!batchUnsupported) {
+                JSONArray rows = new JSONArray();
+                for (OutboxItem item : items) {
+                    rows.put(toRow(item, iso));
+                }
                 JSONObject body = new JSONObject();
-                body.put("action", "log");
-                body.put("medicationName", medicationName);
-                body.put("dose", dose);
-                body.put("reason", reason);
-
-                String response = doPost(body.toString());
-                JSONObject result = new JSONObject(response);
+                body.put("action", "logBatch");
+                body.put("rows", rows);
 
-                if (result.optBoolean("success", false)) {
-                    mainHandler.post(callback::onSuccess);
-                } else {
-                    String error = result.optString("error", "Unknown error");
-                    mainHandler.post(() -> callback.onError(error));
+                int stored;
+                try {
+                    stored = post(body).stored;
+                    if (stored == NOT_CONFIRMED) batchUnsupported = true;
+                } catch (RejectedException e) {
+                    stored = NOT_CONFIRMED;
                 }
-            } catch (Exception e) {
-                mainHandler.post(() -> callback.onError(e.getMessage()));
+                if (stored == items.size()) {
+                    ROWS_SENT.add(items.size());
+                    return;
+                }
+            }
+            for (OutboxItem item : items) {
+                JSONObject body = toRow(item, iso);
+                body.put("action", "log");
+                post(body);
+                ROWS_SENT.increment();
             }
-        });
+        } catch (JSONException e) {
+            throw new IOException("Could not build request: " + e.getMessage(), e);
+        }
+    }
+
+    private static JSONObject toRow(OutboxItem item, SimpleDateFormat iso) throws JSONException {
+        JSONObject row = new JSONObject();
+        row.put("id", item.getIdempotencyKey());
+        row.put("timestamp", iso.format(new Date(item.getTimestamp())));
+        row.put("medicationName", item.getMedicationName());
+        row.put("dose", item.getDose());
+        row.put("reason", item.getReason());
+        return row;
     }
 
     /**
-     * Fetches existing logs from the Google Sheet.
+     * Fetches the rows added after {@code cursor}, on the calling thread. Pass
+     * null to fetch the whole sheet. The web app answers with the whole sheet
+     * instead when it cannot serve a delta, which the page's
+     * {@link LogsPage#complete} flag reports.
+     *
+     * @throws IOException if the request fails or the web app reports an error
      */
-    public void fetchLogs(FetchLogsCallback callback) {
-        executor.execute(() -> {
-            try {
-                String response = doGet("?action=logs");
-                JSONObject result = new JSONObject(response);
-
-                if (result.optBoolean("success", false)) {
-                    JSONArray logsArr = result.getJSONArray("logs");
-                    List<LogEntry> logs = new ArrayList<>();
-                    for (int i = 0; i < logsArr.length(); i++) {
-                        JSONObject log = logsArr.getJSONObject(i);
-                        logs.add(new LogEntry(
-                                log.optString("timestamp", ""),
-                                log.optString("medicationName", ""),
-                                log.optDouble("dose", 0),
-                                log.optString("reason", "")
-                        ));
-                    }
-                    mainHandler.post(() -> callback.onSuccess(logs));
-                } else {
-                    String error = result.optString("error", "Unknown error");
-                    mainHandler.post(() -> callback.onError(error));
-                }
-            } catch (Exception e) {
-                mainHandler.post(() -> callback.onError(e.getMessage()));
-            }
-        });
+    public LogsPage fetchLogsSince(String cursor) throws IOException {
+        String query = "?action=logs";
+        if (cursor != null) {
+            query += "&since=" + URLEncoder.encode(cursor, "UTF-8");
+        }
+        Response response = http.get(query, GoogleSheetsLogger::readResponse);
+        // A web app without delta support ignores "since" and sends no cursor
+        return new LogsPage(response.logs, response.cursor,
+                cursor == null || response.cursor == null || response.reset);
     }
 
-    private String doPost(String jsonBody) throws Exception {
-        URL url = new URL(SCRIPT_URL);
-        HttpURLConnection conn = (HttpURLConnection) url.openConnection();
-        conn.setInstanceFollowRedirects(true);
-        conn.setRequestMethod("POST");
-        conn.setRequestProperty("Content-Type", "application/json; charset=UTF-8");
-        conn.setDoOutput(true);
+    /** Sets the connect and read timeouts of every later request. */
+    public void setTimeouts(int connectTimeoutMillis, int readTimeoutMillis) {
+        http.setTimeouts(connectTimeoutMillis, readTimeoutMillis);
+    }
 
-        try (OutputStream os = conn.getOutputStream()) {
-            os.write(jsonBody.getBytes(StandardCharsets.UTF_8));
-        }
+    /**
+     * Gzips large request bodies. Apps Script does not decode compressed
+     * requests, so this is only for web apps that do.
+     */
+    public void setCompressRequests(boolean compressRequests) {
+        http.setCompressRequests(compressRequests);
+    }
 
-        return readResponse(conn);
+    /** Posts a request and throws with the web app's error if it did not succeed. */
+    private Response post(JSONObject body) throws IOException {
+        return http.post(body.toString(), GoogleSheetsLogger::readResponse);
     }
 
-    private String doGet(String queryString) throws Exception {
-        URL url = new URL(SCRIPT_URL + queryString);
-        HttpURLConnection conn = (HttpURLConnection) url.openConnection();
-        conn.setInstanceFollowRedirects(true);
-        conn.setRequestMethod("GET");
+    /** One parsed response of the web app. */
+    private static final class Response {
+        final List<LogEntry> logs;
+        final String cursor;
+        final boolean reset;
+        /** Rows of the request the sheet holds, or {@link #NOT_CONFIRMED}. */
+        final int stored;
 
-        return readResponse(conn);
+        Response(List<LogEntry> logs, String cursor, boolean reset, int stored) {
+            this.logs = logs;
+            this.cursor = cursor;
+            this.reset = reset;
+            this.stored = stored;
+        }
     }
 
-    private String readResponse(HttpURLConnection conn) throws Exception {
-        // Google Apps Script responds with a 302 redirect after POST.
-        // The redirect should be followed with GET (standard behavior for 302/303).
-        int status = conn.getResponseCode();
-        if (status == HttpURLConnection.HTTP_MOVED_TEMP
-                || status == HttpURLConnection.HTTP_MOVED_PERM
-                || status == HttpURLConnection.HTTP_SEE_OTHER) {
-            String newUrl = conn.getHeaderField("Location");
-            conn.disconnect();
-            URL redirectUrl = new URL(newUrl);
-            HttpURLConnection redirectConn = (HttpURLConnection) redirectUrl.openConnection();
-            redirectConn.setRequestMethod("GET");
-            conn = redirectConn;
+    /**
+     * Reads a {"success": ..., "error": ..., "logs": [...], "cursor": ...,
+     * "reset": ..., "stored": ...} response. Fields may come in any order; a
+     * response without "logs" has no rows.
+     *
+     * @throws RejectedException with the web app's error message if success is not true
+     */
+    private static Response readResponse(Reader body) throws IOException {
+        JsonReader reader = new JsonReader(body);
+        SheetTimestamps timestamps = SheetTimestamps.forDefaultZone();
+        List<LogEntry> logs = new ArrayList<>();
+        String cursor = null;
+        boolean reset = false;
+        int stored = NOT_CONFIRMED;
+        boolean success = false;
+        String error = "Unknown error";
+        try {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                if (name.equals("success") && reader.peek() == JsonToken.BOOLEAN) {
+                    success = reader.nextBoolean();
+                } else if (name.equals("error") && reader.peek() == JsonToken.STRING) {
+                    error = reader.nextString();
+                } else if (name.equals("cursor") && reader.peek() != JsonToken.NULL
+                        && reader.peek() != JsonToken.BEGIN_OBJECT
+                        && reader.peek() != JsonToken.BEGIN_ARRAY) {
+                    cursor = reader.nextString();
+                } else if (name.equals("reset") && reader.peek() == JsonToken.BOOLEAN) {
+                    reset = reader.nextBoolean();
+                } else if (name.equals("stored") && reader.peek() == JsonToken.NUMBER) {
+                    stored = reader.nextInt();
+                } else if (name.equals("logs") && reader.peek() == JsonToken.BEGIN_ARRAY) {
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        logs.add(readLogEntry(reader, timestamps));
+                    }
+                    reader.endArray();
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+        } catch (IllegalStateException | NumberFormatException e) {
+            throw new IOException("Malformed response: " + e.getMessage(), e);
+        }
+        if (!success) {
+            ERROR_RESPONSES.increment();
+            throw new RejectedException(error);
         }
+        ROWS_RECEIVED.add(logs.size());
+        return new Response(logs, cursor, reset, stored);
+    }
 
-        StringBuilder sb = new StringBuilder();
-        try (BufferedReader reader = new BufferedReader(
-                new InputStreamReader(conn.getInputStream(), StandardCharsets.UTF_8))) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                sb.append(line);
+    /** Reads one row, parsing its timestamp as it arrives so nothing downstream re-parses it. */
+    private static LogEntry readLogEntry(JsonReader reader, SheetTimestamps timestamps)
+            throws IOException {
+        String id = null;
+        String timestamp = "";
+        String medicationName = "";
+        double dose = 0;
+        String reason = "";
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            JsonToken token = reader.peek();
+            if (token == JsonToken.NULL || token == JsonToken.BEGIN_OBJECT
+                    || token == JsonToken.BEGIN_ARRAY) {
+                reader.skipValue();
+                continue;
+            }
+            switch (name) {
+                case "id":
+                    id = reader.nextString();
+                    break;
+                case "timestamp":
+                    timestamp = reader.nextString();
+                    break;
+                case "medicationName":
+                    medicationName = reader.nextString();
+                    break;
+                case "dose":
+                    dose = readDouble(reader);
+                    break;
+                case "reason":
+                    reason = reader.nextString();
+                    break;
+                default:
+                    reader.skipValue();
+                    break;
             }
-        } finally {
-            conn.disconnect();
         }
-        return sb.toString();
+        reader.endObject();
+        return new LogEntry(id, timestamp, timestamps.parse(timestamp), medicationName, -1,
+                MedicationInfo.genericNameOfSheetName(medicationName), dose, reason);
+    }
+
+    /** Reads a number, or a string holding one, as the sheet may return either. 0 otherwise. */
+    private static double readDouble(JsonReader reader) throws IOException {
+        if (reader.peek() == JsonToken.BOOLEAN) {
+            reader.skipValue();
+            return 0;
+        }
+        String value = reader.nextString();
+        try {
+            return Double.parseDouble(value.trim());
+        } catch (NumberFormatException e) {
+            return 0;
+        }
     }
 }
@@ -0,0 +1,119 @@
+package com.druglogger.app;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TimeZone;
+
+/**
+ * Builds SQL expressions that turn an epoch-millis column into local
+ * wall-clock time, so SQLite can group rows by local day, week or hour.
+ *
+ * SQLite's 'localtime' modifier converts each row through the C library and
+ * uses the zone the process started with. Instead, the zone's offset
+ * transitions within the queried range are found once in Java and written
+ * into the expression as a CASE over the timestamp, which costs a few integer
+ * comparisons per row. A range without transitions needs no CASE at all.
+ */
+final class LocalTimeSql {
+
+    static final long HOUR_MILLIS = 60 * 60_000L;
+    static final long DAY_MILLIS = 24 * HOUR_MILLIS;
+    /** Days from the epoch day, a Thursday, back to the Monday that starts its week. */
+    private static final int EPOCH_WEEK_SHIFT = 3;
+
+    /** Offset transitions are searched for at this step; zones never change twice within it. */
+    private static final long SCAN_STEP_MILLIS = 7 * DAY_MILLIS;
+
+    private final TimeZone zone;
+    private final String localMillis;
+
+    /**
+     * @param column The epoch-millis column
+     * @param from   Start of the queried range, inclusive
+     * @param to     End of the queried range, exclusive
+     */
+    LocalTimeSql(String column, TimeZone zone, long from, long to) {
+        this.zone = zone;
+        this.localMillis = localMillisExpression(column, zone, from, to);
+    }
+
+    /** Local time of the column, in millis since the local epoch. */
+    String localMillis() {
+        return localMillis;
+    }
+
+    /** Local day of the column, in days since 1970-01-01. */
+    String localDay() {
+        return "(" + localMillis + " / " + DAY_MILLIS + ")";
+    }
+
+    /** Week of the column, counted in Monday-to-Sunday weeks since 1969-12-29. */
+    String localWeek() {
+        return "((" + localDay() + " + " + EPOCH_WEEK_SHIFT + ") / 7)";
+    }
+
+    /** Local hour of day of the column, 0 to 23. */
+    String localHour() {
+        return "((" + localMillis + " / " + HOUR_MILLIS + ") % 24)";
+    }
+
+    /** Local day of a timestamp, matching {@link #localDay()}. */
+    long dayOf(long timestamp) {
+        long local = timestamp + zone.getOffset(timestamp);
+        long day = local / DAY_MILLIS;
+        return local % DAY_MILLIS < 0 ? day - 1 : day;
+    }
+
+    /** Week of a local day, matching {@link #localWeek()}. */
+    static long weekOfDay(long day) {
+        long shifted = day + EPOCH_WEEK_SHIFT;
+        long week = shifted / 7;
+        return shifted % 7 < 0 ? week - 1 : week;
+    }
+
+    private static String localMillisExpression(String column, TimeZone zone, long from,
+                                                long to) {
+        List<Long> transitions = new ArrayList<>();
+        List<Integer> offsets = new ArrayList<>();
+        int offset = zone.getOffset(from);
+        offsets.add(offset);
+        long scanned = from;
+        while (scanned < to) {
+            long next = Math.min(scanned + SCAN_STEP_MILLIS, to);
+            if (zone.getOffset(next) != offset) {
+                long transition = findTransition(zone, scanned, next, offset);
+                offset = zone.getOffset(transition);
+                transitions.add(transition);
+                offsets.add(offset);
+                scanned = transition;
+            } else {
+                scanned = next;
+            }
+        }
+
+        if (transitions.isEmpty()) {
+            return "(" + column + " + " + offsets.get(0) + ")";
+        }
+        StringBuilder sql = new StringBuilder("(").append(column).append(" + CASE");
+        for (int i = 0; i < transitions.size(); i++) {
+            sql.append(" WHEN ").append(column).append(" < ").append(transitions.get(i))
+                    .append(" THEN ").append(offsets.get(i));
+        }
+        return sql.append(" ELSE ").append(offsets.get(offsets.size() - 1))
+                .append(" END)").toString();
+    }
+
+    /** First instant after {@code low} whose offset differs from {@code offset}. */
+    private static long findTransition(TimeZone zone, long low, long high, int offset) {
+        // Invariant: low has the old offset, high does not
+        while (high - low > 1) {
+            long mid = low + (high - low) / 2;
+            if (zone.getOffset(mid) == offset) {
+                low = mid;
+            } else {
+                high = mid;
+            }
+        }
+        return high;
+    }
+}
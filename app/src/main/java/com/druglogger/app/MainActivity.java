@@ -1,11 +1,19 @@
 package com.druglogger.app;
 
 import android.app.AlertDialog;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.content.pm.ApplicationInfo;
 import android.os.Bundle;
+import android.text.Editable;
+import android.text.TextWatcher;
 import android.view.LayoutInflater;
 import android.view.View;
-import android.widget.AdapterView;
+import android.view.ViewTreeObserver;
 import android.widget.ArrayAdapter;
+import android.widget.AutoCompleteTextView;
 import android.widget.Spinner;
 import android.widget.Toast;
 
@@ -13,41 +21,221 @@ import androidx.appcompat.app.AppCompatActivity;
 import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 
+import com.google.android.material.appbar.MaterialToolbar;
 import com.google.android.material.floatingactionbutton.FloatingActionButton;
 
 import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Set;
 
 public class MainActivity extends AppCompatActivity {
+    private static final int PAGE_SIZE = 50;
+    /**
+     * Entries held at most, as pages around the viewport. Pages further away
+     * are dropped and loaded again by key when the user scrolls back.
+     */
+    private static final int MAX_LOADED_ENTRIES = 5 * PAGE_SIZE;
+    /** Start fetching the next page when this many loaded rows remain below the viewport. */
+    private static final int PREFETCH_DISTANCE = 15;
+
     private RecyclerView recyclerView;
     private DrugEntryAdapter adapter;
-    private DrugLogDatabase database;
+    private DrugLogRepository repository;
     private List<DrugEntry> entries;
+    private final Set<Long> loadedIds = new HashSet<>();
+    private boolean loadingPage;
+    private boolean hasMorePages = true;
+    /** Whether newer entries than the first loaded one were dropped from the list */
+    private boolean hasNewerPages;
     private FloatingActionButton addButton;
 
     private MedListRepository medListRepository;
-    private GoogleSheetsLogger sheetsLogger;
+    /** Reformats the list's dates when the locale or time zone changes. */
+    private final BroadcastReceiver dateFormatReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            adapter.refreshDates();
+        }
+    };
+    private SheetsOutbox sheetsOutbox;
+    private SheetsOutbox.Listener sheetsListener;
+    private RemoteLogSync remoteLogSync;
+
+    private final StartupTiming startupTiming = new StartupTiming();
+    private final ReadinessGate firstPageShown = new ReadinessGate();
+    private final ReadinessGate catalogReady = new ReadinessGate();
+    private final ReadinessGate syncReady = new ReadinessGate();
+    /** Set while a tap on the add button waits for the gates, so it opens one dialog */
+    private boolean logDialogPending;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_main);
 
-        database = new DrugLogDatabase(this);
+        // Debug builds record timings, and show them in system traces, from the start
+        boolean debuggable = (getApplicationInfo().flags & ApplicationInfo.FLAG_DEBUGGABLE) != 0;
+        if (debuggable) {
+            Metrics.setTracer(new AndroidTracer());
+            Metrics.setEnabled(true);
+        }
+
+        // Only the first page of entries is loaded before the first frame; the
+        // catalog and sync start once it is drawn, see startBackgroundStages
+        repository = new DrugLogRepository(DrugLogDatabase.getInstance(this));
         entries = new ArrayList<>();
+        loadNextPage();
         medListRepository = new MedListRepository(this);
-        sheetsLogger = new GoogleSheetsLogger();
 
         recyclerView = findViewById(R.id.recycler_view);
         addButton = findViewById(R.id.add_button);
 
-        recyclerView.setLayoutManager(new LinearLayoutManager(this));
-        adapter = new DrugEntryAdapter(entries, this::deleteEntry);
+        LinearLayoutManager layoutManager = new LinearLayoutManager(this);
+        recyclerView.setLayoutManager(layoutManager);
+        adapter = new DrugEntryAdapter(this::deleteEntry);
         recyclerView.setAdapter(adapter);
+        // The zone or locale may have changed while no activity was listening
+        EntryDateFormat.invalidate();
+        IntentFilter dateFormatChanges = new IntentFilter(Intent.ACTION_TIMEZONE_CHANGED);
+        dateFormatChanges.addAction(Intent.ACTION_LOCALE_CHANGED);
+        registerReceiver(dateFormatReceiver, dateFormatChanges);
+        recyclerView.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrolled(RecyclerView view, int dx, int dy) {
+                if (layoutManager.findLastVisibleItemPosition()
+                        >= adapter.getItemCount() - PREFETCH_DISTANCE) {
+                    loadNextPage();
+                } else if (layoutManager.findFirstVisibleItemPosition() <= PREFETCH_DISTANCE) {
+                    loadNewerPage();
+                }
+            }
+        });
 
-        addButton.setOnClickListener(v -> showLogMedicationDialog());
+        addButton.setOnClickListener(v -> {
+            if (logDialogPending) return;
+            if (!catalogReady.isOpen() || !syncReady.isOpen()) {
+                Toast.makeText(this, "Loading medications…", Toast.LENGTH_SHORT).show();
+            }
+            // Opens at once unless the user was faster than startup
+            logDialogPending = true;
+            whenReadyToLog(() -> {
+                logDialogPending = false;
+                if (!isFinishing()) showLogMedicationDialog();
+            });
+        });
 
-        loadEntries();
+        MaterialToolbar toolbar = findViewById(R.id.toolbar);
+        toolbar.inflateMenu(R.menu.main_menu);
+        toolbar.getMenu().findItem(R.id.action_export_metrics).setVisible(debuggable);
+        toolbar.setOnMenuItemClickListener(item -> {
+            if (item.getItemId() == R.id.action_statistics) {
+                startActivity(new Intent(this, StatisticsActivity.class));
+                return true;
+            }
+            if (item.getItemId() == R.id.action_export_metrics) {
+                exportMetrics();
+                return true;
+            }
+            return false;
+        });
+
+        View content = findViewById(android.R.id.content);
+        content.getViewTreeObserver().addOnPreDrawListener(
+                new ViewTreeObserver.OnPreDrawListener() {
+                    @Override
+                    public boolean onPreDraw() {
+                        content.getViewTreeObserver().removeOnPreDrawListener(this);
+                        // Runs after the traversal that draws the first frame
+                        content.post(() -> {
+                            startupTiming.firstFrame();
+                            if (!isFinishing()) startBackgroundStages();
+                        });
+                        return true;
+                    }
+                });
+        firstPageShown.whenOpen(() -> whenReadyToLog(() -> {
+            startupTiming.interactive();
+            reportFullyDrawn();
+        }));
+    }
+
+    /**
+     * Starts what the first frame does not need: loading the catalog and the
+     * dose ledger in the background, and the Google Sheets outbox and mirror.
+     * Each opens its gate when done, which is what the log dialog waits for.
+     */
+    private void startBackgroundStages() {
+        repository.prepareLogging(medListRepository,
+                new DrugLogRepository.Callback<Void>() {
+                    @Override
+                    public void onSuccess(Void result) {
+                        catalogReady.open();
+                        resolveMedicationIds();
+                    }
+
+                    @Override
+                    public void onError(String errorMessage) {
+                        // The dialog loads what is missing itself, on first use
+                        catalogReady.open();
+                    }
+                });
+
+        // The outbox outlives this activity, so pending retries survive it
+        sheetsOutbox = SheetsOutbox.getInstance(this);
+        sheetsListener = new SheetsOutbox.Listener() {
+            @Override
+            public void onSynced(int count) {
+                Toast.makeText(MainActivity.this,
+                        count == 1 ? "Logged to Google Sheets"
+                                : "Logged " + count + " entries to Google Sheets",
+                        Toast.LENGTH_SHORT).show();
+            }
+
+            @Override
+            public void onSyncFailed(String errorMessage, long pending) {
+                Toast.makeText(MainActivity.this,
+                        "Saved locally. Sheets sync failed: " + errorMessage
+                                + ". Will retry " + pending + " pending.",
+                        Toast.LENGTH_LONG).show();
+            }
+        };
+        sheetsOutbox.setListener(sheetsListener);
+        sheetsOutbox.flush();
+        // Doses logged on other devices reach the warnings through the sheet mirror
+        remoteLogSync = new RemoteLogSync(DrugLogDatabase.getInstance(this),
+                new GoogleSheetsLogger(), medListRepository);
+        remoteLogSync.start();
+        syncReady.open();
+    }
+
+    /** Entries saved before medication ids existed, or against an older catalog. */
+    private void resolveMedicationIds() {
+        repository.resolveMedicationIds(medListRepository, new DrugLogRepository.Callback<Integer>() {
+            @Override
+            public void onSuccess(Integer updated) {
+            }
+
+            @Override
+            public void onError(String errorMessage) {
+                // Entries without an id are tried again on the next launch
+            }
+        });
+    }
+
+    /** Runs {@code action} once the catalog is loaded and the outbox can take doses. */
+    private void whenReadyToLog(Runnable action) {
+        catalogReady.whenOpen(() -> syncReady.whenOpen(action));
+    }
+
+    /** Shares a JSON snapshot of the recorded timings and counters, e.g. to mail it off. */
+    private void exportMetrics() {
+        Intent send = new Intent(Intent.ACTION_SEND);
+        send.setType("application/json");
+        send.putExtra(Intent.EXTRA_SUBJECT, "Drug Logger metrics");
+        send.putExtra(Intent.EXTRA_TEXT, Metrics.snapshotJson());
+        startActivity(Intent.createChooser(send, getString(R.string.export_metrics)));
     }
 
     private void showLogMedicationDialog() {
@@ -55,60 +243,58 @@ public class MainActivity extends AppCompatActivity {
         LayoutInflater inflater = getLayoutInflater();
         View dialogView = inflater.inflate(R.layout.dialog_log_medication, null);
 
-        Spinner medSpinner = dialogView.findViewById(R.id.medication_spinner);
+        AutoCompleteTextView medSearch = dialogView.findViewById(R.id.medication_search);
         Spinner doseSpinner = dialogView.findViewById(R.id.dose_spinner);
         Spinner reasonSpinner = dialogView.findViewById(R.id.reason_spinner);
 
-        // Populate medication spinner
-        List<String> medNames = medListRepository.getMedicationNames();
-        medNames.add(0, "-- Select Medication --");
-        ArrayAdapter<String> medAdapter = new ArrayAdapter<>(
-                this, android.R.layout.simple_spinner_item, medNames);
-        medAdapter.setDropDownViewResource(android.R.layout.simple_spinner_dropdown_item);
-        medSpinner.setAdapter(medAdapter);
+        // The medication picked from the suggestions, cleared again when the text is edited
+        MedicationInfo[] selected = new MedicationInfo[1];
+        clearDoseAndReason(doseSpinner, reasonSpinner);
 
-        // When medication is selected, update dose and reason spinners
-        medSpinner.setOnItemSelectedListener(new AdapterView.OnItemSelectedListener() {
+        medSearch.setAdapter(new MedicationSearchAdapter(this, medListRepository));
+        medSearch.addTextChangedListener(new TextWatcher() {
             @Override
-            public void onItemSelected(AdapterView<?> parent, View view, int position, long id) {
-                if (position == 0) {
-                    doseSpinner.setAdapter(new ArrayAdapter<>(
-                            MainActivity.this, android.R.layout.simple_spinner_item,
-                            new String[]{"-- Select Dose --"}));
-                    reasonSpinner.setAdapter(new ArrayAdapter<>(
-                            MainActivity.this, android.R.layout.simple_spinner_item,
-                            new String[]{"-- Select Reason --"}));
-                    return;
-                }
+            public void beforeTextChanged(CharSequence s, int start, int count, int after) { }
 
-                MedicationInfo med = medListRepository.findByDisplayName(medNames.get(position));
-                if (med == null) return;
+            @Override
+            public void onTextChanged(CharSequence s, int start, int before, int count) { }
 
-                // Populate dose spinner
-                List<String> doseOptions = new ArrayList<>();
-                doseOptions.add("-- Select Dose --");
-                for (Double d : med.getDoses()) {
-                    String formatted = (d == Math.floor(d)) ?
-                            String.valueOf(d.intValue()) : String.valueOf(d);
-                    doseOptions.add(formatted + " " + med.getDoseUnit());
-                }
-                ArrayAdapter<String> doseAdapter = new ArrayAdapter<>(
-                        MainActivity.this, android.R.layout.simple_spinner_item, doseOptions);
-                doseAdapter.setDropDownViewResource(android.R.layout.simple_spinner_dropdown_item);
-                doseSpinner.setAdapter(doseAdapter);
-
-                // Populate reason spinner
-                List<String> reasons = new ArrayList<>();
-                reasons.add("-- Select Reason --");
-                reasons.addAll(med.getAllReasons());
-                ArrayAdapter<String> reasonAdapter = new ArrayAdapter<>(
-                        MainActivity.this, android.R.layout.simple_spinner_item, reasons);
-                reasonAdapter.setDropDownViewResource(android.R.layout.simple_spinner_dropdown_item);
-                reasonSpinner.setAdapter(reasonAdapter);
+            @Override
+            public void afterTextChanged(Editable s) {
+                if (selected[0] == null) return;
+                selected[0] = null;
+                clearDoseAndReason(doseSpinner, reasonSpinner);
             }
+        });
 
-            @Override
-            public void onNothingSelected(AdapterView<?> parent) { }
+        // When a medication is picked, update dose and reason spinners
+        medSearch.setOnItemClickListener((parent, view, position, id) -> {
+            MedicationInfo med = medListRepository.findByDisplayName(
+                    (String) parent.getItemAtPosition(position));
+            selected[0] = med;
+            if (med == null) return;
+
+            // Populate dose spinner
+            List<String> doseOptions = new ArrayList<>();
+            doseOptions.add("-- Select Dose --");
+            for (Double d : med.getDoses()) {
+                String formatted = (d == Math.floor(d)) ?
+                        String.valueOf(d.intValue()) : String.valueOf(d);
+                doseOptions.add(formatted + " " + med.getDoseUnit());
+            }
+            ArrayAdapter<String> doseAdapter = new ArrayAdapter<>(
+                    MainActivity.this, android.R.layout.simple_spinner_item, doseOptions);
+            doseAdapter.setDropDownViewResource(android.R.layout.simple_spinner_dropdown_item);
+            doseSpinner.setAdapter(doseAdapter);
+
+            // Populate reason spinner
+            List<String> reasons = new ArrayList<>();
+            reasons.add("-- Select Reason --");
+            reasons.addAll(med.getAllReasons());
+            ArrayAdapter<String> reasonAdapter = new ArrayAdapter<>(
+                    MainActivity.this, android.R.layout.simple_spinner_item, reasons);
+            reasonAdapter.setDropDownViewResource(android.R.layout.simple_spinner_dropdown_item);
+            reasonSpinner.setAdapter(reasonAdapter);
         });
 
         builder.setView(dialogView)
@@ -122,11 +308,11 @@ public class MainActivity extends AppCompatActivity {
 
         // Override positive button to prevent auto-dismiss on validation failure
         dialog.getButton(AlertDialog.BUTTON_POSITIVE).setOnClickListener(v -> {
-            int medPos = medSpinner.getSelectedItemPosition();
+            MedicationInfo selectedMed = selected[0];
             int dosePos = doseSpinner.getSelectedItemPosition();
             int reasonPos = reasonSpinner.getSelectedItemPosition();
 
-            if (medPos == 0) {
+            if (selectedMed == null) {
                 Toast.makeText(this, "Please select a medication", Toast.LENGTH_SHORT).show();
                 return;
             }
@@ -139,28 +325,44 @@ public class MainActivity extends AppCompatActivity {
                 return;
             }
 
-            MedicationInfo selectedMed = medListRepository.findByDisplayName(
-                    medNames.get(medPos));
-            if (selectedMed == null) return;
-
             double selectedDose = selectedMed.getDoses().get(dosePos - 1);
             String selectedReason = selectedMed.getAllReasons().get(reasonPos - 1);
 
-            // Build recent logs for warning checks from local database
-            List<WarningChecker.RecentLog> recentLogs = buildRecentLogs();
-
-            List<String> warnings = WarningChecker.checkWarnings(
-                    selectedMed, selectedDose, recentLogs,
-                    medListRepository.getAllMedications());
-
-            if (!warnings.isEmpty()) {
-                showWarningDialog(selectedMed, selectedDose, selectedReason, warnings, dialog);
-            } else {
-                proceedWithLogging(selectedMed, selectedDose, selectedReason, dialog);
-            }
+            // Warning evaluation reads the local history, so run it off the UI thread
+            View logButton = dialog.getButton(AlertDialog.BUTTON_POSITIVE);
+            logButton.setEnabled(false);
+            repository.checkWarnings(selectedMed, selectedDose, medListRepository,
+                    new DrugLogRepository.Callback<List<String>>() {
+                        @Override
+                        public void onSuccess(List<String> warnings) {
+                            logButton.setEnabled(true);
+                            if (isDestroyed() || !dialog.isShowing()) return;
+                            if (!warnings.isEmpty()) {
+                                showWarningDialog(selectedMed, selectedDose, selectedReason,
+                                        warnings, dialog);
+                            } else {
+                                proceedWithLogging(selectedMed, selectedDose, selectedReason, dialog);
+                            }
+                        }
+
+                        @Override
+                        public void onError(String errorMessage) {
+                            logButton.setEnabled(true);
+                            Toast.makeText(MainActivity.this,
+                                    "Could not check warnings: " + errorMessage,
+                                    Toast.LENGTH_LONG).show();
+                        }
+                    });
         });
     }
 
+    private void clearDoseAndReason(Spinner doseSpinner, Spinner reasonSpinner) {
+        doseSpinner.setAdapter(new ArrayAdapter<>(
+                this, android.R.layout.simple_spinner_item, new String[]{"-- Select Dose --"}));
+        reasonSpinner.setAdapter(new ArrayAdapter<>(
+                this, android.R.layout.simple_spinner_item, new String[]{"-- Select Reason --"}));
+    }
+
     private void showWarningDialog(MedicationInfo med, double dose, String reason,
                                    List<String> warnings, AlertDialog parentDialog) {
         StringBuilder message = new StringBuilder();
@@ -182,88 +384,170 @@ public class MainActivity extends AppCompatActivity {
     private void proceedWithLogging(MedicationInfo med, double dose, String reason,
                                     AlertDialog parentDialog) {
         String medName = med.getSheetName();
-        String doseStr = ((dose == Math.floor(dose)) ?
-                String.valueOf((int) dose) : String.valueOf(dose)) + " " + med.getDoseUnit();
 
         // Save locally
-        DrugEntry entry = new DrugEntry(med.getGenericName(), doseStr, reason);
-        long id = database.addEntry(entry);
-        entry.setId(id);
-        loadEntries();
-
-        // Log to Google Sheets
-        sheetsLogger.logMedication(medName, dose, reason,
-                new GoogleSheetsLogger.LogCallback() {
+        DrugEntry entry = new DrugEntry(med.getGenericName(), dose, med.getDoseUnit(), null);
+        entry.setReason(reason);
+        entry.setMedId(medListRepository.findIdBySheetName(med.getSheetName()));
+        repository.addEntry(entry, new DrugLogRepository.Callback<DrugEntry>() {
+            @Override
+            public void onSuccess(DrugEntry saved) {
+                // A new dose is always the newest entry, so it goes on top, unless
+                // the top was dropped; then it loads when the user scrolls back up
+                if (!hasNewerPages && loadedIds.add(saved.getId())) {
+                    entries.add(0, saved);
+                    trimLoadedEntries(false);
+                    adapter.updateEntries(new ArrayList<>(entries));
+                }
+            }
+
+            @Override
+            public void onError(String errorMessage) {
+                Toast.makeText(MainActivity.this,
+                        "Could not save entry: " + errorMessage, Toast.LENGTH_LONG).show();
+            }
+        });
+
+        // Queue for Google Sheets; the outbox retries until the sheet has it
+        sheetsOutbox.enqueue(medName, dose, reason, entry.getTimestamp());
+
+        Toast.makeText(this, "Medication logged", Toast.LENGTH_SHORT).show();
+        parentDialog.dismiss();
+    }
+
+    private void deleteEntry(DrugEntry entry) {
+        new AlertDialog.Builder(this)
+                .setTitle("Delete Entry")
+                .setMessage("Are you sure you want to delete this entry?")
+                .setPositiveButton("Delete", (dialog, which) ->
+                        repository.deleteEntry(entry, new DrugLogRepository.Callback<Void>() {
+                            @Override
+                            public void onSuccess(Void result) {
+                                removeLoadedEntry(entry.getId());
+                                Toast.makeText(MainActivity.this,
+                                        "Entry deleted", Toast.LENGTH_SHORT).show();
+                            }
+
+                            @Override
+                            public void onError(String errorMessage) {
+                                Toast.makeText(MainActivity.this,
+                                        "Could not delete entry: " + errorMessage,
+                                        Toast.LENGTH_LONG).show();
+                            }
+                        }))
+                .setNegativeButton("Cancel", null)
+                .show();
+    }
+
+    /**
+     * Fetches the page after the last loaded entry. At most
+     * {@link #MAX_LOADED_ENTRIES} are held, so memory, and the copy and diff of
+     * the list on every update, stay bounded however long the log is.
+     */
+    private void loadNextPage() {
+        if (loadingPage || !hasMorePages) return;
+        loadingPage = true;
+
+        DrugEntry last = entries.isEmpty() ? null : entries.get(entries.size() - 1);
+        repository.loadPage(last, PAGE_SIZE, new DrugLogRepository.Callback<List<DrugEntry>>() {
+            @Override
+            public void onSuccess(List<DrugEntry> page) {
+                loadingPage = false;
+                hasMorePages = page.size() == PAGE_SIZE;
+                // An empty list loads from the top of the log
+                if (last == null) hasNewerPages = false;
+                for (DrugEntry e : page) {
+                    if (loadedIds.add(e.getId())) {
+                        entries.add(e);
+                    }
+                }
+                trimLoadedEntries(true);
+                adapter.updateEntries(new ArrayList<>(entries));
+                firstPageShown.open();
+            }
+
+            @Override
+            public void onError(String errorMessage) {
+                loadingPage = false;
+                firstPageShown.open();
+                Toast.makeText(MainActivity.this,
+                        "Could not load entries: " + errorMessage, Toast.LENGTH_LONG).show();
+            }
+        });
+    }
+
+    /** Fetches the page before the first loaded entry, which was dropped earlier. */
+    private void loadNewerPage() {
+        if (loadingPage || !hasNewerPages || entries.isEmpty()) return;
+        loadingPage = true;
+
+        repository.loadNewerPage(entries.get(0), PAGE_SIZE,
+                new DrugLogRepository.Callback<List<DrugEntry>>() {
                     @Override
-                    public void onSuccess() {
-                        Toast.makeText(MainActivity.this,
-                                "Logged to Google Sheets", Toast.LENGTH_SHORT).show();
+                    public void onSuccess(List<DrugEntry> page) {
+                        loadingPage = false;
+                        hasNewerPages = page.size() == PAGE_SIZE;
+                        List<DrugEntry> newer = new ArrayList<>(page.size());
+                        for (DrugEntry e : page) {
+                            if (loadedIds.add(e.getId())) {
+                                newer.add(e);
+                            }
+                        }
+                        entries.addAll(0, newer);
+                        trimLoadedEntries(false);
+                        adapter.updateEntries(new ArrayList<>(entries));
                     }
 
                     @Override
                     public void onError(String errorMessage) {
+                        loadingPage = false;
                         Toast.makeText(MainActivity.this,
-                                "Saved locally. Sheets sync failed: " + errorMessage,
+                                "Could not load entries: " + errorMessage,
                                 Toast.LENGTH_LONG).show();
                     }
                 });
-
-        Toast.makeText(this, "Medication logged", Toast.LENGTH_SHORT).show();
-        parentDialog.dismiss();
     }
 
     /**
-     * Build recent logs from the local database for warning checks.
+     * Drops the entries beyond {@link #MAX_LOADED_ENTRIES}, from the newest end
+     * when {@code dropNewest}, else from the oldest, and notes that end can be
+     * loaded again.
      */
-    private List<WarningChecker.RecentLog> buildRecentLogs() {
-        List<WarningChecker.RecentLog> recentLogs = new ArrayList<>();
-        List<DrugEntry> allEntries = database.getAllEntries();
-        for (DrugEntry e : allEntries) {
-            double dose = parseDoseFromString(e.getDosage());
-            recentLogs.add(new WarningChecker.RecentLog(
-                    e.getDrugName(), dose, e.getTimestamp()));
+    private void trimLoadedEntries(boolean dropNewest) {
+        int excess = entries.size() - MAX_LOADED_ENTRIES;
+        if (excess <= 0) return;
+        List<DrugEntry> dropped = dropNewest
+                ? entries.subList(0, excess)
+                : entries.subList(entries.size() - excess, entries.size());
+        for (DrugEntry e : dropped) {
+            loadedIds.remove(e.getId());
+        }
+        dropped.clear();
+        if (dropNewest) {
+            hasNewerPages = true;
+        } else {
+            hasMorePages = true;
         }
-        return recentLogs;
     }
 
-    /** Parse numeric dose from a string like "50 mg" -> 50.0 */
-    private double parseDoseFromString(String doseStr) {
-        if (doseStr == null || doseStr.isEmpty()) return 0;
-        try {
-            java.util.regex.Matcher m = java.util.regex.Pattern.compile("(\\d+(?:\\.\\d+)?)")
-                    .matcher(doseStr);
-            if (m.find()) {
-                return Double.parseDouble(m.group(1));
+    private void removeLoadedEntry(long id) {
+        if (!loadedIds.remove(id)) return;
+        for (Iterator<DrugEntry> it = entries.iterator(); it.hasNext(); ) {
+            if (it.next().getId() == id) {
+                it.remove();
+                break;
             }
-            return 0;
-        } catch (NumberFormatException e) {
-            return 0;
         }
-    }
-
-    private void deleteEntry(DrugEntry entry) {
-        new AlertDialog.Builder(this)
-                .setTitle("Delete Entry")
-                .setMessage("Are you sure you want to delete this entry?")
-                .setPositiveButton("Delete", (dialog, which) -> {
-                    database.deleteEntry(entry.getId());
-                    loadEntries();
-                    Toast.makeText(this, "Entry deleted", Toast.LENGTH_SHORT).show();
-                })
-                .setNegativeButton("Cancel", null)
-                .show();
-    }
-
-    private void loadEntries() {
-        entries = database.getAllEntries();
-        adapter.updateEntries(entries);
+        adapter.updateEntries(new ArrayList<>(entries));
     }
 
     @Override
     protected void onDestroy() {
         super.onDestroy();
-        if (database != null) {
-            database.close();
-        }
+        unregisterReceiver(dateFormatReceiver);
+        repository.shutdown();
+        // Not started if the activity was closed before its first frame
+        if (sheetsOutbox != null) sheetsOutbox.removeListener(sheetsListener);
+        if (remoteLogSync != null) remoteLogSync.stop();
     }
 }
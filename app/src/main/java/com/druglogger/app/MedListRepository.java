@@ -1,78 +1,202 @@
 package com.druglogger.app;
 
 import android.content.Context;
+import android.content.res.AssetFileDescriptor;
+import android.util.Log;
 
-import org.json.JSONArray;
-import org.json.JSONObject;
-
+import java.io.ByteArrayOutputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
 import java.io.InputStream;
-import java.nio.charset.StandardCharsets;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.List;
 
 /**
  * Loads and provides access to medication data from medlist.json in assets.
+ *
+ * The catalog is opened on first use rather than in the constructor. The
+ * precompiled binary catalog is preferred. If it is missing or unreadable,
+ * medlist.json is streamed instead, indexing only the names up front and
+ * parsing the rest of a medication when it is first selected.
+ *
+ * Name lookups and type-ahead search go through a {@link MedicationIndex}
+ * built from the catalog's names when it is opened. The
+ * {@link InteractionGraph} is built from the names and interaction lists
+ * alone, so only medications the user selects are ever fully read.
  */
 public class MedListRepository {
 
-    private final List<MedicationInfo> medications;
+    private static final String TAG = "MedListRepository";
+    private static final String JSON_ASSET = "medlist.json";
+
+    private static final Metrics.Timer LOAD_TIMER = Metrics.timer("medlist.load");
+    private static final Metrics.Timer GRAPH_TIMER = Metrics.timer("medlist.buildInteractionGraph");
+
+    private final Context context;
+    private MedicationCatalog catalog;
+    private MedicationIndex index;
+    private InteractionGraph interactionGraph;
+    /** Positions of medications handed out before the graph was built. */
+    private final BitSet handedOut = new BitSet();
+    private String catalogFingerprint;
 
     public MedListRepository(Context context) {
-        medications = new ArrayList<>();
-        try {
-            InputStream is = context.getAssets().open("medlist.json");
-            byte[] buffer = new byte[is.available()];
-            is.read(buffer);
-            is.close();
-            String json = new String(buffer, StandardCharsets.UTF_8);
-
-            JSONObject root = new JSONObject(json);
-            JSONArray medsArray = root.getJSONArray("medications");
-            for (int i = 0; i < medsArray.length(); i++) {
-                medications.add(MedicationInfo.fromJson(medsArray.getJSONObject(i)));
+        this.context = context.getApplicationContext();
+    }
+
+    private synchronized MedicationCatalog catalog() {
+        if (catalog == null) {
+            long started = LOAD_TIMER.start();
+            try {
+                catalog = openCatalog();
+                index = new MedicationIndex(catalog);
+            } finally {
+                LOAD_TIMER.stop(started);
             }
+        }
+        return catalog;
+    }
+
+    private synchronized MedicationIndex index() {
+        catalog();
+        return index;
+    }
+
+    private MedicationCatalog openCatalog() {
+        try {
+            return new BinaryMedicationCatalog(mapAsset(BinaryMedicationCatalog.ASSET_NAME));
+        } catch (IOException e) {
+            Log.w(TAG, "Binary catalog unavailable, falling back to " + JSON_ASSET, e);
+        }
+        try {
+            return StreamingJsonCatalog.index(() -> context.getAssets().open(JSON_ASSET));
         } catch (Exception e) {
-            e.printStackTrace();
+            Log.e(TAG, "Could not load " + JSON_ASSET, e);
+            return new ListMedicationCatalog(new ArrayList<>());
         }
     }
 
-    public List<MedicationInfo> getAllMedications() {
-        return medications;
+    /**
+     * Memory-maps an asset when it is stored uncompressed, otherwise reads it
+     * into a heap buffer.
+     */
+    private ByteBuffer mapAsset(String name) throws IOException {
+        try (AssetFileDescriptor fd = context.getAssets().openFd(name);
+             FileInputStream in = fd.createInputStream();
+             FileChannel channel = in.getChannel()) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, fd.getStartOffset(), fd.getLength());
+        } catch (IOException e) {
+            // Compressed assets cannot be opened as a file descriptor
+        }
+        try (InputStream in = context.getAssets().open(name)) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            return ByteBuffer.wrap(out.toByteArray());
+        }
     }
 
-    /** Returns medication names suitable for display in a spinner. */
+    /**
+     * Builds the catalog's {@link InteractionGraph} on first call and attaches
+     * it to every medication handed out, before and after, so their warning
+     * checks go through it.
+     */
+    public synchronized void loadInteractionGraph() {
+        if (interactionGraph != null) return;
+        MedicationCatalog meds = catalog();
+        long started = GRAPH_TIMER.start();
+        try {
+            interactionGraph = InteractionGraph.build(meds);
+        } finally {
+            GRAPH_TIMER.stop(started);
+        }
+        for (String problem : interactionGraph.getDiagnostics()) {
+            Log.w(TAG, problem);
+        }
+        for (int id = handedOut.nextSetBit(0); id >= 0; id = handedOut.nextSetBit(id + 1)) {
+            interactionGraph.attach(meds.get(id), id);
+        }
+        handedOut.clear();
+    }
+
+    /** Returns medication names suitable for display, in catalog order. */
     public List<String> getMedicationNames() {
-        List<String> names = new ArrayList<>();
-        for (MedicationInfo med : medications) {
-            names.add(med.getDisplayName());
+        MedicationIndex names = index();
+        List<String> list = new ArrayList<>(names.size());
+        for (int i = 0; i < names.size(); i++) {
+            list.add(names.getDisplayName(i));
         }
-        return names;
+        return list;
+    }
+
+    /**
+     * Returns the display names of up to {@code limit} medications matching
+     * typed text, best matches first. Safe to call off the main thread.
+     */
+    public List<String> search(String query, int limit) {
+        MedicationIndex names = index();
+        List<Integer> matches = names.search(query, limit);
+        List<String> results = new ArrayList<>(matches.size());
+        for (int i = 0; i < matches.size(); i++) {
+            results.add(names.getDisplayName(matches.get(i)));
+        }
+        return results;
     }
 
     /** Find a MedicationInfo by its display name. */
     public MedicationInfo findByDisplayName(String displayName) {
-        for (MedicationInfo med : medications) {
-            if (med.getDisplayName().equals(displayName)) {
-                return med;
-            }
-        }
-        return null;
+        return medicationAt(index().findByDisplayName(displayName));
     }
 
     /** Find a MedicationInfo by its generic name (case-insensitive partial match). */
     public MedicationInfo findByGenericName(String genericName) {
-        for (MedicationInfo med : medications) {
-            if (med.getGenericName().equalsIgnoreCase(genericName)) {
-                return med;
+        return medicationAt(index().findByGenericName(genericName));
+    }
+
+    /**
+     * Returns the catalog position of the medication a Google Sheets row
+     * names, or -1. Positions are stable for one catalog version.
+     */
+    public int findIdBySheetName(String sheetName) {
+        return index().findBySheetName(sheetName);
+    }
+
+    /** Returns the generic name of the medication at a catalog position. */
+    public String getGenericName(int id) {
+        return catalog().getGenericName(id);
+    }
+
+    /**
+     * Returns a fingerprint of the catalog's positions. Medication ids stored
+     * with entries are positions, so they must be resolved again when it changes.
+     */
+    public synchronized String getCatalogFingerprint() {
+        if (catalogFingerprint == null) {
+            MedicationCatalog meds = catalog();
+            long hash = meds.size();
+            for (int i = 0; i < meds.size(); i++) {
+                String name = meds.getGenericName(i);
+                hash = hash * 31 + (name == null ? 0 : name.hashCode());
             }
+            catalogFingerprint = meds.size() + ":" + Long.toHexString(hash);
         }
-        // Try partial match
-        String lower = genericName.toLowerCase();
-        for (MedicationInfo med : medications) {
-            if (med.getGenericName().toLowerCase().contains(lower)) {
-                return med;
-            }
+        return catalogFingerprint;
+    }
+
+    private synchronized MedicationInfo medicationAt(int position) {
+        if (position < 0) return null;
+        MedicationInfo medication = catalog().get(position);
+        if (interactionGraph != null) {
+            interactionGraph.attach(medication, position);
+        } else {
+            handedOut.set(position);
         }
-        return null;
+        return medication;
     }
 }
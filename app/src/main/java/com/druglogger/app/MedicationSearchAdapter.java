@@ -0,0 +1,84 @@
+package com.druglogger.app;
+
+import android.content.Context;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.BaseAdapter;
+import android.widget.Filter;
+import android.widget.Filterable;
+import android.widget.TextView;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Type-ahead suggestions for the medication field. Filtering runs on the
+ * widget's background thread and asks {@link MedListRepository#search} for
+ * ranked matches, instead of the per-keystroke scan an ArrayAdapter does.
+ */
+public class MedicationSearchAdapter extends BaseAdapter implements Filterable {
+
+    private static final int MAX_SUGGESTIONS = 20;
+
+    private final LayoutInflater inflater;
+    private final MedListRepository medListRepository;
+    private List<String> suggestions = new ArrayList<>();
+
+    public MedicationSearchAdapter(Context context, MedListRepository medListRepository) {
+        this.inflater = LayoutInflater.from(context);
+        this.medListRepository = medListRepository;
+    }
+
+    @Override
+    public int getCount() {
+        return suggestions.size();
+    }
+
+    @Override
+    public String getItem(int position) {
+        return suggestions.get(position);
+    }
+
+    @Override
+    public long getItemId(int position) {
+        return position;
+    }
+
+    @Override
+    public View getView(int position, View convertView, ViewGroup parent) {
+        TextView view = (TextView) (convertView != null ? convertView
+                : inflater.inflate(android.R.layout.simple_dropdown_item_1line, parent, false));
+        view.setText(suggestions.get(position));
+        return view;
+    }
+
+    @Override
+    public Filter getFilter() {
+        return filter;
+    }
+
+    private final Filter filter = new Filter() {
+        @Override
+        protected FilterResults performFiltering(CharSequence constraint) {
+            FilterResults results = new FilterResults();
+            List<String> matches = constraint == null ? new ArrayList<>()
+                    : medListRepository.search(constraint.toString(), MAX_SUGGESTIONS);
+            results.values = matches;
+            results.count = matches.size();
+            return results;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        protected void publishResults(CharSequence constraint, FilterResults results) {
+            suggestions = results.values != null
+                    ? (List<String>) results.values : new ArrayList<>();
+            if (results.count > 0) {
+                notifyDataSetChanged();
+            } else {
+                notifyDataSetInvalidated();
+            }
+        }
+    };
+}
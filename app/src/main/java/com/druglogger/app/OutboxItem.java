@@ -0,0 +1,69 @@
+package com.druglogger.app;
+
+import java.util.UUID;
+
+/**
+ * A dose waiting in the outbox to be sent to the Google Sheet.
+ *
+ * The idempotency key is created once when the dose is queued and sent with
+ * every attempt, so the sheet can drop a row it already stored when a batch
+ * is retried after its response was lost.
+ */
+public class OutboxItem {
+    private long id;
+    private final String idempotencyKey;
+    private final String medicationName;
+    private final double dose;
+    private final String reason;
+    private final long timestamp;
+    private final int attempts;
+
+    public OutboxItem(long id, String idempotencyKey, String medicationName, double dose,
+                      String reason, long timestamp, int attempts) {
+        this.id = id;
+        this.idempotencyKey = idempotencyKey;
+        this.medicationName = medicationName;
+        this.dose = dose;
+        this.reason = reason;
+        this.timestamp = timestamp;
+        this.attempts = attempts;
+    }
+
+    /** Creates a new item with a fresh idempotency key. */
+    public OutboxItem(String medicationName, double dose, String reason, long timestamp) {
+        this(0, UUID.randomUUID().toString(), medicationName, dose, reason, timestamp, 0);
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public void setId(long id) {
+        this.id = id;
+    }
+
+    public String getIdempotencyKey() {
+        return idempotencyKey;
+    }
+
+    public String getMedicationName() {
+        return medicationName;
+    }
+
+    public double getDose() {
+        return dose;
+    }
+
+    public String getReason() {
+        return reason;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    /** Number of failed attempts to send this item so far. */
+    public int getAttempts() {
+        return attempts;
+    }
+}
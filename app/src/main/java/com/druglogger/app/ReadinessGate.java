@@ -0,0 +1,36 @@
+package com.druglogger.app;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A startup stage other work can wait for. Actions passed to
+ * {@link #whenOpen} before the stage is done are held and run, in order,
+ * when it opens; later ones run at once. Main thread only.
+ */
+final class ReadinessGate {
+
+    private List<Runnable> waiting = new ArrayList<>();
+
+    boolean isOpen() {
+        return waiting == null;
+    }
+
+    void whenOpen(Runnable action) {
+        if (waiting == null) {
+            action.run();
+        } else {
+            waiting.add(action);
+        }
+    }
+
+    /** Opens the gate and runs the waiting actions. Opening it again does nothing. */
+    void open() {
+        if (waiting == null) return;
+        List<Runnable> actions = waiting;
+        waiting = null;
+        for (Runnable action : actions) {
+            action.run();
+        }
+    }
+}
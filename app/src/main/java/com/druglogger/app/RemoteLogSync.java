@@ -0,0 +1,134 @@
+package com.druglogger.app;
+
+import android.util.Log;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the local copy of the Google Sheet in {@link DrugLogDatabase} current.
+ *
+ * Each sync asks the web app only for the rows after the stored cursor and
+ * appends them. When the web app cannot serve a delta (no cursor yet, an
+ * unknown cursor after rows were deleted, or a web app without delta
+ * support) it sends the whole sheet, which replaces the local copy. A failed
+ * request leaves both the rows and the cursor as they were. Rows are stored
+ * with their medication resolved to the catalog; their timestamps were
+ * already parsed when the response was read.
+ *
+ * After every change the mirror's recent doses are handed to the dose ledger,
+ * so doses logged on other devices count in the safety warnings without a
+ * request on the logging path. Between {@link #start} and {@link #stop} the
+ * mirror is refreshed in the background every {@link #REFRESH_INTERVAL_MILLIS}.
+ *
+ * {@link #sync} and {@link #fullResync} run on the calling thread and must
+ * not be called on the main thread.
+ */
+public class RemoteLogSync {
+
+    private static final String TAG = "RemoteLogSync";
+
+    static final long REFRESH_INTERVAL_MILLIS = 15 * 60_000L;
+
+    private final DrugLogDatabase database;
+    private final GoogleSheetsLogger sheetsLogger;
+    private final MedListRepository medications;
+    private final ScheduledExecutorService executor;
+
+    public RemoteLogSync(DrugLogDatabase database, GoogleSheetsLogger sheetsLogger,
+                         MedListRepository medications) {
+        this(database, sheetsLogger, medications, Executors.newSingleThreadScheduledExecutor());
+    }
+
+    /**
+     * @param medications Resolves sheet names to catalog medications
+     * @param executor    Runs the background refreshes
+     */
+    public RemoteLogSync(DrugLogDatabase database, GoogleSheetsLogger sheetsLogger,
+                         MedListRepository medications, ScheduledExecutorService executor) {
+        this.database = database;
+        this.sheetsLogger = sheetsLogger;
+        this.medications = medications;
+        this.executor = executor;
+    }
+
+    /** Refreshes the mirror now and then every {@link #REFRESH_INTERVAL_MILLIS}. */
+    public void start() {
+        try {
+            executor.scheduleWithFixedDelay(this::refresh, 0, REFRESH_INTERVAL_MILLIS,
+                    TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // Already stopped
+        }
+    }
+
+    /** Stops the background refreshes. One that is running finishes. */
+    public void stop() {
+        executor.shutdown();
+    }
+
+    private void refresh() {
+        try {
+            sync();
+        } catch (Exception e) {
+            // Warnings keep using the mirror as it is; the next refresh retries
+            Log.w(TAG, "Could not refresh sheet rows: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Fetches the rows added since the last sync and merges them.
+     *
+     * @return the number of rows added to the local copy
+     * @throws IOException if the request fails; nothing is changed locally
+     */
+    public synchronized int sync() throws IOException {
+        return merge(sheetsLogger.fetchLogsSince(database.getRemoteLogsCursor()));
+    }
+
+    /**
+     * Fetches the whole sheet and replaces the local copy, e.g. after rows
+     * were edited in the sheet, which a delta does not pick up.
+     */
+    public synchronized int fullResync() throws IOException {
+        return merge(sheetsLogger.fetchLogsSince(null));
+    }
+
+    private int merge(GoogleSheetsLogger.LogsPage page) {
+        List<GoogleSheetsLogger.LogEntry> logs = resolveMedications(page.logs);
+        int added = page.complete
+                ? database.replaceRemoteLogs(logs, page.cursor)
+                : database.appendRemoteLogs(logs, page.cursor);
+        if (page.complete || added > 0) {
+            database.reloadRemoteDoses();
+        }
+        return added;
+    }
+
+    /**
+     * Maps each row's sheet name to its catalog medication, so the mirror
+     * stores the same generic name as local entries. Each distinct name is
+     * looked up once.
+     */
+    private List<GoogleSheetsLogger.LogEntry> resolveMedications(
+            List<GoogleSheetsLogger.LogEntry> logs) {
+        Map<String, Integer> ids = new HashMap<>();
+        List<GoogleSheetsLogger.LogEntry> resolved = new ArrayList<>(logs.size());
+        for (GoogleSheetsLogger.LogEntry log : logs) {
+            Integer id = ids.get(log.medicationName);
+            if (id == null) {
+                id = medications.findIdBySheetName(log.medicationName);
+                ids.put(log.medicationName, id);
+            }
+            resolved.add(id < 0 ? log : log.withMedication(id, medications.getGenericName(id)));
+        }
+        return resolved;
+    }
+}
@@ -0,0 +1,280 @@
+package com.druglogger.app;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * HTTP transport for {@link GoogleSheetsLogger}.
+ *
+ * Connections are left to the platform's keep-alive pool: every response body
+ * is read to the end and closed, and connections are never disconnected, so
+ * the script host and the host it redirects to each cost one TLS handshake
+ * rather than one per request. Redirects are followed here rather than by
+ * HttpURLConnection so that a permanent redirect of the script URL is
+ * remembered and later requests go straight to its target. If that target
+ * later answers with an error status, it is forgotten and the request is
+ * retried once from the configured script URL.
+ *
+ * Responses are requested gzip-compressed and handed to the caller as a
+ * stream, so a large body is never held as one string.
+ *
+ * Each request is timed in {@link Metrics} by phase: connecting, which runs
+ * from opening the connection to the response status and so includes the
+ * handshake and the server's own time, every hop that ends in a redirect,
+ * and the response. While recording, the response time is split into the
+ * time spent waiting for bytes from the network and the rest, which is
+ * decompressing and parsing.
+ */
+final class SheetsHttpClient {
+
+    static final int DEFAULT_CONNECT_TIMEOUT_MILLIS = 15_000;
+    static final int DEFAULT_READ_TIMEOUT_MILLIS = 30_000;
+
+    private static final int MAX_REDIRECTS = 5;
+    /** Request bodies smaller than this are sent as they are even when compression is on. */
+    private static final int GZIP_MIN_BYTES = 1024;
+    private static final int HTTP_TEMPORARY_REDIRECT = 307;
+    private static final int HTTP_PERMANENT_REDIRECT = 308;
+
+    private static final Metrics.Timer CONNECT_TIMER = Metrics.timer("sheets.connect");
+    private static final Metrics.Timer REDIRECT_TIMER = Metrics.timer("sheets.redirect");
+    private static final Metrics.Timer RESPONSE_TIMER = Metrics.timer("sheets.response");
+    private static final Metrics.Timer READ_TIMER = Metrics.timer("sheets.read");
+    private static final Metrics.Timer PARSE_TIMER = Metrics.timer("sheets.parse");
+    private static final Metrics.Counter HTTP_ERRORS = Metrics.counter("sheets.httpErrors");
+
+    /** Reads a response body. The reader is closed by the caller. */
+    interface ResponseReader<T> {
+        T read(Reader body) throws IOException;
+    }
+
+    /** The server answered with a 4xx or 5xx status. */
+    private static final class HttpStatusException extends IOException {
+        HttpStatusException(int status, String host) {
+            super("HTTP " + status + " from " + host);
+        }
+    }
+
+    private final String scriptUrl;
+    private volatile String resolvedScriptUrl;
+    private volatile int connectTimeoutMillis = DEFAULT_CONNECT_TIMEOUT_MILLIS;
+    private volatile int readTimeoutMillis = DEFAULT_READ_TIMEOUT_MILLIS;
+    private volatile boolean compressRequests;
+
+    SheetsHttpClient(String scriptUrl) {
+        this.scriptUrl = scriptUrl;
+        this.resolvedScriptUrl = scriptUrl;
+    }
+
+    void setTimeouts(int connectTimeoutMillis, int readTimeoutMillis) {
+        this.connectTimeoutMillis = connectTimeoutMillis;
+        this.readTimeoutMillis = readTimeoutMillis;
+    }
+
+    /**
+     * Gzips request bodies of at least {@link #GZIP_MIN_BYTES}. Off by default:
+     * Apps Script hands the raw request bytes to the script, so only enable it
+     * for a backend that decodes Content-Encoding itself.
+     */
+    void setCompressRequests(boolean compressRequests) {
+        this.compressRequests = compressRequests;
+    }
+
+    <T> T post(String json, ResponseReader<T> reader) throws IOException {
+        return execute("", json.getBytes(StandardCharsets.UTF_8), reader);
+    }
+
+    <T> T get(String queryString, ResponseReader<T> reader) throws IOException {
+        return execute(queryString, null, reader);
+    }
+
+    private <T> T execute(String queryString, byte[] body, ResponseReader<T> reader)
+            throws IOException {
+        String base = resolvedScriptUrl;
+        try {
+            return execute(base, queryString, body, reader);
+        } catch (HttpStatusException e) {
+            if (base.equals(scriptUrl)) throw e;
+            // The remembered target may have moved on; start again from the script URL
+            resolvedScriptUrl = scriptUrl;
+            return execute(scriptUrl, queryString, body, reader);
+        }
+    }
+
+    private <T> T execute(String base, String queryString, byte[] body,
+                          ResponseReader<T> reader) throws IOException {
+        URL url = new URL(base + queryString);
+        for (int hop = 0; ; hop++) {
+            long hopStarted = CONNECT_TIMER.start();
+            HttpURLConnection conn;
+            int status;
+            try {
+                conn = open(url);
+                if (body != null) {
+                    writeBody(conn, body);
+                } else {
+                    conn.setRequestMethod("GET");
+                }
+                status = conn.getResponseCode();
+            } finally {
+                CONNECT_TIMER.stop(hopStarted);
+            }
+            if (!isRedirect(status)) {
+                if (status >= 400) {
+                    HTTP_ERRORS.increment();
+                    discard(conn.getErrorStream());
+                    throw new HttpStatusException(status, url.getHost());
+                }
+                return readResponse(conn, reader);
+            }
+
+            String location = conn.getHeaderField("Location");
+            discard(responseStreamOrNull(conn));
+            REDIRECT_TIMER.recordSince(hopStarted);
+            if (location == null) throw new IOException("Redirect without a Location header");
+            if (hop == MAX_REDIRECTS) throw new IOException("Too many redirects");
+            URL next = new URL(url, location);
+
+            boolean permanent = status == HttpURLConnection.HTTP_MOVED_PERM
+                    || status == HTTP_PERMANENT_REDIRECT;
+            if (permanent && hop == 0 && queryString.isEmpty()) {
+                resolvedScriptUrl = next.toString();
+            }
+            // Apps Script answers a POST with a 302 to the result, which is fetched with GET
+            if (status != HTTP_TEMPORARY_REDIRECT && status != HTTP_PERMANENT_REDIRECT) {
+                body = null;
+            }
+            url = next;
+        }
+    }
+
+    private static <T> T readResponse(HttpURLConnection conn, ResponseReader<T> reader)
+            throws IOException {
+        InputStream stream = conn.getInputStream();
+        long started = RESPONSE_TIMER.start();
+        TimedInputStream timed = null;
+        if (started != Metrics.NOT_STARTED) {
+            stream = timed = new TimedInputStream(stream);
+        }
+        try (Reader in = new InputStreamReader(decode(conn, stream), StandardCharsets.UTF_8)) {
+            return reader.read(in);
+        } finally {
+            long elapsed = RESPONSE_TIMER.stop(started);
+            if (timed != null) {
+                READ_TIMER.record(timed.readNanos);
+                PARSE_TIMER.record(elapsed - timed.readNanos);
+            }
+        }
+    }
+
+    private HttpURLConnection open(URL url) throws IOException {
+        HttpURLConnection conn = (HttpURLConnection) url.openConnection();
+        conn.setInstanceFollowRedirects(false);
+        conn.setConnectTimeout(connectTimeoutMillis);
+        conn.setReadTimeout(readTimeoutMillis);
+        // Set explicitly, so the body is decoded below on every platform
+        conn.setRequestProperty("Accept-Encoding", "gzip");
+        return conn;
+    }
+
+    private void writeBody(HttpURLConnection conn, byte[] body) throws IOException {
+        conn.setRequestMethod("POST");
+        conn.setRequestProperty("Content-Type", "application/json; charset=UTF-8");
+        if (compressRequests && body.length >= GZIP_MIN_BYTES) {
+            body = gzip(body);
+            conn.setRequestProperty("Content-Encoding", "gzip");
+        }
+        // Bodies are at most one outbox batch, so they are left buffered and go
+        // out together with the headers
+        conn.setDoOutput(true);
+        try (OutputStream os = conn.getOutputStream()) {
+            os.write(body);
+        }
+    }
+
+    private static boolean isRedirect(int status) {
+        return status == HttpURLConnection.HTTP_MOVED_PERM
+                || status == HttpURLConnection.HTTP_MOVED_TEMP
+                || status == HttpURLConnection.HTTP_SEE_OTHER
+                || status == HTTP_TEMPORARY_REDIRECT
+                || status == HTTP_PERMANENT_REDIRECT;
+    }
+
+    private static InputStream decode(HttpURLConnection conn, InputStream in) throws IOException {
+        return "gzip".equalsIgnoreCase(conn.getContentEncoding()) ? new GZIPInputStream(in) : in;
+    }
+
+    private static InputStream responseStreamOrNull(HttpURLConnection conn) {
+        try {
+            return conn.getInputStream();
+        } catch (IOException e) {
+            return conn.getErrorStream();
+        }
+    }
+
+    /** Reads a body to the end and closes it, which returns the connection to the pool. */
+    private static void discard(InputStream in) {
+        if (in == null) return;
+        byte[] buffer = new byte[4096];
+        try {
+            while (in.read(buffer) != -1) {
+                // Drain
+            }
+        } catch (IOException e) {
+            // The connection is not reusable, which only costs a new handshake
+        } finally {
+            try {
+                in.close();
+            } catch (IOException e) {
+                // Ignored, as above
+            }
+        }
+    }
+
+    /** Adds up the time spent blocked in reads of the raw response. */
+    private static final class TimedInputStream extends FilterInputStream {
+        long readNanos;
+
+        TimedInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            long started = System.nanoTime();
+            try {
+                return super.read();
+            } finally {
+                readNanos += System.nanoTime() - started;
+            }
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            long started = System.nanoTime();
+            try {
+                return super.read(buffer, offset, length);
+            } finally {
+                readNanos += System.nanoTime() - started;
+            }
+        }
+    }
+
+    private static byte[] gzip(byte[] body) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(body.length / 2);
+        try (GZIPOutputStream gz = new GZIPOutputStream(out)) {
+            gz.write(body);
+        }
+        return out.toByteArray();
+    }
+}
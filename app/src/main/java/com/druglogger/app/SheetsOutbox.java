@@ -0,0 +1,242 @@
+package com.druglogger.app;
+
+import android.content.Context;
+import android.net.ConnectivityManager;
+import android.net.Network;
+import android.net.NetworkCapabilities;
+import android.net.NetworkRequest;
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Delivers logged doses to the Google Sheet through the outbox table in
+ * {@link DrugLogDatabase}.
+ *
+ * A dose is written to the outbox first and sent afterwards, so it reaches
+ * the sheet eventually even if the app is offline or killed in between.
+ * Queued doses go out in batches of up to {@link #BATCH_SIZE} rows per
+ * request. After a failed batch the whole outbox waits, doubling the delay
+ * with every consecutive failure up to {@link #MAX_BACKOFF_MILLIS}. When a
+ * network becomes available the wait is dropped and the outbox is flushed
+ * straight away.
+ *
+ * The app uses one outbox for the lifetime of the process, from
+ * {@link #getInstance}, so a retry scheduled for later is not tied to an
+ * Activity. All outbox work runs on one background thread; listener calls
+ * are posted to the main thread.
+ */
+public class SheetsOutbox {
+
+    static final int BATCH_SIZE = 50;
+    static final long INITIAL_BACKOFF_MILLIS = 5_000L;
+    static final long MAX_BACKOFF_MILLIS = 3600_000L;
+
+    public interface Listener {
+        /** Called after a flush delivered {@code count} doses. */
+        void onSynced(int count);
+
+        /**
+         * Called when sending fails after a success or on the first attempt,
+         * not on every retry. {@code pending} doses are still queued.
+         */
+        void onSyncFailed(String errorMessage, long pending);
+    }
+
+    private static SheetsOutbox instance;
+
+    private final DrugLogDatabase database;
+    private final GoogleSheetsLogger sheetsLogger;
+    private final ScheduledExecutorService executor;
+    private final Executor callbackExecutor;
+    private final Random jitter = new Random();
+    private final AtomicBoolean flushQueued = new AtomicBoolean();
+
+    // Only touched on the executor thread.
+    private int consecutiveFailures;
+    private ScheduledFuture<?> retry;
+
+    private volatile Listener listener;
+    private ConnectivityManager connectivityManager;
+    private ConnectivityManager.NetworkCallback networkCallback;
+
+    /**
+     * Returns the app's outbox, creating and starting it on first use. It is
+     * kept for the lifetime of the process and never stopped.
+     */
+    public static synchronized SheetsOutbox getInstance(Context context) {
+        if (instance == null) {
+            instance = new SheetsOutbox(DrugLogDatabase.getInstance(context),
+                    new GoogleSheetsLogger());
+            instance.start(context);
+        }
+        return instance;
+    }
+
+    public SheetsOutbox(DrugLogDatabase database, GoogleSheetsLogger sheetsLogger) {
+        this(database, sheetsLogger, newExecutor(), new Handler(Looper.getMainLooper())::post);
+    }
+
+    /**
+     * @param executor         Runs database and network work. Must be single-threaded.
+     * @param callbackExecutor Delivers listener calls, normally the main thread
+     */
+    public SheetsOutbox(DrugLogDatabase database, GoogleSheetsLogger sheetsLogger,
+                        ScheduledExecutorService executor, Executor callbackExecutor) {
+        this.database = database;
+        this.sheetsLogger = sheetsLogger;
+        this.executor = executor;
+        this.callbackExecutor = callbackExecutor;
+    }
+
+    public synchronized void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    /** Clears the listener if it is still {@code listener}, e.g. when its Activity is destroyed. */
+    public synchronized void removeListener(Listener listener) {
+        if (this.listener == listener) {
+            this.listener = null;
+        }
+    }
+
+    /**
+     * Flushes anything left from earlier runs and flushes again whenever a
+     * network becomes available.
+     */
+    public void start(Context context) {
+        connectivityManager = (ConnectivityManager) context.getApplicationContext()
+                .getSystemService(Context.CONNECTIVITY_SERVICE);
+        networkCallback = new ConnectivityManager.NetworkCallback() {
+            @Override
+            public void onAvailable(Network network) {
+                retryNow();
+            }
+        };
+        NetworkRequest request = new NetworkRequest.Builder()
+                .addCapability(NetworkCapabilities.NET_CAPABILITY_INTERNET)
+                .build();
+        connectivityManager.registerNetworkCallback(request, networkCallback);
+        flush();
+    }
+
+    /**
+     * Stops watching the network and finishes the work already queued. A
+     * retry scheduled for later is dropped; its rows go out on the next start.
+     */
+    public void stop() {
+        if (networkCallback != null) {
+            connectivityManager.unregisterNetworkCallback(networkCallback);
+            networkCallback = null;
+        }
+        executor.shutdown();
+    }
+
+    /** Queues a dose for the sheet and tries to send it right away. */
+    public void enqueue(String medicationName, double dose, String reason, long timestampMillis) {
+        OutboxItem item = new OutboxItem(medicationName, dose, reason, timestampMillis);
+        execute(() -> {
+            database.enqueueOutbox(item);
+            drain();
+        });
+    }
+
+    /** Sends every due item now. Requests made while one is pending are merged. */
+    public void flush() {
+        if (flushQueued.compareAndSet(false, true)) {
+            execute(() -> {
+                flushQueued.set(false);
+                drain();
+            });
+        }
+    }
+
+    /** Drops the backoff and sends everything queued, e.g. when the network comes back. */
+    void retryNow() {
+        execute(() -> {
+            consecutiveFailures = 0;
+            database.resetOutboxBackoff();
+            drain();
+        });
+    }
+
+    private void execute(Runnable task) {
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException e) {
+            // Stopped; queued rows are sent on the next start
+        }
+    }
+
+    /** Sends due items batch by batch until none are left or a batch fails. */
+    private void drain() {
+        if (retry != null) {
+            retry.cancel(false);
+            retry = null;
+        }
+
+        int sent = 0;
+        while (true) {
+            long now = System.currentTimeMillis();
+            List<OutboxItem> batch = database.getDueOutboxItems(now, BATCH_SIZE);
+            if (batch.isEmpty()) break;
+            try {
+                sheetsLogger.logBatch(batch);
+            } catch (Exception e) {
+                consecutiveFailures++;
+                database.deferOutbox(batch, now + backoffMillis(consecutiveFailures));
+                if (consecutiveFailures == 1) {
+                    notifyFailed(e.getMessage(), database.getOutboxSize());
+                }
+                break;
+            }
+            database.deleteOutboxItems(batch);
+            consecutiveFailures = 0;
+            sent += batch.size();
+        }
+        if (sent > 0) notifySynced(sent);
+
+        long next = database.getNextOutboxAttempt();
+        if (next >= 0) {
+            long delay = Math.max(0, next - System.currentTimeMillis());
+            try {
+                retry = executor.schedule(this::flush, delay, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                // Stopped while sending; the rows stay queued for the next start
+            }
+        }
+    }
+
+    /** One thread that drops delayed retries on shutdown instead of waiting for them. */
+    private static ScheduledExecutorService newExecutor() {
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1);
+        executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+        return executor;
+    }
+
+    /** Exponential backoff with up to 20% random jitter, so clients do not retry in step. */
+    long backoffMillis(int failures) {
+        long delay = INITIAL_BACKOFF_MILLIS << Math.min(failures - 1, 20);
+        delay = Math.min(delay, MAX_BACKOFF_MILLIS);
+        return delay - (long) (delay * 0.2 * jitter.nextDouble());
+    }
+
+    private void notifySynced(int count) {
+        Listener l = listener;
+        if (l != null) callbackExecutor.execute(() -> l.onSynced(count));
+    }
+
+    private void notifyFailed(String errorMessage, long pending) {
+        Listener l = listener;
+        if (l != null) callbackExecutor.execute(() -> l.onSyncFailed(errorMessage, pending));
+    }
+}
@@ -0,0 +1,58 @@
+package com.druglogger.app;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+/**
+ * Measures a launch of {@link MainActivity}, from its onCreate to the first
+ * frame and to the point where it is interactive: the first page of entries
+ * is shown and a dose can be logged without waiting.
+ *
+ * Both times go to {@link Metrics} as {@code startup.firstFrame} and
+ * {@code startup.interactive}, to the log, and to the {@link Listener}
+ * installed with {@link #setListener}, e.g. by an instrumentation test.
+ */
+public final class StartupTiming {
+
+    private static final String TAG = "StartupTiming";
+
+    private static final Metrics.Timer FIRST_FRAME_TIMER = Metrics.timer("startup.firstFrame");
+    private static final Metrics.Timer INTERACTIVE_TIMER = Metrics.timer("startup.interactive");
+
+    /** Receives the timings of each launch, on the main thread. */
+    public interface Listener {
+        void onStartupMeasured(long firstFrameMillis, long interactiveMillis);
+    }
+
+    private static volatile Listener listener;
+
+    private final long startMillis = SystemClock.elapsedRealtime();
+    private long firstFrameMillis = -1;
+    private boolean reported;
+
+    public static void setListener(Listener listener) {
+        StartupTiming.listener = listener;
+    }
+
+    void firstFrame() {
+        if (firstFrameMillis < 0) {
+            firstFrameMillis = SystemClock.elapsedRealtime() - startMillis;
+        }
+    }
+
+    /** Records the launch as interactive and reports it. Only the first call counts. */
+    void interactive() {
+        if (reported) return;
+        reported = true;
+        firstFrame();
+        long interactiveMillis = SystemClock.elapsedRealtime() - startMillis;
+        FIRST_FRAME_TIMER.record(firstFrameMillis * 1_000_000L);
+        INTERACTIVE_TIMER.record(interactiveMillis * 1_000_000L);
+        Log.i(TAG, "First frame after " + firstFrameMillis + " ms, interactive after "
+                + interactiveMillis + " ms");
+        Listener current = listener;
+        if (current != null) {
+            current.onStartupMeasured(firstFrameMillis, interactiveMillis);
+        }
+    }
+}
@@ -0,0 +1,227 @@
+package com.druglogger.app;
+
+import android.graphics.Typeface;
+import android.os.Bundle;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.widget.LinearLayout;
+import android.widget.ProgressBar;
+import android.widget.TextView;
+
+import androidx.appcompat.app.AppCompatActivity;
+
+import com.google.android.material.appbar.MaterialToolbar;
+
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * Shows what was taken over the last {@link #RANGE_DAYS} days: totals per
+ * medication, doses per week and the hours of the day doses were taken, and a
+ * {@link TimelineChartView} of one medication over its whole history.
+ *
+ * The summaries are rendered from {@link DoseStatistics} and the timeline
+ * from {@link TimelineData}, both already aggregated, so the screen only
+ * walks a few hundred rows at most whatever the size of the log.
+ */
+public class StatisticsActivity extends AppCompatActivity {
+    private static final int RANGE_DAYS = 90;
+    /** Span the timeline opens at; it can be panned back over the whole history. */
+    private static final int TIMELINE_DAYS = 14;
+
+    private DrugLogRepository repository;
+    private MedListRepository medications;
+    private LinearLayout container;
+    private TextView status;
+    private TimelineChartView timeline;
+    private String timelineDrug;
+    private double timelineDecayPerMilli;
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_statistics);
+
+        MaterialToolbar toolbar = findViewById(R.id.toolbar);
+        toolbar.setNavigationOnClickListener(v -> finish());
+        container = findViewById(R.id.stats_container);
+        status = findViewById(R.id.stats_status);
+
+        repository = new DrugLogRepository(DrugLogDatabase.getInstance(this));
+        medications = new MedListRepository(this);
+        long to = System.currentTimeMillis();
+        long from = to - RANGE_DAYS * LocalTimeSql.DAY_MILLIS;
+        repository.loadStatistics(from, to, new DrugLogRepository.Callback<DoseStatistics>() {
+            @Override
+            public void onSuccess(DoseStatistics statistics) {
+                if (!isFinishing()) {
+                    show(statistics);
+                }
+            }
+
+            @Override
+            public void onError(String errorMessage) {
+                status.setText("Could not load statistics: " + errorMessage);
+            }
+        });
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        repository.shutdown();
+    }
+
+    private void show(DoseStatistics statistics) {
+        int daysWithDoses = 0;
+        int doseCount = 0;
+        for (int count : statistics.dailyCounts.counts) {
+            if (count > 0) daysWithDoses++;
+            doseCount += count;
+        }
+        if (doseCount == 0) {
+            status.setText("No doses logged in the last " + RANGE_DAYS + " days.");
+            return;
+        }
+        int days = statistics.dailyCounts.counts.length;
+        status.setText(doseCount + " doses on " + daysWithDoses + " of the last " + days
+                + " days, up to " + statistics.dailyCounts.max() + " in one day.");
+
+        List<MedicationSummary> summaries = summarize(statistics.dailyTotals);
+        addHeading("By medication");
+        for (MedicationSummary summary : summaries) {
+            TextView line = addText(summary.drugName + ": "
+                    + DrugEntry.formatDose(summary.totalDose, summary.doseUnit)
+                    + " in " + summary.doseCount + (summary.doseCount == 1 ? " dose" : " doses")
+                    + ", taken on " + summary.days + " of " + days + " days");
+            line.setOnClickListener(v -> showTimeline(summary.drugName));
+        }
+
+        addHeading("Timeline (tap a medication above)");
+        timeline = new TimelineChartView(this);
+        timeline.setLayoutParams(new LinearLayout.LayoutParams(
+                LinearLayout.LayoutParams.MATCH_PARENT, dp(200)));
+        timeline.setBounds(statistics.historyStart, statistics.to);
+        timeline.setVisibleRange(statistics.to - TIMELINE_DAYS * LocalTimeSql.DAY_MILLIS,
+                statistics.to);
+        timeline.setRangeListener(this::loadTimeline);
+        container.addView(timeline);
+        showTimeline(summaries.get(0).drugName);
+
+        addHeading("Doses per week");
+        SimpleDateFormat weekFormat = new SimpleDateFormat("MMM d", Locale.getDefault());
+        // Week starts are local days, so they are formatted as UTC dates
+        weekFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+        DoseStatistics.DoseCounts weeks = statistics.weeklyCounts;
+        int weekMax = weeks.max();
+        Date weekStart = new Date();
+        for (int i = 0; i < weeks.counts.length; i++) {
+            long startDay = (weeks.first + i) * 7 - 3;
+            weekStart.setTime(startDay * LocalTimeSql.DAY_MILLIS);
+            addBar(weekFormat.format(weekStart), weeks.counts[i], weekMax);
+        }
+
+        addHeading("Time of day");
+        int hourMax = 0;
+        for (int count : statistics.hourOfDay) {
+            if (count > hourMax) hourMax = count;
+        }
+        for (int hour = 0; hour < 24; hour++) {
+            addBar(String.format(Locale.getDefault(), "%02d:00", hour),
+                    statistics.hourOfDay[hour], hourMax);
+        }
+    }
+
+    private void showTimeline(String drugName) {
+        if (drugName.equals(timelineDrug)) return;
+        MedicationInfo medication = medications.findByGenericName(drugName);
+        timelineDrug = drugName;
+        timelineDecayPerMilli = medication == null ? 0 : medication.getRules().decayPerMilli;
+        timeline.clearData();
+    }
+
+    private void loadTimeline(long from, long to, int columns) {
+        if (timelineDrug == null) return;
+        String drugName = timelineDrug;
+        repository.loadTimeline(drugName, timelineDecayPerMilli, from, to, columns,
+                new DrugLogRepository.Callback<TimelineData>() {
+                    @Override
+                    public void onSuccess(TimelineData data) {
+                        // A load for a medication no longer shown is dropped
+                        if (drugName.equals(timelineDrug)) timeline.setData(data);
+                    }
+
+                    @Override
+                    public void onError(String errorMessage) {
+                        if (drugName.equals(timelineDrug)) timeline.setData(null);
+                    }
+                });
+    }
+
+    private static class MedicationSummary {
+        final String drugName;
+        final String doseUnit;
+        double totalDose;
+        int doseCount;
+        int days;
+
+        MedicationSummary(String drugName, String doseUnit) {
+            this.drugName = drugName;
+            this.doseUnit = doseUnit;
+        }
+    }
+
+    /** Folds the per-day totals, which arrive sorted by drug and unit, into one line each. */
+    private static List<MedicationSummary> summarize(List<DoseStatistics.DailyTotal> totals) {
+        List<MedicationSummary> summaries = new ArrayList<>();
+        MedicationSummary current = null;
+        for (DoseStatistics.DailyTotal total : totals) {
+            if (current == null || !current.drugName.equals(total.drugName)
+                    || !equal(current.doseUnit, total.doseUnit)) {
+                current = new MedicationSummary(total.drugName, total.doseUnit);
+                summaries.add(current);
+            }
+            current.totalDose += total.totalDose;
+            current.doseCount += total.doseCount;
+            current.days++;
+        }
+        return summaries;
+    }
+
+    private static boolean equal(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
+    private void addHeading(String text) {
+        TextView heading = addText(text);
+        heading.setTypeface(Typeface.DEFAULT_BOLD);
+        heading.setTextSize(16);
+        heading.setPadding(0, dp(16), 0, dp(4));
+    }
+
+    private TextView addText(String text) {
+        TextView view = new TextView(this);
+        view.setText(text);
+        view.setTextSize(14);
+        container.addView(view);
+        return view;
+    }
+
+    private void addBar(String label, int value, int max) {
+        View row = LayoutInflater.from(this).inflate(R.layout.item_statistic_bar, container, false);
+        ((TextView) row.findViewById(R.id.bar_label)).setText(label);
+        ((TextView) row.findViewById(R.id.bar_value)).setText(String.valueOf(value));
+        ProgressBar bar = row.findViewById(R.id.bar);
+        bar.setMax(Math.max(max, 1));
+        bar.setProgress(value);
+        container.addView(row);
+    }
+
+    private int dp(int value) {
+        return Math.round(value * getResources().getDisplayMetrics().density);
+    }
+}
@@ -0,0 +1,291 @@
+package com.druglogger.app;
+
+import android.util.JsonReader;
+import android.util.JsonToken;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Catalog read from medlist.json with a pull parser instead of a DOM.
+ *
+ * Opening the catalog makes one streaming pass that keeps only each
+ * medication's generic and brand names and its interactions, which the
+ * {@link InteractionGraph} is built from. The remaining fields (indications,
+ * doses, half-life text, ...) are parsed into a {@link MedicationInfo}
+ * the first time that medication is requested, by streaming to its position
+ * again. Sequential requests reuse the open reader, so materializing the whole
+ * list is still a single pass.
+ */
+class StreamingJsonCatalog implements MedicationCatalog {
+
+    /** Opens a fresh stream over the JSON document. */
+    interface Source {
+        InputStream open() throws IOException;
+    }
+
+    private final Source source;
+    private final List<String> genericNames;
+    private final List<List<String>> brandNames;
+    private final List<List<MedicationInfo.Interaction>> interactions;
+    private final MedicationInfo[] materialized;
+
+    // Reader left positioned before medication cursorIndex, or null.
+    private JsonReader cursor;
+    private int cursorIndex;
+
+    private StreamingJsonCatalog(Source source, List<String> genericNames,
+                                 List<List<String>> brandNames,
+                                 List<List<MedicationInfo.Interaction>> interactions) {
+        this.source = source;
+        this.genericNames = genericNames;
+        this.brandNames = brandNames;
+        this.interactions = interactions;
+        this.materialized = new MedicationInfo[genericNames.size()];
+    }
+
+    /** Streams through the document once, keeping only the names and interactions. */
+    static StreamingJsonCatalog index(Source source) throws IOException {
+        List<String> genericNames = new ArrayList<>();
+        List<List<String>> brandNames = new ArrayList<>();
+        List<List<MedicationInfo.Interaction>> interactions = new ArrayList<>();
+
+        try (JsonReader reader = openMedicationsArray(source)) {
+            while (reader.hasNext()) {
+                String genericName = null;
+                List<String> brands = new ArrayList<>();
+                List<MedicationInfo.Interaction> listed = new ArrayList<>();
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    String name = reader.nextName();
+                    if (reader.peek() == JsonToken.NULL) {
+                        reader.skipValue();
+                    } else if (name.equals("generic_name")) {
+                        genericName = reader.nextString();
+                    } else if (name.equals("brand_names")) {
+                        brands = readStringList(reader);
+                    } else if (name.equals("interactions_with_other_drugs_on_this_list")) {
+                        listed = readInteractions(reader);
+                    } else {
+                        reader.skipValue();
+                    }
+                }
+                reader.endObject();
+                if (genericName == null) {
+                    throw new IOException("Medication " + genericNames.size() + " has no generic_name");
+                }
+                genericNames.add(genericName);
+                brandNames.add(brands);
+                interactions.add(listed);
+            }
+        }
+        return new StreamingJsonCatalog(source, genericNames, brandNames, interactions);
+    }
+
+    @Override
+    public int size() {
+        return genericNames.size();
+    }
+
+    @Override
+    public String getGenericName(int index) {
+        return genericNames.get(index);
+    }
+
+    @Override
+    public List<String> getBrandNames(int index) {
+        return brandNames.get(index);
+    }
+
+    @Override
+    public List<MedicationInfo.Interaction> getInteractions(int index) {
+        return interactions.get(index);
+    }
+
+    @Override
+    public synchronized MedicationInfo get(int index) {
+        MedicationInfo med = materialized[index];
+        if (med != null) return med;
+
+        try {
+            JsonReader reader = seek(index);
+            med = readMedication(reader);
+            cursorIndex++;
+            if (cursorIndex == materialized.length) {
+                closeCursor();
+            }
+        } catch (IOException | RuntimeException e) {
+            closeCursor();
+            throw new IllegalStateException("Could not read medication " + index, e);
+        }
+        materialized[index] = med;
+        return med;
+    }
+
+    private JsonReader seek(int index) throws IOException {
+        if (cursor == null || cursorIndex > index) {
+            closeCursor();
+            cursor = openMedicationsArray(source);
+            cursorIndex = 0;
+        }
+        while (cursorIndex < index) {
+            cursor.skipValue();
+            cursorIndex++;
+        }
+        return cursor;
+    }
+
+    private void closeCursor() {
+        if (cursor == null) return;
+        try {
+            cursor.close();
+        } catch (IOException e) {
+            // Nothing useful to do; the reader is discarded either way
+        }
+        cursor = null;
+    }
+
+    /** Returns a reader positioned inside the "medications" array. */
+    private static JsonReader openMedicationsArray(Source source) throws IOException {
+        JsonReader reader = new JsonReader(new InputStreamReader(source.open(), StandardCharsets.UTF_8));
+        try {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if (reader.nextName().equals("medications")) {
+                    reader.beginArray();
+                    return reader;
+                }
+                reader.skipValue();
+            }
+            throw new IOException("No medications array");
+        } catch (IOException | RuntimeException e) {
+            reader.close();
+            throw e;
+        }
+    }
+
+    /** Reads one medication object, with the same defaults as {@link MedicationInfo#fromJson}. */
+    private static MedicationInfo readMedication(JsonReader reader) throws IOException {
+        String genericName = null;
+        List<String> brandNames = null;
+        List<String> onLabel = null;
+        List<String> offLabel = null;
+        List<Double> doses = null;
+        String doseUnit = "mg";
+        String maxDaily = "";
+        String timeBetween = "";
+        String halfLife = "";
+        List<MedicationInfo.Interaction> interactions = new ArrayList<>();
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (reader.peek() == JsonToken.NULL) {
+                reader.skipValue();
+                continue;
+            }
+            switch (name) {
+                case "generic_name":
+                    genericName = reader.nextString();
+                    break;
+                case "brand_names":
+                    brandNames = readStringList(reader);
+                    break;
+                case "indication":
+                    reader.beginObject();
+                    while (reader.hasNext()) {
+                        String use = reader.nextName();
+                        if (use.equals("on_label")) {
+                            onLabel = readStringList(reader);
+                        } else if (use.equals("off_label")) {
+                            offLabel = readStringList(reader);
+                        } else {
+                            reader.skipValue();
+                        }
+                    }
+                    reader.endObject();
+                    break;
+                case "doses":
+                    doses = new ArrayList<>();
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        doses.add(reader.nextDouble());
+                    }
+                    reader.endArray();
+                    break;
+                case "dose_unit":
+                    doseUnit = reader.nextString();
+                    break;
+                case "maximum_daily_dosage":
+                    maxDaily = reader.nextString();
+                    break;
+                case "time_required_between_doses":
+                    timeBetween = reader.nextString();
+                    break;
+                case "half_life":
+                    halfLife = reader.nextString();
+                    break;
+                case "interactions_with_other_drugs_on_this_list":
+                    interactions = readInteractions(reader);
+                    break;
+                default:
+                    reader.skipValue();
+                    break;
+            }
+        }
+        reader.endObject();
+
+        if (genericName == null || brandNames == null || onLabel == null
+                || offLabel == null || doses == null) {
+            throw new IOException("Medication " + genericName + " is missing required fields");
+        }
+        return MedicationInfo.create(genericName, brandNames, onLabel, offLabel, doses,
+                doseUnit, maxDaily, timeBetween, halfLife, interactions);
+    }
+
+    private static List<MedicationInfo.Interaction> readInteractions(JsonReader reader)
+            throws IOException {
+        List<MedicationInfo.Interaction> interactions = new ArrayList<>();
+        reader.beginArray();
+        while (reader.hasNext()) {
+            interactions.add(readInteraction(reader));
+        }
+        reader.endArray();
+        return interactions;
+    }
+
+    private static MedicationInfo.Interaction readInteraction(JsonReader reader) throws IOException {
+        String drug = null;
+        String interaction = null;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (name.equals("drug")) {
+                drug = reader.nextString();
+            } else if (name.equals("interaction")) {
+                interaction = reader.nextString();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        if (drug == null || interaction == null) {
+            throw new IOException("Interaction is missing drug or interaction text");
+        }
+        return new MedicationInfo.Interaction(drug, interaction);
+    }
+
+    private static List<String> readStringList(JsonReader reader) throws IOException {
+        List<String> list = new ArrayList<>();
+        reader.beginArray();
+        while (reader.hasNext()) {
+            list.add(reader.nextString());
+        }
+        reader.endArray();
+        return list;
+    }
+}
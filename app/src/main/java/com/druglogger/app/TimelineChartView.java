@@ -0,0 +1,275 @@
+package com.druglogger.app;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Path;
+import android.util.AttributeSet;
+import android.view.GestureDetector;
+import android.view.MotionEvent;
+import android.view.ScaleGestureDetector;
+import android.view.View;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+
+/**
+ * Timeline of one medication: a bar per column for the doses taken and a band
+ * for the estimated level, from its lowest to its highest point in the column.
+ * Dragging pans and pinching zooms, from an hour up to the whole history.
+ *
+ * The chart never reads entries itself. When the visible range is not
+ * covered by the loaded {@link TimelineData}, or is drawn at a very
+ * different zoom, it asks its {@link RangeListener} for a range half a
+ * screen wider on each side at {@link #PIXELS_PER_COLUMN} pixels per column,
+ * and keeps drawing the data it has, at the new position and scale, until
+ * the answer arrives with {@link #setData}. Only one request is outstanding
+ * at a time, so loads cannot pile up during a gesture.
+ *
+ * A frame draws at most one bar and two band points per visible column,
+ * however long the history is. Paints, the band's path and the bar buffer
+ * are kept between frames, and onDraw allocates nothing.
+ */
+public class TimelineChartView extends View {
+
+    /** Asked for data covering a range, at about {@code columns} columns. */
+    public interface RangeListener {
+        void onRangeNeeded(long from, long to, int columns);
+    }
+
+    static final int PIXELS_PER_COLUMN = 2;
+    private static final long MIN_SPAN_MILLIS = 3600_000L;
+    private static final long MAX_SPAN_MILLIS = 10 * 366 * 24 * 3600_000L;
+
+    private final Paint barPaint = new Paint();
+    private final Paint bandPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint labelPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Path bandPath = new Path();
+    private final SimpleDateFormat labelFormat =
+            new SimpleDateFormat("MMM d, yyyy HH:mm", Locale.getDefault());
+    private final Date labelDate = new Date();
+    private final GestureDetector gestureDetector;
+    private final ScaleGestureDetector scaleDetector;
+
+    private RangeListener rangeListener;
+    private TimelineData data;
+    /** Bar endpoints for the loaded data, four floats per column */
+    private float[] bars = new float[0];
+    private boolean requestPending;
+    /** What the last frame drew, for tests */
+    int drawnBars;
+    int drawnBandPoints;
+
+    private long minTime = 0;
+    private long maxTime = Long.MAX_VALUE;
+    private long visibleFrom;
+    private long visibleTo;
+    private String fromLabel = "";
+    private String toLabel = "";
+
+    public TimelineChartView(Context context) {
+        this(context, null);
+    }
+
+    public TimelineChartView(Context context, AttributeSet attrs) {
+        super(context, attrs);
+        float density = getResources().getDisplayMetrics().density;
+        barPaint.setColor(Color.rgb(0x62, 0x00, 0xEE));
+        barPaint.setStrokeWidth(Math.max(1, PIXELS_PER_COLUMN - 0.5f));
+        bandPaint.setColor(Color.argb(0x80, 0x03, 0xDA, 0xC5));
+        bandPaint.setStyle(Paint.Style.FILL);
+        labelPaint.setColor(Color.DKGRAY);
+        labelPaint.setTextSize(11 * density);
+
+        gestureDetector = new GestureDetector(context, new GestureDetector.SimpleOnGestureListener() {
+            @Override
+            public boolean onDown(MotionEvent e) {
+                return true;
+            }
+
+            @Override
+            public boolean onScroll(MotionEvent e1, MotionEvent e2, float distanceX,
+                                    float distanceY) {
+                long shift = (long) (distanceX * millisPerPixel());
+                setVisibleRange(visibleFrom + shift, visibleTo + shift);
+                return true;
+            }
+        });
+        scaleDetector = new ScaleGestureDetector(context,
+                new ScaleGestureDetector.SimpleOnScaleGestureListener() {
+                    @Override
+                    public boolean onScale(ScaleGestureDetector detector) {
+                        double span = (visibleTo - visibleFrom) / detector.getScaleFactor();
+                        span = Math.max(MIN_SPAN_MILLIS, Math.min(MAX_SPAN_MILLIS, span));
+                        double focus = visibleFrom + detector.getFocusX() * millisPerPixel();
+                        double focusFraction = detector.getFocusX() / Math.max(1, getWidth());
+                        long from = (long) (focus - span * focusFraction);
+                        setVisibleRange(from, from + (long) span);
+                        return true;
+                    }
+                });
+    }
+
+    public void setRangeListener(RangeListener listener) {
+        rangeListener = listener;
+    }
+
+    /** Limits panning to [{@code minTime}, {@code maxTime}]. */
+    public void setBounds(long minTime, long maxTime) {
+        this.minTime = minTime;
+        this.maxTime = maxTime;
+    }
+
+    /** Shows [{@code from}, {@code to}), clamped to the bounds. */
+    public void setVisibleRange(long from, long to) {
+        long span = Math.max(MIN_SPAN_MILLIS, Math.min(MAX_SPAN_MILLIS, to - from));
+        if (from + span > maxTime) from = maxTime - span;
+        if (from < minTime) from = minTime;
+        visibleFrom = from;
+        visibleTo = from + span;
+        fromLabel = formatLabel(visibleFrom);
+        toLabel = formatLabel(visibleTo);
+        requestIfNeeded();
+        invalidate();
+    }
+
+    /** Drops the loaded data, e.g. when a different medication is shown, and asks for new data. */
+    public void clearData() {
+        data = null;
+        requestPending = false;
+        requestIfNeeded();
+        invalidate();
+    }
+
+    /**
+     * Hands over the data for the last request, or null if it failed. The
+     * previous data stays on screen until new data arrives.
+     */
+    public void setData(TimelineData data) {
+        requestPending = false;
+        if (data == null) return;
+        this.data = data;
+        if (bars.length < data.columns * 4) {
+            bars = new float[data.columns * 4];
+        }
+        requestIfNeeded();
+        invalidate();
+    }
+
+    @Override
+    protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+        super.onSizeChanged(w, h, oldw, oldh);
+        requestIfNeeded();
+    }
+
+    @Override
+    public boolean onTouchEvent(MotionEvent event) {
+        if (event.getActionMasked() == MotionEvent.ACTION_DOWN && getParent() != null) {
+            // Horizontal drags belong to the chart, not the enclosing scroll view
+            getParent().requestDisallowInterceptTouchEvent(true);
+        }
+        boolean handled = scaleDetector.onTouchEvent(event);
+        handled |= gestureDetector.onTouchEvent(event);
+        return handled || super.onTouchEvent(event);
+    }
+
+    private double millisPerPixel() {
+        return (double) (visibleTo - visibleFrom) / Math.max(1, getWidth());
+    }
+
+    /**
+     * Asks for data when the loaded range does not cover the visible one, or
+     * its columns are more than twice as wide or narrow as the screen needs.
+     */
+    private void requestIfNeeded() {
+        int width = getWidth();
+        if (rangeListener == null || requestPending || width == 0 || visibleTo <= visibleFrom) {
+            return;
+        }
+        long span = visibleTo - visibleFrom;
+        long wantedColumnMillis = Math.max(1, span * PIXELS_PER_COLUMN / width);
+        // The visible range can reach past the bounds when the history is short
+        long neededFrom = Math.max(minTime, visibleFrom);
+        long neededTo = Math.min(maxTime, visibleTo);
+        if (data != null && data.from <= neededFrom && data.to >= neededTo
+                && data.columnMillis <= wantedColumnMillis * 2
+                && data.columnMillis * 2 >= wantedColumnMillis) {
+            return;
+        }
+        requestPending = true;
+        long from = Math.max(minTime, visibleFrom - span / 2);
+        long to = Math.min(maxTime, visibleTo + span / 2);
+        rangeListener.onRangeNeeded(from, to, (int) ((to - from) / wantedColumnMillis) + 1);
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        super.onDraw(canvas);
+        drawnBars = 0;
+        drawnBandPoints = 0;
+        float left = getPaddingLeft();
+        float right = getWidth() - getPaddingRight();
+        float labelHeight = labelPaint.getTextSize() * 1.5f;
+        float top = getPaddingTop();
+        float bottom = getHeight() - getPaddingBottom() - labelHeight;
+
+        canvas.drawText(fromLabel, left, getHeight() - getPaddingBottom(), labelPaint);
+        canvas.drawText(toLabel, right - labelPaint.measureText(toLabel),
+                getHeight() - getPaddingBottom(), labelPaint);
+
+        TimelineData data = this.data;
+        if (data == null || bottom <= top || right <= left) return;
+
+        double pixelsPerMilli = (right - left) / (double) (visibleTo - visibleFrom);
+        int first = (int) Math.max(0, (visibleFrom - data.from) / data.columnMillis);
+        int last = (int) Math.min(data.columns - 1, (visibleTo - data.from) / data.columnMillis);
+        if (first > last) return;
+
+        float height = bottom - top;
+        if (data.levelMax != null && data.maxLevel > 0) {
+            float scale = height / data.maxLevel;
+            bandPath.rewind();
+            for (int c = first; c <= last; c++) {
+                float x = columnX(data, c, left, pixelsPerMilli);
+                float y = bottom - data.levelMax[c] * scale;
+                if (c == first) bandPath.moveTo(x, y);
+                else bandPath.lineTo(x, y);
+            }
+            for (int c = last; c >= first; c--) {
+                bandPath.lineTo(columnX(data, c, left, pixelsPerMilli),
+                        bottom - data.levelMin[c] * scale);
+            }
+            bandPath.close();
+            canvas.drawPath(bandPath, bandPaint);
+            drawnBandPoints = 2 * (last - first + 1);
+        }
+
+        if (data.maxDose > 0) {
+            // Doses use the lower half, so bars stay readable under the band
+            float scale = height / 2 / data.maxDose;
+            int n = 0;
+            for (int c = first; c <= last; c++) {
+                if (data.doseTotals[c] <= 0) continue;
+                float x = columnX(data, c, left, pixelsPerMilli);
+                bars[n++] = x;
+                bars[n++] = bottom;
+                bars[n++] = x;
+                bars[n++] = bottom - Math.max(1, data.doseTotals[c] * scale);
+            }
+            canvas.drawLines(bars, 0, n, barPaint);
+            drawnBars = n / 4;
+        }
+    }
+
+    private float columnX(TimelineData data, int column, float left, double pixelsPerMilli) {
+        long center = data.from + column * data.columnMillis + data.columnMillis / 2;
+        return (float) (left + (center - visibleFrom) * pixelsPerMilli);
+    }
+
+    private String formatLabel(long time) {
+        labelDate.setTime(time);
+        return labelFormat.format(labelDate);
+    }
+}
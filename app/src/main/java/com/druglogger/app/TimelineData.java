@@ -0,0 +1,123 @@
+package com.druglogger.app;
+
+import java.util.Arrays;
+
+/**
+ * One medication's doses and estimated level over a time range, already
+ * reduced to a fixed number of columns for {@link TimelineChartView}.
+ *
+ * Each column holds the total dose taken in it and the lowest and highest
+ * estimated level within it, so a peak or trough narrower than a column is
+ * still drawn however far the chart is zoomed out. The range is read from
+ * the database as per-bucket sums, and the level is swept over those
+ * buckets with the step decay of {@link ConcentrationEstimator}, so the
+ * cost depends on the number of buckets rather than the number of entries.
+ */
+public final class TimelineData {
+
+    /** Shortest bucket the level is swept at. */
+    private static final long MIN_STEP_MILLIS = 60_000L;
+    /** Buckets per half-life; doses are placed at their bucket's start. */
+    private static final int STEPS_PER_HALF_LIFE = 8;
+    /** Upper bound on the buckets one sweep visits, including the lead-in. */
+    private static final long MAX_STEPS = 400_000;
+
+    final String drugName;
+    final long from;
+    final long to;
+    final long columnMillis;
+    final int columns;
+    final float[] doseTotals;
+    /** Null when the medication has no half-life */
+    final float[] levelMin;
+    final float[] levelMax;
+    final float maxDose;
+    final float maxLevel;
+
+    private TimelineData(String drugName, long from, long to, long columnMillis, int columns,
+                         float[] doseTotals, float[] levelMin, float[] levelMax) {
+        this.drugName = drugName;
+        this.from = from;
+        this.to = to;
+        this.columnMillis = columnMillis;
+        this.columns = columns;
+        this.doseTotals = doseTotals;
+        this.levelMin = levelMin;
+        this.levelMax = levelMax;
+        this.maxDose = max(doseTotals);
+        this.maxLevel = levelMax == null ? 0 : max(levelMax);
+    }
+
+    /**
+     * Loads at least [{@code from}, {@code to}) in about {@code columns}
+     * columns. The range is widened to whole columns aligned to the epoch, so
+     * repeated loads while panning put doses in the same columns. Doses
+     * before the range that still leave a measurable level are read too.
+     *
+     * @param decayPerMilli The medication's elimination rate, or 0 to skip the level
+     */
+    static TimelineData load(DrugLogDatabase database, String drugName, double decayPerMilli,
+                             long from, long to, int columns) {
+        long wantedColumnMillis = Math.max(1, (to - from + columns - 1) / columns);
+        long leadIn = 0;
+        long step = wantedColumnMillis;
+        if (decayPerMilli > 0) {
+            leadIn = ConcentrationEstimator.horizonMillis(decayPerMilli);
+            long halfLifeMillis = (long) (Math.log(2) / decayPerMilli);
+            step = Math.min(step, halfLifeMillis / STEPS_PER_HALF_LIFE);
+            step = Math.max(step, Math.max(MIN_STEP_MILLIS, (to - from + leadIn) / MAX_STEPS));
+        }
+        // Whole buckets per column, so every bucket falls in exactly one column
+        long columnMillis = (wantedColumnMillis + step - 1) / step * step;
+        long start = from - from % columnMillis;
+        int count = (int) ((to - start + columnMillis - 1) / columnMillis);
+        long end = start + count * columnMillis;
+
+        DoseStatistics.DoseBuckets buckets =
+                database.getDoseBuckets(drugName, start - leadIn, end, step);
+        float[] doseTotals = new float[count];
+        if (decayPerMilli <= 0) {
+            for (int i = 0; i < buckets.size; i++) {
+                int column = (int) ((buckets.buckets[i] * step - start) / columnMillis);
+                doseTotals[column] += buckets.totals[i];
+            }
+            return new TimelineData(drugName, start, end, columnMillis, count, doseTotals,
+                    null, null);
+        }
+
+        // Level at each bucket start, before and after that bucket's doses
+        float[] levelMin = new float[count];
+        float[] levelMax = new float[count];
+        Arrays.fill(levelMin, Float.MAX_VALUE);
+        double stepFactor = Math.exp(-decayPerMilli * step);
+        double level = 0;
+        int next = 0;
+        long bucket = (start - leadIn) / step;
+        long startBucket = start / step;
+        long endBucket = end / step;
+        for (; bucket < endBucket; bucket++) {
+            level *= stepFactor;
+            double before = level;
+            double added = 0;
+            if (next < buckets.size && buckets.buckets[next] == bucket) {
+                added = buckets.totals[next++];
+                level += added;
+            }
+            if (bucket < startBucket) continue;
+            int column = (int) ((bucket - startBucket) * step / columnMillis);
+            doseTotals[column] += added;
+            levelMin[column] = (float) Math.min(levelMin[column], before);
+            levelMax[column] = (float) Math.max(levelMax[column], level);
+        }
+        return new TimelineData(drugName, start, end, columnMillis, count, doseTotals,
+                levelMin, levelMax);
+    }
+
+    private static float max(float[] values) {
+        float max = 0;
+        for (float value : values) {
+            if (value > max) max = value;
+        }
+        return max;
+    }
+}
@@ -0,0 +1,158 @@
+package com.druglogger.app;
+
+import android.content.Context;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.util.List;
+import java.util.TimeZone;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * The statistics queries group by local day, week and hour in SQLite. These
+ * run them over the 2024 daylight saving changes in New York, where a day is
+ * 23 or 25 hours long and the hour after 01:00 is skipped or repeated.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class DoseStatisticsQueryTest {
+
+    private static final String DATABASE_NAME = "statistics-test.db";
+    private static final TimeZone NEW_YORK = TimeZone.getTimeZone("America/New_York");
+
+    private Context context;
+    private DrugLogDatabase database;
+
+    @Before
+    public void setUp() {
+        context = ApplicationProvider.getApplicationContext();
+        database = new DrugLogDatabase(context, DATABASE_NAME);
+    }
+
+    @After
+    public void tearDown() {
+        database.close();
+        context.deleteDatabase(DATABASE_NAME);
+    }
+
+    @Test
+    public void dailyTotalsFollowTheSpringForwardDay() {
+        log("Ibuprofen", 200, "2024-03-09T23:30-05:00");
+        log("Ibuprofen", 200, "2024-03-10T00:30-05:00");
+        log("Ibuprofen", 400, "2024-03-10T01:30-05:00");
+        // 02:00 EST became 03:00 EDT
+        log("Ibuprofen", 200, "2024-03-10T03:30-04:00");
+        log("Ibuprofen", 200, "2024-03-10T23:30-04:00");
+        log("Ibuprofen", 200, "2024-03-11T00:15-04:00");
+
+        List<DoseStatistics.DailyTotal> totals = database.getDailyTotals(
+                at("2024-03-01T00:00-05:00"), at("2024-04-01T00:00-04:00"), NEW_YORK);
+        assertEquals(3, totals.size());
+        assertTotal(totals.get(0), "2024-03-09", 200, 1);
+        assertTotal(totals.get(1), "2024-03-10", 1000, 4);
+        assertTotal(totals.get(2), "2024-03-11", 200, 1);
+    }
+
+    @Test
+    public void dailyTotalsFollowTheFallBackDay() {
+        log("Ibuprofen", 200, "2024-11-03T00:30-04:00");
+        log("Ibuprofen", 200, "2024-11-03T01:30-04:00");
+        // The same wall-clock time an hour later, after 02:00 EDT became 01:00 EST
+        log("Ibuprofen", 200, "2024-11-03T01:30-05:00");
+        log("Ibuprofen", 200, "2024-11-03T23:45-05:00");
+        log("Ibuprofen", 200, "2024-11-04T00:05-05:00");
+
+        List<DoseStatistics.DailyTotal> totals = database.getDailyTotals(
+                at("2024-11-01T00:00-04:00"), at("2024-11-08T00:00-05:00"), NEW_YORK);
+        assertEquals(2, totals.size());
+        assertTotal(totals.get(0), "2024-11-03", 800, 4);
+        assertTotal(totals.get(1), "2024-11-04", 200, 1);
+    }
+
+    @Test
+    public void countsHaveASlotPerLocalDayAndWeek() {
+        log("Ibuprofen", 200, "2024-03-09T23:30-05:00");
+        log("Ibuprofen", 200, "2024-03-10T23:30-04:00");
+        log("Naproxen", 250, "2024-03-11T00:15-04:00");
+        log("Naproxen", 250, "2024-03-17T23:59-04:00");
+
+        // Monday 4 March to the end of Sunday 17 March
+        long from = at("2024-03-04T00:00-05:00");
+        long to = at("2024-03-18T00:00-04:00");
+
+        DoseStatistics.DoseCounts daily =
+                database.getDoseCounts(from, to, DoseStatistics.Period.DAY, NEW_YORK);
+        assertEquals(day("2024-03-04"), daily.first);
+        assertEquals(14, daily.counts.length);
+        int[] expected = new int[14];
+        expected[5] = 1;
+        expected[6] = 1;
+        expected[7] = 1;
+        expected[13] = 1;
+        assertArrayEquals(expected, daily.counts);
+
+        DoseStatistics.DoseCounts weekly =
+                database.getDoseCounts(from, to, DoseStatistics.Period.WEEK, NEW_YORK);
+        assertEquals(2, weekly.counts.length);
+        assertEquals(LocalTimeSql.weekOfDay(day("2024-03-04")), weekly.first);
+        assertArrayEquals(new int[]{2, 2}, weekly.counts);
+    }
+
+    @Test
+    public void hourOfDayUsesTheOffsetOfEachDose() {
+        // A year's range, so the query spans both changes
+        log("Ibuprofen", 200, "2024-01-15T08:10-05:00");
+        log("Ibuprofen", 200, "2024-07-15T08:20-04:00");
+        log("Ibuprofen", 200, "2024-11-03T01:30-04:00");
+        log("Ibuprofen", 200, "2024-11-03T01:30-05:00");
+        log("Naproxen", 250, "2024-03-10T03:05-04:00");
+        log("Naproxen", 250, "2024-12-31T23:59-05:00");
+
+        long from = at("2024-01-01T00:00-05:00");
+        long to = at("2025-01-01T00:00-05:00");
+
+        int[] all = database.getHourOfDayHistogram(from, to, null, NEW_YORK);
+        int[] expected = new int[24];
+        expected[1] = 2;
+        expected[3] = 1;
+        expected[8] = 2;
+        expected[23] = 1;
+        assertArrayEquals(expected, all);
+
+        int[] naproxen = database.getHourOfDayHistogram(from, to, "Naproxen", NEW_YORK);
+        expected = new int[24];
+        expected[3] = 1;
+        expected[23] = 1;
+        assertArrayEquals(expected, naproxen);
+    }
+
+    private void log(String drug, double dose, String time) {
+        DrugEntry entry = new DrugEntry(drug, dose, "mg", null);
+        entry.setTimestamp(at(time));
+        database.addEntry(entry);
+    }
+
+    private static void assertTotal(DoseStatistics.DailyTotal total, String date,
+                                    double dose, int count) {
+        assertEquals(date, day(date), total.day);
+        assertEquals(date, dose, total.totalDose, 0);
+        assertEquals(date, count, total.doseCount);
+    }
+
+    private static long at(String time) {
+        return OffsetDateTime.parse(time).toInstant().toEpochMilli();
+    }
+
+    private static long day(String date) {
+        return LocalDate.parse(date).toEpochDay();
+    }
+}
@@ -0,0 +1,159 @@
+package com.druglogger.app;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Upgrades a database file written by the first release, with rows in it,
+ * through every migration and compares the result with a fresh install.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class DrugLogDatabaseUpgradeTest {
+
+    private static final String UPGRADED_NAME = "upgrade-test.db";
+    private static final String FRESH_NAME = "fresh-test.db";
+    private static final long START = 1_700_000_000_000L;
+
+    private Context context;
+    private DrugLogDatabase upgraded;
+    private DrugLogDatabase fresh;
+
+    @Before
+    public void setUp() {
+        context = ApplicationProvider.getApplicationContext();
+        writeVersion1(UPGRADED_NAME);
+        upgraded = new DrugLogDatabase(context, UPGRADED_NAME);
+        fresh = new DrugLogDatabase(context, FRESH_NAME);
+    }
+
+    @After
+    public void tearDown() {
+        upgraded.close();
+        fresh.close();
+        context.deleteDatabase(UPGRADED_NAME);
+        context.deleteDatabase(FRESH_NAME);
+    }
+
+    @Test
+    public void upgradedSchemaMatchesAFreshInstall() {
+        SQLiteDatabase before = upgraded.getReadableDatabase();
+        SQLiteDatabase after = fresh.getReadableDatabase();
+        assertEquals(after.getVersion(), before.getVersion());
+        assertEquals(names(after, "table"), names(before, "table"));
+        assertEquals(names(after, "index"), names(before, "index"));
+        for (String table : names(after, "table")) {
+            assertEquals(table, columns(after, table), columns(before, table));
+        }
+    }
+
+    @Test
+    public void rowsSurviveWithBackfilledColumns() {
+        List<DrugEntry> entries = upgraded.getAllEntries();
+        assertEquals(3, entries.size());
+
+        // Newest first
+        DrugEntry melatonin = entries.get(0);
+        assertEquals("Melatonin", melatonin.getDrugName());
+        assertEquals("0.5 mg", melatonin.getDosage());
+        assertEquals(0.5, melatonin.getDoseValue(), 0);
+        assertEquals("mg", melatonin.getDoseUnit());
+        assertNull(melatonin.getNotes());
+        assertNull(melatonin.getReason());
+
+        // Notes were where the reason went, so they become the reason
+        DrugEntry ibuprofen = entries.get(1);
+        assertEquals(200, ibuprofen.getDoseValue(), 0);
+        assertEquals("mg", ibuprofen.getDoseUnit());
+        assertEquals("Headache", ibuprofen.getReason());
+        assertNull("not kept twice", ibuprofen.getNotes());
+        assertEquals(-1, ibuprofen.getMedId());
+
+        DrugEntry tea = entries.get(2);
+        assertEquals("a cup", tea.getDosage());
+        assertEquals(0, tea.getDoseValue(), 0);
+        assertNull(tea.getDoseUnit());
+        assertEquals(START, tea.getTimestamp());
+    }
+
+    @Test
+    public void upgradedTablesAreUsable() {
+        assertEquals(0, upgraded.getOutboxSize());
+        assertEquals(0, upgraded.getRemoteLogs().size());
+        assertNull(upgraded.getRemoteLogsCursor());
+
+        upgraded.addEntry(new DrugEntry("Naproxen", 250, "mg", null));
+        assertEquals(4, upgraded.getAllEntries().size());
+    }
+
+    /** Writes {@code name} as version 1 of the app left it. */
+    private void writeVersion1(String name) {
+        context.deleteDatabase(name);
+        SQLiteDatabase db = SQLiteDatabase.openOrCreateDatabase(
+                context.getDatabasePath(name), null);
+        try {
+            db.execSQL("CREATE TABLE entries (" +
+                    "id INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                    "drug_name TEXT NOT NULL, " +
+                    "dosage TEXT, " +
+                    "notes TEXT, " +
+                    "timestamp INTEGER NOT NULL)");
+            db.execSQL("INSERT INTO entries (drug_name, dosage, notes, timestamp) VALUES " +
+                    "('Tea', 'a cup', NULL, " + START + "), " +
+                    "('Ibuprofen', '200 mg', 'Headache', " + (START + 60_000) + "), " +
+                    "('Melatonin', '0.5 mg', NULL, " + (START + 120_000) + ")");
+            db.setVersion(1);
+        } finally {
+            db.close();
+        }
+    }
+
+    private static List<String> names(SQLiteDatabase db, String type) {
+        List<String> names = new ArrayList<>();
+        Cursor cursor = db.rawQuery("SELECT name FROM sqlite_master WHERE type = ? " +
+                "AND name NOT LIKE 'sqlite_%' AND name != 'android_metadata' ORDER BY name",
+                new String[]{type});
+        try {
+            while (cursor.moveToNext()) {
+                names.add(cursor.getString(0));
+            }
+        } finally {
+            cursor.close();
+        }
+        return names;
+    }
+
+    /**
+     * Name, type, not-null and default of each column, sorted, since columns
+     * added by a migration come after the ones a fresh install lists first.
+     */
+    private static List<String> columns(SQLiteDatabase db, String table) {
+        List<String> columns = new ArrayList<>();
+        Cursor cursor = db.rawQuery("PRAGMA table_info(" + table + ")", null);
+        try {
+            while (cursor.moveToNext()) {
+                columns.add(cursor.getString(1) + " " + cursor.getString(2) + " "
+                        + cursor.getInt(3) + " " + cursor.getString(4));
+            }
+        } finally {
+            cursor.close();
+        }
+        Collections.sort(columns);
+        return columns;
+    }
+}
@@ -0,0 +1,172 @@
+package com.druglogger.app;
+
+import android.content.Context;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * {@link DrugLogRepository} driven synchronously: both executors run tasks on
+ * the calling thread, so every callback has run by the time a call returns.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class DrugLogRepositoryTest {
+
+    private static final String DATABASE_NAME = "repository-test.db";
+    private static final Executor DIRECT = Runnable::run;
+
+    /** Records the outcome of one call. */
+    private static final class Result<T> implements DrugLogRepository.Callback<T> {
+        T value;
+        String error;
+        int calls;
+
+        @Override
+        public void onSuccess(T result) {
+            value = result;
+            calls++;
+        }
+
+        @Override
+        public void onError(String errorMessage) {
+            error = errorMessage;
+            calls++;
+        }
+
+        T get() {
+            assertEquals("callback count", 1, calls);
+            assertNull(error, error);
+            return value;
+        }
+    }
+
+    private Context context;
+    private DrugLogDatabase database;
+    private DrugLogRepository repository;
+
+    @Before
+    public void setUp() {
+        context = ApplicationProvider.getApplicationContext();
+        database = new DrugLogDatabase(context, DATABASE_NAME);
+        repository = new DrugLogRepository(database, DIRECT, DIRECT);
+    }
+
+    @After
+    public void tearDown() {
+        database.close();
+        context.deleteDatabase(DATABASE_NAME);
+    }
+
+    @Test
+    public void addedEntriesAreReturnedNewestFirst() {
+        long now = System.currentTimeMillis();
+        List<DrugEntry> added = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            DrugEntry entry = new DrugEntry(0, "Ibuprofen", "200 mg", 200, "mg", null,
+                    now - (5 - i) * 60_000L);
+            Result<DrugEntry> result = new Result<>();
+            repository.addEntry(entry, result);
+            assertTrue("id assigned", result.get().getId() > 0);
+            added.add(result.get());
+        }
+
+        Result<List<DrugEntry>> first = new Result<>();
+        repository.loadPage(null, 3, first);
+        assertEquals(3, first.get().size());
+        assertEquals(added.get(4).getId(), first.get().get(0).getId());
+
+        Result<List<DrugEntry>> second = new Result<>();
+        repository.loadPage(first.get().get(2), 3, second);
+        assertEquals(2, second.get().size());
+        assertEquals(added.get(0).getId(), second.get().get(1).getId());
+    }
+
+    @Test
+    public void newerPagesLoadBackUpToTheTop() {
+        long now = System.currentTimeMillis();
+        List<DrugEntry> added = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            // Two share a timestamp, so the page key has to break the tie on the id
+            DrugEntry entry = new DrugEntry(0, "Ibuprofen", "200 mg", 200, "mg", null,
+                    now - (5 - i / 2 * 2) * 60_000L);
+            Result<DrugEntry> result = new Result<>();
+            repository.addEntry(entry, result);
+            added.add(result.get());
+        }
+
+        Result<List<DrugEntry>> newer = new Result<>();
+        repository.loadNewerPage(added.get(0), 3, newer);
+        assertEquals(3, newer.get().size());
+        assertEquals(added.get(3).getId(), newer.get().get(0).getId());
+        assertEquals(added.get(2).getId(), newer.get().get(1).getId());
+        assertEquals(added.get(1).getId(), newer.get().get(2).getId());
+
+        Result<List<DrugEntry>> top = new Result<>();
+        repository.loadNewerPage(newer.get().get(0), 3, top);
+        assertEquals(1, top.get().size());
+        assertEquals(added.get(4).getId(), top.get().get(0).getId());
+    }
+
+    @Test
+    public void warningsSeeEntriesAddedThroughTheRepository() {
+        MedListRepository medications = new MedListRepository(context);
+        MedicationInfo ibuprofen = medications.findByGenericName("Ibuprofen");
+        assertNotNull(ibuprofen);
+
+        Result<List<String>> before = new Result<>();
+        repository.checkWarnings(ibuprofen, 200, medications, before);
+        assertTrue(before.get().toString(), before.get().isEmpty());
+
+        Result<DrugEntry> added = new Result<>();
+        repository.addEntry(new DrugEntry(ibuprofen.getGenericName(), 200, "mg", null), added);
+        added.get();
+
+        Result<List<String>> after = new Result<>();
+        repository.checkWarnings(ibuprofen, 200, medications, after);
+        assertFalse("a second dose right away is too soon", after.get().isEmpty());
+    }
+
+    @Test
+    public void deletedEntryIsGone() {
+        Result<DrugEntry> added = new Result<>();
+        repository.addEntry(new DrugEntry("Ibuprofen", 200, "mg", null), added);
+
+        Result<Void> deleted = new Result<>();
+        repository.deleteEntry(added.get(), deleted);
+        deleted.get();
+
+        Result<List<DrugEntry>> page = new Result<>();
+        repository.loadPage(null, 10, page);
+        assertTrue(page.get().isEmpty());
+    }
+
+    @Test
+    public void rejectedWorkIsReportedThroughTheCallback() {
+        Executor full = task -> {
+            throw new RejectedExecutionException();
+        };
+        DrugLogRepository busy = new DrugLogRepository(database, full, DIRECT);
+
+        Result<List<DrugEntry>> result = new Result<>();
+        busy.loadPage(null, 10, result);
+        assertEquals(1, result.calls);
+        assertNull(result.value);
+        assertEquals("Too many pending operations", result.error);
+    }
+}
@@ -0,0 +1,235 @@
+package com.druglogger.app;
+
+import android.content.Context;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Export and import through {@link EntryTransfer} between two databases, in
+ * both formats, with fields that need quoting or escaping.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class EntryTransferTest {
+
+    private static final String SOURCE_NAME = "transfer-source.db";
+    private static final String TARGET_NAME = "transfer-target.db";
+    private static final long START = 1_700_000_000_000L;
+
+    private Context context;
+    private DrugLogDatabase source;
+    private DrugLogDatabase target;
+
+    @Before
+    public void setUp() {
+        context = ApplicationProvider.getApplicationContext();
+        source = new DrugLogDatabase(context, SOURCE_NAME);
+        target = new DrugLogDatabase(context, TARGET_NAME);
+    }
+
+    @After
+    public void tearDown() {
+        source.close();
+        target.close();
+        context.deleteDatabase(SOURCE_NAME);
+        context.deleteDatabase(TARGET_NAME);
+    }
+
+    @Test
+    public void csvRoundTrip() throws IOException {
+        roundTrip(EntryTransfer.Format.CSV);
+    }
+
+    @Test
+    public void jsonLinesRoundTrip() throws IOException {
+        roundTrip(EntryTransfer.Format.JSON_LINES);
+    }
+
+    private void roundTrip(EntryTransfer.Format format) throws IOException {
+        List<DrugEntry> added = new ArrayList<>();
+        added.add(entry("Ibuprofen", "200 mg", 200, "mg", null, START));
+        added.get(0).setReason("Headache, \"bad\" one");
+        added.add(entry("Acetaminophen, extra strength", "500 mg", 500, "mg",
+                "Said \"take with food\"", START + 1000));
+        added.add(entry("Melatonin", "0.5 mg", 0.5, "mg", "line one\nline two\r\nline three",
+                START + 2000));
+        added.add(entry("Vitamin D", "1000 IU", 1000, "IU", "tab\there, back\\slash, \u0001",
+                START + 3000));
+        added.add(entry("Café au lait ☕", "1 cup", 1, "cup", "ünïcödé, 日本語", START + 4000));
+        for (DrugEntry entry : added) {
+            source.addEntry(entry);
+        }
+
+        StringWriter out = new StringWriter();
+        assertEquals(added.size(), EntryTransfer.export(source, out, format));
+        assertEquals(added.size(),
+                EntryTransfer.importFrom(target, new StringReader(out.toString()), format));
+
+        List<DrugEntry> imported = oldestFirst(target);
+        assertEquals(added.size(), imported.size());
+        for (int i = 0; i < added.size(); i++) {
+            DrugEntry expected = added.get(i);
+            DrugEntry actual = imported.get(i);
+            assertEquals(expected.getDrugName(), actual.getDrugName());
+            assertEquals(expected.getDosage(), actual.getDosage());
+            assertEquals(expected.getDoseValue(), actual.getDoseValue(), 0);
+            assertEquals(expected.getDoseUnit(), actual.getDoseUnit());
+            assertEquals(expected.getNotes(), actual.getNotes());
+            assertEquals(expected.getTimestamp(), actual.getTimestamp());
+            assertEquals(expected.getReason(), actual.getReason());
+        }
+
+        // Exporting the copy gives the same file apart from the ids
+        StringWriter again = new StringWriter();
+        EntryTransfer.export(target, again, format);
+        assertEquals(withoutIds(out.toString(), format), withoutIds(again.toString(), format));
+    }
+
+    @Test
+    public void csvHeaderStartsTheExport() throws IOException {
+        source.addEntry(entry("Ibuprofen", "200 mg", 200, "mg", "a, b", START));
+        StringWriter out = new StringWriter();
+        EntryTransfer.export(source, out, EntryTransfer.Format.CSV);
+        String[] lines = out.toString().split("\r\n");
+        assertEquals("id,drug_name,dosage,dose_value,dose_unit,notes,timestamp,reason", lines[0]);
+        assertTrue(lines[1], lines[1].endsWith(",Ibuprofen,200 mg,200,mg,\"a, b\"," + START + ","));
+    }
+
+    @Test
+    public void csvColumnsMayComeInAnyOrder() throws IOException {
+        String csv = "Timestamp,notes,extra,drug_name,dose_value,dose_unit,id\n"
+                + "\n"
+                + START + ",,ignored,Ibuprofen,400,mg,77\r\n"
+                + (START + 60_000) + ",\"Two\r\nlines\",,Naproxen,250.5,mg,\n";
+        assertEquals(2, EntryTransfer.importFrom(target, new StringReader(csv),
+                EntryTransfer.Format.CSV));
+
+        List<DrugEntry> imported = oldestFirst(target);
+        assertEquals("Ibuprofen", imported.get(0).getDrugName());
+        assertEquals("400 mg", imported.get(0).getDosage());
+        assertNull(imported.get(0).getNotes());
+        assertTrue("the file's id is not kept", imported.get(0).getId() != 77);
+        assertEquals("Two\r\nlines", imported.get(1).getNotes());
+        assertEquals(250.5, imported.get(1).getDoseValue(), 0);
+    }
+
+    @Test
+    public void filesWithoutTheReasonColumnStillImport() throws IOException {
+        String csv = "id,drug_name,dosage,dose_value,dose_unit,notes,timestamp\n"
+                + "1,Ibuprofen,200 mg,200,mg,Headache," + START + "\n";
+        String jsonl = "{\"drug_name\":\"Naproxen\",\"notes\":\"Back\",\"timestamp\":"
+                + (START + 1) + "}\n";
+        EntryTransfer.importFrom(target, new StringReader(csv), EntryTransfer.Format.CSV);
+        EntryTransfer.importFrom(target, new StringReader(jsonl), EntryTransfer.Format.JSON_LINES);
+
+        List<DrugEntry> imported = oldestFirst(target);
+        assertEquals("Headache", imported.get(0).getNotes());
+        assertNull(imported.get(0).getReason());
+        assertEquals("Back", imported.get(1).getNotes());
+        assertNull(imported.get(1).getReason());
+    }
+
+    @Test
+    public void malformedCsvReportsTheLine() {
+        assertImportFails(EntryTransfer.Format.CSV,
+                "drug_name,timestamp\nIbuprofen,1\nNaproxen,soon\n", "Line 3");
+        assertImportFails(EntryTransfer.Format.CSV,
+                "drug_name,timestamp\nIbuprofen,1\n\"Naproxen,2\n", "Line 3");
+        assertImportFails(EntryTransfer.Format.CSV,
+                "drug_name,dosage\nIbuprofen,200 mg\n", "Header");
+    }
+
+    @Test
+    public void malformedJsonLinesReportsTheRecord() {
+        assertImportFails(EntryTransfer.Format.JSON_LINES,
+                "{\"drug_name\":\"Ibuprofen\",\"timestamp\":1}\n{\"drug_name\":\"Naproxen\"}\n",
+                "Record 2");
+        assertImportFails(EntryTransfer.Format.JSON_LINES,
+                "{\"drug_name\":\"Ibuprofen\",\"timestamp\":1}\n[1, 2]\n", "Record 2");
+    }
+
+    @Test
+    public void committedBatchesSurviveAFailure() {
+        int good = DrugLogDatabase.IMPORT_BATCH_SIZE + 10;
+        StringBuilder csv = new StringBuilder("drug_name,dose_value,dose_unit,timestamp\n");
+        for (int i = 0; i < good; i++) {
+            csv.append("Ibuprofen,200,mg,").append(START + i).append('\n');
+        }
+        csv.append("Ibuprofen,200,mg,\n");
+        try {
+            EntryTransfer.importFrom(target, new StringReader(csv.toString()),
+                    EntryTransfer.Format.CSV);
+            fail("expected the missing timestamp to fail the import");
+        } catch (IOException expected) {
+            assertTrue(expected.getMessage(), expected.getMessage().startsWith("Line " + (good + 2)));
+        }
+        assertEquals(DrugLogDatabase.IMPORT_BATCH_SIZE, target.getAllEntries().size());
+    }
+
+    @Test
+    public void largeImportIsCommittedInBatches() throws IOException {
+        int rows = DrugLogDatabase.IMPORT_BATCH_SIZE * 2 + 500;
+        StringBuilder jsonl = new StringBuilder();
+        for (int i = 0; i < rows; i++) {
+            jsonl.append("{\"drug_name\":\"Ibuprofen\",\"dose_value\":200,\"dose_unit\":\"mg\",")
+                    .append("\"timestamp\":").append(START + i).append("}\n");
+        }
+        assertEquals(rows, EntryTransfer.importFrom(target, new StringReader(jsonl.toString()),
+                EntryTransfer.Format.JSON_LINES));
+        assertEquals(rows, target.getAllEntries().size());
+    }
+
+    @Test
+    public void formatIsPickedByExtension() {
+        assertEquals(EntryTransfer.Format.CSV, EntryTransfer.Format.forFileName("log.CSV"));
+        assertEquals(EntryTransfer.Format.JSON_LINES, EntryTransfer.Format.forFileName("a.jsonl"));
+        assertEquals(EntryTransfer.Format.JSON_LINES, EntryTransfer.Format.forFileName("a.ndjson"));
+        assertNull(EntryTransfer.Format.forFileName("log.txt"));
+    }
+
+    private void assertImportFails(EntryTransfer.Format format, String input, String where) {
+        try {
+            EntryTransfer.importFrom(target, new StringReader(input), format);
+            fail("expected " + where + " to fail");
+        } catch (IOException expected) {
+            assertTrue(expected.getMessage(), expected.getMessage().startsWith(where));
+        }
+    }
+
+    private static DrugEntry entry(String name, String dosage, double doseValue, String unit,
+                                   String notes, long timestamp) {
+        return new DrugEntry(0, name, dosage, doseValue, unit, notes, timestamp);
+    }
+
+    private static List<DrugEntry> oldestFirst(DrugLogDatabase database) throws IOException {
+        List<DrugEntry> entries = new ArrayList<>();
+        database.exportEntries(entry -> entries.add(new DrugEntry(entry.getId(),
+                entry.getDrugName(), entry.getDosage(), entry.getDoseValue(),
+                entry.getDoseUnit(), entry.getNotes(), entry.getTimestamp(), entry.getMedId(),
+                entry.getReason())));
+        return entries;
+    }
+
+    /** Drops the leading id of every row, which differs between the two databases. */
+    private static String withoutIds(String export, EntryTransfer.Format format) {
+        return format == EntryTransfer.Format.CSV
+                ? export.replaceAll("(?m)^\\d+,", ",")
+                : export.replaceAll("\\{\"id\":\\d+,", "{");
+    }
+}
@@ -0,0 +1,210 @@
+package com.druglogger.app;
+
+import android.content.Context;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * The delta path of {@link RemoteLogSync} against a local stand-in for the
+ * web app: the cursor it sends and stores, a cursor the web app no longer
+ * knows, a web app without delta support, and a failed request.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class RemoteLogSyncTest {
+
+    private static final String DATABASE_NAME = "remote-sync-test.db";
+
+    private Context context;
+    private DrugLogDatabase database;
+    private MockWebServer server;
+    private RemoteLogSync sync;
+
+    @Before
+    public void setUp() throws Exception {
+        context = ApplicationProvider.getApplicationContext();
+        database = new DrugLogDatabase(context, DATABASE_NAME);
+        server = new MockWebServer();
+        server.start();
+        GoogleSheetsLogger logger = new GoogleSheetsLogger(server.url("/exec").toString());
+        // Synced on the test thread; the background refresh is never started
+        sync = new RemoteLogSync(database, logger, new MedListRepository(context));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        sync.stop();
+        server.shutdown();
+        database.close();
+        context.deleteDatabase(DATABASE_NAME);
+    }
+
+    @Test
+    public void deltaAppendsRowsAndAdvancesTheCursor() throws Exception {
+        server.enqueue(logs("\"2:b\"", false, row("a", 8), row("b", 9)));
+        assertEquals(2, sync.sync());
+        assertNull("first sync has no cursor", takeSince());
+        assertEquals("2:b", database.getRemoteLogsCursor());
+
+        // Overlaps the last delta by one row, which is not stored twice
+        server.enqueue(logs("\"4:d\"", false, row("b", 9), row("c", 10), row("d", 11)));
+        assertEquals(2, sync.sync());
+        assertEquals("2:b", takeSince());
+        assertEquals("4:d", database.getRemoteLogsCursor());
+        assertEquals(ids("a", "b", "c", "d"), remoteIds());
+
+        server.enqueue(logs("\"4:d\"", false));
+        assertEquals(0, sync.sync());
+        assertEquals("4:d", takeSince());
+        assertEquals(4, database.getRemoteLogs().size());
+    }
+
+    @Test
+    public void rowsAreResolvedToTheCatalog() throws Exception {
+        server.enqueue(logs("\"1:a\"", false, row("a", 8)));
+        sync.sync();
+
+        GoogleSheetsLogger.LogEntry stored = database.getRemoteLogs().get(0);
+        assertEquals("Ibuprofen [Advil, Motrin]", stored.medicationName);
+        assertEquals("Ibuprofen", stored.genericName);
+        assertTrue("catalog id", stored.medicationId >= 0);
+        assertEquals(1_714_521_600_000L + 8 * 3600_000L, stored.timestampMillis);
+    }
+
+    @Test
+    public void resetReplacesTheLocalCopy() throws Exception {
+        server.enqueue(logs("\"3:c\"", false, row("a", 8), row("b", 9), row("c", 10)));
+        sync.sync();
+        takeSince();
+
+        // Rows were deleted from the sheet, so the web app no longer knows "3:c"
+        server.enqueue(logs("\"2:d\"", true, row("a", 8), row("d", 11)));
+        assertEquals(2, sync.sync());
+        assertEquals("3:c", takeSince());
+        assertEquals(ids("a", "d"), remoteIds());
+        assertEquals("2:d", database.getRemoteLogsCursor());
+    }
+
+    @Test
+    public void webAppWithoutDeltaSupportIsReplacedEveryTime() throws Exception {
+        server.enqueue(logs(null, false, row(null, 8), row(null, 9)));
+        assertEquals(2, sync.sync());
+        assertNull(takeSince());
+        assertNull(database.getRemoteLogsCursor());
+
+        // Rows without ids cannot be told apart, so the copy must be replaced, not appended to
+        server.enqueue(logs(null, false, row(null, 8), row(null, 9), row(null, 10)));
+        assertEquals(3, sync.sync());
+        assertNull("no cursor to send", takeSince());
+        assertEquals(3, database.getRemoteLogs().size());
+    }
+
+    @Test
+    public void failedRequestChangesNothing() throws Exception {
+        server.enqueue(logs("\"1:a\"", false, row("a", 8)));
+        sync.sync();
+        takeSince();
+
+        server.enqueue(new MockResponse().setResponseCode(500));
+        try {
+            sync.sync();
+            fail("expected the HTTP error");
+        } catch (IOException expected) {
+            // The mirror stays as it was
+        }
+        assertEquals("1:a", takeSince());
+
+        server.enqueue(new MockResponse()
+                .setHeader("Content-Type", "application/json")
+                .setBody("{\"success\": false, \"error\": \"Quota exceeded\"}"));
+        try {
+            sync.sync();
+            fail("expected the web app's error");
+        } catch (GoogleSheetsLogger.RejectedException expected) {
+            assertEquals("Quota exceeded", expected.getMessage());
+        }
+        takeSince();
+
+        assertEquals("1:a", database.getRemoteLogsCursor());
+        assertEquals(ids("a"), remoteIds());
+    }
+
+    @Test
+    public void fullResyncIgnoresTheCursor() throws Exception {
+        server.enqueue(logs("\"2:b\"", false, row("a", 8), row("b", 9)));
+        sync.sync();
+        takeSince();
+
+        server.enqueue(logs("\"1:b\"", false, row("b", 9)));
+        assertEquals(1, sync.fullResync());
+        assertNull(takeSince());
+        assertEquals(ids("b"), remoteIds());
+    }
+
+    /** Returns the "since" parameter of the next request, or null if it had none. */
+    private String takeSince() throws Exception {
+        RecordedRequest request = server.takeRequest(1, TimeUnit.SECONDS);
+        assertEquals("GET", request.getMethod());
+        assertEquals("logs", request.getRequestUrl().queryParameter("action"));
+        return request.getRequestUrl().queryParameter("since");
+    }
+
+    private List<String> remoteIds() {
+        List<String> ids = new ArrayList<>();
+        for (GoogleSheetsLogger.LogEntry log : database.getRemoteLogs()) {
+            ids.add(log.id);
+        }
+        return ids;
+    }
+
+    private static List<String> ids(String... ids) {
+        List<String> list = new ArrayList<>();
+        for (String id : ids) {
+            list.add(id);
+        }
+        return list;
+    }
+
+    /** A row logged on 2024-05-01 at {@code hour} UTC. */
+    private static String row(String id, int hour) {
+        return "{" + (id == null ? "" : "\"id\": \"" + id + "\", ")
+                + "\"timestamp\": \"2024-05-01T" + (hour < 10 ? "0" : "") + hour
+                + ":00:00.000Z\", \"medicationName\": \"Ibuprofen [Advil, Motrin]\", "
+                + "\"dose\": 200, \"reason\": \"Headache\"}";
+    }
+
+    /** A logs response; {@code cursor} is a JSON value, or null to leave it out. */
+    private static MockResponse logs(String cursor, boolean reset, String... rows) {
+        StringBuilder body = new StringBuilder("{\"success\": true, \"logs\": [");
+        for (int i = 0; i < rows.length; i++) {
+            if (i > 0) body.append(", ");
+            body.append(rows[i]);
+        }
+        body.append("]");
+        if (cursor != null) body.append(", \"cursor\": ").append(cursor);
+        if (reset) body.append(", \"reset\": true");
+        body.append("}");
+        return new MockResponse()
+                .setHeader("Content-Type", "application/json")
+                .setBody(body.toString());
+    }
+}
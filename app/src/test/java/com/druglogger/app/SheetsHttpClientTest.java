@@ -0,0 +1,208 @@
+package com.druglogger.app;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPOutputStream;
+
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okio.Buffer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * {@link SheetsHttpClient}'s redirect handling and response decoding against a
+ * local server. Redirects point back at the same server under another path.
+ */
+public class SheetsHttpClientTest {
+
+    private static final SheetsHttpClient.ResponseReader<String> TEXT = SheetsHttpClientTest::read;
+
+    private MockWebServer server;
+    private SheetsHttpClient client;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new MockWebServer();
+        server.start();
+        client = new SheetsHttpClient(server.url("/exec").toString());
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.shutdown();
+    }
+
+    @Test
+    public void permanentRedirectIsRemembered() throws Exception {
+        server.enqueue(redirect(308, "/moved"));
+        server.enqueue(text("first"));
+        server.enqueue(text("second"));
+
+        assertEquals("first", client.post("{\"n\": 1}", TEXT));
+        assertEquals("second", client.post("{\"n\": 2}", TEXT));
+
+        assertRequest("POST", "/exec", "{\"n\": 1}");
+        // A 308 keeps the method and body
+        assertRequest("POST", "/moved", "{\"n\": 1}");
+        assertRequest("POST", "/moved", "{\"n\": 2}");
+        assertEquals(3, server.getRequestCount());
+    }
+
+    @Test
+    public void movedPermanentlyIsRemembered() throws Exception {
+        server.enqueue(redirect(301, "/moved"));
+        server.enqueue(text("first"));
+        server.enqueue(text("second"));
+
+        assertEquals("first", client.get("", TEXT));
+        assertEquals("second", client.get("", TEXT));
+
+        assertRequest("GET", "/exec", "");
+        assertRequest("GET", "/moved", "");
+        assertRequest("GET", "/moved", "");
+    }
+
+    @Test
+    public void redirectOfAQueryIsNotRemembered() throws Exception {
+        server.enqueue(redirect(301, "/moved?action=fetchLogs"));
+        server.enqueue(text("first"));
+        server.enqueue(text("second"));
+
+        assertEquals("first", client.get("?action=fetchLogs", TEXT));
+        assertEquals("second", client.get("?action=fetchLogs", TEXT));
+
+        assertRequest("GET", "/exec?action=fetchLogs", "");
+        assertRequest("GET", "/moved?action=fetchLogs", "");
+        assertRequest("GET", "/exec?action=fetchLogs", "");
+    }
+
+    @Test
+    public void postIsFetchedWithGetAfterFound() throws Exception {
+        server.enqueue(redirect(302, "/result?id=1"));
+        server.enqueue(text("{\"success\": true}"));
+        server.enqueue(text("again"));
+
+        assertEquals("{\"success\": true}", client.post("{\"action\": \"log\"}", TEXT));
+        assertEquals("again", client.post("{\"action\": \"log\"}", TEXT));
+
+        assertRequest("POST", "/exec", "{\"action\": \"log\"}");
+        assertRequest("GET", "/result?id=1", "");
+        // Temporary, so the next request starts from the script URL
+        assertRequest("POST", "/exec", "{\"action\": \"log\"}");
+    }
+
+    @Test
+    public void gzipResponseIsDecoded() throws Exception {
+        String body = "{\"logs\": [], \"padding\": \"" + repeat('x', 4096) + "\"}";
+        server.enqueue(new MockResponse()
+                .setHeader("Content-Encoding", "gzip")
+                .setBody(new Buffer().write(gzip(body))));
+
+        assertEquals(body, client.get("?action=fetchLogs", TEXT));
+        assertEquals("gzip", server.takeRequest().getHeader("Accept-Encoding"));
+    }
+
+    @Test
+    public void errorStatusFails() throws Exception {
+        server.enqueue(new MockResponse().setResponseCode(500).setBody("Script error"));
+
+        assertFails(() -> client.post("{}", TEXT), "HTTP 500 from " + server.getHostName());
+        // Nothing remembered, so there is no second attempt
+        assertEquals(1, server.getRequestCount());
+    }
+
+    @Test
+    public void rememberedTargetIsDroppedOnError() throws Exception {
+        server.enqueue(redirect(308, "/moved"));
+        server.enqueue(text("first"));
+        server.enqueue(new MockResponse().setResponseCode(404));
+        server.enqueue(text("second"));
+        server.enqueue(text("third"));
+
+        assertEquals("first", client.post("{\"n\": 1}", TEXT));
+        assertEquals("second", client.post("{\"n\": 2}", TEXT));
+        assertEquals("third", client.post("{\"n\": 3}", TEXT));
+
+        assertRequest("POST", "/exec", "{\"n\": 1}");
+        assertRequest("POST", "/moved", "{\"n\": 1}");
+        assertRequest("POST", "/moved", "{\"n\": 2}");
+        assertRequest("POST", "/exec", "{\"n\": 2}");
+        assertRequest("POST", "/exec", "{\"n\": 3}");
+    }
+
+    @Test
+    public void errorAfterTheRetryFails() throws Exception {
+        server.enqueue(redirect(308, "/moved"));
+        server.enqueue(text("first"));
+        server.enqueue(new MockResponse().setResponseCode(404));
+        server.enqueue(new MockResponse().setResponseCode(503));
+
+        assertEquals("first", client.post("{}", TEXT));
+        assertFails(() -> client.post("{}", TEXT), "HTTP 503 from " + server.getHostName());
+        // One retry, from the script URL
+        assertEquals(4, server.getRequestCount());
+    }
+
+    private interface Call {
+        void run() throws IOException;
+    }
+
+    private static void assertFails(Call call, String message) {
+        try {
+            call.run();
+            fail("expected \"" + message + "\"");
+        } catch (IOException expected) {
+            assertEquals(message, expected.getMessage());
+        }
+    }
+
+    private void assertRequest(String method, String path, String body) throws Exception {
+        RecordedRequest request = server.takeRequest();
+        assertEquals(method, request.getMethod());
+        assertEquals(path, request.getPath());
+        assertEquals(body, request.getBody().readUtf8());
+    }
+
+    private static MockResponse redirect(int status, String location) {
+        return new MockResponse().setResponseCode(status).setHeader("Location", location);
+    }
+
+    private static MockResponse text(String body) {
+        return new MockResponse().setBody(body);
+    }
+
+    private static String read(Reader body) throws IOException {
+        StringBuilder out = new StringBuilder();
+        char[] buffer = new char[1024];
+        int read;
+        while ((read = body.read(buffer)) != -1) {
+            out.append(buffer, 0, read);
+        }
+        return out.toString();
+    }
+
+    private static byte[] gzip(String text) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (GZIPOutputStream gz = new GZIPOutputStream(out)) {
+            gz.write(text.getBytes(StandardCharsets.UTF_8));
+        }
+        return out.toByteArray();
+    }
+
+    private static String repeat(char c, int count) {
+        StringBuilder out = new StringBuilder(count);
+        for (int i = 0; i < count; i++) {
+            out.append(c);
+        }
+        return out.toString();
+    }
+}
@@ -0,0 +1,221 @@
+package com.druglogger.app;
+
+import android.content.Context;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * {@link SheetsOutbox} and {@link GoogleSheetsLogger} against a local stand-in
+ * for the web app. The outbox runs on its own single thread as in the app;
+ * each test waits for that thread to go idle before looking at the outcome.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class SheetsOutboxTest {
+
+    private static final String DATABASE_NAME = "outbox-test.db";
+    private static final long LOGGED_AT = 1_700_000_000_000L;
+
+    /** Records listener calls, which run on the outbox thread here. */
+    private static final class RecordingListener implements SheetsOutbox.Listener {
+        final List<Integer> synced = new ArrayList<>();
+        final List<String> failures = new ArrayList<>();
+
+        @Override
+        public synchronized void onSynced(int count) {
+            synced.add(count);
+        }
+
+        @Override
+        public synchronized void onSyncFailed(String errorMessage, long pending) {
+            failures.add(errorMessage);
+        }
+    }
+
+    private Context context;
+    private DrugLogDatabase database;
+    private MockWebServer server;
+    private ScheduledThreadPoolExecutor executor;
+    private SheetsOutbox outbox;
+    private RecordingListener listener;
+
+    @Before
+    public void setUp() throws Exception {
+        context = ApplicationProvider.getApplicationContext();
+        database = new DrugLogDatabase(context, DATABASE_NAME);
+        server = new MockWebServer();
+        server.start();
+        executor = new ScheduledThreadPoolExecutor(1);
+        executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+        GoogleSheetsLogger logger = new GoogleSheetsLogger(server.url("/exec").toString());
+        outbox = new SheetsOutbox(database, logger, executor, Runnable::run);
+        listener = new RecordingListener();
+        outbox.setListener(listener);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        outbox.stop();
+        executor.awaitTermination(5, TimeUnit.SECONDS);
+        server.shutdown();
+        database.close();
+        context.deleteDatabase(DATABASE_NAME);
+    }
+
+    @Test
+    public void confirmedBatchEmptiesTheOutbox() throws Exception {
+        List<String> keys = queue(3);
+        server.enqueue(json("{\"success\": true, \"stored\": 3}"));
+
+        outbox.flush();
+        awaitIdle();
+
+        JSONObject body = takeBody();
+        assertEquals("logBatch", body.getString("action"));
+        JSONArray rows = body.getJSONArray("rows");
+        assertEquals(keys, ids(rows));
+        JSONObject first = rows.getJSONObject(0);
+        assertEquals("Ibuprofen", first.getString("medicationName"));
+        assertEquals(200, first.getDouble("dose"), 0);
+        assertEquals("Headache", first.getString("reason"));
+        assertEquals("2023-11-14T22:13:20.000Z", first.getString("timestamp"));
+
+        assertEquals(0, database.getOutboxSize());
+        assertEquals(-1, database.getNextOutboxAttempt());
+        assertEquals(1, server.getRequestCount());
+        assertEquals(1, listener.synced.size());
+        assertEquals(3, (int) listener.synced.get(0));
+    }
+
+    @Test
+    public void rejectedBatchBacksOff() throws Exception {
+        queue(2);
+        // The batch, then the first of the single rows it is resent as
+        server.enqueue(json("{\"success\": false, \"error\": \"Sheet is full\"}"));
+        server.enqueue(json("{\"success\": false, \"error\": \"Sheet is full\"}"));
+
+        long before = System.currentTimeMillis();
+        outbox.flush();
+        awaitIdle();
+
+        assertEquals("logBatch", takeBody().getString("action"));
+        assertEquals("log", takeBody().getString("action"));
+        assertEquals(2, server.getRequestCount());
+        assertEquals(2, database.getOutboxSize());
+        long wait = database.getNextOutboxAttempt() - before;
+        assertTrue("waited " + wait, wait >= SheetsOutbox.INITIAL_BACKOFF_MILLIS * 8 / 10);
+        assertTrue("waited " + wait, wait <= SheetsOutbox.INITIAL_BACKOFF_MILLIS + 1000);
+        assertEquals(1, listener.failures.size());
+        assertEquals("Sheet is full", listener.failures.get(0));
+
+        // Nothing is due until the backoff has passed
+        outbox.flush();
+        awaitIdle();
+        assertEquals(2, server.getRequestCount());
+    }
+
+    @Test
+    public void retriedBatchReusesIdempotencyKeys() throws Exception {
+        List<String> keys = queue(3);
+        server.enqueue(new MockResponse().setResponseCode(503));
+        server.enqueue(json("{\"success\": true, \"stored\": 3}"));
+
+        outbox.flush();
+        awaitIdle();
+        assertEquals(3, database.getOutboxSize());
+        assertEquals(keys, ids(takeBody().getJSONArray("rows")));
+
+        outbox.retryNow();
+        awaitIdle();
+        assertEquals(keys, ids(takeBody().getJSONArray("rows")));
+        assertEquals(0, database.getOutboxSize());
+        assertEquals(1, listener.failures.size());
+        assertEquals(1, listener.synced.size());
+    }
+
+    @Test
+    public void unconfirmedBatchIsResentAsSingleRows() throws Exception {
+        List<String> keys = queue(2);
+        // A web app without logBatch support that still answers success
+        server.enqueue(json("{\"success\": true}"));
+        server.enqueue(json("{\"success\": true}"));
+        server.enqueue(json("{\"success\": true}"));
+
+        outbox.flush();
+        awaitIdle();
+
+        assertEquals("logBatch", takeBody().getString("action"));
+        List<String> sent = new ArrayList<>();
+        for (int i = 0; i < keys.size(); i++) {
+            JSONObject row = takeBody();
+            assertEquals("log", row.getString("action"));
+            sent.add(row.getString("id"));
+        }
+        assertEquals(keys, sent);
+        assertEquals(0, database.getOutboxSize());
+
+        // Later doses skip the batch request
+        queue(1);
+        server.enqueue(json("{\"success\": true}"));
+        outbox.flush();
+        awaitIdle();
+        assertEquals("log", takeBody().getString("action"));
+        assertEquals(4, server.getRequestCount());
+    }
+
+    /** Queues {@code count} doses without sending them and returns their keys in order. */
+    private List<String> queue(int count) {
+        List<String> keys = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            OutboxItem item = new OutboxItem("Ibuprofen", 200, "Headache",
+                    LOGGED_AT + i * 60_000L);
+            database.enqueueOutbox(item);
+            keys.add(item.getIdempotencyKey());
+        }
+        return keys;
+    }
+
+    /** Waits until the outbox thread has finished everything submitted so far. */
+    private void awaitIdle() throws Exception {
+        executor.submit(() -> { }).get(10, TimeUnit.SECONDS);
+    }
+
+    private JSONObject takeBody() throws Exception {
+        RecordedRequest request = server.takeRequest(1, TimeUnit.SECONDS);
+        assertEquals("POST", request.getMethod());
+        return new JSONObject(request.getBody().readUtf8());
+    }
+
+    private static List<String> ids(JSONArray rows) throws Exception {
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < rows.length(); i++) {
+            ids.add(rows.getJSONObject(i).getString("id"));
+        }
+        return ids;
+    }
+
+    private static MockResponse json(String body) {
+        return new MockResponse()
+                .setHeader("Content-Type", "application/json")
+                .setBody(body);
+    }
+}
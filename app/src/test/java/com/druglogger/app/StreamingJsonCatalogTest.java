@@ -0,0 +1,147 @@
+package com.druglogger.app;
+
+import android.content.Context;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * {@link StreamingJsonCatalog}, the fallback when medlist.bin cannot be read,
+ * against the binary catalog compiled from the same medlist.json, and on a
+ * small document of its own.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class StreamingJsonCatalogTest {
+
+    private static final String SMALL = "{\"version\": 1, \"medications\": [" +
+            "{\"generic_name\": \"Ibuprofen\", \"brand_names\": [\"Advil\", \"Motrin\"]," +
+            " \"indication\": {\"on_label\": [\"Pain\"], \"off_label\": []}," +
+            " \"doses\": [200, 400], \"maximum_daily_dosage\": \"1200 mg\"," +
+            " \"half_life\": null," +
+            " \"interactions_with_other_drugs_on_this_list\": [" +
+            "{\"drug\": \"Warfarin\", \"interaction\": \"Bleeding risk\"}]}," +
+            "{\"generic_name\": \"Warfarin\", \"brand_names\": [], \"dose_unit\": \"mcg\"," +
+            " \"indication\": {\"on_label\": [], \"off_label\": [\"Clots\"]}, \"doses\": [5]}" +
+            "]}";
+
+    private Context context;
+
+    @Before
+    public void setUp() {
+        context = ApplicationProvider.getApplicationContext();
+    }
+
+    @Test
+    public void matchesTheBinaryCatalog() throws IOException {
+        MedicationCatalog json = StreamingJsonCatalog.index(
+                () -> context.getAssets().open("medlist.json"));
+        MedicationCatalog binary = new BinaryMedicationCatalog(
+                ByteBuffer.wrap(readAsset(BinaryMedicationCatalog.ASSET_NAME)));
+        assertTrue(json.size() > 0);
+        assertEquals(binary.size(), json.size());
+
+        // Names and interactions come from the index pass, before any medication is read
+        for (int i = 0; i < json.size(); i++) {
+            assertEquals(binary.getGenericName(i), json.getGenericName(i));
+            assertEquals(binary.getBrandNames(i), json.getBrandNames(i));
+            assertInteractionsEqual(binary.getInteractions(i), json.getInteractions(i));
+        }
+        assertEquals(InteractionGraph.build(binary).getDiagnostics(),
+                InteractionGraph.build(json).getDiagnostics());
+
+        for (int i = 0; i < json.size(); i++) {
+            MedicationInfo expected = binary.get(i);
+            MedicationInfo actual = json.get(i);
+            String where = expected.getGenericName();
+            assertEquals(where, expected.getGenericName(), actual.getGenericName());
+            assertEquals(where, expected.getBrandNames(), actual.getBrandNames());
+            assertEquals(where, expected.getOnLabelUses(), actual.getOnLabelUses());
+            assertEquals(where, expected.getOffLabelUses(), actual.getOffLabelUses());
+            assertEquals(where, expected.getDoses(), actual.getDoses());
+            assertEquals(where, expected.getDoseUnit(), actual.getDoseUnit());
+            assertEquals(where, expected.getMaximumDailyDosage(), actual.getMaximumDailyDosage());
+            assertEquals(where, expected.getTimeRequiredBetweenDoses(),
+                    actual.getTimeRequiredBetweenDoses());
+            assertEquals(where, expected.getHalfLife(), actual.getHalfLife());
+            assertInteractionsEqual(expected.getInteractions(), actual.getInteractions());
+        }
+    }
+
+    @Test
+    public void smallDocument() throws IOException {
+        MedicationCatalog catalog = StreamingJsonCatalog.index(() -> stream(SMALL));
+        assertEquals(2, catalog.size());
+        assertEquals("Warfarin", catalog.getGenericName(1));
+        assertEquals(Arrays.asList("Advil", "Motrin"), catalog.getBrandNames(0));
+        assertEquals(Collections.emptyList(), catalog.getInteractions(1));
+
+        // Read out of order, so the second read starts a new pass
+        MedicationInfo warfarin = catalog.get(1);
+        assertEquals("mcg", warfarin.getDoseUnit());
+        assertEquals(Collections.singletonList("Clots"), warfarin.getOffLabelUses());
+        assertEquals("", warfarin.getMaximumDailyDosage());
+
+        MedicationInfo ibuprofen = catalog.get(0);
+        assertEquals("mg", ibuprofen.getDoseUnit());
+        assertEquals(Arrays.asList(200.0, 400.0), ibuprofen.getDoses());
+        assertEquals("1200 mg", ibuprofen.getMaximumDailyDosage());
+        assertEquals("", ibuprofen.getHalfLife());
+        assertEquals("Bleeding risk", ibuprofen.getInteractions().get(0).getInteraction());
+        assertSame(ibuprofen, catalog.get(0));
+    }
+
+    @Test
+    public void medicationWithoutANameIsRejected() {
+        try {
+            StreamingJsonCatalog.index(() -> stream(
+                    "{\"medications\": [{\"brand_names\": [\"Advil\"]}]}"));
+            fail("expected a medication without a generic name to fail");
+        } catch (IOException expected) {
+            assertEquals("Medication 0 has no generic_name", expected.getMessage());
+        }
+    }
+
+    private static void assertInteractionsEqual(List<MedicationInfo.Interaction> expected,
+                                                List<MedicationInfo.Interaction> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).getDrug(), actual.get(i).getDrug());
+            assertEquals(expected.get(i).getInteraction(), actual.get(i).getInteraction());
+        }
+    }
+
+    private byte[] readAsset(String name) throws IOException {
+        try (InputStream in = context.getAssets().open(name)) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            return out.toByteArray();
+        }
+    }
+
+    private static InputStream stream(String json) {
+        return new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8));
+    }
+}
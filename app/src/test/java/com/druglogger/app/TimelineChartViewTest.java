@@ -0,0 +1,166 @@
+package com.druglogger.app;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.view.View;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * {@link TimelineData} and {@link TimelineChartView} over two years of doses:
+ * the data is reduced to the columns asked for, and a frame draws at most
+ * one bar and two band points per visible column, whatever the zoom.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class TimelineChartViewTest {
+
+    private static final String DATABASE_NAME = "timeline-test.db";
+    private static final long START = 1_700_000_000_000L;
+    private static final long INTERVAL_MILLIS = 52 * 60_000L;
+    private static final int DOSES = 20_000;
+    private static final long END = START + DOSES * INTERVAL_MILLIS;
+    private static final double DOSE = 200;
+    private static final int WIDTH = 1000;
+    private static final int HEIGHT = 400;
+
+    private Context context;
+    private DrugLogDatabase database;
+    private double decayPerMilli;
+
+    @Before
+    public void setUp() throws IOException {
+        context = ApplicationProvider.getApplicationContext();
+        database = new DrugLogDatabase(context, DATABASE_NAME);
+        decayPerMilli = ConcentrationEstimator.decayPerMilli(2);
+        int[] added = {0};
+        database.importEntries(entry -> {
+            if (added[0] == DOSES) return false;
+            entry.setId(0);
+            entry.setDrugName("Ibuprofen");
+            entry.setDosage("200 mg");
+            entry.setDoseValue(DOSE);
+            entry.setDoseUnit("mg");
+            entry.setNotes(null);
+            entry.setTimestamp(START + added[0]++ * INTERVAL_MILLIS);
+            entry.setMedId(-1);
+            entry.setReason(null);
+            return true;
+        });
+    }
+
+    @After
+    public void tearDown() {
+        database.close();
+        context.deleteDatabase(DATABASE_NAME);
+    }
+
+    @Test
+    public void dosesAreSummedIntoTheRequestedColumns() {
+        TimelineData data = TimelineData.load(database, "Ibuprofen", 0, START, END, 500);
+        assertTrue("columns " + data.columns, data.columns <= 501);
+        assertTrue(data.from <= START && data.to >= END);
+        assertNull(data.levelMin);
+        assertEquals(DOSES * DOSE, sum(data.doseTotals), 0);
+    }
+
+    @Test
+    public void levelBandCoversEveryDose() {
+        TimelineData data = TimelineData.load(database, "Ibuprofen", decayPerMilli,
+                START, END, 500);
+        assertTrue("columns " + data.columns, data.columns <= 502);
+        assertEquals(DOSES * DOSE, sum(data.doseTotals), 0);
+        for (int c = 0; c < data.columns; c++) {
+            assertTrue("column " + c, data.levelMin[c] <= data.levelMax[c]);
+            if (data.doseTotals[c] > 0) {
+                // Right after a dose the level is at least that dose
+                assertTrue("column " + c, data.levelMax[c] >= DOSE);
+            }
+        }
+    }
+
+    @Test
+    public void frameDrawsAtMostOnePointPerVisibleColumn() {
+        List<long[]> requests = new ArrayList<>();
+        TimelineChartView view = layOut(requests);
+        view.setVisibleRange(START, END);
+        assertEquals(1, requests.size());
+        long[] request = requests.get(0);
+        view.setData(TimelineData.load(database, "Ibuprofen", decayPerMilli,
+                request[0], request[1], (int) request[2]));
+
+        draw(view);
+        int maxColumns = WIDTH / TimelineChartView.PIXELS_PER_COLUMN + 2;
+        assertTrue("bars " + view.drawnBars, view.drawnBars > 0);
+        assertTrue("band points " + view.drawnBandPoints,
+                view.drawnBandPoints <= 2 * maxColumns);
+        // Every column has doses in it, except perhaps the one holding the end of the range
+        int visibleColumns = view.drawnBandPoints / 2;
+        assertTrue("bars " + view.drawnBars, view.drawnBars >= visibleColumns - 1
+                && view.drawnBars <= visibleColumns);
+    }
+
+    @Test
+    public void zoomingInAsksForFinerData() {
+        List<long[]> requests = new ArrayList<>();
+        TimelineChartView view = layOut(requests);
+        view.setVisibleRange(START, END);
+        long[] request = requests.get(0);
+        view.setData(TimelineData.load(database, "Ibuprofen", decayPerMilli,
+                request[0], request[1], (int) request[2]));
+
+        // One day, still drawn from the coarse columns until finer data arrives
+        long dayFrom = START + 100 * 24 * 3600_000L;
+        view.setVisibleRange(dayFrom, dayFrom + 24 * 3600_000L);
+        assertEquals(2, requests.size());
+        draw(view);
+        assertTrue("bars " + view.drawnBars, view.drawnBars <= 2);
+
+        request = requests.get(1);
+        view.setData(TimelineData.load(database, "Ibuprofen", decayPerMilli,
+                request[0], request[1], (int) request[2]));
+        draw(view);
+        int maxColumns = WIDTH / TimelineChartView.PIXELS_PER_COLUMN + 2;
+        assertTrue("band points " + view.drawnBandPoints,
+                view.drawnBandPoints > 2 * 2 && view.drawnBandPoints <= 2 * maxColumns);
+        // A dose every 52 minutes puts about 28 in a day
+        assertTrue("bars " + view.drawnBars, view.drawnBars >= 27 && view.drawnBars <= 29);
+    }
+
+    /** A laid-out chart over the whole history that records the ranges it asks for. */
+    private TimelineChartView layOut(List<long[]> requests) {
+        TimelineChartView view = new TimelineChartView(context);
+        view.setRangeListener((from, to, columns) -> requests.add(new long[]{from, to, columns}));
+        view.setBounds(START, END);
+        view.measure(View.MeasureSpec.makeMeasureSpec(WIDTH, View.MeasureSpec.EXACTLY),
+                View.MeasureSpec.makeMeasureSpec(HEIGHT, View.MeasureSpec.EXACTLY));
+        view.layout(0, 0, WIDTH, HEIGHT);
+        return view;
+    }
+
+    private static void draw(View view) {
+        view.draw(new Canvas(Bitmap.createBitmap(WIDTH, HEIGHT, Bitmap.Config.ARGB_8888)));
+    }
+
+    private static double sum(float[] values) {
+        double sum = 0;
+        for (float value : values) {
+            sum += value;
+        }
+        return sum;
+    }
+}
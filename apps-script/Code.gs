@@ -0,0 +1,146 @@
+/**
+ * Google Apps Script web app behind GoogleSheetsLogger. Deploy it from the
+ * spreadsheet (Extensions > Apps Script) as a web app that runs as the owner,
+ * and put the deployment's /exec URL in GoogleSheetsLogger.SCRIPT_URL.
+ *
+ * The request and response formats are described under "Google Sheets web
+ * app" in TECHNICAL.md.
+ *
+ * Rows are kept on the "Log" sheet, one dose per row:
+ *   Timestamp | Medication | Dose | Reason | Id
+ * Id is the app's idempotency key. A row whose Id is already on the sheet is
+ * not added again, so the app can resend a batch whose response it lost.
+ */
+
+var SHEET_NAME = 'Log';
+var HEADER = ['Timestamp', 'Medication', 'Dose', 'Reason', 'Id'];
+var ID_COLUMN = 5;
+var LOCK_TIMEOUT_MILLIS = 30000;
+
+function doPost(e) {
+  var lock = LockService.getScriptLock();
+  try {
+    lock.waitLock(LOCK_TIMEOUT_MILLIS);
+  } catch (err) {
+    return respond({success: false, error: 'Busy, try again'});
+  }
+  try {
+    var body = JSON.parse(e.postData.contents);
+    if (body.action === 'log') {
+      return respond({success: true, stored: storeRows([body])});
+    }
+    if (body.action === 'logBatch') {
+      if (!(body.rows instanceof Array)) {
+        return respond({success: false, error: 'logBatch needs a rows array'});
+      }
+      return respond({success: true, stored: storeRows(body.rows)});
+    }
+    return respond({success: false, error: 'Unknown action: ' + body.action});
+  } catch (err) {
+    return respond({success: false, error: String(err)});
+  } finally {
+    lock.releaseLock();
+  }
+}
+
+function doGet(e) {
+  var action = e.parameter.action;
+  if (action !== 'logs') {
+    return respond({success: false, error: 'Unknown action: ' + action});
+  }
+  var values = dataRows(getSheet());
+  var since = parseCursor(e.parameter.since);
+  var start = 0;
+  var reset = false;
+  if (since) {
+    if (since.count >= 0 && since.count <= values.length
+        && (since.count === 0 || String(values[since.count - 1][ID_COLUMN - 1]) === since.id)) {
+      start = since.count;
+    } else {
+      // Rows before the cursor were deleted or reordered
+      reset = true;
+    }
+  }
+  var logs = [];
+  for (var i = start; i < values.length; i++) {
+    logs.push(toLog(values[i]));
+  }
+  var response = {success: true, logs: logs, cursor: cursorAt(values)};
+  if (reset) response.reset = true;
+  return respond(response);
+}
+
+/**
+ * Appends the rows whose id is not on the sheet yet, in one write, and
+ * returns how many of the given rows the sheet now holds.
+ */
+function storeRows(rows) {
+  var sheet = getSheet();
+  var seen = {};
+  dataRows(sheet).forEach(function (row) {
+    var id = String(row[ID_COLUMN - 1]);
+    if (id) seen[id] = true;
+  });
+  var values = [];
+  rows.forEach(function (row) {
+    var id = row.id ? String(row.id) : '';
+    if (id && seen[id]) return;
+    if (id) seen[id] = true;
+    var timestamp = row.timestamp ? new Date(row.timestamp) : new Date();
+    if (isNaN(timestamp.getTime())) timestamp = new Date();
+    values.push([timestamp, row.medicationName || '', Number(row.dose) || 0,
+                 row.reason || '', id]);
+  });
+  if (values.length > 0) {
+    sheet.getRange(sheet.getLastRow() + 1, 1, values.length, HEADER.length).setValues(values);
+  }
+  return rows.length;
+}
+
+function getSheet() {
+  var spreadsheet = SpreadsheetApp.getActiveSpreadsheet();
+  var sheet = spreadsheet.getSheetByName(SHEET_NAME);
+  if (!sheet) {
+    sheet = spreadsheet.insertSheet(SHEET_NAME);
+    sheet.appendRow(HEADER);
+    sheet.setFrozenRows(1);
+  }
+  return sheet;
+}
+
+/** Every row below the header. */
+function dataRows(sheet) {
+  var last = sheet.getLastRow();
+  if (last < 2) return [];
+  return sheet.getRange(2, 1, last - 1, HEADER.length).getValues();
+}
+
+function toLog(row) {
+  var log = {
+    timestamp: row[0],
+    medicationName: String(row[1]),
+    dose: row[2],
+    reason: String(row[3])
+  };
+  if (row[ID_COLUMN - 1]) log.id = String(row[ID_COLUMN - 1]);
+  return log;
+}
+
+/** "<row count>:<id of the last row>", so a cursor into a changed sheet is noticed. */
+function cursorAt(values) {
+  if (values.length === 0) return '0:';
+  return values.length + ':' + String(values[values.length - 1][ID_COLUMN - 1]);
+}
+
+function parseCursor(cursor) {
+  if (!cursor) return null;
+  var colon = cursor.indexOf(':');
+  var count = parseInt(cursor.substring(0, colon), 10);
+  if (colon < 0 || isNaN(count) || count < 0) return {count: -1, id: ''};
+  return {count: count, id: cursor.substring(colon + 1)};
+}
+
+function respond(object) {
+  return ContentService.createTextOutput(JSON.stringify(object))
+      .setMimeType(ContentService.MimeType.JSON);
+}
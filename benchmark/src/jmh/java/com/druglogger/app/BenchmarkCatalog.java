@@ -0,0 +1,95 @@
+package com.druglogger.app;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * The app's medlist.json and the binary catalog compiled from it, whose paths
+ * the build passes in the {@code medlist.json} and {@code medlist.bin} system
+ * properties, and synthetic dose histories over them.
+ */
+final class BenchmarkCatalog {
+
+    private BenchmarkCatalog() {
+    }
+
+    static String readJson() throws IOException {
+        String path = System.getProperty("medlist.json");
+        if (path == null) throw new IOException("Set -Dmedlist.json to the catalog's path");
+        return new String(Files.readAllBytes(Paths.get(path)), StandardCharsets.UTF_8);
+    }
+
+    /** Memory-maps the binary catalog, as the app maps its uncompressed asset. */
+    static MappedByteBuffer mapBinary() throws IOException {
+        String path = System.getProperty("medlist.bin");
+        if (path == null) throw new IOException("Set -Dmedlist.bin to the compiled catalog's path");
+        try (FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+    static List<MedicationInfo> parse(String json) throws JSONException {
+        JSONArray array = new JSONObject(json).getJSONArray("medications");
+        List<MedicationInfo> medications = new ArrayList<>(array.length());
+        for (int i = 0; i < array.length(); i++) {
+            medications.add(MedicationInfo.fromJson(array.getJSONObject(i)));
+        }
+        return medications;
+    }
+
+    /** Loads the catalog with its interaction graph built, as the app uses it. */
+    static List<MedicationInfo> load() throws IOException, JSONException {
+        List<MedicationInfo> medications = parse(readJson());
+        InteractionGraph.build(medications);
+        return medications;
+    }
+
+    /**
+     * Returns the medication the warning benchmarks log: the one with the most
+     * interactions among those with a half-life, so every rule has work to do.
+     */
+    static MedicationInfo busiest(List<MedicationInfo> medications) {
+        MedicationInfo busiest = medications.get(0);
+        for (MedicationInfo medication : medications) {
+            if (medication.getRules().halfLifeHours > 0 && medication.getInteractions().size()
+                    > busiest.getInteractions().size()) {
+                busiest = medication;
+            }
+        }
+        return busiest;
+    }
+
+    /**
+     * Returns {@code count} doses spread evenly over the {@code spanMillis}
+     * before {@code now}, newest first. A third are of {@code focus} and the
+     * rest of medications picked at random, with a fixed seed so every run
+     * sees the same history.
+     */
+    static List<DrugEntry> history(List<MedicationInfo> medications, MedicationInfo focus,
+                                   int count, long spanMillis, long now) {
+        Random random = new Random(42);
+        List<DrugEntry> entries = new ArrayList<>(count);
+        long spacing = Math.max(1, spanMillis / count);
+        for (int i = 0; i < count; i++) {
+            MedicationInfo medication = random.nextInt(3) == 0
+                    ? focus : medications.get(random.nextInt(medications.size()));
+            List<Double> doses = medication.getDoses();
+            double dose = doses.isEmpty() ? 1 : doses.get(random.nextInt(doses.size()));
+            entries.add(new DrugEntry(i + 1, medication.getGenericName(), null, dose,
+                    medication.getDoseUnit(), null, now - i * spacing));
+        }
+        return entries;
+    }
+}
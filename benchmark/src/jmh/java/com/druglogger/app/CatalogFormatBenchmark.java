@@ -0,0 +1,73 @@
+package com.druglogger.app;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Loading the catalog from medlist.bin against parsing medlist.json, both to
+ * the point where the name index is ready, which is what startup waits for,
+ * and with every medication decoded, which is what the warning checks need.
+ * Both files are read once, so disk time is left out.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CatalogFormatBenchmark {
+
+    private String json;
+    private ByteBuffer binary;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        json = BenchmarkCatalog.readJson();
+        binary = BenchmarkCatalog.mapBinary();
+    }
+
+    @Benchmark
+    public MedicationIndex jsonIndex() throws Exception {
+        return new MedicationIndex(new ListMedicationCatalog(BenchmarkCatalog.parse(json)));
+    }
+
+    @Benchmark
+    public MedicationIndex binaryIndex() throws Exception {
+        return new MedicationIndex(new BinaryMedicationCatalog(binary.duplicate()));
+    }
+
+    /** What startup builds for the warning checks, without decoding the medications. */
+    @Benchmark
+    public InteractionGraph binaryGraph() throws Exception {
+        return InteractionGraph.build(new BinaryMedicationCatalog(binary.duplicate()));
+    }
+
+    @Benchmark
+    public List<MedicationInfo> jsonAll() throws Exception {
+        return BenchmarkCatalog.parse(json);
+    }
+
+    @Benchmark
+    public List<MedicationInfo> binaryAll() throws Exception {
+        MedicationCatalog catalog = new BinaryMedicationCatalog(binary.duplicate());
+        List<MedicationInfo> all = new ArrayList<>(catalog.size());
+        for (int i = 0; i < catalog.size(); i++) {
+            all.add(catalog.get(i));
+        }
+        return all;
+    }
+}
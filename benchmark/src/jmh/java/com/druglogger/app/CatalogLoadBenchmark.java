@@ -0,0 +1,54 @@
+package com.druglogger.app;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The steps of loading the catalog from medlist.json: parsing every
+ * medication with its rules, building the name index, and resolving the
+ * interaction graph. The file is read once, so disk time is left out.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CatalogLoadBenchmark {
+
+    private String json;
+    private List<MedicationInfo> medications;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        json = BenchmarkCatalog.readJson();
+        medications = BenchmarkCatalog.parse(json);
+    }
+
+    @Benchmark
+    public List<MedicationInfo> parse() throws Exception {
+        return BenchmarkCatalog.parse(json);
+    }
+
+    @Benchmark
+    public MedicationIndex index() {
+        return new MedicationIndex(new ListMedicationCatalog(medications));
+    }
+
+    @Benchmark
+    public InteractionGraph interactionGraph() {
+        return InteractionGraph.build(medications);
+    }
+}
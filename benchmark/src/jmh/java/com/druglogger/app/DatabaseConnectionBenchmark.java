@@ -0,0 +1,162 @@
+package com.druglogger.app;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Inserting an entry and reading a 50-row page the way {@code DrugLogDatabase}
+ * does, over one long-lived WAL connection with statements compiled once,
+ * against the helper it replaced, which opened and closed the database around
+ * every call and looked up column indexes for every row. Android's SQLite
+ * wrapper is not available on a desktop JVM, so both patterns run through the
+ * SQLite JDBC driver on the same schema and indexes; only the connection
+ * handling differs.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DatabaseConnectionBenchmark {
+
+    private static final int ROWS = 10_000;
+    private static final int PAGE_SIZE = 50;
+    private static final long START = 1_600_000_000_000L;
+
+    private File file;
+    private String url;
+    private Connection connection;
+    private PreparedStatement insert;
+    private PreparedStatement page;
+    private long next;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        file = File.createTempFile("benchmark", ".db");
+        url = "jdbc:sqlite:" + file.getAbsolutePath();
+        connection = DriverManager.getConnection(url);
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("PRAGMA journal_mode=WAL");
+            statement.execute("CREATE TABLE entries (" +
+                    "id INTEGER PRIMARY KEY AUTOINCREMENT, drug_name TEXT NOT NULL, " +
+                    "dosage TEXT, dose_value REAL, dose_unit TEXT, notes TEXT, " +
+                    "timestamp INTEGER NOT NULL, med_id INTEGER, reason TEXT)");
+            statement.execute("CREATE INDEX idx_entries_timestamp ON entries (timestamp)");
+        }
+        insert = connection.prepareStatement("INSERT INTO entries (drug_name, dosage, " +
+                "dose_value, dose_unit, notes, timestamp, med_id, reason) " +
+                "VALUES (?, ?, ?, ?, ?, ?, ?, ?)");
+        page = connection.prepareStatement("SELECT * FROM entries " +
+                "WHERE timestamp <= ? AND (timestamp < ? OR id < ?) " +
+                "ORDER BY timestamp DESC, id DESC LIMIT " + PAGE_SIZE);
+        connection.setAutoCommit(false);
+        for (int i = 0; i < ROWS; i++) {
+            insertLongLived();
+        }
+        connection.commit();
+        connection.setAutoCommit(true);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws SQLException {
+        connection.close();
+        new File(file.getPath() + "-wal").delete();
+        new File(file.getPath() + "-shm").delete();
+        file.delete();
+    }
+
+    @Benchmark
+    public long insertLongLived() throws SQLException {
+        insert.clearParameters();
+        insert.setString(1, "Ibuprofen");
+        insert.setString(2, "200 mg");
+        insert.setDouble(3, 200);
+        insert.setString(4, "mg");
+        insert.setString(5, "benchmark");
+        insert.setLong(6, START + next++ * 60_000L);
+        insert.setNull(7, Types.INTEGER);
+        insert.setString(8, null);
+        return insert.executeUpdate();
+    }
+
+    @Benchmark
+    public long insertPerCall() throws SQLException {
+        try (Connection perCall = DriverManager.getConnection(url);
+             PreparedStatement statement = perCall.prepareStatement("INSERT INTO entries " +
+                     "(drug_name, dosage, notes, timestamp) VALUES (?, ?, ?, ?)")) {
+            statement.setString(1, "Ibuprofen");
+            statement.setString(2, "200 mg");
+            statement.setString(3, "benchmark");
+            statement.setLong(4, START + next++ * 60_000L);
+            return statement.executeUpdate();
+        }
+    }
+
+    @Benchmark
+    public List<DrugEntry> pageLongLived() throws SQLException {
+        page.setLong(1, Long.MAX_VALUE);
+        page.setLong(2, Long.MAX_VALUE);
+        page.setLong(3, Long.MAX_VALUE);
+        List<DrugEntry> entries = new ArrayList<>(PAGE_SIZE);
+        try (ResultSet rows = page.executeQuery()) {
+            // Column positions resolved once per query
+            int id = rows.findColumn("id");
+            int drugName = rows.findColumn("drug_name");
+            int dosage = rows.findColumn("dosage");
+            int doseValue = rows.findColumn("dose_value");
+            int doseUnit = rows.findColumn("dose_unit");
+            int notes = rows.findColumn("notes");
+            int timestamp = rows.findColumn("timestamp");
+            while (rows.next()) {
+                entries.add(new DrugEntry(rows.getLong(id), rows.getString(drugName),
+                        rows.getString(dosage), rows.getDouble(doseValue),
+                        rows.getString(doseUnit), rows.getString(notes),
+                        rows.getLong(timestamp)));
+            }
+        }
+        return entries;
+    }
+
+    @Benchmark
+    public List<DrugEntry> pagePerCall() throws SQLException {
+        List<DrugEntry> entries = new ArrayList<>(PAGE_SIZE);
+        try (Connection perCall = DriverManager.getConnection(url);
+             Statement statement = perCall.createStatement();
+             ResultSet rows = statement.executeQuery(
+                     "SELECT * FROM entries ORDER BY timestamp DESC LIMIT " + PAGE_SIZE)) {
+            while (rows.next()) {
+                entries.add(new DrugEntry(rows.getLong(rows.findColumn("id")),
+                        rows.getString(rows.findColumn("drug_name")),
+                        rows.getString(rows.findColumn("dosage")),
+                        rows.getDouble(rows.findColumn("dose_value")),
+                        rows.getString(rows.findColumn("dose_unit")),
+                        rows.getString(rows.findColumn("notes")),
+                        rows.getLong(rows.findColumn("timestamp"))));
+            }
+        }
+        return entries;
+    }
+}
@@ -0,0 +1,70 @@
+package com.druglogger.app;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One interaction check through the {@link InteractionGraph}: collecting the
+ * medications taken recently and intersecting them with the logged one's
+ * interactions. Every catalog medication is checked in turn, against recent
+ * names that include brand names, which resolve by matching rather than
+ * exactly.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class InteractionLookupBenchmark {
+
+    /** Distinct medications taken in the last day */
+    @Param({"1", "5", "20"})
+    public int recent;
+
+    private InteractionGraph graph;
+    private int medicationCount;
+    private MedicationRules.NameKey[] recentNames;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        List<MedicationInfo> medications = BenchmarkCatalog.parse(BenchmarkCatalog.readJson());
+        graph = InteractionGraph.build(medications);
+        medicationCount = medications.size();
+        recentNames = new MedicationRules.NameKey[recent];
+        for (int i = 0; i < recent; i++) {
+            MedicationInfo medication = medications.get((i * 7) % medicationCount);
+            String name = i % 4 == 3 && !medication.getBrandNames().isEmpty()
+                    ? medication.getBrandNames().get(0) : medication.getGenericName();
+            recentNames[i] = MedicationRules.NameKey.of(name);
+        }
+    }
+
+    @Benchmark
+    public List<String> check() {
+        int id = next;
+        next = (next + 1) % medicationCount;
+        InteractionGraph.ActiveSet active = graph.newActiveSet();
+        for (MedicationRules.NameKey name : recentNames) {
+            active.add(name);
+        }
+        List<String> warnings = new ArrayList<>();
+        graph.addWarnings(id, active, warnings);
+        return warnings;
+    }
+}
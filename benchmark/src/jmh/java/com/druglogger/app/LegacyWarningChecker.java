@@ -0,0 +1,154 @@
+package com.druglogger.app;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The warning checks as they were before {@link MedicationRules}: the dosing
+ * interval and maximum daily dose are parsed with a freshly compiled regex on
+ * every call, and every name comparison lower-cases and splits both names.
+ * Kept only so {@link RuleCompilationBenchmark} can compare against it; the
+ * messages match {@link WarningChecker}'s first four rules.
+ */
+final class LegacyWarningChecker {
+
+    private static final long DAY_MILLIS = 24 * 3600_000L;
+
+    private LegacyWarningChecker() {
+    }
+
+    static List<String> checkWarnings(MedicationInfo medication, double dose,
+                                      List<WarningChecker.RecentLog> recentLogs) {
+        List<String> warnings = new ArrayList<>();
+        long now = System.currentTimeMillis();
+        checkTooSoon(medication, recentLogs, now, warnings);
+        checkMaxDailyDose(medication, dose, recentLogs, now, warnings);
+        checkInteractions(medication, recentLogs, warnings);
+        checkColestipolTiming(medication, recentLogs, now, warnings);
+        return warnings;
+    }
+
+    private static void checkTooSoon(MedicationInfo medication,
+                                     List<WarningChecker.RecentLog> recentLogs,
+                                     long now, List<String> warnings) {
+        String timeBetween = medication.getTimeRequiredBetweenDoses();
+        if (timeBetween == null || timeBetween.isEmpty()) return;
+
+        double requiredHours = parseHoursFromTimeString(timeBetween);
+        if (requiredHours <= 0) return;
+
+        long requiredMillis = (long) (requiredHours * 3600_000L);
+        String medName = medication.getGenericName().toLowerCase();
+
+        for (WarningChecker.RecentLog log : recentLogs) {
+            if (namesMatch(log.medicationName.toLowerCase(), medName)) {
+                long elapsed = now - log.timestampMillis;
+                if (elapsed < requiredMillis && elapsed >= 0) {
+                    warnings.add(String.format(
+                            "⚠ Too soon: You last took %s %.1f hours ago. Recommended interval: %s.",
+                            medication.getGenericName(), elapsed / 3600_000.0, timeBetween));
+                    return;
+                }
+            }
+        }
+    }
+
+    private static void checkMaxDailyDose(MedicationInfo medication, double proposedDose,
+                                          List<WarningChecker.RecentLog> recentLogs,
+                                          long now, List<String> warnings) {
+        String maxDaily = medication.getMaximumDailyDosage();
+        if (maxDaily == null || maxDaily.isEmpty()) return;
+
+        double maxDose = parseFirstNumber(maxDaily);
+        if (maxDose <= 0) return;
+
+        long oneDayAgo = now - DAY_MILLIS;
+        String medName = medication.getGenericName().toLowerCase();
+        double totalToday = proposedDose;
+
+        for (WarningChecker.RecentLog log : recentLogs) {
+            if (log.timestampMillis >= oneDayAgo
+                    && namesMatch(log.medicationName.toLowerCase(), medName)) {
+                totalToday += log.dose;
+            }
+        }
+
+        if (totalToday > maxDose) {
+            warnings.add(String.format(
+                    "⚠ Exceeds max daily dose: This dose would bring your 24h total to %.1f %s. Maximum: %s.",
+                    totalToday, medication.getDoseUnit(), maxDaily));
+        }
+    }
+
+    private static void checkInteractions(MedicationInfo medication,
+                                          List<WarningChecker.RecentLog> recentLogs,
+                                          List<String> warnings) {
+        if (medication.getInteractions() == null || medication.getInteractions().isEmpty()) return;
+
+        long oneDayAgo = System.currentTimeMillis() - DAY_MILLIS;
+        List<String> recentMedNames = new ArrayList<>();
+        for (WarningChecker.RecentLog log : recentLogs) {
+            if (log.timestampMillis >= oneDayAgo) {
+                recentMedNames.add(log.medicationName.toLowerCase());
+            }
+        }
+
+        for (MedicationInfo.Interaction interaction : medication.getInteractions()) {
+            String interactingDrug = interaction.getDrug().toLowerCase();
+            for (String recentMed : recentMedNames) {
+                if (namesMatch(recentMed, interactingDrug)) {
+                    warnings.add(String.format("⚠ Interaction with %s: %s",
+                            interaction.getDrug(), interaction.getInteraction()));
+                    break;
+                }
+            }
+        }
+    }
+
+    private static void checkColestipolTiming(MedicationInfo medication,
+                                              List<WarningChecker.RecentLog> recentLogs,
+                                              long now, List<String> warnings) {
+        if (medication.getGenericName().toLowerCase().contains("colestipol")) return;
+
+        long fourHoursAgo = now - 4 * 3600_000L;
+        for (WarningChecker.RecentLog log : recentLogs) {
+            if (log.medicationName.toLowerCase().contains("colestipol")
+                    && log.timestampMillis >= fourHoursAgo && log.timestampMillis <= now) {
+                warnings.add(String.format(
+                        "⚠ Colestipol was taken %.1f hours ago. It can reduce absorption of other medications. "
+                                + "Wait at least 4 hours after colestipol before taking other oral medications.",
+                        (now - log.timestampMillis) / 3600_000.0));
+                return;
+            }
+        }
+    }
+
+    private static double parseHoursFromTimeString(String s) {
+        if (s == null) return 0;
+        Pattern p = Pattern.compile("(\\d+(?:\\.\\d+)?)(?:\\s*-\\s*(\\d+(?:\\.\\d+)?))?\\s*hour");
+        Matcher m = p.matcher(s.toLowerCase());
+        return m.find() ? Double.parseDouble(m.group(1)) : 0;
+    }
+
+    private static double parseFirstNumber(String s) {
+        if (s == null) return 0;
+        Pattern p = Pattern.compile("(\\d+(?:\\.\\d+)?)");
+        Matcher m = p.matcher(s);
+        return m.find() ? Double.parseDouble(m.group(1)) : 0;
+    }
+
+    private static boolean namesMatch(String a, String b) {
+        if (a.equals(b)) return true;
+        String aRoot = extractFirstWord(a);
+        String bRoot = extractFirstWord(b);
+        if (aRoot.length() >= 4 && bRoot.length() >= 4 && aRoot.equals(bRoot)) return true;
+        return a.startsWith(b + " ") || b.startsWith(a + " ");
+    }
+
+    private static String extractFirstWord(String name) {
+        if (name == null || name.trim().isEmpty()) return "";
+        return name.trim().split("\\s+")[0];
+    }
+}
@@ -0,0 +1,78 @@
+package com.druglogger.app;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * What precompiling {@link MedicationRules} costs and saves: compiling the
+ * rules of the whole catalog once, against checking one dose with the
+ * compiled rules and with {@link LegacyWarningChecker}, which parses the
+ * medication's text fields and normalizes names on every call. Both checks
+ * read the same list of recent logs from the last two days; the compiled
+ * path also runs the accumulation rule, which the legacy one lacks.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RuleCompilationBenchmark {
+
+    @Param({"10", "1000", "100000"})
+    public int doses;
+
+    private List<MedicationInfo> medications;
+    private MedicationInfo medication;
+    private double dose;
+    private List<WarningChecker.RecentLog> recentLogs;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        medications = BenchmarkCatalog.load();
+        medication = BenchmarkCatalog.busiest(medications);
+        dose = medication.getDoses().isEmpty() ? 1 : medication.getDoses().get(0);
+
+        List<DrugEntry> history = BenchmarkCatalog.history(medications, medication, doses,
+                2 * WarningChecker.DAY_MILLIS, System.currentTimeMillis());
+        recentLogs = new ArrayList<>(history.size());
+        for (DrugEntry entry : history) {
+            recentLogs.add(new WarningChecker.RecentLog(entry.getDrugName(),
+                    entry.getDoseValue(), entry.getTimestamp()));
+        }
+    }
+
+    /** Done once per catalog load; the score does not depend on {@code doses}. */
+    @Benchmark
+    public MedicationRules[] compileCatalog() {
+        MedicationRules[] rules = new MedicationRules[medications.size()];
+        for (int i = 0; i < rules.length; i++) {
+            rules[i] = MedicationRules.compile(medications.get(i));
+        }
+        return rules;
+    }
+
+    @Benchmark
+    public List<String> compiledCheck() {
+        return WarningChecker.checkWarnings(medication, dose, recentLogs, medications);
+    }
+
+    @Benchmark
+    public List<String> legacyCheck() {
+        return LegacyWarningChecker.checkWarnings(medication, dose, recentLogs);
+    }
+}
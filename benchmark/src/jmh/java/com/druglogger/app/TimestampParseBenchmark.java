@@ -0,0 +1,82 @@
+package com.druglogger.app;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.text.ParsePosition;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing the timestamps of a 100,000-row sheet with {@link SheetTimestamps},
+ * against one shared SimpleDateFormat for the same format, which is how rows
+ * were read before. Rows are an hour apart, so they cross DST changes in the
+ * parser's zone, and come as ISO 8601 UTC, as the web app serializes sheet
+ * dates, or in the sheet's display format.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TimestampParseBenchmark {
+
+    private static final int ROWS = 100_000;
+    private static final long START = 1_700_000_000_000L;
+    private static final TimeZone ZONE = TimeZone.getTimeZone("America/New_York");
+
+    @Param({"iso", "display"})
+    public String format;
+
+    private String[] values;
+    private SheetTimestamps parser;
+    private SimpleDateFormat dateFormat;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        boolean iso = format.equals("iso");
+        SimpleDateFormat writer = iso
+                ? new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'", Locale.US)
+                : new SimpleDateFormat("M/d/yyyy H:mm:ss", Locale.US);
+        writer.setTimeZone(iso ? TimeZone.getTimeZone("UTC") : ZONE);
+        values = new String[ROWS];
+        for (int i = 0; i < ROWS; i++) {
+            values[i] = writer.format(new Date(START + i * 3600_000L + i % 1000));
+        }
+        parser = new SheetTimestamps(ZONE);
+        dateFormat = (SimpleDateFormat) writer.clone();
+    }
+
+    @Benchmark
+    public long sheetTimestamps() {
+        long sum = 0;
+        for (String value : values) {
+            sum += parser.parse(value);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public long simpleDateFormat() {
+        long sum = 0;
+        for (String value : values) {
+            Date date = dateFormat.parse(value, new ParsePosition(0));
+            sum += date == null ? SheetTimestamps.INVALID : date.getTime();
+        }
+        return sum;
+    }
+}
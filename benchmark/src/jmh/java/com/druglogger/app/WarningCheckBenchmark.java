@@ -0,0 +1,71 @@
+package com.druglogger.app;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Checking one dose against histories of 10 to a million doses, through the
+ * {@link DoseLedger} as the app does and through the older list of
+ * {@link WarningChecker.RecentLog}s that rules without an aggregate form use.
+ * The history fills the ledger's retention window, so the ledger keeps all of it.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class WarningCheckBenchmark {
+
+    @Param({"10", "1000", "100000", "1000000"})
+    public int doses;
+
+    private List<MedicationInfo> medications;
+    private MedicationInfo medication;
+    private double dose;
+    private DoseLedger ledger;
+    private List<WarningChecker.RecentLog> recentLogs;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        medications = BenchmarkCatalog.load();
+        medication = BenchmarkCatalog.busiest(medications);
+        dose = medication.getDoses().isEmpty() ? 1 : medication.getDoses().get(0);
+
+        // Inside the retention window, so no dose expires while the trial runs
+        long span = DoseLedger.RETENTION_MILLIS - DoseLedger.DAY_MILLIS;
+        List<DrugEntry> history = BenchmarkCatalog.history(medications, medication, doses,
+                span, System.currentTimeMillis());
+        ledger = new DoseLedger();
+        ledger.rebuild(history);
+        recentLogs = new ArrayList<>(history.size());
+        for (DrugEntry entry : history) {
+            recentLogs.add(new WarningChecker.RecentLog(entry.getDrugName(),
+                    entry.getDoseValue(), entry.getTimestamp()));
+        }
+    }
+
+    @Benchmark
+    public List<String> ledger() {
+        return WarningChecker.checkWarnings(medication, dose, ledger, medications);
+    }
+
+    @Benchmark
+    public List<String> recentLogs() {
+        return WarningChecker.checkWarnings(medication, dose, recentLogs, medications);
+    }
+}
@@ -0,0 +1,112 @@
+import groovy.json.JsonSlurper
+import org.gradle.api.DefaultTask
+import org.gradle.api.file.DirectoryProperty
+import org.gradle.api.file.RegularFileProperty
+import org.gradle.api.tasks.InputFile
+import org.gradle.api.tasks.OutputDirectory
+import org.gradle.api.tasks.PathSensitive
+import org.gradle.api.tasks.PathSensitivity
+import org.gradle.api.tasks.TaskAction
+
+import java.nio.charset.StandardCharsets
+
+/**
+ * Compiles medlist.json into medlist.bin, the binary catalog read by
+ * BinaryMedicationCatalog, in the output directory.
+ *
+ * Layout (all integers big-endian, all offsets absolute from the start of the file):
+ *   header:  int magic 'MEDC', int version, int record count, int records offset
+ *   records: one fixed-size record per medication, RECORD_FIELDS ints each:
+ *            generic name, brand names, on-label uses, off-label uses, doses,
+ *            dose unit, maximum daily dosage, time between doses, half-life,
+ *            interactions
+ *   data:    string           = int byte length, UTF-8 bytes
+ *            string list      = int count, count string offsets
+ *            double list      = int count, count doubles
+ *            interaction list = int count, count (drug offset, text offset) pairs
+ * Identical strings are stored once.
+ */
+abstract class CompileMedCatalogTask extends DefaultTask {
+    static final int MAGIC = 0x4D454443 // "MEDC"
+    static final int VERSION = 1
+    static final int HEADER_SIZE = 16
+    static final int RECORD_FIELDS = 10
+
+    @InputFile
+    @PathSensitive(PathSensitivity.RELATIVE)
+    abstract RegularFileProperty getJsonFile()
+
+    @OutputDirectory
+    abstract DirectoryProperty getOutputDir()
+
+    @TaskAction
+    void compile() {
+        def meds = new JsonSlurper().parse(jsonFile.get().asFile, 'UTF-8').medications
+
+        def data = new ByteArrayOutputStream()
+        def dataOut = new DataOutputStream(data)
+        def dataStart = HEADER_SIZE + meds.size() * RECORD_FIELDS * 4
+        def stringOffsets = [:]
+
+        def writeString = { String s ->
+            def value = s ?: ''
+            def existing = stringOffsets[value]
+            if (existing != null) return existing
+            def offset = dataStart + dataOut.size()
+            def bytes = value.getBytes(StandardCharsets.UTF_8)
+            dataOut.writeInt(bytes.length)
+            dataOut.write(bytes)
+            stringOffsets[value] = offset
+            return offset
+        }
+        def writeStringList = { List<String> list ->
+            def offsets = (list ?: []).collect { writeString(it as String) }
+            def offset = dataStart + dataOut.size()
+            dataOut.writeInt(offsets.size())
+            offsets.each { dataOut.writeInt(it as int) }
+            return offset
+        }
+
+        def records = []
+        meds.each { med ->
+            def interactions = (med.interactions_with_other_drugs_on_this_list ?: []).collect {
+                [writeString(it.drug as String), writeString(it.interaction as String)]
+            }
+            def record = [
+                    writeString(med.generic_name as String),
+                    writeStringList(med.brand_names),
+                    writeStringList(med.indication.on_label),
+                    writeStringList(med.indication.off_label),
+                    0,
+                    writeString((med.dose_unit ?: 'mg') as String),
+                    writeString(med.maximum_daily_dosage as String),
+                    writeString(med.time_required_between_doses as String),
+                    writeString(med.half_life as String),
+                    0,
+            ]
+
+            record[4] = dataStart + dataOut.size()
+            dataOut.writeInt(med.doses.size())
+            med.doses.each { dataOut.writeDouble(it as double) }
+
+            record[9] = dataStart + dataOut.size()
+            dataOut.writeInt(interactions.size())
+            interactions.each { pair ->
+                dataOut.writeInt(pair[0] as int)
+                dataOut.writeInt(pair[1] as int)
+            }
+            records << record
+        }
+
+        def outFile = new File(outputDir.get().asFile, 'medlist.bin')
+        outFile.parentFile.mkdirs()
+        outFile.withDataOutputStream { out ->
+            out.writeInt(MAGIC)
+            out.writeInt(VERSION)
+            out.writeInt(records.size())
+            out.writeInt(HEADER_SIZE)
+            records.each { record -> record.each { out.writeInt(it as int) } }
+            out.write(data.toByteArray())
+        }
+    }
+}
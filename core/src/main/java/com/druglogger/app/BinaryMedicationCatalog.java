@@ -0,0 +1,141 @@
+package com.druglogger.app;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads the catalog that the {@code compileMedCatalog} Gradle task builds from
+ * medlist.json (see app/medcatalog.gradle for the layout).
+ *
+ * Opening the catalog only validates the header. Each record is decoded the
+ * first time it is asked for, straight from the (usually memory-mapped)
+ * buffer, so startup cost does not grow with the number of medications.
+ */
+class BinaryMedicationCatalog implements MedicationCatalog {
+
+    static final String ASSET_NAME = "medlist.bin";
+
+    private static final int MAGIC = 0x4D454443; // "MEDC"
+    private static final int VERSION = 1;
+    private static final int RECORD_SIZE = 10 * 4;
+
+    private static final int FIELD_GENERIC_NAME = 0;
+    private static final int FIELD_BRAND_NAMES = 1;
+    private static final int FIELD_ON_LABEL = 2;
+    private static final int FIELD_OFF_LABEL = 3;
+    private static final int FIELD_DOSES = 4;
+    private static final int FIELD_DOSE_UNIT = 5;
+    private static final int FIELD_MAX_DAILY = 6;
+    private static final int FIELD_TIME_BETWEEN = 7;
+    private static final int FIELD_HALF_LIFE = 8;
+    private static final int FIELD_INTERACTIONS = 9;
+
+    private final ByteBuffer buffer;
+    private final int count;
+    private final int recordsOffset;
+    private final MedicationInfo[] materialized;
+
+    BinaryMedicationCatalog(ByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+        if (buffer.limit() < 16 || buffer.getInt(0) != MAGIC) {
+            throw new IOException("Not a medication catalog");
+        }
+        if (buffer.getInt(4) != VERSION) {
+            throw new IOException("Unsupported catalog version " + buffer.getInt(4));
+        }
+        count = buffer.getInt(8);
+        recordsOffset = buffer.getInt(12);
+        if (count < 0 || recordsOffset + (long) count * RECORD_SIZE > buffer.limit()) {
+            throw new IOException("Truncated medication catalog");
+        }
+        materialized = new MedicationInfo[count];
+    }
+
+    @Override
+    public int size() {
+        return count;
+    }
+
+    @Override
+    public synchronized String getGenericName(int index) {
+        return readString(field(index, FIELD_GENERIC_NAME));
+    }
+
+    @Override
+    public synchronized List<String> getBrandNames(int index) {
+        return readStringList(field(index, FIELD_BRAND_NAMES));
+    }
+
+    @Override
+    public synchronized List<MedicationInfo.Interaction> getInteractions(int index) {
+        return readInteractions(field(index, FIELD_INTERACTIONS));
+    }
+
+    @Override
+    public synchronized MedicationInfo get(int index) {
+        MedicationInfo med = materialized[index];
+        if (med == null) {
+            med = MedicationInfo.create(
+                    readString(field(index, FIELD_GENERIC_NAME)),
+                    readStringList(field(index, FIELD_BRAND_NAMES)),
+                    readStringList(field(index, FIELD_ON_LABEL)),
+                    readStringList(field(index, FIELD_OFF_LABEL)),
+                    readDoubleList(field(index, FIELD_DOSES)),
+                    readString(field(index, FIELD_DOSE_UNIT)),
+                    readString(field(index, FIELD_MAX_DAILY)),
+                    readString(field(index, FIELD_TIME_BETWEEN)),
+                    readString(field(index, FIELD_HALF_LIFE)),
+                    readInteractions(field(index, FIELD_INTERACTIONS)));
+            materialized[index] = med;
+        }
+        return med;
+    }
+
+    private int field(int index, int field) {
+        if (index < 0 || index >= count) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", size: " + count);
+        }
+        return buffer.getInt(recordsOffset + index * RECORD_SIZE + field * 4);
+    }
+
+    private String readString(int offset) {
+        int length = buffer.getInt(offset);
+        byte[] bytes = new byte[length];
+        buffer.position(offset + 4);
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private List<String> readStringList(int offset) {
+        int size = buffer.getInt(offset);
+        List<String> list = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            list.add(readString(buffer.getInt(offset + 4 + i * 4)));
+        }
+        return list;
+    }
+
+    private List<Double> readDoubleList(int offset) {
+        int size = buffer.getInt(offset);
+        List<Double> list = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            list.add(buffer.getDouble(offset + 4 + i * 8));
+        }
+        return list;
+    }
+
+    private List<MedicationInfo.Interaction> readInteractions(int offset) {
+        int size = buffer.getInt(offset);
+        List<MedicationInfo.Interaction> list = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            int pair = offset + 4 + i * 8;
+            list.add(new MedicationInfo.Interaction(
+                    readString(buffer.getInt(pair)),
+                    readString(buffer.getInt(pair + 4))));
+        }
+        return list;
+    }
+}
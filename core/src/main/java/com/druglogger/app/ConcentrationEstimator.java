@@ -0,0 +1,120 @@
+package com.druglogger.app;
+
+/**
+ * Estimates how much of one medication is still in the body by superposing
+ * first-order elimination curves, one per dose: a dose of {@code d} taken at
+ * {@code t0} leaves {@code d * exp(-k * (t - t0))} at time {@code t}, where
+ * {@code k} is ln 2 over the half-life. Absorption is taken as instant, so
+ * the estimate errs high, which is the safe side for the accumulation
+ * warning. Levels are in the medication's dose unit.
+ *
+ * The estimator keeps the sum as one level at the time of the latest dose
+ * rather than a list of terms. Adding or removing a dose changes it by that
+ * dose's term, and the level at a later time is one multiplication away.
+ * Once the level decays below {@link #NEGLIGIBLE_FRACTION} of the largest
+ * dose seen, every term is dropped and the level is zero.
+ *
+ * Not thread-safe; {@link DoseLedger} only uses it under its own lock.
+ */
+final class ConcentrationEstimator {
+
+    private static final double HOUR_MILLIS = 3600_000.0;
+
+    /** Levels below this fraction of the largest dose count as nothing left. */
+    static final double NEGLIGIBLE_FRACTION = 1e-4;
+
+    private final double decayPerMilli;
+    private double level;
+    private long levelTime = Long.MIN_VALUE;
+    private double largestDose;
+
+    ConcentrationEstimator(double decayPerMilli) {
+        this.decayPerMilli = decayPerMilli;
+    }
+
+    /** Returns the elimination rate constant for a half-life, or 0 if it is unknown. */
+    static double decayPerMilli(double halfLifeHours) {
+        return halfLifeHours > 0 ? Math.log(2) / (halfLifeHours * HOUR_MILLIS) : 0;
+    }
+
+    /**
+     * Returns how long after a dose its term falls below
+     * {@link #NEGLIGIBLE_FRACTION} of it, which is as far back as doses matter.
+     */
+    static long horizonMillis(double decayPerMilli) {
+        return decayPerMilli > 0
+                ? (long) Math.ceil(-Math.log(NEGLIGIBLE_FRACTION) / decayPerMilli)
+                : 0;
+    }
+
+    /** Returns what is left of {@code amount} {@code elapsedMillis} after it was taken. */
+    static double remaining(double amount, long elapsedMillis, double decayPerMilli) {
+        return amount * Math.exp(-decayPerMilli * elapsedMillis);
+    }
+
+    double decayPerMilli() {
+        return decayPerMilli;
+    }
+
+    /** Time of the latest dose added, or {@link Long#MIN_VALUE} if none was. */
+    long latestTime() {
+        return levelTime;
+    }
+
+    void add(long time, double amount) {
+        largestDose = Math.max(largestDose, amount);
+        if (time >= levelTime) {
+            level = levelTime == Long.MIN_VALUE ? amount : decayTo(time) + amount;
+            levelTime = time;
+        } else {
+            level += remaining(amount, levelTime - time, decayPerMilli);
+        }
+    }
+
+    void remove(long time, double amount) {
+        if (time > levelTime) return;
+        level -= remaining(amount, levelTime - time, decayPerMilli);
+        // Rounding, or a term that was already dropped
+        if (level < largestDose * NEGLIGIBLE_FRACTION) level = 0;
+    }
+
+    /** Returns the level at {@code time}, which must not be before {@link #latestTime()}. */
+    double levelAt(long time) {
+        return levelTime == Long.MIN_VALUE ? 0 : decayTo(time);
+    }
+
+    private double decayTo(long time) {
+        double decayed = remaining(level, time - levelTime, decayPerMilli);
+        if (decayed < largestDose * NEGLIGIBLE_FRACTION) {
+            level = 0;
+            return 0;
+        }
+        return decayed;
+    }
+
+    /**
+     * Adds the level of one medication at {@code start + i * step} to
+     * {@code levels[i]} for every sample, in one pass over the doses and the
+     * samples. Between samples the level is multiplied by the decay over one
+     * step, and each dose adds its term at the first sample at or after it,
+     * so a whole day costs one multiplication per sample and one exponential
+     * per dose.
+     *
+     * @param doseTimes   Dose times, oldest first
+     * @param doseAmounts Dose amounts, in the same order
+     */
+    static void addTimeline(long[] doseTimes, double[] doseAmounts, int doseCount,
+                            double decayPerMilli, long start, long step, double[] levels) {
+        double stepFactor = Math.exp(-decayPerMilli * step);
+        double level = 0;
+        int d = 0;
+        for (int i = 0; i < levels.length; i++) {
+            long time = start + i * step;
+            level *= stepFactor;
+            for (; d < doseCount && doseTimes[d] <= time; d++) {
+                level += remaining(doseAmounts[d], time - doseTimes[d], decayPerMilli);
+            }
+            levels[i] += level;
+        }
+    }
+}
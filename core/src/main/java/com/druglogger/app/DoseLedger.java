@@ -0,0 +1,392 @@
+package com.druglogger.app;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * In-memory view of recent doses, kept per medication name with a rolling
+ * 24-hour total, the time of the latest dose and the estimated amount still
+ * in the body.
+ *
+ * The ledger is updated as entries are added to or deleted from
+ * {@link DrugLogDatabase} and is rebuilt from the database when first used.
+ * Doses logged on other devices come from the local mirror of the Google
+ * Sheet and are swapped in as a whole after each refresh; a sheet row that
+ * is the copy of a local entry is left out, so no dose is counted twice.
+ * Doses older than the retention period are dropped as time moves on, so
+ * answering "last dose" or "total in the last day" for a medication only
+ * touches that medication's aggregates.
+ *
+ * All methods are synchronized on the ledger. Callers that read several
+ * aggregates for one decision should hold the ledger's lock around them.
+ */
+public class DoseLedger {
+
+    /** Window of the rolling total. */
+    static final long DAY_MILLIS = WarningChecker.DAY_MILLIS;
+
+    /**
+     * How long doses are kept. Longer than a day so that "too soon" checks on
+     * medications with multi-day intervals still see the previous dose.
+     */
+    static final long RETENTION_MILLIS = 7 * DAY_MILLIS;
+
+    /**
+     * A sheet row at most this far from a local entry of the same medication
+     * and amount is taken to be that entry's copy. Rows sent from the outbox
+     * carry the entry's own time; older rows were stamped by the sheet on
+     * arrival.
+     */
+    static final long DUPLICATE_WINDOW_MILLIS = 2 * 60_000L;
+
+    private final Map<String, Track> tracksByName = new HashMap<>();
+    private final Map<String, List<Track>> tracksByRoot = new HashMap<>();
+    private final Map<Long, Dose> dosesById = new HashMap<>();
+    /** Doses from the sheet mirror, with negative ids so they never clash with entry ids. */
+    private List<DrugEntry> remoteEntries = Collections.emptyList();
+
+    // Reusable search keys; only touched while holding the ledger's lock.
+    private final Dose lowProbe = new Dose(0, 0, 0, null);
+    private final Dose highProbe = new Dose(0, 0, 0, null);
+
+    /** Replaces the ledger's local entries with the given ones. Remote doses are kept. */
+    public synchronized void rebuild(List<DrugEntry> entries) {
+        tracksByName.clear();
+        tracksByRoot.clear();
+        dosesById.clear();
+        for (DrugEntry entry : entries) {
+            add(entry);
+        }
+        addRemote();
+    }
+
+    /**
+     * Replaces the doses taken from the sheet mirror. Each entry's id must be
+     * negative. Rows matching a local entry are skipped, each local entry
+     * absorbing at most one row.
+     */
+    public synchronized void replaceRemote(List<DrugEntry> entries) {
+        for (DrugEntry entry : remoteEntries) {
+            remove(entry.getId());
+        }
+        remoteEntries = new ArrayList<>(entries);
+        addRemote();
+    }
+
+    private void addRemote() {
+        Set<Dose> matched = new HashSet<>();
+        for (DrugEntry entry : remoteEntries) {
+            Dose local = findLocalCopy(entry, matched);
+            if (local != null) {
+                matched.add(local);
+            } else {
+                add(entry);
+            }
+        }
+    }
+
+    /** Returns an unmatched local dose that {@code remote} is the sheet copy of, or null. */
+    private Dose findLocalCopy(DrugEntry remote, Set<Dose> matched) {
+        Track track = tracksByName.get(MedicationRules.NameKey.of(remote.getDrugName()).full);
+        if (track == null) return null;
+        lowProbe.set(remote.getTimestamp() - DUPLICATE_WINDOW_MILLIS, Long.MIN_VALUE);
+        highProbe.set(remote.getTimestamp() + DUPLICATE_WINDOW_MILLIS, Long.MAX_VALUE);
+        Dose best = null;
+        for (Dose dose : track.doses.subSet(lowProbe, true, highProbe, true)) {
+            if (dose.id < 0 || dose.amount != remote.getDoseValue() || matched.contains(dose)) {
+                continue;
+            }
+            if (best == null || Math.abs(dose.timestamp - remote.getTimestamp())
+                    < Math.abs(best.timestamp - remote.getTimestamp())) {
+                best = dose;
+            }
+        }
+        return best;
+    }
+
+    public synchronized void add(DrugEntry entry) {
+        if (dosesById.containsKey(entry.getId())) return;
+
+        MedicationRules.NameKey key = MedicationRules.NameKey.of(entry.getDrugName());
+        Track track = tracksByName.get(key.full);
+        if (track == null) {
+            track = new Track(key);
+            tracksByName.put(key.full, track);
+            List<Track> sameRoot = tracksByRoot.get(key.root);
+            if (sameRoot == null) {
+                sameRoot = new ArrayList<>(1);
+                tracksByRoot.put(key.root, sameRoot);
+            }
+            sameRoot.add(track);
+        }
+        Dose dose = new Dose(entry.getId(), entry.getTimestamp(), entry.getDoseValue(), track);
+        track.add(dose);
+        dosesById.put(dose.id, dose);
+    }
+
+    public synchronized void remove(long entryId) {
+        Dose dose = dosesById.remove(entryId);
+        if (dose == null) return;
+        dose.track.remove(dose);
+        if (dose.track.doses.isEmpty()) {
+            dropTrack(dose.track);
+        }
+    }
+
+    /** Drops all local entries. Remote doses are kept. */
+    public synchronized void clear() {
+        rebuild(new ArrayList<>());
+    }
+
+    /**
+     * Returns the time of the latest dose at or before {@code now} of any
+     * medication matching {@code name}, or -1 if there is none.
+     */
+    synchronized long lastDoseMillis(MedicationRules.NameKey name, long now) {
+        expire(now);
+        long last = -1;
+        List<Track> candidates = tracksByRoot.get(name.root);
+        if (candidates == null) return last;
+        for (int i = 0; i < candidates.size(); i++) {
+            Track track = candidates.get(i);
+            if (track.key.matches(name)) {
+                last = Math.max(last, track.latestAtOrBefore(now));
+            }
+        }
+        return last;
+    }
+
+    /** Returns the total dose of medications matching {@code name} over the last day. */
+    synchronized double dailyTotal(MedicationRules.NameKey name, long now) {
+        expire(now);
+        double total = 0;
+        List<Track> candidates = tracksByRoot.get(name.root);
+        if (candidates == null) return total;
+        for (int i = 0; i < candidates.size(); i++) {
+            Track track = candidates.get(i);
+            if (track.key.matches(name)) {
+                total += track.daySum(now - DAY_MILLIS);
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Returns the estimated amount of medications matching {@code name} still
+     * in the body at {@code now}, from their retained doses (see
+     * {@link ConcentrationEstimator}). Each track keeps its running level, so
+     * this costs one multiplication per matching track.
+     */
+    synchronized double level(MedicationRules.NameKey name, double decayPerMilli, long now) {
+        expire(now);
+        double level = 0;
+        List<Track> candidates = tracksByRoot.get(name.root);
+        if (candidates == null) return level;
+        for (int i = 0; i < candidates.size(); i++) {
+            Track track = candidates.get(i);
+            if (track.key.matches(name)) {
+                level += track.level(decayPerMilli, now);
+            }
+        }
+        return level;
+    }
+
+    /**
+     * Returns the estimated level of medications matching {@code name} at
+     * {@code count} times {@code step} apart from {@code start}, computed in
+     * one pass over the retained doses.
+     */
+    synchronized double[] levelTimeline(MedicationRules.NameKey name, double decayPerMilli,
+                                        long start, long step, int count) {
+        double[] levels = new double[count];
+        List<Track> candidates = tracksByRoot.get(name.root);
+        if (candidates == null || count == 0) return levels;
+        highProbe.set(start + (count - 1) * step, Long.MAX_VALUE);
+        for (int i = 0; i < candidates.size(); i++) {
+            Track track = candidates.get(i);
+            if (!track.key.matches(name)) continue;
+            Set<Dose> doses = track.doses.headSet(highProbe, true);
+            long[] times = new long[doses.size()];
+            double[] amounts = new double[times.length];
+            int n = 0;
+            for (Dose dose : doses) {
+                times[n] = dose.timestamp;
+                amounts[n++] = dose.amount;
+            }
+            ConcentrationEstimator.addTimeline(times, amounts, n, decayPerMilli, start, step,
+                    levels);
+        }
+        return levels;
+    }
+
+    /** Returns one track per medication name with at least one retained dose. */
+    synchronized Collection<Track> tracks(long now) {
+        expire(now);
+        return tracksByName.values();
+    }
+
+    /** Returns retained doses at or after {@code sinceMillis}, newest first. */
+    synchronized List<WarningChecker.RecentLog> recentLogs(long sinceMillis) {
+        List<Dose> doses = new ArrayList<>();
+        lowProbe.set(sinceMillis, Long.MIN_VALUE);
+        for (Track track : tracksByName.values()) {
+            doses.addAll(track.doses.tailSet(lowProbe, true));
+        }
+        List<WarningChecker.RecentLog> logs = new ArrayList<>(doses.size());
+        for (Dose dose : doses) {
+            logs.add(new WarningChecker.RecentLog(
+                    dose.track.key.full, dose.amount, dose.timestamp));
+        }
+        Collections.sort(logs, (a, b) -> Long.compare(b.timestampMillis, a.timestampMillis));
+        return logs;
+    }
+
+    /** Drops doses that fell out of the retention period. */
+    private void expire(long now) {
+        lowProbe.set(now - RETENTION_MILLIS, Long.MIN_VALUE);
+        for (Iterator<Track> it = tracksByName.values().iterator(); it.hasNext(); ) {
+            Track track = it.next();
+            if (track.doses.isEmpty() || track.doses.first().compareTo(lowProbe) >= 0) continue;
+
+            for (Iterator<Dose> doses = track.doses.headSet(lowProbe).iterator(); doses.hasNext(); ) {
+                Dose dose = doses.next();
+                if (dose.timestamp >= track.daySince) track.daySum -= dose.amount;
+                if (track.estimator != null) track.estimator.remove(dose.timestamp, dose.amount);
+                dosesById.remove(dose.id);
+                doses.remove();
+            }
+            if (track.doses.isEmpty()) {
+                it.remove();
+                removeFromRoot(track);
+            }
+        }
+    }
+
+    private void dropTrack(Track track) {
+        tracksByName.remove(track.key.full);
+        removeFromRoot(track);
+    }
+
+    private void removeFromRoot(Track track) {
+        List<Track> sameRoot = tracksByRoot.get(track.key.root);
+        if (sameRoot == null) return;
+        sameRoot.remove(track);
+        if (sameRoot.isEmpty()) tracksByRoot.remove(track.key.root);
+    }
+
+    /** Retained doses of one medication name, oldest first. */
+    final class Track {
+        final MedicationRules.NameKey key;
+        private final TreeSet<Dose> doses = new TreeSet<>();
+        /** Start of the window {@link #daySum} currently covers. */
+        private long daySince = Long.MIN_VALUE;
+        private double daySum;
+        /** Running level for the last decay rate asked for, created on first use. */
+        private ConcentrationEstimator estimator;
+
+        private Track(MedicationRules.NameKey key) {
+            this.key = key;
+        }
+
+        private void add(Dose dose) {
+            doses.add(dose);
+            if (dose.timestamp >= daySince) daySum += dose.amount;
+            if (estimator != null) estimator.add(dose.timestamp, dose.amount);
+        }
+
+        private void remove(Dose dose) {
+            doses.remove(dose);
+            if (dose.timestamp >= daySince) daySum -= dose.amount;
+            if (estimator != null) estimator.remove(dose.timestamp, dose.amount);
+            if (doses.isEmpty()) daySum = 0;
+        }
+
+        /**
+         * Returns the estimated level at {@code now}. The running level is
+         * built from the retained doses the first time and kept up to date as
+         * doses come and go; a dose dated after {@code now} makes it sum the
+         * earlier doses directly instead.
+         */
+        double level(double decayPerMilli, long now) {
+            if (estimator == null || estimator.decayPerMilli() != decayPerMilli) {
+                estimator = new ConcentrationEstimator(decayPerMilli);
+                for (Dose dose : doses) {
+                    estimator.add(dose.timestamp, dose.amount);
+                }
+            }
+            if (now >= estimator.latestTime()) return estimator.levelAt(now);
+
+            double level = 0;
+            highProbe.set(now, Long.MAX_VALUE);
+            for (Dose dose : doses.headSet(highProbe, true)) {
+                level += ConcentrationEstimator.remaining(
+                        dose.amount, now - dose.timestamp, decayPerMilli);
+            }
+            return level;
+        }
+
+        /** Returns the time of the latest dose at or before {@code now}, or -1. */
+        long latestAtOrBefore(long now) {
+            highProbe.set(now, Long.MAX_VALUE);
+            Dose dose = doses.floor(highProbe);
+            return dose == null ? -1 : dose.timestamp;
+        }
+
+        /** Returns the time of the latest retained dose, including future-dated ones. */
+        long latest() {
+            return doses.isEmpty() ? -1 : doses.last().timestamp;
+        }
+
+        /**
+         * Returns the total of doses at or after {@code since}. The window slides
+         * incrementally, so only doses crossing its start since the last call are
+         * visited.
+         */
+        double daySum(long since) {
+            if (since == daySince) return daySum;
+            boolean forward = since > daySince;
+            lowProbe.set(Math.min(since, daySince), Long.MIN_VALUE);
+            highProbe.set(Math.max(since, daySince), Long.MIN_VALUE);
+            for (Dose dose : doses.subSet(lowProbe, highProbe)) {
+                daySum += forward ? -dose.amount : dose.amount;
+            }
+            daySince = since;
+            if (doses.isEmpty()) daySum = 0;
+            return daySum;
+        }
+    }
+
+    /** One logged dose, ordered by time and then by entry id. */
+    static final class Dose implements Comparable<Dose> {
+        private long id;
+        private long timestamp;
+        final double amount;
+        final Track track;
+
+        private Dose(long id, long timestamp, double amount, Track track) {
+            this.id = id;
+            this.timestamp = timestamp;
+            this.amount = amount;
+            this.track = track;
+        }
+
+        private void set(long timestamp, long id) {
+            this.timestamp = timestamp;
+            this.id = id;
+        }
+
+        @Override
+        public int compareTo(Dose other) {
+            int byTime = Long.compare(timestamp, other.timestamp);
+            return byTime != 0 ? byTime : Long.compare(id, other.id);
+        }
+    }
+}
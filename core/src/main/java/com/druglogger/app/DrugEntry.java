@@ -0,0 +1,139 @@
+package com.druglogger.app;
+
+public class DrugEntry {
+    private long id;
+    private String drugName;
+    private String dosage;
+    private double doseValue;
+    private String doseUnit;
+    private String notes;
+    private long timestamp;
+    // Catalog position of the medication, or -1 when it is not known
+    private int medId = -1;
+    private String reason;
+    // Display cache for getFormattedDate(). Concurrent callers at worst format twice.
+    private String formattedDate;
+    private int formattedGeneration;
+
+    public DrugEntry(long id, String drugName, String dosage, double doseValue, String doseUnit,
+                     String notes, long timestamp) {
+        this(id, drugName, dosage, doseValue, doseUnit, notes, timestamp, -1, null);
+    }
+
+    public DrugEntry(long id, String drugName, String dosage, double doseValue, String doseUnit,
+                     String notes, long timestamp, int medId, String reason) {
+        this.id = id;
+        this.drugName = drugName;
+        this.dosage = dosage;
+        this.doseValue = doseValue;
+        this.doseUnit = doseUnit;
+        this.notes = notes;
+        this.timestamp = timestamp;
+        this.medId = medId;
+        this.reason = reason;
+    }
+
+    public DrugEntry(String drugName, double doseValue, String doseUnit, String notes) {
+        this.drugName = drugName;
+        this.dosage = formatDose(doseValue, doseUnit);
+        this.doseValue = doseValue;
+        this.doseUnit = doseUnit;
+        this.notes = notes;
+        this.timestamp = System.currentTimeMillis();
+    }
+
+    /** Formats a dose for display, e.g. 50.0 and "mg" -> "50 mg". */
+    public static String formatDose(double value, String unit) {
+        String number = (value == Math.floor(value)) ?
+                String.valueOf((long) value) : String.valueOf(value);
+        return unit == null || unit.isEmpty() ? number : number + " " + unit;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public void setId(long id) {
+        this.id = id;
+    }
+
+    public String getDrugName() {
+        return drugName;
+    }
+
+    public void setDrugName(String drugName) {
+        this.drugName = drugName;
+    }
+
+    public String getDosage() {
+        return dosage;
+    }
+
+    public void setDosage(String dosage) {
+        this.dosage = dosage;
+    }
+
+    public double getDoseValue() {
+        return doseValue;
+    }
+
+    public void setDoseValue(double doseValue) {
+        this.doseValue = doseValue;
+    }
+
+    public String getDoseUnit() {
+        return doseUnit;
+    }
+
+    public void setDoseUnit(String doseUnit) {
+        this.doseUnit = doseUnit;
+    }
+
+    public String getNotes() {
+        return notes;
+    }
+
+    public void setNotes(String notes) {
+        this.notes = notes;
+    }
+
+    /** Returns the catalog position of the medication, or -1 when it is not known. */
+    public int getMedId() {
+        return medId;
+    }
+
+    public void setMedId(int medId) {
+        this.medId = medId;
+    }
+
+    public String getReason() {
+        return reason;
+    }
+
+    public void setReason(String reason) {
+        this.reason = reason;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public void setTimestamp(long timestamp) {
+        this.timestamp = timestamp;
+        this.formattedDate = null;
+    }
+
+    /**
+     * Returns the timestamp formatted for display. The string is built once
+     * and reused until the timestamp, locale or time zone changes, so binding
+     * the entry to a row again allocates nothing.
+     */
+    public String getFormattedDate() {
+        int generation = EntryDateFormat.generation();
+        if (formattedDate == null || formattedGeneration != generation) {
+            formattedDate = EntryDateFormat.format(timestamp);
+            formattedGeneration = generation;
+        }
+        return formattedDate;
+    }
+}
@@ -0,0 +1,53 @@
+package com.druglogger.app;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+
+/**
+ * Formats entry timestamps for display with one SimpleDateFormat per thread
+ * instead of one per call.
+ *
+ * Formatters take the locale and time zone current when they are built, so
+ * {@link #invalidate} must be called when either changes. Invalidation bumps
+ * a generation number; each thread's formatter and every formatted string
+ * cached in a {@link DrugEntry} is rebuilt the next time it is used.
+ */
+final class EntryDateFormat {
+
+    private static final String PATTERN = "MMM dd, yyyy hh:mm a";
+
+    private static volatile int generation;
+
+    private static final ThreadLocal<EntryDateFormat> FORMATS = new ThreadLocal<>();
+
+    private final SimpleDateFormat format;
+    private final Date date = new Date();
+    private final int formatGeneration;
+
+    private EntryDateFormat(int formatGeneration) {
+        this.format = new SimpleDateFormat(PATTERN, Locale.getDefault());
+        this.formatGeneration = formatGeneration;
+    }
+
+    /** Discards every formatter and cached string, e.g. after a locale or time zone change. */
+    static void invalidate() {
+        generation++;
+    }
+
+    /** Current generation; a string formatted under an older one is stale. */
+    static int generation() {
+        return generation;
+    }
+
+    static String format(long timestampMillis) {
+        int current = generation;
+        EntryDateFormat f = FORMATS.get();
+        if (f == null || f.formatGeneration != current) {
+            f = new EntryDateFormat(current);
+            FORMATS.set(f);
+        }
+        f.date.setTime(timestampMillis);
+        return f.format.format(f.date);
+    }
+}
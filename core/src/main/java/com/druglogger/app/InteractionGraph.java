@@ -0,0 +1,253 @@
+package com.druglogger.app;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Interactions between the medications of one catalog, resolved once when the
+ * catalog is loaded.
+ *
+ * Each medication is identified by its position in the catalog. Every
+ * interaction target is resolved to the medications it names, and each edge is
+ * stored in the adjacency sets of both ends, so an interaction listed only on
+ * one of two medications is found whichever of them is being logged. Checking
+ * a dose then intersects the medication's adjacency set with the set of
+ * medications taken recently.
+ *
+ * Targets that name no medication in the catalog are kept as diagnostics and
+ * still matched by name, as are logged names that are not in the catalog.
+ *
+ * The graph is built from the catalog's names and interaction lists only, so
+ * building it does not create a {@link MedicationInfo} for every medication.
+ */
+public class InteractionGraph {
+
+    /** Upper bound on cached log-name resolutions, as for {@link MedicationRules.NameKey}. */
+    private static final int MAX_CACHED_NAMES = 1024;
+    private static final int[] NONE = new int[0];
+
+    private final MedicationCatalog catalog;
+    private final MedicationRules.NameKey[] names;
+    private final BitSet[] adjacency;
+    /** Per medication, its own interactions as the catalog lists them. */
+    private final List<List<MedicationInfo.Interaction>> interactions;
+    /** Per medication, the name of each of its own interaction targets. */
+    private final MedicationRules.NameKey[][] targetNames;
+    /** Per medication, the medications each of its own interactions resolved to. */
+    private final BitSet[][] targets;
+    /** Per medication, interactions listed only on the other medication of the pair. */
+    private final List<List<Incoming>> incoming;
+    private final List<String> diagnostics = new ArrayList<>();
+    private final Map<String, int[]> resolvedNames = new ConcurrentHashMap<>();
+
+    private InteractionGraph(MedicationCatalog catalog) {
+        int count = catalog.size();
+        this.catalog = catalog;
+        names = new MedicationRules.NameKey[count];
+        adjacency = new BitSet[count];
+        interactions = new ArrayList<>(count);
+        targetNames = new MedicationRules.NameKey[count][];
+        targets = new BitSet[count][];
+        incoming = new ArrayList<>(count);
+        for (int id = 0; id < count; id++) {
+            names[id] = MedicationRules.NameKey.of(catalog.getGenericName(id));
+            adjacency[id] = new BitSet(count);
+            interactions.add(catalog.getInteractions(id));
+            incoming.add(new ArrayList<>());
+        }
+
+        for (int id = 0; id < count; id++) {
+            List<MedicationInfo.Interaction> own = interactions.get(id);
+            targetNames[id] = new MedicationRules.NameKey[own.size()];
+            targets[id] = new BitSet[own.size()];
+            for (int i = 0; i < targets[id].length; i++) {
+                String drug = own.get(i).getDrug();
+                targetNames[id][i] = MedicationRules.NameKey.of(drug);
+                BitSet resolved = resolveTarget(drug);
+                targets[id][i] = resolved;
+                if (resolved.isEmpty()) {
+                    diagnostics.add(catalog.getGenericName(id)
+                            + ": interaction target \"" + drug + "\" is not in the medication list");
+                }
+                adjacency[id].or(resolved);
+            }
+        }
+
+        // Mirror every edge, remembering which ones only the other end describes
+        for (int id = 0; id < count; id++) {
+            BitSet forward = adjacency[id];
+            for (int other = forward.nextSetBit(0); other >= 0; other = forward.nextSetBit(other + 1)) {
+                if (adjacency[other].get(id)) continue;
+                for (int i = 0; i < targets[id].length; i++) {
+                    if (targets[id][i].get(other)) {
+                        incoming.get(other).add(new Incoming(id, i));
+                    }
+                }
+            }
+        }
+        for (int id = 0; id < count; id++) {
+            for (Incoming edge : incoming.get(id)) {
+                adjacency[id].set(edge.source);
+            }
+        }
+
+    }
+
+    /**
+     * Builds the graph for medications already in memory and attaches it to
+     * all of them, which {@link WarningChecker} then checks through it.
+     */
+    public static InteractionGraph build(List<MedicationInfo> medications) {
+        InteractionGraph graph = new InteractionGraph(new ListMedicationCatalog(medications));
+        for (int id = 0; id < medications.size(); id++) {
+            graph.attach(medications.get(id), id);
+        }
+        return graph;
+    }
+
+    /**
+     * Builds the graph for a catalog without creating its medications. Attach
+     * it to each medication taken from the catalog with {@link #attach}.
+     */
+    static InteractionGraph build(MedicationCatalog catalog) {
+        return new InteractionGraph(catalog);
+    }
+
+    /** Lets {@link WarningChecker} check the medication at catalog position {@code id} through this graph. */
+    void attach(MedicationInfo medication, int id) {
+        medication.getRules().attach(this, id);
+    }
+
+    /** Interaction targets that did not resolve to any medication, one message each. */
+    public List<String> getDiagnostics() {
+        return diagnostics;
+    }
+
+    /**
+     * Returns the medications a logged name refers to: the one with exactly
+     * that generic name, or else every one whose name matches it.
+     */
+    int[] resolveLogName(MedicationRules.NameKey name) {
+        int[] ids = resolvedNames.get(name.full);
+        if (ids != null) return ids;
+
+        BitSet matches = new BitSet(names.length);
+        for (int id = 0; id < names.length; id++) {
+            if (names[id].full.equals(name.full)) {
+                matches.clear();
+                matches.set(id);
+                break;
+            }
+            if (names[id].matches(name)) matches.set(id);
+        }
+        ids = matches.isEmpty() ? NONE : new int[matches.cardinality()];
+        for (int i = 0, id = matches.nextSetBit(0); id >= 0; id = matches.nextSetBit(id + 1)) {
+            ids[i++] = id;
+        }
+        if (resolvedNames.size() < MAX_CACHED_NAMES) {
+            resolvedNames.put(name.full, ids);
+        }
+        return ids;
+    }
+
+    /**
+     * Medications taken recently, collected for one check. Names that are not
+     * exactly a catalog medication's generic name are also kept as names, so
+     * interactions still match them the way they matched before resolution.
+     */
+    final class ActiveSet {
+        private final BitSet ids = new BitSet(names.length);
+        private List<MedicationRules.NameKey> unresolved;
+
+        void add(MedicationRules.NameKey name) {
+            int[] resolved = resolveLogName(name);
+            for (int id : resolved) ids.set(id);
+            if (resolved.length != 1 || !names[resolved[0]].full.equals(name.full)) {
+                if (unresolved == null) unresolved = new ArrayList<>();
+                unresolved.add(name);
+            }
+        }
+    }
+
+    ActiveSet newActiveSet() {
+        return new ActiveSet();
+    }
+
+    /**
+     * Adds a warning for each interaction between medication {@code id} and
+     * the active medications. The medication's own interactions come first,
+     * in the order they are listed, followed by ones only listed on the other
+     * medication.
+     */
+    void addWarnings(int id, ActiveSet active, List<String> warnings) {
+        boolean anyById = adjacency[id].intersects(active.ids);
+        if (!anyById && active.unresolved == null) return;
+
+        List<MedicationInfo.Interaction> own = interactions.get(id);
+        for (int i = 0; i < targets[id].length; i++) {
+            if ((anyById && targets[id][i].intersects(active.ids))
+                    || matchesUnresolved(targetNames[id][i], active)) {
+                addWarning(own.get(i).getDrug(), own.get(i).getInteraction(), warnings);
+            }
+        }
+        if (!anyById) return;
+        for (Incoming edge : incoming.get(id)) {
+            if (active.ids.get(edge.source)) {
+                addWarning(catalog.getGenericName(edge.source),
+                        interactions.get(edge.source).get(edge.index).getInteraction(), warnings);
+            }
+        }
+    }
+
+    static void addWarning(String drug, String interaction, List<String> warnings) {
+        warnings.add(String.format("⚠ Interaction with %s: %s", drug, interaction));
+    }
+
+    private static boolean matchesUnresolved(MedicationRules.NameKey target, ActiveSet active) {
+        if (active.unresolved == null) return false;
+        for (MedicationRules.NameKey name : active.unresolved) {
+            if (name.matches(target)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Resolves an interaction target to medications by name. A target such as
+     * "NSAIDs (Celecoxib, Ibuprofen)" that names no medication itself is
+     * resolved through the names listed in its parentheses.
+     */
+    private BitSet resolveTarget(String drug) {
+        BitSet resolved = matchNames(MedicationRules.NameKey.of(drug));
+        int open = drug.indexOf('(');
+        int close = drug.lastIndexOf(')');
+        if (resolved.isEmpty() && open >= 0 && close > open) {
+            for (String member : drug.substring(open + 1, close).split(",")) {
+                resolved.or(matchNames(MedicationRules.NameKey.of(member.trim())));
+            }
+        }
+        return resolved;
+    }
+
+    private BitSet matchNames(MedicationRules.NameKey target) {
+        BitSet matches = new BitSet(names.length);
+        if (target.full.isEmpty()) return matches;
+        for (int id = 0; id < names.length; id++) {
+            if (names[id].matches(target)) matches.set(id);
+        }
+        return matches;
+    }
+
+    /** An interaction listed on {@code source}, at {@code index}, whose other end is this medication. */
+    private static final class Incoming {
+        final int source;
+        final int index;
+
+        Incoming(int source, int index) {
+            this.source = source;
+            this.index = index;
+        }
+    }
+}
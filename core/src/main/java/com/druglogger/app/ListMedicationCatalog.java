@@ -0,0 +1,40 @@
+package com.druglogger.app;
+
+import java.util.List;
+
+/**
+ * Catalog over medications that are already in memory.
+ */
+class ListMedicationCatalog implements MedicationCatalog {
+
+    private final List<MedicationInfo> medications;
+
+    ListMedicationCatalog(List<MedicationInfo> medications) {
+        this.medications = medications;
+    }
+
+    @Override
+    public int size() {
+        return medications.size();
+    }
+
+    @Override
+    public String getGenericName(int index) {
+        return medications.get(index).getGenericName();
+    }
+
+    @Override
+    public List<String> getBrandNames(int index) {
+        return medications.get(index).getBrandNames();
+    }
+
+    @Override
+    public List<MedicationInfo.Interaction> getInteractions(int index) {
+        return medications.get(index).getRules().interactions;
+    }
+
+    @Override
+    public MedicationInfo get(int index) {
+        return medications.get(index);
+    }
+}
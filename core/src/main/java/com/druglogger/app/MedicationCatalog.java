@@ -0,0 +1,26 @@
+package com.druglogger.app;
+
+import java.util.List;
+
+/**
+ * Indexed, read-only access to the medication list. Names and interactions
+ * are cheap to read; the full {@link MedicationInfo} for an index may be
+ * built on first request.
+ */
+interface MedicationCatalog {
+
+    int size();
+
+    String getGenericName(int index);
+
+    List<String> getBrandNames(int index);
+
+    /**
+     * Returns the interactions listed on the medication at {@code index},
+     * without building the medication, for the {@link InteractionGraph}.
+     */
+    List<MedicationInfo.Interaction> getInteractions(int index);
+
+    /** Returns the medication at {@code index}, building it if necessary. */
+    MedicationInfo get(int index);
+}
@@ -0,0 +1,293 @@
+package com.druglogger.app;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Lookup tables over a {@link MedicationCatalog}, built once when the catalog
+ * is opened. Only names are read, so building the index does not materialize
+ * any medication.
+ *
+ * Exact lookups go through hash maps. Type-ahead search uses a sorted array of
+ * name terms, where every term starting with a prefix is one contiguous range
+ * found by binary search, and falls back to a trigram index for matches in the
+ * middle of a name.
+ */
+final class MedicationIndex {
+
+    // Match kinds, best first. Search results are ranked by these.
+    private static final int EXACT = 0;
+    private static final int GENERIC_PREFIX = 1;
+    private static final int BRAND_PREFIX = 2;
+    private static final int WORD_PREFIX = 3;
+    private static final int SUBSTRING = 4;
+
+    private static final int[] NO_POSTINGS = new int[0];
+
+    private final String[] displayNames;
+    private final String[] lowerGenericNames;
+    /** Lowercased generic and brand names of each medication, one per line. */
+    private final String[] searchTexts;
+
+    private final Map<String, Integer> byDisplayName = new HashMap<>();
+    private final Map<String, Integer> byGenericName = new HashMap<>();
+    private final Map<String, Integer> byName = new HashMap<>();
+
+    // Prefix index: parallel arrays sorted by term.
+    private final String[] terms;
+    private final int[] termMedications;
+    private final int[] termKinds;
+
+    /** Medications whose search text contains each trigram, in catalog order. */
+    private final Map<String, int[]> trigrams;
+
+    MedicationIndex(MedicationCatalog catalog) {
+        int count = catalog.size();
+        displayNames = new String[count];
+        lowerGenericNames = new String[count];
+        searchTexts = new String[count];
+
+        List<Term> termList = new ArrayList<>(count * 4);
+        Map<String, List<Integer>> trigramLists = new HashMap<>();
+        for (int i = 0; i < count; i++) {
+            String generic = catalog.getGenericName(i);
+            List<String> brands = catalog.getBrandNames(i);
+            displayNames[i] = MedicationInfo.displayName(generic, brands);
+            String lowerGeneric = normalize(generic);
+            lowerGenericNames[i] = lowerGeneric;
+
+            // First one wins, as with the scans these maps replace
+            putIfAbsent(byDisplayName, displayNames[i], i);
+            putIfAbsent(byGenericName, lowerGeneric, i);
+            putIfAbsent(byName, lowerGeneric, i);
+            addTerms(termList, lowerGeneric, i, GENERIC_PREFIX);
+
+            StringBuilder text = new StringBuilder(lowerGeneric);
+            for (String brand : brands) {
+                String lowerBrand = normalize(brand);
+                putIfAbsent(byName, lowerBrand, i);
+                addTerms(termList, lowerBrand, i, BRAND_PREFIX);
+                text.append('\n').append(lowerBrand);
+            }
+            searchTexts[i] = text.toString();
+            addTrigrams(trigramLists, searchTexts[i], i);
+        }
+
+        Collections.sort(termList);
+        terms = new String[termList.size()];
+        termMedications = new int[termList.size()];
+        termKinds = new int[termList.size()];
+        for (int t = 0; t < terms.length; t++) {
+            Term term = termList.get(t);
+            terms[t] = term.text;
+            termMedications[t] = term.medication;
+            termKinds[t] = term.kind;
+        }
+
+        trigrams = new HashMap<>(trigramLists.size() * 2);
+        for (Map.Entry<String, List<Integer>> e : trigramLists.entrySet()) {
+            List<Integer> meds = e.getValue();
+            int[] postings = new int[meds.size()];
+            for (int p = 0; p < postings.length; p++) {
+                postings[p] = meds.get(p);
+            }
+            trigrams.put(e.getKey(), postings);
+        }
+    }
+
+    int size() {
+        return displayNames.length;
+    }
+
+    String getDisplayName(int index) {
+        return displayNames[index];
+    }
+
+    /** Returns the catalog index of the medication with this display name, or -1. */
+    int findByDisplayName(String displayName) {
+        Integer index = byDisplayName.get(displayName);
+        return index == null ? -1 : index;
+    }
+
+    /**
+     * Returns the catalog index of the medication with this generic name,
+     * ignoring case, or else of the first one whose generic name contains it.
+     * Returns -1 if there is neither.
+     */
+    int findByGenericName(String genericName) {
+        String query = normalize(genericName);
+        Integer exact = byGenericName.get(query);
+        if (exact != null) return exact;
+
+        // Candidates are in catalog order, so the first hit is the first match
+        for (int med : candidates(query)) {
+            if (lowerGenericNames[med].contains(query)) return med;
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the catalog index of the medication a Google Sheets row names,
+     * as written by {@link MedicationInfo#getSheetName()}: its generic name
+     * with the brand names in brackets. Falls back to any exact generic or
+     * brand name, for rows typed into the sheet by hand. Returns -1 otherwise.
+     */
+    int findBySheetName(String sheetName) {
+        Integer index = byGenericName.get(normalize(MedicationInfo.genericNameOfSheetName(sheetName)));
+        if (index == null) index = byName.get(normalize(sheetName));
+        return index == null ? -1 : index;
+    }
+
+    /**
+     * Returns the catalog indexes of up to {@code limit} medications matching
+     * the typed text. Exact name matches come first, then generic names
+     * starting with the text, then brand names starting with it, then names
+     * with a later word starting with it, then names containing it anywhere.
+     * Medications within one rank are ordered by display name.
+     */
+    List<Integer> search(String typed, int limit) {
+        String query = normalize(typed);
+        if (query.isEmpty() || limit <= 0) return new ArrayList<>();
+
+        // Best match kind per medication, plus one so that 0 means no match
+        int[] ranks = new int[displayNames.length];
+        int matched = 0;
+        Integer exact = byName.get(query);
+        if (exact != null) {
+            ranks[exact] = EXACT + 1;
+            matched++;
+        }
+
+        for (int t = lowerBound(query); t < terms.length && terms[t].startsWith(query); t++) {
+            int med = termMedications[t];
+            int rank = termKinds[t] + 1;
+            if (ranks[med] == 0) {
+                ranks[med] = rank;
+                matched++;
+            } else if (rank < ranks[med]) {
+                ranks[med] = rank;
+            }
+        }
+
+        // Substring matches rank last, so they are only needed to fill up the list
+        if (matched < limit && query.length() >= 3) {
+            for (int med : candidates(query)) {
+                if (ranks[med] == 0 && searchTexts[med].contains(query)) {
+                    ranks[med] = SUBSTRING + 1;
+                }
+            }
+        }
+
+        // Keep the best `limit` matches in a heap whose head is the worst of them
+        Comparator<Integer> better = (a, b) -> {
+            int byRank = Integer.compare(ranks[a], ranks[b]);
+            return byRank != 0 ? byRank : displayNames[a].compareToIgnoreCase(displayNames[b]);
+        };
+        PriorityQueue<Integer> best = new PriorityQueue<>(limit + 1, Collections.reverseOrder(better));
+        for (int med = 0; med < ranks.length; med++) {
+            if (ranks[med] == 0) continue;
+            if (best.size() < limit) {
+                best.add(med);
+            } else if (better.compare(med, best.peek()) < 0) {
+                best.poll();
+                best.add(med);
+            }
+        }
+
+        List<Integer> results = new ArrayList<>(best);
+        Collections.sort(results, better);
+        return results;
+    }
+
+    /**
+     * Returns the medications that may contain {@code query}: the shortest
+     * posting list among its trigrams. Every medication is a candidate when
+     * the query is too short to have a trigram.
+     */
+    private int[] candidates(String query) {
+        if (query.length() < 3) {
+            int[] all = new int[displayNames.length];
+            for (int i = 0; i < all.length; i++) all[i] = i;
+            return all;
+        }
+        int[] shortest = null;
+        for (int i = 0; i + 3 <= query.length(); i++) {
+            int[] postings = trigrams.get(query.substring(i, i + 3));
+            if (postings == null) return NO_POSTINGS;
+            if (shortest == null || postings.length < shortest.length) shortest = postings;
+        }
+        return shortest;
+    }
+
+    /** Index of the first term not less than {@code prefix}. */
+    private int lowerBound(String prefix) {
+        int low = 0;
+        int high = terms.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (terms[mid].compareTo(prefix) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /** Adds the whole name, plus each later word of it, to the prefix index. */
+    private static void addTerms(List<Term> terms, String name, int medication, int kind) {
+        terms.add(new Term(name, medication, kind));
+        for (int i = 1; i < name.length(); i++) {
+            if (!Character.isLetterOrDigit(name.charAt(i - 1))
+                    && Character.isLetterOrDigit(name.charAt(i))) {
+                terms.add(new Term(name.substring(i), medication, WORD_PREFIX));
+            }
+        }
+    }
+
+    private static void addTrigrams(Map<String, List<Integer>> trigrams, String text, int medication) {
+        for (int i = 0; i + 3 <= text.length(); i++) {
+            String gram = text.substring(i, i + 3);
+            List<Integer> postings = trigrams.get(gram);
+            if (postings == null) {
+                postings = new ArrayList<>(2);
+                trigrams.put(gram, postings);
+            }
+            // Medications are added in order, so a repeat can only be the last one
+            if (postings.isEmpty() || postings.get(postings.size() - 1) != medication) {
+                postings.add(medication);
+            }
+        }
+    }
+
+    private static void putIfAbsent(Map<String, Integer> map, String key, int index) {
+        if (!map.containsKey(key)) map.put(key, index);
+    }
+
+    private static String normalize(String name) {
+        return name.trim().toLowerCase(Locale.ROOT);
+    }
+
+    private static final class Term implements Comparable<Term> {
+        final String text;
+        final int medication;
+        final int kind;
+
+        Term(String text, int medication, int kind) {
+            this.text = text;
+            this.medication = medication;
+            this.kind = kind;
+        }
+
+        @Override
+        public int compareTo(Term other) {
+            return text.compareTo(other.text);
+        }
+    }
+}
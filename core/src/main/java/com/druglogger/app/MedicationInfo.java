@@ -21,6 +21,7 @@ public class MedicationInfo {
     private String timeRequiredBetweenDoses;
     private String halfLife;
     private List<Interaction> interactions;
+    private MedicationRules rules;
 
     public static class Interaction {
         private String drug;
@@ -36,37 +37,57 @@ public class MedicationInfo {
     }
 
     public static MedicationInfo fromJson(JSONObject json) throws JSONException {
-        MedicationInfo info = new MedicationInfo();
-        info.genericName = json.getString("generic_name");
-        info.brandNames = jsonArrayToStringList(json.getJSONArray("brand_names"));
-
         JSONObject indication = json.getJSONObject("indication");
-        info.onLabelUses = jsonArrayToStringList(indication.getJSONArray("on_label"));
-        info.offLabelUses = jsonArrayToStringList(indication.getJSONArray("off_label"));
 
         JSONArray dosesArr = json.getJSONArray("doses");
-        info.doses = new ArrayList<>();
+        List<Double> doses = new ArrayList<>();
         for (int i = 0; i < dosesArr.length(); i++) {
-            info.doses.add(dosesArr.getDouble(i));
+            doses.add(dosesArr.getDouble(i));
         }
 
-        info.doseUnit = json.optString("dose_unit", "mg");
-        info.maximumDailyDosage = json.optString("maximum_daily_dosage", "");
-        info.timeRequiredBetweenDoses = json.optString("time_required_between_doses", "");
-        info.halfLife = json.optString("half_life", "");
-
-        info.interactions = new ArrayList<>();
+        List<Interaction> interactions = new ArrayList<>();
         JSONArray interArr = json.optJSONArray("interactions_with_other_drugs_on_this_list");
         if (interArr != null) {
             for (int i = 0; i < interArr.length(); i++) {
                 JSONObject inter = interArr.getJSONObject(i);
-                info.interactions.add(new Interaction(
+                interactions.add(new Interaction(
                         inter.getString("drug"),
                         inter.getString("interaction")
                 ));
             }
         }
 
+        return create(
+                json.getString("generic_name"),
+                jsonArrayToStringList(json.getJSONArray("brand_names")),
+                jsonArrayToStringList(indication.getJSONArray("on_label")),
+                jsonArrayToStringList(indication.getJSONArray("off_label")),
+                doses,
+                json.optString("dose_unit", "mg"),
+                json.optString("maximum_daily_dosage", ""),
+                json.optString("time_required_between_doses", ""),
+                json.optString("half_life", ""),
+                interactions);
+    }
+
+    /** Builds a medication from already-decoded fields, e.g. from the binary catalog. */
+    static MedicationInfo create(String genericName, List<String> brandNames,
+                                 List<String> onLabelUses, List<String> offLabelUses,
+                                 List<Double> doses, String doseUnit,
+                                 String maximumDailyDosage, String timeRequiredBetweenDoses,
+                                 String halfLife, List<Interaction> interactions) {
+        MedicationInfo info = new MedicationInfo();
+        info.genericName = genericName;
+        info.brandNames = brandNames;
+        info.onLabelUses = onLabelUses;
+        info.offLabelUses = offLabelUses;
+        info.doses = doses;
+        info.doseUnit = doseUnit;
+        info.maximumDailyDosage = maximumDailyDosage;
+        info.timeRequiredBetweenDoses = timeRequiredBetweenDoses;
+        info.halfLife = halfLife;
+        info.interactions = interactions;
+        info.rules = MedicationRules.compile(info);
         return info;
     }
 
@@ -80,6 +101,11 @@ public class MedicationInfo {
 
     /** Returns a display name like "Methylphenidate HCl (Extended-Release) (Concerta, Ritalin LA)" */
     public String getDisplayName() {
+        return displayName(genericName, brandNames);
+    }
+
+    /** Display name for a generic name and its brands, without materializing the medication. */
+    static String displayName(String genericName, List<String> brandNames) {
         StringBuilder sb = new StringBuilder(genericName);
         if (brandNames != null && !brandNames.isEmpty()) {
             sb.append(" (");
@@ -106,6 +132,16 @@ public class MedicationInfo {
         return sb.toString();
     }
 
+    /**
+     * Reverses {@link #getSheetName()} as far as it can without the catalog:
+     * "Ibuprofen [Advil, Motrin]" becomes "Ibuprofen".
+     */
+    static String genericNameOfSheetName(String sheetName) {
+        if (sheetName == null) return "";
+        int bracket = sheetName.lastIndexOf(" [");
+        return bracket > 0 && sheetName.endsWith("]") ? sheetName.substring(0, bracket) : sheetName;
+    }
+
     public String getGenericName() { return genericName; }
     public List<String> getBrandNames() { return brandNames; }
     public List<String> getOnLabelUses() { return onLabelUses; }
@@ -116,6 +152,8 @@ public class MedicationInfo {
     public String getTimeRequiredBetweenDoses() { return timeRequiredBetweenDoses; }
     public String getHalfLife() { return halfLife; }
     public List<Interaction> getInteractions() { return interactions; }
+    /** Warning rules parsed once from this medication's fields. */
+    public MedicationRules getRules() { return rules; }
 
     /** Returns all reasons (on-label + off-label) combined. */
     public List<String> getAllReasons() {
@@ -0,0 +1,165 @@
+package com.druglogger.app;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Pre-parsed form of the fields {@link WarningChecker} needs from a
+ * {@link MedicationInfo}. Built once when the medication is loaded so that
+ * checking a dose does no regex work and no string normalization.
+ */
+public class MedicationRules {
+
+    /** Upper bound on cached log-name keys; names past this are normalized per call. */
+    private static final int MAX_CACHED_KEYS = 1024;
+    private static final Map<String, NameKey> KEY_CACHE = new ConcurrentHashMap<>();
+
+    final NameKey name;
+    /** Required time between doses, or 0 if none is specified. */
+    final long intervalMillis;
+    /** Maximum daily dose in the medication's dose unit, or 0 if none is specified. */
+    final double maxDailyDose;
+    /** Elimination half-life in hours, or 0 if none is given. */
+    final double halfLifeHours;
+    /** Elimination rate constant from the half-life, or 0 if none is given. */
+    final double decayPerMilli;
+    /**
+     * Peak amount in the body at steady state when the maximum daily dose is
+     * taken in equal doses at the required interval, or 0 if the half-life or
+     * the maximum is not given.
+     */
+    final double steadyStatePeak;
+    final List<MedicationInfo.Interaction> interactions;
+    final NameKey[] interactionTargets;
+    /** Interaction target indexes grouped by the root word of the target name. */
+    private final Map<String, int[]> interactionsByRoot;
+
+    /** Interaction graph of the catalog this medication was loaded from, once built. */
+    private volatile InteractionGraph graph;
+    private int graphId;
+
+    private MedicationRules(MedicationInfo info) {
+        name = NameKey.of(info.getGenericName());
+        intervalMillis = (long) (WarningChecker.parseHoursFromTimeString(
+                info.getTimeRequiredBetweenDoses()) * 3600_000L);
+        maxDailyDose = WarningChecker.parseFirstNumber(info.getMaximumDailyDosage());
+        halfLifeHours = WarningChecker.parseHalfLifeHours(info.getHalfLife());
+        decayPerMilli = ConcentrationEstimator.decayPerMilli(halfLifeHours);
+        if (decayPerMilli > 0 && maxDailyDose > 0) {
+            long interval = intervalMillis > 0 && intervalMillis < WarningChecker.DAY_MILLIS
+                    ? intervalMillis : WarningChecker.DAY_MILLIS;
+            double dosePerInterval = maxDailyDose * interval / WarningChecker.DAY_MILLIS;
+            steadyStatePeak = dosePerInterval / (1 - Math.exp(-decayPerMilli * interval));
+        } else {
+            steadyStatePeak = 0;
+        }
+
+        interactions = info.getInteractions() == null
+                ? new ArrayList<>() : info.getInteractions();
+        interactionTargets = new NameKey[interactions.size()];
+        Map<String, List<Integer>> byRoot = new HashMap<>();
+        for (int i = 0; i < interactionTargets.length; i++) {
+            NameKey target = NameKey.of(interactions.get(i).getDrug());
+            interactionTargets[i] = target;
+            List<Integer> indexes = byRoot.get(target.root);
+            if (indexes == null) {
+                indexes = new ArrayList<>();
+                byRoot.put(target.root, indexes);
+            }
+            indexes.add(i);
+        }
+        interactionsByRoot = new HashMap<>();
+        for (Map.Entry<String, List<Integer>> e : byRoot.entrySet()) {
+            int[] indexes = new int[e.getValue().size()];
+            for (int i = 0; i < indexes.length; i++) {
+                indexes[i] = e.getValue().get(i);
+            }
+            interactionsByRoot.put(e.getKey(), indexes);
+        }
+    }
+
+    static MedicationRules compile(MedicationInfo info) {
+        return new MedicationRules(info);
+    }
+
+    void attach(InteractionGraph graph, int id) {
+        graphId = id;
+        this.graph = graph;
+    }
+
+    /** Returns the catalog's interaction graph, or null if it has not been built. */
+    InteractionGraph graph() {
+        return graph;
+    }
+
+    /** This medication's ID in {@link #graph()}. */
+    int graphId() {
+        return graphId;
+    }
+
+    /**
+     * Returns the indexes of the interactions whose target could match a drug
+     * with the given root word, or null if none can. Callers still confirm
+     * each candidate with {@link NameKey#matches}.
+     */
+    int[] interactionCandidates(NameKey key) {
+        return interactionsByRoot.get(key.root);
+    }
+
+    /**
+     * Lower-cased medication name together with its first word, the two forms
+     * the fuzzy name comparison works on.
+     */
+    static final class NameKey {
+        final String full;
+        final String root;
+        final boolean colestipol;
+
+        private NameKey(String name) {
+            full = name == null ? "" : name.toLowerCase(Locale.ROOT);
+            root = extractFirstWord(full);
+            colestipol = full.contains("colestipol");
+        }
+
+        /** Returns the key for a name, reusing a cached instance where possible. */
+        static NameKey of(String name) {
+            if (name == null) name = "";
+            NameKey key = KEY_CACHE.get(name);
+            if (key == null) {
+                key = new NameKey(name);
+                if (KEY_CACHE.size() < MAX_CACHED_KEYS) {
+                    KEY_CACHE.put(name, key);
+                }
+            }
+            return key;
+        }
+
+        /** Check if two medication names refer to the same drug (fuzzy matching). */
+        boolean matches(NameKey other) {
+            if (full.equals(other.full)) return true;
+
+            // Require substantial match: roots must be >= 4 chars and equal
+            if (root.length() >= 4 && root.equals(other.root)) return true;
+
+            // Check if one fully contains the other (for names like "Colestipol HCl" vs "colestipol")
+            return startsWithWord(full, other.full) || startsWithWord(other.full, full);
+        }
+
+        /** Same as {@code s.startsWith(prefix + " ")} without building the concatenation. */
+        private static boolean startsWithWord(String s, String prefix) {
+            return s.length() > prefix.length()
+                    && s.charAt(prefix.length()) == ' '
+                    && s.startsWith(prefix);
+        }
+
+        private static String extractFirstWord(String name) {
+            String trimmed = name.trim();
+            if (trimmed.isEmpty()) return "";
+            return trimmed.split("\\s+")[0];
+        }
+    }
+}
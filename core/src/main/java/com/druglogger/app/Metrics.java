@@ -0,0 +1,327 @@
+package com.druglogger.app;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Latency histograms and counters for the app's hot paths: storage, warning
+ * checks, catalog loading and the Google Sheets requests.
+ *
+ * Timers and counters are created once, as static fields of the class they
+ * measure, and recording is off until {@link #setEnabled} turns it on. While
+ * off, {@link Timer#start()} and {@link Counter#increment()} only read one
+ * volatile flag, so the calls can stay in release builds. While on, a timer
+ * also opens a section on the installed {@link Tracer}, so the same spans
+ * show up in a system trace; see {@link AndroidTracer}.
+ *
+ * Recording is lock-free. A histogram is an array of atomic counts over
+ * buckets whose width grows with the value, an eighth of a power of two
+ * each, so any duration from a nanosecond to about half an hour is kept to
+ * within 12.5% in a fixed 2.5 KB. {@link #snapshotJson()} reads every timer
+ * and counter without stopping writers, so a snapshot taken while work is
+ * running may be off by the operations in flight.
+ *
+ * Nothing here depends on Android.
+ */
+public final class Metrics {
+
+    /** Receives a section around every timed operation. Sections nest per thread. */
+    public interface Tracer {
+        void beginSection(String name);
+
+        void endSection();
+    }
+
+    /** Returned by {@link Timer#start()} when recording is off. */
+    public static final long NOT_STARTED = Long.MIN_VALUE;
+
+    private static final Tracer NO_TRACER = new Tracer() {
+        @Override
+        public void beginSection(String name) {
+        }
+
+        @Override
+        public void endSection() {
+        }
+    };
+
+    private static volatile boolean enabled;
+    private static volatile Tracer tracer = NO_TRACER;
+
+    // Guarded by Metrics.class; sorted so snapshots list names in order
+    private static final Map<String, Timer> timers = new TreeMap<>();
+    private static final Map<String, Counter> counters = new TreeMap<>();
+
+    private Metrics() {
+    }
+
+    /** Returns the timer with this name, creating it on first use. */
+    public static synchronized Timer timer(String name) {
+        Timer timer = timers.get(name);
+        if (timer == null) {
+            timer = new Timer(name);
+            timers.put(name, timer);
+        }
+        return timer;
+    }
+
+    /** Returns the counter with this name, creating it on first use. */
+    public static synchronized Counter counter(String name) {
+        Counter counter = counters.get(name);
+        if (counter == null) {
+            counter = new Counter(name);
+            counters.put(name, counter);
+        }
+        return counter;
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /** Starts or stops recording. What was recorded is kept either way. */
+    public static void setEnabled(boolean enabled) {
+        Metrics.enabled = enabled;
+    }
+
+    /** Installs the tracer timers report sections to, or null for none. */
+    public static void setTracer(Tracer tracer) {
+        Metrics.tracer = tracer == null ? NO_TRACER : tracer;
+    }
+
+    /** Clears every timer and counter. */
+    public static synchronized void reset() {
+        for (Timer timer : timers.values()) {
+            timer.histogram.clear();
+        }
+        for (Counter counter : counters.values()) {
+            counter.value.set(0);
+        }
+    }
+
+    /**
+     * Times one kind of operation. Each call to {@link #start()} that returns a
+     * time must be followed by exactly one {@link #stop(long)} on the same
+     * thread, usually in a finally block.
+     */
+    public static final class Timer {
+        private final String name;
+        private final Histogram histogram = new Histogram();
+
+        private Timer(String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /** Opens a trace section and returns the start time, or {@link #NOT_STARTED} when off. */
+        public long start() {
+            if (!enabled) return NOT_STARTED;
+            tracer.beginSection(name);
+            return System.nanoTime();
+        }
+
+        /**
+         * Closes the section opened by {@link #start()} and records the time
+         * since it.
+         *
+         * @return The nanoseconds recorded, or 0 if {@code started} is {@link #NOT_STARTED}
+         */
+        public long stop(long started) {
+            if (started == NOT_STARTED) return 0;
+            long elapsed = System.nanoTime() - started;
+            tracer.endSection();
+            histogram.record(elapsed);
+            return elapsed;
+        }
+
+        /** Records a duration measured elsewhere, without a trace section. */
+        public void record(long nanos) {
+            if (enabled) histogram.record(nanos);
+        }
+
+        /** Records the time since {@code started}, without a trace section. */
+        public void recordSince(long started) {
+            if (started != NOT_STARTED) histogram.record(System.nanoTime() - started);
+        }
+    }
+
+    /** Counts events that have no duration worth timing. */
+    public static final class Counter {
+        private final String name;
+        private final AtomicLong value = new AtomicLong();
+
+        private Counter(String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public void increment() {
+            if (enabled) value.incrementAndGet();
+        }
+
+        public void add(long delta) {
+            if (enabled) value.addAndGet(delta);
+        }
+    }
+
+    /**
+     * Durations in nanoseconds, counted in buckets of a few significant bits.
+     * Values 0 to 7 have a bucket each; above that every power of two is split
+     * into {@link #SUB_BUCKETS} equal buckets.
+     */
+    static final class Histogram {
+        private static final int SUB_BITS = 3;
+        private static final int SUB_BUCKETS = 1 << SUB_BITS;
+        /** Largest power of two kept apart; longer durations share the last buckets */
+        private static final int MAX_EXPONENT = 40;
+        static final int BUCKETS = (MAX_EXPONENT - SUB_BITS + 2) * SUB_BUCKETS;
+        private static final long MAX_VALUE = (1L << (MAX_EXPONENT + 1)) - 1;
+
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+        final AtomicLong count = new AtomicLong();
+        final AtomicLong sum = new AtomicLong();
+        final AtomicLong max = new AtomicLong();
+
+        void record(long nanos) {
+            if (nanos < 0) nanos = 0;
+            buckets.incrementAndGet(index(Math.min(nanos, MAX_VALUE)));
+            count.incrementAndGet();
+            sum.addAndGet(nanos);
+            long seen = max.get();
+            while (nanos > seen && !max.compareAndSet(seen, nanos)) {
+                seen = max.get();
+            }
+        }
+
+        void clear() {
+            for (int i = 0; i < BUCKETS; i++) {
+                buckets.set(i, 0);
+            }
+            count.set(0);
+            sum.set(0);
+            max.set(0);
+        }
+
+        static int index(long value) {
+            if (value < SUB_BUCKETS) return (int) value;
+            int exponent = 63 - Long.numberOfLeadingZeros(value);
+            int sub = (int) (value >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+            return (exponent - SUB_BITS + 1) * SUB_BUCKETS + sub;
+        }
+
+        /** Returns the smallest value that falls in bucket {@code index}. */
+        static long lowerBound(int index) {
+            if (index < SUB_BUCKETS) return index;
+            int exponent = index / SUB_BUCKETS + SUB_BITS - 1;
+            long sub = index % SUB_BUCKETS;
+            return (SUB_BUCKETS + sub) << (exponent - SUB_BITS);
+        }
+
+        long bucketCount(int index) {
+            return buckets.get(index);
+        }
+
+        /**
+         * Returns the value at or below which {@code fraction} of the recorded
+         * values fall, as the upper end of its bucket, but never above the
+         * largest value recorded.
+         */
+        long percentile(double fraction) {
+            long total = 0;
+            long[] counts = new long[BUCKETS];
+            for (int i = 0; i < BUCKETS; i++) {
+                counts[i] = buckets.get(i);
+                total += counts[i];
+            }
+            if (total == 0) return 0;
+            long rank = Math.max(1, (long) Math.ceil(fraction * total));
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    long upper = i + 1 < BUCKETS ? lowerBound(i + 1) - 1 : Long.MAX_VALUE;
+                    return Math.min(upper, max.get());
+                }
+            }
+            return max.get();
+        }
+    }
+
+    /**
+     * Returns every timer and counter as JSON. Times are in milliseconds;
+     * {@code buckets} lists the non-empty histogram buckets as pairs of the
+     * bucket's lower bound and its count.
+     */
+    public static synchronized String snapshotJson() {
+        StringBuilder json = new StringBuilder(256 + timers.size() * 256);
+        json.append("{\"enabled\":").append(enabled)
+                .append(",\"timers\":{");
+        boolean first = true;
+        for (Timer timer : timers.values()) {
+            Histogram histogram = timer.histogram;
+            long count = histogram.count.get();
+            if (!first) json.append(',');
+            first = false;
+            appendString(json, timer.name);
+            json.append(":{\"count\":").append(count);
+            appendMillis(json, "total_ms", histogram.sum.get());
+            appendMillis(json, "mean_ms", count == 0 ? 0 : histogram.sum.get() / count);
+            appendMillis(json, "p50_ms", histogram.percentile(0.5));
+            appendMillis(json, "p90_ms", histogram.percentile(0.9));
+            appendMillis(json, "p99_ms", histogram.percentile(0.99));
+            appendMillis(json, "max_ms", histogram.max.get());
+            json.append(",\"buckets\":[");
+            boolean firstBucket = true;
+            for (int i = 0; i < Histogram.BUCKETS; i++) {
+                long bucketCount = histogram.bucketCount(i);
+                if (bucketCount == 0) continue;
+                if (!firstBucket) json.append(',');
+                firstBucket = false;
+                json.append('[').append(formatMillis(Histogram.lowerBound(i)))
+                        .append(',').append(bucketCount).append(']');
+            }
+            json.append("]}");
+        }
+        json.append("},\"counters\":{");
+        first = true;
+        for (Counter counter : counters.values()) {
+            if (!first) json.append(',');
+            first = false;
+            appendString(json, counter.name);
+            json.append(':').append(counter.value.get());
+        }
+        return json.append("}}").toString();
+    }
+
+    private static void appendMillis(StringBuilder json, String key, long nanos) {
+        json.append(",\"").append(key).append("\":").append(formatMillis(nanos));
+    }
+
+    private static String formatMillis(long nanos) {
+        return String.format(Locale.ROOT, "%.6f", nanos / 1e6);
+    }
+
+    private static void appendString(StringBuilder json, String value) {
+        json.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                json.append('\\').append(c);
+            } else if (c < 0x20) {
+                json.append(String.format(Locale.ROOT, "\\u%04x", (int) c));
+            } else {
+                json.append(c);
+            }
+        }
+        json.append('"');
+    }
+}
@@ -0,0 +1,279 @@
+package com.druglogger.app;
+
+import java.util.TimeZone;
+
+/**
+ * Parses the timestamps the Google Sheets web app returns into epoch millis.
+ *
+ * Accepted forms:
+ * <ul>
+ *   <li>ISO 8601, as sheet dates are serialized: "2024-05-01T08:30:00.000Z",
+ *       with an offset such as "+02:00" or "+0200", or without a zone, or with
+ *       a space instead of the "T"</li>
+ *   <li>The sheet's display format, month first: "5/1/2024 8:30:00" or "5/1/2024"</li>
+ *   <li>A spreadsheet serial date, days since 1899-12-30: "45413.354"</li>
+ * </ul>
+ * Times without a zone are read in the parser's time zone.
+ *
+ * Fields are read by hand rather than with SimpleDateFormat or Calendar, so
+ * a row costs a few character reads and an instance can be shared between
+ * threads. The zone offset of the last local hour looked up is cached, since
+ * sheet rows come in time order and neighbouring rows almost always fall in
+ * the same hour.
+ */
+final class SheetTimestamps {
+
+    /** Returned for a value that is not a timestamp. */
+    static final long INVALID = -1;
+
+    private static final long SECOND_MILLIS = 1000L;
+    private static final long MINUTE_MILLIS = 60 * SECOND_MILLIS;
+    private static final long HOUR_MILLIS = 60 * MINUTE_MILLIS;
+    private static final long DAY_MILLIS = 24 * HOUR_MILLIS;
+    /** Days from 1899-12-30, day 0 of spreadsheet serial dates, to 1970-01-01. */
+    private static final long SERIAL_EPOCH_DAYS = 25569;
+
+    private static volatile SheetTimestamps defaultZoneInstance;
+
+    private final TimeZone zone;
+    /** Zone offset for one local hour, replaced as a whole so readers see a consistent pair. */
+    private volatile HourOffset lastHour;
+
+    SheetTimestamps(TimeZone zone) {
+        this.zone = (TimeZone) zone.clone();
+    }
+
+    /** Returns a shared parser for the device's time zone, replaced when the zone changes. */
+    static SheetTimestamps forDefaultZone() {
+        TimeZone current = TimeZone.getDefault();
+        SheetTimestamps parser = defaultZoneInstance;
+        if (parser == null || !parser.zone.hasSameRules(current)
+                || !parser.zone.getID().equals(current.getID())) {
+            parser = new SheetTimestamps(current);
+            defaultZoneInstance = parser;
+        }
+        return parser;
+    }
+
+    /** Returns the epoch millis of {@code value}, or {@link #INVALID}. */
+    long parse(String value) {
+        if (value == null) return INVALID;
+        int start = 0;
+        int end = value.length();
+        while (start < end && value.charAt(start) <= ' ') start++;
+        while (end > start && value.charAt(end - 1) <= ' ') end--;
+        if (start == end) return INVALID;
+
+        // The first separator tells the forms apart
+        for (int i = start; i < end; i++) {
+            char c = value.charAt(i);
+            if (c == '-' && i > start) return parseIso(value, start, end);
+            if (c == '/') return parseDisplay(value, start, end);
+            if (c < '0' || c > '9') break;
+        }
+        return parseSerial(value, start, end);
+    }
+
+    /** yyyy-MM-dd[('T'|' ')HH:mm[:ss[.fraction]]][Z|±HH[:]mm] */
+    private long parseIso(String s, int pos, int end) {
+        int[] p = {pos};
+        int year = digits(s, p, end, 4, 4);
+        if (year < 0 || !skip(s, p, end, '-')) return INVALID;
+        int month = digits(s, p, end, 1, 2);
+        if (month < 0 || !skip(s, p, end, '-')) return INVALID;
+        int day = digits(s, p, end, 1, 2);
+        if (day < 0) return INVALID;
+
+        int hour = 0, minute = 0, second = 0, millis = 0;
+        if (p[0] < end && (s.charAt(p[0]) == 'T' || s.charAt(p[0]) == ' ')) {
+            p[0]++;
+            hour = digits(s, p, end, 1, 2);
+            if (hour < 0 || !skip(s, p, end, ':')) return INVALID;
+            minute = digits(s, p, end, 2, 2);
+            if (minute < 0) return INVALID;
+            if (skip(s, p, end, ':')) {
+                second = digits(s, p, end, 2, 2);
+                if (second < 0) return INVALID;
+                if (skip(s, p, end, '.') || skip(s, p, end, ',')) {
+                    millis = fraction(s, p, end);
+                    if (millis < 0) return INVALID;
+                }
+            }
+        }
+        if (!validFields(year, month, day, hour, minute, second)) return INVALID;
+        long local = localMillis(year, month, day, hour, minute, second, millis);
+
+        if (p[0] == end) return local - offsetAtLocal(local);
+        char c = s.charAt(p[0]);
+        if ((c == 'Z' || c == 'z') && p[0] + 1 == end) return local;
+        if (c != '+' && c != '-') return INVALID;
+        p[0]++;
+        int offsetHours = digits(s, p, end, 2, 2);
+        if (offsetHours < 0) return INVALID;
+        skip(s, p, end, ':');
+        int offsetMinutes = p[0] == end ? 0 : digits(s, p, end, 2, 2);
+        if (offsetMinutes < 0 || p[0] != end || offsetHours > 18 || offsetMinutes > 59) {
+            return INVALID;
+        }
+        long offset = offsetHours * HOUR_MILLIS + offsetMinutes * MINUTE_MILLIS;
+        return c == '+' ? local - offset : local + offset;
+    }
+
+    /** M/d/yyyy[ H:mm[:ss]], in the parser's zone */
+    private long parseDisplay(String s, int pos, int end) {
+        int[] p = {pos};
+        int month = digits(s, p, end, 1, 2);
+        if (month < 0 || !skip(s, p, end, '/')) return INVALID;
+        int day = digits(s, p, end, 1, 2);
+        if (day < 0 || !skip(s, p, end, '/')) return INVALID;
+        int year = digits(s, p, end, 4, 4);
+        if (year < 0) return INVALID;
+
+        int hour = 0, minute = 0, second = 0;
+        if (skip(s, p, end, ' ')) {
+            while (skip(s, p, end, ' ')) {
+                // Extra spaces between date and time
+            }
+            hour = digits(s, p, end, 1, 2);
+            if (hour < 0 || !skip(s, p, end, ':')) return INVALID;
+            minute = digits(s, p, end, 2, 2);
+            if (minute < 0) return INVALID;
+            if (skip(s, p, end, ':')) {
+                second = digits(s, p, end, 2, 2);
+                if (second < 0) return INVALID;
+            }
+        }
+        if (p[0] != end || !validFields(year, month, day, hour, minute, second)) return INVALID;
+        long local = localMillis(year, month, day, hour, minute, second, 0);
+        return local - offsetAtLocal(local);
+    }
+
+    /** Serial day number with an optional fraction of a day, in the parser's zone */
+    private long parseSerial(String s, int pos, int end) {
+        long days = 0;
+        int i = pos;
+        for (; i < end && s.charAt(i) >= '0' && s.charAt(i) <= '9'; i++) {
+            days = days * 10 + (s.charAt(i) - '0');
+            if (days > 2_958_465) return INVALID; // Past 9999-12-31
+        }
+        if (i == pos) return INVALID;
+        long dayFraction = 0;
+        if (i < end && s.charAt(i) == '.') {
+            long scale = DAY_MILLIS;
+            for (i++; i < end && s.charAt(i) >= '0' && s.charAt(i) <= '9'; i++) {
+                scale /= 10;
+                dayFraction += (s.charAt(i) - '0') * scale;
+            }
+        }
+        if (i != end) return INVALID;
+        long local = (days - SERIAL_EPOCH_DAYS) * DAY_MILLIS + dayFraction;
+        // Round to the second, as sheets store times as fractions that rarely come out exact
+        local = (local + SECOND_MILLIS / 2) / SECOND_MILLIS * SECOND_MILLIS;
+        return local - offsetAtLocal(local);
+    }
+
+    /**
+     * Returns the zone offset in effect at a local wall-clock time. Offsets
+     * within one local hour are cached; an hour that contains a transition
+     * is looked up every time. A time in the hour repeated when clocks go
+     * back is read as standard time.
+     */
+    private long offsetAtLocal(long local) {
+        long hourStart = local - local % HOUR_MILLIS;
+        if (hourStart > local) hourStart -= HOUR_MILLIS;
+        HourOffset cached = lastHour;
+        if (cached != null && cached.hourStart == hourStart) return cached.offset;
+
+        int offset = lookUpOffset(local);
+        int atStart = lookUpOffset(hourStart);
+        if (atStart == offset && lookUpOffset(hourStart + HOUR_MILLIS - 1) == offset) {
+            lastHour = new HourOffset(hourStart, offset);
+        }
+        return offset;
+    }
+
+    private int lookUpOffset(long local) {
+        // Start from the standard offset, then correct for daylight time once
+        int offset = zone.getOffset(local - zone.getRawOffset());
+        return zone.getOffset(local - offset);
+    }
+
+    private static final class HourOffset {
+        final long hourStart;
+        final int offset;
+
+        HourOffset(long hourStart, int offset) {
+            this.hourStart = hourStart;
+            this.offset = offset;
+        }
+    }
+
+    /** Reads between {@code min} and {@code max} digits. Returns -1 if there are fewer than min. */
+    private static int digits(String s, int[] p, int end, int min, int max) {
+        int value = 0;
+        int count = 0;
+        while (p[0] < end && count < max) {
+            char c = s.charAt(p[0]);
+            if (c < '0' || c > '9') break;
+            value = value * 10 + (c - '0');
+            count++;
+            p[0]++;
+        }
+        return count < min ? -1 : value;
+    }
+
+    /** Reads a fraction of a second as millis, ignoring digits past the third. */
+    private static int fraction(String s, int[] p, int end) {
+        int millis = 0;
+        int count = 0;
+        while (p[0] < end) {
+            char c = s.charAt(p[0]);
+            if (c < '0' || c > '9') break;
+            if (count < 3) millis = millis * 10 + (c - '0');
+            count++;
+            p[0]++;
+        }
+        if (count == 0) return -1;
+        for (; count < 3; count++) millis *= 10;
+        return millis;
+    }
+
+    private static boolean skip(String s, int[] p, int end, char expected) {
+        if (p[0] < end && s.charAt(p[0]) == expected) {
+            p[0]++;
+            return true;
+        }
+        return false;
+    }
+
+    private static boolean validFields(int year, int month, int day, int hour, int minute,
+                                       int second) {
+        return month >= 1 && month <= 12 && day >= 1 && day <= daysInMonth(year, month)
+                && hour <= 23 && minute <= 59 && second <= 59;
+    }
+
+    private static int daysInMonth(int year, int month) {
+        if (month == 2) {
+            boolean leap = year % 4 == 0 && (year % 100 != 0 || year % 400 == 0);
+            return leap ? 29 : 28;
+        }
+        return month == 4 || month == 6 || month == 9 || month == 11 ? 30 : 31;
+    }
+
+    /** Millis since the epoch of a wall-clock time read as UTC. */
+    private static long localMillis(int year, int month, int day, int hour, int minute,
+                                    int second, int millis) {
+        return daysFromCivil(year, month, day) * DAY_MILLIS + hour * HOUR_MILLIS
+                + minute * MINUTE_MILLIS + second * SECOND_MILLIS + millis;
+    }
+
+    /** Days since 1970-01-01 of a proleptic Gregorian date. */
+    private static long daysFromCivil(int year, int month, int day) {
+        int y = month <= 2 ? year - 1 : year;
+        int era = (y >= 0 ? y : y - 399) / 400;
+        int yearOfEra = y - era * 400;
+        int dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097L + dayOfEra - 719468;
+    }
+}
@@ -0,0 +1,584 @@
+package com.druglogger.app;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Checks for medication safety warnings before logging a dose.
+ *
+ * Warnings:
+ * 1. Too soon since last dose (based on time_required_between_doses)
+ * 2. Exceeding maximum daily dosage
+ * 3. Concerning drug interactions with other recently logged medications
+ * 4. Colestipol was taken less than 4 hours ago (absorption interference)
+ * 5. Accumulation: the amount still in the body plus the dose would pass the
+ *    steady-state peak of the maximum daily dose (based on half_life)
+ *
+ * Each warning is a {@link WarningRule}. Additional rules can be registered with
+ * {@link #addRule} and are evaluated in the same pass as the built-in ones.
+ */
+public class WarningChecker {
+
+    /**
+     * Represents a previously logged medication entry with timing info.
+     */
+    public static class RecentLog {
+        public final String medicationName;
+        public final double dose;
+        public final long timestampMillis;
+        final MedicationRules.NameKey nameKey;
+
+        public RecentLog(String medicationName, double dose, long timestampMillis) {
+            this.medicationName = medicationName;
+            this.dose = dose;
+            this.timestampMillis = timestampMillis;
+            this.nameKey = MedicationRules.NameKey.of(medicationName);
+        }
+    }
+
+    /** Window used by the daily-dose and interaction checks. */
+    static final long DAY_MILLIS = 24 * 3600_000L;
+
+    private static final Metrics.Timer CHECK_TIMER = Metrics.timer("warnings.check");
+
+    private static final Pattern HOURS_PATTERN =
+            Pattern.compile("(\\d+(?:\\.\\d+)?)(?:\\s*-\\s*(\\d+(?:\\.\\d+)?))?\\s*hour");
+    private static final Pattern NUMBER_PATTERN = Pattern.compile("(\\d+(?:\\.\\d+)?)");
+
+    private static final List<WarningRule> RULES = new CopyOnWriteArrayList<>(Arrays.asList(
+            new TooSoonRule(),
+            new MaxDailyDoseRule(),
+            new InteractionRule(),
+            new ColestipolTimingRule(),
+            new AccumulationRule()));
+
+    /** Registers an additional rule, evaluated after the built-in ones. */
+    public static void addRule(WarningRule rule) {
+        RULES.add(rule);
+    }
+
+    /**
+     * Returns how far back in history {@link #checkWarnings} needs to look for the
+     * given medication: the largest window of any registered rule.
+     */
+    public static long getLookbackMillis(MedicationInfo medication) {
+        long lookback = 0;
+        for (WarningRule rule : RULES) {
+            lookback = Math.max(lookback, rule.windowMillis(medication));
+        }
+        return lookback;
+    }
+
+    /**
+     * Check all warnings for a proposed medication dose.
+     *
+     * @param medication  The medication to be logged
+     * @param dose        The dose to be logged
+     * @param recentLogs  Recent log entries (from Google Sheets and/or local DB),
+     *                    sorted newest first
+     * @param allMedications All medications from medlist.json (for interaction checks)
+     * @return List of warning messages (empty if no warnings)
+     *
+     * The logs are cut to the largest rule window with a binary search and then
+     * walked once, with every rule seeing the same clock value.
+     */
+    public static List<String> checkWarnings(
+            MedicationInfo medication,
+            double dose,
+            List<RecentLog> recentLogs,
+            List<MedicationInfo> allMedications) {
+        long started = CHECK_TIMER.start();
+        try {
+            List<String> warnings = new ArrayList<>();
+            long now = System.currentTimeMillis();
+            runPasses(RULES.toArray(new WarningRule[0]), medication, dose, recentLogs, now,
+                    warnings);
+            return warnings;
+        } finally {
+            CHECK_TIMER.stop(started);
+        }
+    }
+
+    /**
+     * Check all warnings for a proposed medication dose against the dose ledger.
+     * The built-in rules read the ledger's per-medication aggregates directly,
+     * so the cost does not depend on how many doses were logged.
+     *
+     * @param medication  The medication to be logged
+     * @param dose        The dose to be logged
+     * @param ledger      Recent doses, usually {@link DrugLogDatabase#getDoseLedger()}, which
+     *                    holds local entries and the doses mirrored from Google Sheets
+     * @param allMedications Not read; interactions are checked through the
+     *                    {@link InteractionGraph} attached to the medication
+     * @return List of warning messages (empty if no warnings)
+     */
+    public static List<String> checkWarnings(
+            MedicationInfo medication,
+            double dose,
+            DoseLedger ledger,
+            List<MedicationInfo> allMedications) {
+        return checkWarnings(medication, dose, ledger);
+    }
+
+    /**
+     * Check all warnings for a proposed medication dose against the dose
+     * ledger, without the catalog. Interactions are checked through the
+     * medication's {@link InteractionGraph} once one is attached, and by
+     * the names in its own interaction list before that.
+     */
+    public static List<String> checkWarnings(
+            MedicationInfo medication,
+            double dose,
+            DoseLedger ledger) {
+        long started = CHECK_TIMER.start();
+        try {
+            List<String> warnings = new ArrayList<>();
+            long now = System.currentTimeMillis();
+
+            synchronized (ledger) {
+                List<WarningRule> remaining = null;
+                for (WarningRule rule : RULES) {
+                    if (!rule.check(ledger, medication, dose, now, warnings)) {
+                        if (remaining == null) remaining = new ArrayList<>();
+                        remaining.add(rule);
+                    }
+                }
+                if (remaining == null) return warnings;
+
+                // Rules without an aggregate form get one pass over the retained doses
+                WarningRule[] rules = remaining.toArray(new WarningRule[0]);
+                long lookback = 0;
+                for (WarningRule rule : rules) {
+                    lookback = Math.max(lookback, rule.windowMillis(medication));
+                }
+                runPasses(rules, medication, dose, ledger.recentLogs(now - lookback), now,
+                        warnings);
+            }
+            return warnings;
+        } finally {
+            CHECK_TIMER.stop(started);
+        }
+    }
+
+    private static void runPasses(WarningRule[] rules, MedicationInfo medication, double dose,
+                                  List<RecentLog> recentLogs, long now, List<String> warnings) {
+        WarningRule.Pass[] passes = new WarningRule.Pass[rules.length];
+        long[] cutoffs = new long[rules.length];
+        long oldestCutoff = Long.MAX_VALUE;
+        for (int r = 0; r < rules.length; r++) {
+            passes[r] = rules[r].begin(medication, dose, now);
+            if (passes[r] == null) continue;
+            cutoffs[r] = now - rules[r].windowMillis(medication);
+            oldestCutoff = Math.min(oldestCutoff, cutoffs[r]);
+        }
+        if (oldestCutoff == Long.MAX_VALUE) return;
+
+        int end = countNotOlderThan(recentLogs, oldestCutoff);
+        for (int i = 0; i < end; i++) {
+            RecentLog log = recentLogs.get(i);
+            for (int r = 0; r < passes.length; r++) {
+                if (passes[r] != null && log.timestampMillis >= cutoffs[r]) {
+                    passes[r].accept(log);
+                }
+            }
+        }
+
+        for (WarningRule.Pass pass : passes) {
+            if (pass != null) pass.finish(warnings);
+        }
+    }
+
+    /**
+     * Returns the number of leading logs with a timestamp at or after
+     * {@code cutoff}, given logs sorted newest first.
+     */
+    static int countNotOlderThan(List<RecentLog> logs, long cutoff) {
+        int low = 0;
+        int high = logs.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (logs.get(mid).timestampMillis >= cutoff) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /** 1. Too soon since the last dose of the same medication. */
+    private static class TooSoonRule implements WarningRule {
+        @Override
+        public long windowMillis(MedicationInfo medication) {
+            return medication.getRules().intervalMillis;
+        }
+
+        @Override
+        public Pass begin(MedicationInfo medication, double dose, long now) {
+            MedicationRules rules = medication.getRules();
+            if (rules.intervalMillis <= 0) return null;
+
+            return new Pass() {
+                private long elapsed = -1;
+
+                @Override
+                public void accept(RecentLog log) {
+                    // Logs arrive newest first, so the first match is the last dose
+                    if (elapsed >= 0 || !log.nameKey.matches(rules.name)) return;
+                    long sinceLog = now - log.timestampMillis;
+                    if (sinceLog >= 0 && sinceLog < rules.intervalMillis) {
+                        elapsed = sinceLog;
+                    }
+                }
+
+                @Override
+                public void finish(List<String> warnings) {
+                    if (elapsed >= 0) addWarning(medication, elapsed, warnings);
+                }
+            };
+        }
+
+        @Override
+        public boolean check(DoseLedger ledger, MedicationInfo medication, double dose, long now,
+                             List<String> warnings) {
+            MedicationRules rules = medication.getRules();
+            if (rules.intervalMillis <= 0) return true;
+
+            long last = ledger.lastDoseMillis(rules.name, now);
+            if (last >= 0 && now - last < rules.intervalMillis) {
+                addWarning(medication, now - last, warnings);
+            }
+            return true;
+        }
+
+        private static void addWarning(MedicationInfo medication, long elapsed, List<String> warnings) {
+            warnings.add(String.format(
+                    "⚠ Too soon: You last took %s %.1f hours ago. Recommended interval: %s.",
+                    medication.getGenericName(),
+                    elapsed / 3600_000.0,
+                    medication.getTimeRequiredBetweenDoses()));
+        }
+    }
+
+    /** 2. Exceeding the maximum daily dosage over the last 24 hours. */
+    private static class MaxDailyDoseRule implements WarningRule {
+        @Override
+        public long windowMillis(MedicationInfo medication) {
+            return DAY_MILLIS;
+        }
+
+        @Override
+        public Pass begin(MedicationInfo medication, double dose, long now) {
+            MedicationRules rules = medication.getRules();
+            if (rules.maxDailyDose <= 0) return null;
+
+            return new Pass() {
+                private double totalToday = dose;
+
+                @Override
+                public void accept(RecentLog log) {
+                    if (log.nameKey.matches(rules.name)) {
+                        totalToday += log.dose;
+                    }
+                }
+
+                @Override
+                public void finish(List<String> warnings) {
+                    if (totalToday > rules.maxDailyDose) addWarning(medication, totalToday, warnings);
+                }
+            };
+        }
+
+        @Override
+        public boolean check(DoseLedger ledger, MedicationInfo medication, double dose, long now,
+                             List<String> warnings) {
+            MedicationRules rules = medication.getRules();
+            if (rules.maxDailyDose <= 0) return true;
+
+            double totalToday = dose + ledger.dailyTotal(rules.name, now);
+            if (totalToday > rules.maxDailyDose) addWarning(medication, totalToday, warnings);
+            return true;
+        }
+
+        private static void addWarning(MedicationInfo medication, double totalToday,
+                                       List<String> warnings) {
+            warnings.add(String.format(
+                    "⚠ Exceeds max daily dose: This dose would bring your 24h total to %.1f %s. Maximum: %s.",
+                    totalToday,
+                    medication.getDoseUnit(),
+                    medication.getMaximumDailyDosage()));
+        }
+    }
+
+    /**
+     * 3. Concerning interactions with medications taken in the last 24 hours.
+     * Goes through the catalog's {@link InteractionGraph} once it is built,
+     * and falls back to matching names from the medication's own list before.
+     */
+    private static class InteractionRule implements WarningRule {
+        @Override
+        public long windowMillis(MedicationInfo medication) {
+            return DAY_MILLIS;
+        }
+
+        @Override
+        public Pass begin(MedicationInfo medication, double dose, long now) {
+            MedicationRules rules = medication.getRules();
+            InteractionGraph graph = rules.graph();
+            if (graph != null) {
+                InteractionGraph.ActiveSet active = graph.newActiveSet();
+                return new Pass() {
+                    @Override
+                    public void accept(RecentLog log) {
+                        active.add(log.nameKey);
+                    }
+
+                    @Override
+                    public void finish(List<String> warnings) {
+                        graph.addWarnings(rules.graphId(), active, warnings);
+                    }
+                };
+            }
+
+            if (rules.interactionTargets.length == 0) return null;
+            return new Pass() {
+                private boolean[] matched;
+
+                @Override
+                public void accept(RecentLog log) {
+                    matched = match(rules, log.nameKey, matched);
+                }
+
+                @Override
+                public void finish(List<String> warnings) {
+                    addWarnings(rules, matched, warnings);
+                }
+            };
+        }
+
+        @Override
+        public boolean check(DoseLedger ledger, MedicationInfo medication, double dose, long now,
+                             List<String> warnings) {
+            MedicationRules rules = medication.getRules();
+            InteractionGraph graph = rules.graph();
+            if (graph == null && rules.interactionTargets.length == 0) return true;
+
+            // One lookup per medication taken in the last day, not per dose
+            long oneDayAgo = now - DAY_MILLIS;
+            if (graph != null) {
+                InteractionGraph.ActiveSet active = graph.newActiveSet();
+                for (DoseLedger.Track track : ledger.tracks(now)) {
+                    if (track.latest() >= oneDayAgo) active.add(track.key);
+                }
+                graph.addWarnings(rules.graphId(), active, warnings);
+                return true;
+            }
+
+            boolean[] matched = null;
+            for (DoseLedger.Track track : ledger.tracks(now)) {
+                if (track.latest() >= oneDayAgo) {
+                    matched = match(rules, track.key, matched);
+                }
+            }
+            addWarnings(rules, matched, warnings);
+            return true;
+        }
+
+        /** Marks the interaction targets matching {@code name}, allocating the flags on first match. */
+        private static boolean[] match(MedicationRules rules, MedicationRules.NameKey name,
+                                       boolean[] matched) {
+            // Only targets sharing the name's root word can match it
+            int[] candidates = rules.interactionCandidates(name);
+            if (candidates == null) return matched;
+            for (int index : candidates) {
+                if (name.matches(rules.interactionTargets[index])) {
+                    if (matched == null) matched = new boolean[rules.interactionTargets.length];
+                    matched[index] = true;
+                }
+            }
+            return matched;
+        }
+
+        private static void addWarnings(MedicationRules rules, boolean[] matched,
+                                        List<String> warnings) {
+            if (matched == null) return;
+            // Report in the order the interactions are listed for the medication
+            for (int i = 0; i < matched.length; i++) {
+                if (!matched[i]) continue;
+                MedicationInfo.Interaction interaction = rules.interactions.get(i);
+                InteractionGraph.addWarning(
+                        interaction.getDrug(), interaction.getInteraction(), warnings);
+            }
+        }
+    }
+
+    /** 4. Colestipol taken less than 4 hours ago. */
+    private static class ColestipolTimingRule implements WarningRule {
+        private static final long WINDOW_MILLIS = 4 * 3600_000L;
+
+        @Override
+        public long windowMillis(MedicationInfo medication) {
+            return WINDOW_MILLIS;
+        }
+
+        @Override
+        public Pass begin(MedicationInfo medication, double dose, long now) {
+            // If the user is taking colestipol itself, no need for this warning
+            if (medication.getRules().name.colestipol) return null;
+
+            return new Pass() {
+                private long elapsed = -1;
+
+                @Override
+                public void accept(RecentLog log) {
+                    if (elapsed >= 0 || !log.nameKey.colestipol) return;
+                    if (log.timestampMillis <= now) {
+                        elapsed = now - log.timestampMillis;
+                    }
+                }
+
+                @Override
+                public void finish(List<String> warnings) {
+                    if (elapsed >= 0) addWarning(elapsed, warnings);
+                }
+            };
+        }
+
+        @Override
+        public boolean check(DoseLedger ledger, MedicationInfo medication, double dose, long now,
+                             List<String> warnings) {
+            if (medication.getRules().name.colestipol) return true;
+
+            long last = -1;
+            for (DoseLedger.Track track : ledger.tracks(now)) {
+                if (track.key.colestipol) {
+                    last = Math.max(last, track.latestAtOrBefore(now));
+                }
+            }
+            if (last >= 0 && now - last <= WINDOW_MILLIS) {
+                addWarning(now - last, warnings);
+            }
+            return true;
+        }
+
+        private static void addWarning(long elapsed, List<String> warnings) {
+            warnings.add(String.format(
+                    "⚠ Colestipol was taken %.1f hours ago. It can reduce absorption of other medications. "
+                            + "Wait at least 4 hours after colestipol before taking other oral medications.",
+                    elapsed / 3600_000.0));
+        }
+    }
+
+    /**
+     * 5. The estimated amount of the medication still in the body, plus the
+     * proposed dose, would pass the peak reached at steady state on the
+     * maximum daily dose. Catches doses that each stay within the daily
+     * limits but build up because they are eliminated slowly.
+     */
+    private static class AccumulationRule implements WarningRule {
+        /** Slack over the steady-state peak, so regular dosing a little early does not warn. */
+        private static final double MARGIN = 1.1;
+
+        @Override
+        public long windowMillis(MedicationInfo medication) {
+            MedicationRules rules = medication.getRules();
+            if (rules.steadyStatePeak <= 0) return 0;
+            return Math.min(DoseLedger.RETENTION_MILLIS,
+                    ConcentrationEstimator.horizonMillis(rules.decayPerMilli));
+        }
+
+        @Override
+        public Pass begin(MedicationInfo medication, double dose, long now) {
+            MedicationRules rules = medication.getRules();
+            if (rules.steadyStatePeak <= 0) return null;
+
+            return new Pass() {
+                private double level;
+
+                @Override
+                public void accept(RecentLog log) {
+                    if (log.timestampMillis <= now && log.nameKey.matches(rules.name)) {
+                        level += ConcentrationEstimator.remaining(
+                                log.dose, now - log.timestampMillis, rules.decayPerMilli);
+                    }
+                }
+
+                @Override
+                public void finish(List<String> warnings) {
+                    check(medication, level, dose, warnings);
+                }
+            };
+        }
+
+        @Override
+        public boolean check(DoseLedger ledger, MedicationInfo medication, double dose, long now,
+                             List<String> warnings) {
+            MedicationRules rules = medication.getRules();
+            if (rules.steadyStatePeak <= 0) return true;
+
+            check(medication, ledger.level(rules.name, rules.decayPerMilli, now), dose, warnings);
+            return true;
+        }
+
+        private static void check(MedicationInfo medication, double level, double dose,
+                                  List<String> warnings) {
+            MedicationRules rules = medication.getRules();
+            double limit = rules.steadyStatePeak * MARGIN;
+            // A single dose over the limit is the daily maximum's warning, not a build-up
+            if (level <= 0 || dose > limit || level + dose <= limit) return;
+            warnings.add(String.format(
+                    "⚠ Accumulation: About %.1f %s of %s is estimated to still be in your system "
+                            + "(half-life %.1f hours). This dose would bring it to %.1f %s, above the "
+                            + "%.1f %s reached with regular dosing at the maximum daily dose.",
+                    level, medication.getDoseUnit(), medication.getGenericName(),
+                    rules.halfLifeHours, level + dose, medication.getDoseUnit(),
+                    rules.steadyStatePeak, medication.getDoseUnit()));
+        }
+    }
+
+    /** Attempt to parse the first number of hours from a time description string. */
+    static double parseHoursFromTimeString(String s) {
+        if (s == null) return 0;
+        String lower = s.toLowerCase();
+
+        // Look for "X hours" or "X-Y hours" patterns
+        Matcher m = HOURS_PATTERN.matcher(lower);
+        if (m.find()) {
+            double first = Double.parseDouble(m.group(1));
+            if (m.group(2) != null) {
+                // Use the lower bound of the range for safety
+                return first;
+            }
+            return first;
+        }
+
+        return 0;
+    }
+
+    /**
+     * Parses the first half-life in hours from a description such as
+     * "2-3 hours (mean approximately 2.9 hours in adults)". Takes the upper
+     * end of a range, as slower elimination is the cautious assumption for
+     * build-up. Returns 0 if no time in hours is given.
+     */
+    static double parseHalfLifeHours(String s) {
+        if (s == null) return 0;
+        Matcher m = HOURS_PATTERN.matcher(s.toLowerCase());
+        if (!m.find()) return 0;
+        return Double.parseDouble(m.group(2) != null ? m.group(2) : m.group(1));
+    }
+
+    /** Extract the first number from a string like "72 mg/day" -> 72.0 */
+    static double parseFirstNumber(String s) {
+        if (s == null) return 0;
+        Matcher m = NUMBER_PATTERN.matcher(s);
+        if (m.find()) {
+            return Double.parseDouble(m.group(1));
+        }
+        return 0;
+    }
+}
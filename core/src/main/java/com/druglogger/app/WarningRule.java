@@ -0,0 +1,44 @@
+package com.druglogger.app;
+
+import java.util.List;
+
+/**
+ * A safety check run by {@link WarningChecker}. Rules do not scan the history
+ * themselves: the checker walks the recent logs once, newest first, and hands
+ * each rule only the logs inside its window.
+ *
+ * Rule instances are shared, so per-check state belongs in the {@link Pass}.
+ */
+public interface WarningRule {
+
+    /** How far back from now this rule needs to see logs for the given medication. */
+    long windowMillis(MedicationInfo medication);
+
+    /**
+     * Starts evaluating a proposed dose. Returns null if the rule cannot fire
+     * for this medication, so it is skipped for the whole pass.
+     *
+     * @param now The clock value shared by every rule in this check
+     */
+    Pass begin(MedicationInfo medication, double dose, long now);
+
+    /**
+     * Evaluates the rule straight from the ledger's per-medication aggregates,
+     * adding any warnings. Returns false if the rule has no aggregate form, in
+     * which case the checker runs a {@link Pass} over the ledger's retained doses.
+     * Called while holding the ledger's lock.
+     */
+    default boolean check(DoseLedger ledger, MedicationInfo medication, double dose, long now,
+                          List<String> warnings) {
+        return false;
+    }
+
+    /** Per-check state of a rule. */
+    interface Pass {
+        /** Called for each log no older than the rule's window, newest first. */
+        void accept(WarningChecker.RecentLog log);
+
+        /** Adds this rule's warnings, if any, once every log has been seen. */
+        void finish(List<String> warnings);
+    }
+}
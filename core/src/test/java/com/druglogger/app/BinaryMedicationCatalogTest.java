@@ -0,0 +1,117 @@
+package com.druglogger.app;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * The binary catalog the build compiles, read back field by field against
+ * medlist.json, and the checks on a file that is not one.
+ */
+public class BinaryMedicationCatalogTest {
+
+    @Test
+    public void matchesTheJsonCatalog() throws Exception {
+        List<MedicationInfo> json = TestMedications.loadJsonCatalog();
+        BinaryMedicationCatalog binary =
+                new BinaryMedicationCatalog(TestMedications.mapBinaryCatalog());
+        assertTrue(json.size() > 0);
+        assertEquals(json.size(), binary.size());
+
+        for (int i = 0; i < json.size(); i++) {
+            MedicationInfo expected = json.get(i);
+            String where = expected.getGenericName();
+            assertEquals(where, expected.getGenericName(), binary.getGenericName(i));
+            assertEquals(where, expected.getBrandNames(), binary.getBrandNames(i));
+
+            MedicationInfo actual = binary.get(i);
+            assertEquals(where, expected.getGenericName(), actual.getGenericName());
+            assertEquals(where, expected.getBrandNames(), actual.getBrandNames());
+            assertEquals(where, expected.getOnLabelUses(), actual.getOnLabelUses());
+            assertEquals(where, expected.getOffLabelUses(), actual.getOffLabelUses());
+            assertEquals(where, expected.getDoses(), actual.getDoses());
+            assertEquals(where, expected.getDoseUnit(), actual.getDoseUnit());
+            assertEquals(where, expected.getMaximumDailyDosage(), actual.getMaximumDailyDosage());
+            assertEquals(where, expected.getTimeRequiredBetweenDoses(),
+                    actual.getTimeRequiredBetweenDoses());
+            assertEquals(where, expected.getHalfLife(), actual.getHalfLife());
+            assertEquals(where, expected.getInteractions().size(),
+                    actual.getInteractions().size());
+            for (int j = 0; j < expected.getInteractions().size(); j++) {
+                assertEquals(where, expected.getInteractions().get(j).getDrug(),
+                        actual.getInteractions().get(j).getDrug());
+                assertEquals(where, expected.getInteractions().get(j).getInteraction(),
+                        actual.getInteractions().get(j).getInteraction());
+            }
+            // Decoded once, then kept
+            assertSame(where, actual, binary.get(i));
+        }
+    }
+
+    @Test
+    public void interactionGraphIsBuiltWithoutReadingMedications() throws Exception {
+        List<MedicationInfo> json = TestMedications.loadJsonCatalog();
+        InteractionGraph expected = InteractionGraph.build(json);
+        InteractionGraph actual = InteractionGraph.build(
+                new BinaryMedicationCatalog(TestMedications.mapBinaryCatalog()));
+        assertEquals(expected.getDiagnostics(), actual.getDiagnostics());
+
+        // Every medication taken, so every edge is reported
+        InteractionGraph.ActiveSet allOfExpected = expected.newActiveSet();
+        InteractionGraph.ActiveSet allOfActual = actual.newActiveSet();
+        for (MedicationInfo medication : json) {
+            allOfExpected.add(medication.getRules().name);
+            allOfActual.add(medication.getRules().name);
+        }
+        for (int id = 0; id < json.size(); id++) {
+            List<String> expectedWarnings = new ArrayList<>();
+            List<String> actualWarnings = new ArrayList<>();
+            expected.addWarnings(id, allOfExpected, expectedWarnings);
+            actual.addWarnings(id, allOfActual, actualWarnings);
+            assertEquals(json.get(id).getGenericName(), expectedWarnings, actualWarnings);
+        }
+    }
+
+    @Test
+    public void indexesOutsideTheCatalogAreRejected() throws Exception {
+        BinaryMedicationCatalog binary =
+                new BinaryMedicationCatalog(TestMedications.mapBinaryCatalog());
+        try {
+            binary.getGenericName(binary.size());
+            fail("expected an out-of-range index to fail");
+        } catch (IndexOutOfBoundsException expected) {
+            // Not read from past the records
+        }
+    }
+
+    @Test
+    public void filesThatAreNotACatalogAreRejected() {
+        assertRejected(ByteBuffer.allocate(8), "Not a medication catalog");
+        assertRejected(header(0x12345678, 1, 0, 16), "Not a medication catalog");
+        assertRejected(header(0x4D454443, 2, 0, 16), "Unsupported catalog version 2");
+        assertRejected(header(0x4D454443, 1, 5, 16), "Truncated medication catalog");
+    }
+
+    private static ByteBuffer header(int magic, int version, int count, int recordsOffset) {
+        ByteBuffer buffer = ByteBuffer.allocate(16);
+        buffer.putInt(magic).putInt(version).putInt(count).putInt(recordsOffset);
+        return buffer;
+    }
+
+    private static void assertRejected(ByteBuffer buffer, String message) {
+        try {
+            new BinaryMedicationCatalog(buffer);
+            fail("expected \"" + message + "\"");
+        } catch (IOException expected) {
+            assertEquals(message, expected.getMessage());
+        }
+    }
+}
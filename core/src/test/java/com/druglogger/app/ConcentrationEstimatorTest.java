@@ -0,0 +1,93 @@
+package com.druglogger.app;
+
+import org.junit.Test;
+
+import static com.druglogger.app.TestMedications.HOUR_MILLIS;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * The running level of {@link ConcentrationEstimator} against summing every
+ * dose's elimination curve directly.
+ */
+public class ConcentrationEstimatorTest {
+
+    private static final long T0 = 1_700_000_000_000L;
+    private static final double DECAY = ConcentrationEstimator.decayPerMilli(4);
+
+    @Test
+    public void halfLifeHalvesTheLevel() {
+        assertEquals(0, ConcentrationEstimator.decayPerMilli(0), 0);
+        assertEquals(50, ConcentrationEstimator.remaining(100, 4 * HOUR_MILLIS, DECAY), 1e-9);
+        assertEquals(25, ConcentrationEstimator.remaining(100, 8 * HOUR_MILLIS, DECAY), 1e-9);
+        // A term falls below the negligible fraction after about 13.3 half-lives
+        long horizon = ConcentrationEstimator.horizonMillis(DECAY);
+        assertEquals(ConcentrationEstimator.NEGLIGIBLE_FRACTION,
+                ConcentrationEstimator.remaining(1, horizon, DECAY), 1e-8);
+        assertEquals(0, ConcentrationEstimator.horizonMillis(0));
+    }
+
+    @Test
+    public void runningLevelMatchesTheSumOfTerms() {
+        long[] times = {T0, T0 + 3 * HOUR_MILLIS, T0 + 5 * HOUR_MILLIS, T0 + 11 * HOUR_MILLIS};
+        double[] amounts = {200, 400, 200, 100};
+        ConcentrationEstimator estimator = new ConcentrationEstimator(DECAY);
+        // Out of order, as a dose mirrored from another device can arrive late
+        int[] order = {0, 2, 1, 3};
+        for (int i : order) {
+            estimator.add(times[i], amounts[i]);
+        }
+        assertEquals(times[3], estimator.latestTime());
+
+        long now = T0 + 14 * HOUR_MILLIS;
+        assertEquals(direct(times, amounts, times.length, now), estimator.levelAt(now), 1e-9);
+
+        estimator.remove(times[1], amounts[1]);
+        double withoutSecond = direct(new long[]{times[0], times[2], times[3]},
+                new double[]{amounts[0], amounts[2], amounts[3]}, 3, now);
+        assertEquals(withoutSecond, estimator.levelAt(now), 1e-9);
+    }
+
+    @Test
+    public void levelDropsToZeroOnceNegligible() {
+        ConcentrationEstimator estimator = new ConcentrationEstimator(DECAY);
+        assertEquals(0, estimator.levelAt(T0), 0);
+        estimator.add(T0, 100);
+        long horizon = ConcentrationEstimator.horizonMillis(DECAY);
+        assertEquals(0, estimator.levelAt(T0 + horizon + HOUR_MILLIS), 0);
+
+        // Removing every dose leaves nothing rather than rounding noise
+        estimator = new ConcentrationEstimator(DECAY);
+        estimator.add(T0, 100);
+        estimator.add(T0 + HOUR_MILLIS, 0.1);
+        estimator.remove(T0, 100);
+        estimator.remove(T0 + HOUR_MILLIS, 0.1);
+        assertEquals(0, estimator.levelAt(T0 + 2 * HOUR_MILLIS), 0);
+    }
+
+    @Test
+    public void timelineMatchesTheSumOfTermsAtEverySample() {
+        long[] times = {T0 - 2 * HOUR_MILLIS, T0 + 30 * 60_000L, T0 + 30 * 60_000L,
+                T0 + 7 * HOUR_MILLIS};
+        double[] amounts = {300, 100, 50, 200};
+        long step = 20 * 60_000L;
+        double[] levels = new double[40];
+        ConcentrationEstimator.addTimeline(times, amounts, times.length, DECAY, T0, step,
+                levels);
+        for (int i = 0; i < levels.length; i++) {
+            long time = T0 + i * step;
+            assertEquals("sample " + i, direct(times, amounts, times.length, time), levels[i],
+                    1e-9);
+        }
+    }
+
+    /** Sums the remaining amount of every dose taken at or before {@code now}. */
+    private static double direct(long[] times, double[] amounts, int count, long now) {
+        double level = 0;
+        for (int i = 0; i < count; i++) {
+            if (times[i] <= now) {
+                level += ConcentrationEstimator.remaining(amounts[i], now - times[i], DECAY);
+            }
+        }
+        return level;
+    }
+}
@@ -0,0 +1,152 @@
+package com.druglogger.app;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static com.druglogger.app.TestMedications.HOUR_MILLIS;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * The aggregates {@link DoseLedger} keeps per medication, as entries come
+ * and go, time moves on, and the sheet mirror is swapped in.
+ */
+public class DoseLedgerTest {
+
+    private static final long NOW = 1_700_000_000_000L;
+    private static final MedicationRules.NameKey IBUPROFEN =
+            MedicationRules.NameKey.of("Ibuprofen");
+
+    private final DoseLedger ledger = new DoseLedger();
+
+    @Test
+    public void dailyTotalSlidesWithTime() {
+        ledger.add(entry(1, "Ibuprofen", 200, NOW - 30 * HOUR_MILLIS));
+        ledger.add(entry(2, "Ibuprofen", 400, NOW - 20 * HOUR_MILLIS));
+        ledger.add(entry(3, "Ibuprofen", 200, NOW - HOUR_MILLIS));
+        ledger.add(entry(4, "Naproxen", 250, NOW - HOUR_MILLIS));
+
+        assertEquals(600, ledger.dailyTotal(IBUPROFEN, NOW), 0);
+        assertEquals(200, ledger.dailyTotal(IBUPROFEN, NOW + 5 * HOUR_MILLIS), 0);
+        // Going back in time brings doses back into the window
+        assertEquals(600, ledger.dailyTotal(IBUPROFEN, NOW), 0);
+        assertEquals(0, ledger.dailyTotal(MedicationRules.NameKey.of("Aspirin"), NOW), 0);
+    }
+
+    @Test
+    public void namesMatchLikeTheWarningChecks() {
+        ledger.add(entry(1, "Ibuprofen 200", 200, NOW - 2 * HOUR_MILLIS));
+        ledger.add(entry(2, "ibuprofen", 400, NOW - HOUR_MILLIS));
+        ledger.add(entry(3, "Ibu", 100, NOW - HOUR_MILLIS / 2));
+
+        assertEquals(600, ledger.dailyTotal(IBUPROFEN, NOW), 0);
+        assertEquals(NOW - HOUR_MILLIS, ledger.lastDoseMillis(IBUPROFEN, NOW));
+    }
+
+    @Test
+    public void lastDoseIgnoresFutureDoses() {
+        ledger.add(entry(1, "Ibuprofen", 200, NOW - 3 * HOUR_MILLIS));
+        ledger.add(entry(2, "Ibuprofen", 200, NOW + HOUR_MILLIS));
+
+        assertEquals(NOW - 3 * HOUR_MILLIS, ledger.lastDoseMillis(IBUPROFEN, NOW));
+        assertEquals(NOW + HOUR_MILLIS, ledger.lastDoseMillis(IBUPROFEN, NOW + 2 * HOUR_MILLIS));
+        assertEquals(-1, ledger.lastDoseMillis(IBUPROFEN, NOW - 4 * HOUR_MILLIS));
+    }
+
+    @Test
+    public void removedAndExpiredDosesAreForgotten() {
+        ledger.add(entry(1, "Ibuprofen", 200, NOW - 2 * HOUR_MILLIS));
+        ledger.add(entry(2, "Ibuprofen", 300, NOW - HOUR_MILLIS));
+        ledger.remove(2);
+        ledger.remove(99);
+        assertEquals(200, ledger.dailyTotal(IBUPROFEN, NOW), 0);
+        assertEquals(NOW - 2 * HOUR_MILLIS, ledger.lastDoseMillis(IBUPROFEN, NOW));
+
+        // Adding the same entry twice counts it once
+        ledger.add(entry(1, "Ibuprofen", 200, NOW - 2 * HOUR_MILLIS));
+        assertEquals(200, ledger.dailyTotal(IBUPROFEN, NOW), 0);
+
+        long later = NOW + DoseLedger.RETENTION_MILLIS;
+        assertEquals(-1, ledger.lastDoseMillis(IBUPROFEN, later));
+        assertEquals(0, ledger.tracks(later).size());
+        assertEquals(0, ledger.recentLogs(Long.MIN_VALUE).size());
+    }
+
+    @Test
+    public void levelMatchesTheRecentLogs() {
+        double decay = ConcentrationEstimator.decayPerMilli(2);
+        ledger.add(entry(1, "Ibuprofen", 400, NOW - 6 * HOUR_MILLIS));
+        ledger.add(entry(2, "Ibuprofen", 200, NOW - 2 * HOUR_MILLIS));
+        assertEquals(expectedLevel(decay, NOW), ledger.level(IBUPROFEN, decay, NOW), 1e-9);
+
+        // Kept up to date as doses come and go, including one dated later than now
+        ledger.add(entry(3, "Ibuprofen", 200, NOW - HOUR_MILLIS));
+        ledger.remove(1);
+        ledger.add(entry(4, "Ibuprofen", 200, NOW + HOUR_MILLIS));
+        assertEquals(expectedLevel(decay, NOW), ledger.level(IBUPROFEN, decay, NOW), 1e-9);
+
+        double[] timeline = ledger.levelTimeline(IBUPROFEN, decay, NOW - 3 * HOUR_MILLIS,
+                HOUR_MILLIS, 6);
+        for (int i = 0; i < timeline.length; i++) {
+            long time = NOW - 3 * HOUR_MILLIS + i * HOUR_MILLIS;
+            assertEquals("hour " + i, expectedLevel(decay, time), timeline[i], 1e-9);
+        }
+    }
+
+    @Test
+    public void sheetCopiesOfLocalEntriesAreCountedOnce() {
+        ledger.add(entry(1, "Ibuprofen", 200, NOW - 2 * HOUR_MILLIS));
+        ledger.add(entry(2, "Ibuprofen", 200, NOW - HOUR_MILLIS));
+
+        ledger.replaceRemote(Arrays.asList(
+                // Copies of the two local entries, stamped by the sheet a little later
+                entry(-1, "Ibuprofen", 200, NOW - 2 * HOUR_MILLIS + 30_000),
+                entry(-2, "Ibuprofen", 200, NOW - HOUR_MILLIS + 90_000),
+                // Logged on another device
+                entry(-3, "Ibuprofen", 200, NOW - HOUR_MILLIS + 60_000),
+                // Same time as a local entry but a different amount
+                entry(-4, "Ibuprofen", 400, NOW - 2 * HOUR_MILLIS)));
+        assertEquals(1000, ledger.dailyTotal(IBUPROFEN, NOW), 0);
+
+        // A new mirror replaces the old one, and rebuilding keeps it
+        ledger.replaceRemote(Collections.singletonList(
+                entry(-5, "Ibuprofen", 100, NOW - 3 * HOUR_MILLIS)));
+        assertEquals(500, ledger.dailyTotal(IBUPROFEN, NOW), 0);
+        ledger.rebuild(Collections.singletonList(entry(1, "Ibuprofen", 200,
+                NOW - 2 * HOUR_MILLIS)));
+        assertEquals(300, ledger.dailyTotal(IBUPROFEN, NOW), 0);
+        ledger.clear();
+        assertEquals(100, ledger.dailyTotal(IBUPROFEN, NOW), 0);
+    }
+
+    @Test
+    public void recentLogsAreNewestFirst() {
+        ledger.add(entry(1, "Naproxen", 250, NOW - 3 * HOUR_MILLIS));
+        ledger.add(entry(2, "Ibuprofen", 200, NOW - HOUR_MILLIS));
+        ledger.add(entry(3, "Ibuprofen", 200, NOW - 2 * HOUR_MILLIS));
+
+        List<WarningChecker.RecentLog> logs = ledger.recentLogs(NOW - 2 * HOUR_MILLIS);
+        assertEquals(2, logs.size());
+        assertEquals(NOW - HOUR_MILLIS, logs.get(0).timestampMillis);
+        assertEquals(NOW - 2 * HOUR_MILLIS, logs.get(1).timestampMillis);
+        assertEquals("ibuprofen", logs.get(0).medicationName);
+    }
+
+    /** The level at {@code now} summed from the ledger's retained doses. */
+    private double expectedLevel(double decay, long now) {
+        double level = 0;
+        for (WarningChecker.RecentLog log : ledger.recentLogs(Long.MIN_VALUE)) {
+            if (log.timestampMillis <= now) {
+                level += ConcentrationEstimator.remaining(log.dose, now - log.timestampMillis,
+                        decay);
+            }
+        }
+        return level;
+    }
+
+    private static DrugEntry entry(long id, String name, double dose, long timestamp) {
+        return new DrugEntry(id, name, null, dose, "mg", null, timestamp);
+    }
+}
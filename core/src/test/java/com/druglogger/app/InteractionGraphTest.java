@@ -0,0 +1,108 @@
+package com.druglogger.app;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static com.druglogger.app.TestMedications.interaction;
+import static com.druglogger.app.TestMedications.medication;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Building an {@link InteractionGraph} from a small catalog, and the
+ * warnings it gives for a set of recently taken medications.
+ */
+public class InteractionGraphTest {
+
+    private static final int IBUPROFEN = 0;
+    private static final int WARFARIN = 1;
+    private static final int CELECOXIB = 2;
+    private static final int ASPIRIN = 3;
+
+    private List<MedicationInfo> catalog;
+    private InteractionGraph graph;
+
+    @Before
+    public void setUp() {
+        catalog = Arrays.asList(
+                medication("Ibuprofen", null, null, null,
+                        interaction("Warfarin", "Bleeding risk"),
+                        interaction("Unknownazole", "Not in the catalog")),
+                medication("Warfarin", null, null, null),
+                medication("Celecoxib", null, null, null),
+                medication("Aspirin", null, null, null,
+                        interaction("NSAIDs (Celecoxib, Ibuprofen)", "Stomach bleeding")));
+        graph = InteractionGraph.build(catalog);
+    }
+
+    @Test
+    public void graphIsAttachedToTheMedications() {
+        for (int id = 0; id < catalog.size(); id++) {
+            assertSame(graph, catalog.get(id).getRules().graph());
+            assertEquals(id, catalog.get(id).getRules().graphId());
+        }
+    }
+
+    @Test
+    public void unresolvedTargetsAreReported() {
+        assertEquals(Collections.singletonList(
+                "Ibuprofen: interaction target \"Unknownazole\" is not in the medication list"),
+                graph.getDiagnostics());
+    }
+
+    @Test
+    public void edgesListedOnOneSideAreFoundFromBoth() {
+        assertEquals(Collections.singletonList("⚠ Interaction with Warfarin: Bleeding risk"),
+                warnings(IBUPROFEN, "Warfarin"));
+        assertEquals(Collections.singletonList("⚠ Interaction with Ibuprofen: Bleeding risk"),
+                warnings(WARFARIN, "warfarin", "Ibuprofen"));
+        assertEquals(Collections.emptyList(), warnings(WARFARIN, "Celecoxib"));
+    }
+
+    @Test
+    public void groupTargetsResolveThroughTheNamesInParentheses() {
+        assertEquals(Collections.singletonList(
+                "⚠ Interaction with NSAIDs (Celecoxib, Ibuprofen): Stomach bleeding"),
+                warnings(ASPIRIN, "Celecoxib"));
+        assertEquals(Collections.singletonList("⚠ Interaction with Aspirin: Stomach bleeding"),
+                warnings(CELECOXIB, "Aspirin"));
+        // The medication's own interactions come first
+        assertEquals(Arrays.asList(
+                "⚠ Interaction with Warfarin: Bleeding risk",
+                "⚠ Interaction with Aspirin: Stomach bleeding"),
+                warnings(IBUPROFEN, "Aspirin", "Warfarin"));
+    }
+
+    @Test
+    public void namesOutsideTheCatalogStillMatchByName() {
+        assertEquals(Collections.singletonList(
+                "⚠ Interaction with Unknownazole: Not in the catalog"),
+                warnings(IBUPROFEN, "Unknownazole 10 mg"));
+    }
+
+    @Test
+    public void logNamesResolveToCatalogIds() {
+        assertArrayEquals(new int[]{IBUPROFEN},
+                graph.resolveLogName(MedicationRules.NameKey.of("ibuprofen")));
+        assertArrayEquals(new int[]{IBUPROFEN},
+                graph.resolveLogName(MedicationRules.NameKey.of("Ibuprofen 200 mg")));
+        assertArrayEquals(new int[0],
+                graph.resolveLogName(MedicationRules.NameKey.of("Naproxen")));
+    }
+
+    private List<String> warnings(int id, String... taken) {
+        InteractionGraph.ActiveSet active = graph.newActiveSet();
+        for (String name : taken) {
+            active.add(MedicationRules.NameKey.of(name));
+        }
+        List<String> warnings = new ArrayList<>();
+        graph.addWarnings(id, active, warnings);
+        return warnings;
+    }
+}
@@ -0,0 +1,111 @@
+package com.druglogger.app;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static com.druglogger.app.TestMedications.named;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Search ranking and the exact lookups of {@link MedicationIndex}, over a
+ * small catalog whose names exercise each match kind.
+ */
+public class MedicationIndexTest {
+
+    private static final int NAPROXEN = 0;
+    private static final int PREGABALIN = 1;
+    private static final int ASPIRIN = 2;
+    private static final int PREDNISONE = 3;
+    private static final int LORATADINE = 4;
+    private static final int COLESTYRAMINE = 5;
+    private static final int MULTIVITAMIN = 6;
+    private static final int APREMILAST = 7;
+    private static final int METOPROLOL = 8;
+    private static final int ECOTRIN = 9;
+    private static final int SECOND_BAYER = 10;
+
+    private MedicationIndex index;
+
+    @Before
+    public void setUp() {
+        List<MedicationInfo> medications = Arrays.asList(
+                named("Naproxen", "Aleve"),
+                named("Pregabalin", "Lyrica"),
+                named("Aspirin", "Bayer"),
+                named("Prednisone"),
+                named("Loratadine", "Claritin", "Pre"),
+                named("Colestyramine", "Prevalite"),
+                named("Multivitamin", "One A Day Prenatal"),
+                named("Apremilast", "Otezla"),
+                named("Metoprolol", "Lopressor"),
+                named("Aspirin", "Ecotrin"),
+                named("Aspirin", "Bayer"));
+        index = new MedicationIndex(new ListMedicationCatalog(medications));
+    }
+
+    @Test
+    public void matchesAreRankedByKindThenDisplayName() {
+        // Exact brand, generic prefixes, brand prefix, later word, then anywhere
+        assertEquals(Arrays.asList(LORATADINE, PREDNISONE, PREGABALIN, COLESTYRAMINE,
+                MULTIVITAMIN, APREMILAST, METOPROLOL), index.search("pre", 10));
+        assertEquals(Arrays.asList(LORATADINE, PREDNISONE, PREGABALIN, COLESTYRAMINE,
+                MULTIVITAMIN, APREMILAST, METOPROLOL), index.search("  PRE ", 10));
+    }
+
+    @Test
+    public void onlyTheBestMatchesUpToTheLimitAreReturned() {
+        assertEquals(Arrays.asList(LORATADINE, PREDNISONE, PREGABALIN), index.search("pre", 3));
+        assertEquals(Arrays.asList(LORATADINE, PREDNISONE, PREGABALIN, COLESTYRAMINE,
+                MULTIVITAMIN, APREMILAST), index.search("pre", 6));
+        assertEquals(Collections.emptyList(), index.search("pre", 0));
+        assertEquals(Collections.emptyList(), index.search(" ", 10));
+    }
+
+    @Test
+    public void shortQueriesOnlyMatchPrefixes() {
+        // No trigrams, so "Naproxen" does not match "ap" in the middle
+        assertEquals(Collections.singletonList(APREMILAST), index.search("ap", 10));
+        assertEquals(Arrays.asList(APREMILAST, MULTIVITAMIN), index.search("o", 10));
+    }
+
+    @Test
+    public void trigramsWithoutPostingsMatchNothing() {
+        assertEquals(Collections.emptyList(), index.search("prex", 10));
+        assertEquals(Collections.emptyList(), index.search("qzx", 10));
+        assertEquals(-1, index.findByGenericName("prex"));
+    }
+
+    @Test
+    public void duplicateNamesResolveToTheFirstMedication() {
+        assertEquals(ASPIRIN, index.findByGenericName("ASPIRIN"));
+        assertEquals(ASPIRIN, index.findByDisplayName("Aspirin (Bayer)"));
+        assertEquals(ASPIRIN, index.findBySheetName("Aspirin [Bayer]"));
+        assertEquals(ASPIRIN, index.findBySheetName("bayer"));
+        // Only the first is an exact match; the others rank as generic prefixes
+        assertEquals(Arrays.asList(ASPIRIN, SECOND_BAYER, ECOTRIN), index.search("aspirin", 10));
+    }
+
+    @Test
+    public void genericNamesMatchWholeOrInPart() {
+        assertEquals(PREDNISONE, index.findByGenericName(" Prednisone "));
+        assertEquals(PREGABALIN, index.findByGenericName("gaba"));
+        // Too short for trigrams, so every medication is a candidate, in catalog order
+        assertEquals(NAPROXEN, index.findByGenericName("ap"));
+        assertEquals(-1, index.findByGenericName("Lyrica"));
+    }
+
+    @Test
+    public void sheetNamesAndHandTypedNames() {
+        assertEquals(PREGABALIN, index.findBySheetName("Pregabalin [Lyrica]"));
+        assertEquals(PREGABALIN, index.findBySheetName("lyrica"));
+        assertEquals(LORATADINE, index.findBySheetName("Loratadine [Claritin, Pre]"));
+        assertEquals(PREDNISONE, index.findBySheetName("Prednisone"));
+        assertEquals(-1, index.findBySheetName("Ibuprofen [Advil]"));
+        assertEquals(-1, index.findByDisplayName("Pregabalin"));
+        assertEquals("Loratadine (Claritin, ...)", index.getDisplayName(LORATADINE));
+    }
+}
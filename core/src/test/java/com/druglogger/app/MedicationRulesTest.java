@@ -0,0 +1,85 @@
+package com.druglogger.app;
+
+import org.junit.Test;
+
+import static com.druglogger.app.TestMedications.HOUR_MILLIS;
+import static com.druglogger.app.TestMedications.interaction;
+import static com.druglogger.app.TestMedications.medication;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * What {@link MedicationRules} compiles from a medication's description
+ * fields, and the fuzzy name matching of {@link MedicationRules.NameKey}.
+ */
+public class MedicationRulesTest {
+
+    @Test
+    public void fieldsAreParsedOnce() {
+        MedicationRules rules = medication("Ibuprofen", "1200 mg/day (OTC)", "6-8 hours",
+                "2-4 hours").getRules();
+        assertEquals("ibuprofen", rules.name.full);
+        assertEquals(6 * HOUR_MILLIS, rules.intervalMillis);
+        assertEquals(1200, rules.maxDailyDose, 0);
+        assertEquals(4, rules.halfLifeHours, 0);
+        assertEquals(ConcentrationEstimator.decayPerMilli(4), rules.decayPerMilli, 0);
+        assertEquals(0, rules.interactions.size());
+        assertNull(rules.graph());
+    }
+
+    @Test
+    public void steadyStatePeakOfRegularDosing() {
+        // 300 mg every 6 hours, a quarter of it still there from each earlier dose
+        MedicationRules rules = medication("Ibuprofen", "1200 mg/day", "6 hours", "3 hours")
+                .getRules();
+        assertEquals(300 / (1 - 0.25), rules.steadyStatePeak, 1e-9);
+
+        // Without an interval the whole daily maximum counts as one dose a day
+        rules = medication("Naproxen", "1000 mg/day", null, "12 hours").getRules();
+        assertEquals(1000 / (1 - 0.25), rules.steadyStatePeak, 1e-9);
+
+        assertEquals(0, medication("Warfarin", "10 mg", null, null).getRules().steadyStatePeak, 0);
+        assertEquals(0, medication("Aspirin", null, null, "3 hours").getRules().steadyStatePeak, 0);
+    }
+
+    @Test
+    public void interactionCandidatesAreGroupedByRootWord() {
+        MedicationRules rules = medication("Ibuprofen", null, null, null,
+                interaction("Warfarin", "Bleeding"),
+                interaction("Aspirin", "Less protection"),
+                interaction("Warfarin sodium", "Bleeding")).getRules();
+        assertArrayEquals(new int[]{0, 2},
+                rules.interactionCandidates(MedicationRules.NameKey.of("warfarin 5 mg")));
+        assertArrayEquals(new int[]{1},
+                rules.interactionCandidates(MedicationRules.NameKey.of("Aspirin")));
+        assertNull(rules.interactionCandidates(MedicationRules.NameKey.of("Naproxen")));
+    }
+
+    @Test
+    public void namesMatchOnTheWholeNameOrALongEnoughFirstWord() {
+        assertTrue(matches("Ibuprofen", "IBUPROFEN"));
+        assertTrue(matches("Ibuprofen", "Ibuprofen 200 mg"));
+        // First words of fewer than four letters are too short to go on
+        assertFalse(matches("Ibu", "Ibuprofen"));
+        assertFalse(matches("Tea one", "Tea two"));
+        assertTrue(matches("Colestipol", "colestipol HCl"));
+        assertFalse(matches("Naproxen", "Ibuprofen"));
+        assertFalse(matches("", "Ibuprofen"));
+
+        assertTrue(MedicationRules.NameKey.of("Colestipol HCl").colestipol);
+        assertFalse(MedicationRules.NameKey.of("Ibuprofen").colestipol);
+        assertEquals("", MedicationRules.NameKey.of(null).full);
+        assertSame(MedicationRules.NameKey.of("Ibuprofen"), MedicationRules.NameKey.of("Ibuprofen"));
+    }
+
+    private static boolean matches(String a, String b) {
+        boolean forward = MedicationRules.NameKey.of(a).matches(MedicationRules.NameKey.of(b));
+        assertEquals("symmetric", forward,
+                MedicationRules.NameKey.of(b).matches(MedicationRules.NameKey.of(a)));
+        return forward;
+    }
+}
@@ -0,0 +1,188 @@
+package com.druglogger.app;
+
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * {@link Metrics} timers and counters with recording off and on, as read back
+ * through the snapshot, and the sections they report to a tracer. Metrics are
+ * process-wide, so every test starts from a cleared, disabled state.
+ */
+public class MetricsTest {
+
+    /** Records sections as "+name" and "-". */
+    private static final class RecordingTracer implements Metrics.Tracer {
+        final List<String> calls = new ArrayList<>();
+
+        @Override
+        public void beginSection(String name) {
+            calls.add("+" + name);
+        }
+
+        @Override
+        public void endSection() {
+            calls.add("-");
+        }
+    }
+
+    private static final long MILLI = 1_000_000L;
+
+    private final Metrics.Timer timer = Metrics.timer("test.timer");
+    private final Metrics.Timer inner = Metrics.timer("test.inner");
+    private final Metrics.Counter counter = Metrics.counter("test.counter");
+    private RecordingTracer tracer;
+
+    @Before
+    public void setUp() {
+        Metrics.setEnabled(false);
+        Metrics.reset();
+        tracer = new RecordingTracer();
+        Metrics.setTracer(tracer);
+    }
+
+    @After
+    public void tearDown() {
+        Metrics.setEnabled(false);
+        Metrics.setTracer(null);
+        Metrics.reset();
+    }
+
+    @Test
+    public void nothingIsRecordedWhileOff() throws Exception {
+        long started = timer.start();
+        assertEquals(Metrics.NOT_STARTED, started);
+        assertEquals(0, timer.stop(started));
+        timer.record(5 * MILLI);
+        timer.recordSince(started);
+        counter.increment();
+        counter.add(10);
+
+        assertFalse(Metrics.isEnabled());
+        assertEquals(Collections.emptyList(), tracer.calls);
+        assertEquals(0, timerJson("test.timer").getLong("count"));
+        assertEquals(0, counterValue("test.counter"));
+    }
+
+    @Test
+    public void startedTimerRecordsTheElapsedTime() throws Exception {
+        Metrics.setEnabled(true);
+        long started = timer.start();
+        assertNotEquals(Metrics.NOT_STARTED, started);
+        long elapsed = timer.stop(started);
+        assertTrue(elapsed >= 0);
+
+        JSONObject json = timerJson("test.timer");
+        assertEquals(1, json.getLong("count"));
+        assertEquals(elapsed / 1e6, json.getDouble("max_ms"), 1e-6);
+    }
+
+    @Test
+    public void recordedValuesAreSummarized() throws Exception {
+        Metrics.setEnabled(true);
+        timer.record(MILLI);
+        timer.record(MILLI);
+        timer.record(MILLI);
+        timer.record(3 * MILLI);
+
+        JSONObject json = timerJson("test.timer");
+        assertEquals(4, json.getLong("count"));
+        assertEquals(6.0, json.getDouble("total_ms"), 1e-9);
+        assertEquals(1.5, json.getDouble("mean_ms"), 1e-9);
+        assertEquals(3.0, json.getDouble("max_ms"), 1e-9);
+        // Reported as the top of the value's bucket, within an eighth of it
+        double p50 = json.getDouble("p50_ms");
+        assertTrue("p50 " + p50, p50 >= 1.0 && p50 < 1.125);
+        // Never above the largest value
+        assertEquals(3.0, json.getDouble("p99_ms"), 1e-9);
+        assertEquals(2, json.getJSONArray("buckets").length());
+    }
+
+    @Test
+    public void recordingCanBeStoppedAndKept() throws Exception {
+        Metrics.setEnabled(true);
+        timer.record(MILLI);
+        counter.increment();
+        Metrics.setEnabled(false);
+        timer.record(MILLI);
+        counter.increment();
+
+        assertEquals(1, timerJson("test.timer").getLong("count"));
+        assertEquals(1, counterValue("test.counter"));
+
+        Metrics.reset();
+        assertEquals(0, timerJson("test.timer").getLong("count"));
+        assertEquals(0, counterValue("test.counter"));
+    }
+
+    @Test
+    public void countersAddUpWithATracerInstalled() throws Exception {
+        Metrics.setEnabled(true);
+        counter.increment();
+        counter.add(5);
+        counter.increment();
+
+        assertEquals(7, counterValue("test.counter"));
+        // Counters have no duration, so they open no sections
+        assertEquals(Collections.emptyList(), tracer.calls);
+    }
+
+    @Test
+    public void timersReportNestedSections() throws Exception {
+        Metrics.setEnabled(true);
+        long outerStarted = timer.start();
+        long innerStarted = inner.start();
+        counter.increment();
+        inner.stop(innerStarted);
+        // Stopped after recording is turned off, so the section is still closed
+        Metrics.setEnabled(false);
+        timer.stop(outerStarted);
+
+        assertEquals(Arrays.asList("+test.timer", "+test.inner", "-", "-"), tracer.calls);
+        assertEquals(1, timerJson("test.timer").getLong("count"));
+        assertEquals(1, timerJson("test.inner").getLong("count"));
+        assertEquals(1, counterValue("test.counter"));
+    }
+
+    @Test
+    public void recordedTimesAreNotTraced() throws Exception {
+        Metrics.setEnabled(true);
+        timer.record(MILLI);
+        timer.recordSince(System.nanoTime());
+
+        assertEquals(Collections.emptyList(), tracer.calls);
+        assertEquals(2, timerJson("test.timer").getLong("count"));
+    }
+
+    @Test
+    public void bucketsKeepValuesWithinAnEighth() {
+        long[] values = {0, 1, 7, 8, 9, 15, 16, 1000, MILLI, 123_456_789L, 1L << 40};
+        for (long value : values) {
+            int index = Metrics.Histogram.index(value);
+            long lower = Metrics.Histogram.lowerBound(index);
+            long nextLower = Metrics.Histogram.lowerBound(index + 1);
+            assertTrue("lower bound of " + value, lower <= value);
+            assertTrue("upper bound of " + value, value < nextLower);
+            assertTrue("width at " + value, nextLower - lower <= Math.max(1, lower / 8));
+        }
+    }
+
+    private static JSONObject timerJson(String name) throws Exception {
+        return new JSONObject(Metrics.snapshotJson()).getJSONObject("timers").getJSONObject(name);
+    }
+
+    private static long counterValue(String name) throws Exception {
+        return new JSONObject(Metrics.snapshotJson()).getJSONObject("counters").getLong(name);
+    }
+}
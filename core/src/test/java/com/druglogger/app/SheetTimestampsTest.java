@@ -0,0 +1,85 @@
+package com.druglogger.app;
+
+import org.junit.Test;
+
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.util.TimeZone;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Every form of sheet timestamp {@link SheetTimestamps} accepts, checked
+ * against java.time, including local times on daylight saving changes.
+ */
+public class SheetTimestampsTest {
+
+    private static final String ZONE = "America/New_York";
+
+    private final SheetTimestamps parser = new SheetTimestamps(TimeZone.getTimeZone(ZONE));
+
+    @Test
+    public void isoWithAZoneOrOffset() {
+        assertEquals(at("2024-05-01T08:30:00Z"), parser.parse("2024-05-01T08:30:00.000Z"));
+        assertEquals(at("2024-05-01T08:30:00.123Z"), parser.parse("2024-05-01T08:30:00.123456Z"));
+        assertEquals(at("2024-05-01T08:30:00.500Z"), parser.parse("2024-05-01T08:30:00,5z"));
+        assertEquals(at("2024-05-01T08:30:00+02:00"), parser.parse("2024-05-01T08:30:00+02:00"));
+        assertEquals(at("2024-05-01T08:30:00-05:30"), parser.parse("2024-05-01 08:30-0530"));
+        assertEquals(at("2024-05-01T08:00:00+02:00"), parser.parse("2024-05-01T08:00+02"));
+        assertEquals(at("2024-05-01T08:30:00Z"), parser.parse("  2024-05-01T08:30:00Z \n"));
+    }
+
+    @Test
+    public void isoWithoutAZoneIsLocal() {
+        assertEquals(local("2024-05-01T08:30:15"), parser.parse("2024-05-01T08:30:15"));
+        assertEquals(local("2024-01-15T00:00"), parser.parse("2024-01-15"));
+        assertEquals(local("2024-02-29T23:59:59"), parser.parse("2024-2-29 23:59:59"));
+    }
+
+    @Test
+    public void displayFormatIsMonthFirst() {
+        assertEquals(local("2024-05-01T08:30"), parser.parse("5/1/2024 8:30:00"));
+        assertEquals(local("2024-12-31T23:05"), parser.parse("12/31/2024  23:05"));
+        assertEquals(local("2024-05-01T00:00"), parser.parse("5/1/2024"));
+    }
+
+    @Test
+    public void serialDatesCountDaysFrom1899() {
+        assertEquals(local("2024-05-01T00:00"), parser.parse("45413"));
+        // A quarter of a day, with the rounding error sheets leave in
+        assertEquals(local("2024-05-01T06:00"), parser.parse("45413.2500000001"));
+        assertEquals(local("2000-01-01T18:00"), parser.parse("36526.75"));
+    }
+
+    @Test
+    public void localTimesAcrossDaylightSavingChanges() {
+        // Clocks went back at 02:00 EDT; the repeated hour is read as standard time
+        assertEquals(at("2024-11-03T01:30:00-05:00"), parser.parse("11/3/2024 1:30:00"));
+        assertEquals(at("2024-11-03T00:30:00-04:00"), parser.parse("2024-11-03T00:30"));
+        assertEquals(at("2024-11-03T02:30:00-05:00"), parser.parse("2024-11-03T02:30"));
+        // Either side of the spring change, parsed in one run so the hour cache is crossed
+        assertEquals(at("2024-03-10T01:59:00-05:00"), parser.parse("2024-03-10T01:59"));
+        assertEquals(at("2024-03-10T03:00:00-04:00"), parser.parse("2024-03-10T03:00"));
+        assertEquals(at("2024-03-10T01:00:00-05:00"), parser.parse("2024-03-10T01:00"));
+    }
+
+    @Test
+    public void anythingElseIsInvalid() {
+        String[] invalid = {null, "", "   ", "yesterday", "2024-13-01", "2024-02-30",
+                "2023-02-29", "2024-05-01T24:00", "2024-05-01T08:60", "2024-05-01T8",
+                "2024-05-01T08:30+2", "2024-05-01T08:30 UTC", "13/1/2024", "5/1/24",
+                "5/1/2024 8:30 PM", "45413.5x", "99999999", "-45413"};
+        for (String value : invalid) {
+            assertEquals(value, SheetTimestamps.INVALID, parser.parse(value));
+        }
+    }
+
+    private static long at(String time) {
+        return OffsetDateTime.parse(time).toInstant().toEpochMilli();
+    }
+
+    private static long local(String time) {
+        return LocalDateTime.parse(time).atZone(ZoneId.of(ZONE)).toInstant().toEpochMilli();
+    }
+}
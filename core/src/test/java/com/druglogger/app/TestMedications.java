@@ -0,0 +1,78 @@
+package com.druglogger.app;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Medications for the core tests: made-up ones with just the fields a test
+ * needs, and the app's catalog, whose paths the build passes in the
+ * {@code medlist.json} and {@code medlist.bin} system properties.
+ */
+final class TestMedications {
+
+    static final long HOUR_MILLIS = 3600_000L;
+
+    private TestMedications() {
+    }
+
+    /** A medication dosed in mg with the given limits; null fields are left empty. */
+    static MedicationInfo medication(String name, String maxDaily, String interval,
+                                     String halfLife, MedicationInfo.Interaction... interactions) {
+        return MedicationInfo.create(name, Collections.<String>emptyList(),
+                Collections.singletonList("Pain"), Collections.<String>emptyList(),
+                Collections.singletonList(100.0), "mg",
+                maxDaily == null ? "" : maxDaily,
+                interval == null ? "" : interval,
+                halfLife == null ? "" : halfLife,
+                new ArrayList<>(Arrays.asList(interactions)));
+    }
+
+    /** A medication with the given generic and brand names and nothing else of note. */
+    static MedicationInfo named(String name, String... brands) {
+        return MedicationInfo.create(name, Arrays.asList(brands),
+                Collections.<String>emptyList(), Collections.<String>emptyList(),
+                Collections.singletonList(100.0), "mg", "", "", "",
+                new ArrayList<MedicationInfo.Interaction>());
+    }
+
+    static MedicationInfo.Interaction interaction(String drug, String text) {
+        return new MedicationInfo.Interaction(drug, text);
+    }
+
+    static List<MedicationInfo> loadJsonCatalog() throws IOException, JSONException {
+        byte[] bytes = Files.readAllBytes(Paths.get(property("medlist.json")));
+        JSONArray array = new JSONObject(new String(bytes, StandardCharsets.UTF_8))
+                .getJSONArray("medications");
+        List<MedicationInfo> medications = new ArrayList<>(array.length());
+        for (int i = 0; i < array.length(); i++) {
+            medications.add(MedicationInfo.fromJson(array.getJSONObject(i)));
+        }
+        return medications;
+    }
+
+    static ByteBuffer mapBinaryCatalog() throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(property("medlist.bin")),
+                StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+    private static String property(String name) throws IOException {
+        String path = System.getProperty(name);
+        if (path == null) throw new IOException("Set -D" + name + " to the catalog's path");
+        return path;
+    }
+}
@@ -0,0 +1,192 @@
+package com.druglogger.app;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static com.druglogger.app.TestMedications.HOUR_MILLIS;
+import static com.druglogger.app.TestMedications.interaction;
+import static com.druglogger.app.TestMedications.medication;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Each built-in {@link WarningRule}, checked both over a list of recent logs
+ * and over a {@link DoseLedger}. The two paths must always give the same
+ * warnings.
+ */
+public class WarningCheckerTest {
+
+    private MedicationInfo ibuprofen;
+    private MedicationInfo warfarin;
+    private MedicationInfo colestipol;
+    /** Eliminated slowly, so a second dose builds up */
+    private MedicationInfo slowprofen;
+    private List<MedicationInfo> catalog;
+    private long now;
+
+    @Before
+    public void setUp() {
+        ibuprofen = medication("Ibuprofen", "1200 mg/day", "6-8 hours", "2 hours",
+                interaction("Warfarin", "Increased bleeding risk"));
+        warfarin = medication("Warfarin", null, null, null);
+        colestipol = medication("Colestipol HCl", null, null, null);
+        slowprofen = medication("Slowprofen", "100 mg/day", null, "24 hours");
+        catalog = Arrays.asList(ibuprofen, warfarin, colestipol, slowprofen);
+        now = System.currentTimeMillis();
+    }
+
+    @Test
+    public void noHistoryNoWarnings() {
+        assertEquals(Collections.emptyList(), check(ibuprofen, 400));
+    }
+
+    @Test
+    public void tooSoonAfterTheLastDose() {
+        List<String> warnings = check(ibuprofen, 200,
+                entry("Ibuprofen", 200, 3 * HOUR_MILLIS),
+                entry("Ibuprofen", 200, 10 * HOUR_MILLIS));
+        assertEquals(1, warnings.size());
+        assertTrue(warnings.get(0), warnings.get(0).startsWith("⚠ Too soon"));
+        assertTrue(warnings.get(0), warnings.get(0).contains("3.0 hours ago"));
+
+        assertEquals(Collections.emptyList(),
+                check(ibuprofen, 200, entry("Ibuprofen", 200, 7 * HOUR_MILLIS)));
+    }
+
+    @Test
+    public void maximumDailyDoseOverTheLastDay() {
+        List<String> warnings = check(ibuprofen, 400,
+                entry("Ibuprofen", 400, 7 * HOUR_MILLIS),
+                entry("Ibuprofen", 400, 14 * HOUR_MILLIS),
+                entry("Ibuprofen", 400, 21 * HOUR_MILLIS));
+        assertEquals(1, warnings.size());
+        assertTrue(warnings.get(0), warnings.get(0).startsWith("⚠ Exceeds max daily dose"));
+        assertTrue(warnings.get(0), warnings.get(0).contains("1600.0 mg"));
+
+        // The oldest dose left the window
+        assertEquals(Collections.emptyList(), check(ibuprofen, 400,
+                entry("Ibuprofen", 400, 7 * HOUR_MILLIS),
+                entry("Ibuprofen", 400, 14 * HOUR_MILLIS),
+                entry("Ibuprofen", 400, 25 * HOUR_MILLIS)));
+    }
+
+    @Test
+    public void interactionsByName() {
+        List<String> warnings = check(ibuprofen, 200, entry("Warfarin", 5, 2 * HOUR_MILLIS));
+        assertEquals(Collections.singletonList(
+                "⚠ Interaction with Warfarin: Increased bleeding risk"), warnings);
+
+        // Only ibuprofen lists the pair, and without the graph it is not seen from warfarin
+        assertEquals(Collections.emptyList(),
+                check(warfarin, 5, entry("Ibuprofen", 200, 2 * HOUR_MILLIS)));
+        assertEquals(Collections.emptyList(),
+                check(ibuprofen, 200, entry("Warfarin", 5, 25 * HOUR_MILLIS)));
+    }
+
+    @Test
+    public void interactionsThroughTheGraphWorkBothWays() {
+        InteractionGraph.build(catalog);
+        assertEquals(Collections.singletonList(
+                "⚠ Interaction with Warfarin: Increased bleeding risk"),
+                check(ibuprofen, 200, entry("Warfarin", 5, 2 * HOUR_MILLIS)));
+        assertEquals(Collections.singletonList(
+                "⚠ Interaction with Ibuprofen: Increased bleeding risk"),
+                check(warfarin, 5, entry("Ibuprofen", 200, 2 * HOUR_MILLIS)));
+    }
+
+    @Test
+    public void colestipolTakenRecently() {
+        List<String> warnings = check(ibuprofen, 200,
+                entry("Colestipol HCl", 5000, 2 * HOUR_MILLIS));
+        assertEquals(1, warnings.size());
+        assertTrue(warnings.get(0), warnings.get(0).startsWith("⚠ Colestipol was taken 2.0 hours"));
+
+        assertEquals(Collections.emptyList(),
+                check(ibuprofen, 200, entry("Colestipol HCl", 5000, 5 * HOUR_MILLIS)));
+        // Not a warning for colestipol itself
+        assertEquals(Collections.emptyList(),
+                check(colestipol, 5000, entry("Colestipol HCl", 5000, 2 * HOUR_MILLIS)));
+    }
+
+    @Test
+    public void accumulationOfASlowlyEliminatedMedication() {
+        // Steady-state peak: 100 mg a day with a 24-hour half-life peaks at 200 mg
+        assertEquals(200, slowprofen.getRules().steadyStatePeak, 1e-9);
+
+        List<String> warnings = check(slowprofen, 150, entry("Slowprofen", 100, HOUR_MILLIS));
+        assertEquals(2, warnings.size());
+        assertTrue(warnings.get(0), warnings.get(0).startsWith("⚠ Exceeds max daily dose"));
+        assertTrue(warnings.get(1), warnings.get(1).startsWith("⚠ Accumulation"));
+
+        // About 297 mg would be in the body, not over 220 mg (the peak with a 10% margin)
+        warnings = check(slowprofen, 100, entry("Slowprofen", 100, HOUR_MILLIS));
+        assertEquals(1, warnings.size());
+        assertTrue(warnings.get(0), warnings.get(0).startsWith("⚠ Exceeds max daily dose"));
+    }
+
+    @Test
+    public void lookbackCoversTheLongestRule() {
+        // The accumulation window, about 13.3 half-lives, beats the one-day windows
+        assertEquals(ConcentrationEstimator.horizonMillis(ibuprofen.getRules().decayPerMilli),
+                WarningChecker.getLookbackMillis(ibuprofen));
+        assertEquals(WarningChecker.DAY_MILLIS, WarningChecker.getLookbackMillis(warfarin));
+    }
+
+    @Test
+    public void descriptionsAreParsed() {
+        assertEquals(6, WarningChecker.parseHoursFromTimeString("6-8 hours as needed"), 0);
+        assertEquals(24, WarningChecker.parseHoursFromTimeString("24 hours (once daily)"), 0);
+        assertEquals(0, WarningChecker.parseHoursFromTimeString("as directed"), 0);
+        assertEquals(0, WarningChecker.parseHoursFromTimeString(null), 0);
+        assertEquals(3, WarningChecker.parseHalfLifeHours("2-3 hours (mean 2.9 hours)"), 0);
+        assertEquals(0, WarningChecker.parseHalfLifeHours("5 days"), 0);
+        assertEquals(72, WarningChecker.parseFirstNumber("72 mg/day (adults)"), 0);
+        assertEquals(0.5, WarningChecker.parseFirstNumber("0.5 mg"), 0);
+        assertEquals(0, WarningChecker.parseFirstNumber(null), 0);
+    }
+
+    @Test
+    public void logsAreCutWithABinarySearch() {
+        List<WarningChecker.RecentLog> logs = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            logs.add(new WarningChecker.RecentLog("Ibuprofen", 200, 1000 - i * 100));
+        }
+        assertEquals(10, WarningChecker.countNotOlderThan(logs, 0));
+        assertEquals(6, WarningChecker.countNotOlderThan(logs, 500));
+        assertEquals(5, WarningChecker.countNotOlderThan(logs, 501));
+        assertEquals(0, WarningChecker.countNotOlderThan(logs, 1001));
+        assertEquals(0, WarningChecker.countNotOlderThan(new ArrayList<>(), 0));
+    }
+
+    /**
+     * Checks a dose against the given history through both paths and returns
+     * the warnings, after asserting that the paths agree.
+     */
+    private List<String> check(MedicationInfo medication, double dose, DrugEntry... history) {
+        List<DrugEntry> entries = new ArrayList<>(Arrays.asList(history));
+        Collections.sort(entries, (a, b) -> Long.compare(b.getTimestamp(), a.getTimestamp()));
+        List<WarningChecker.RecentLog> logs = new ArrayList<>();
+        DoseLedger ledger = new DoseLedger();
+        for (DrugEntry entry : entries) {
+            logs.add(new WarningChecker.RecentLog(entry.getDrugName(), entry.getDoseValue(),
+                    entry.getTimestamp()));
+            ledger.add(entry);
+        }
+        List<String> fromLogs = WarningChecker.checkWarnings(medication, dose, logs, catalog);
+        List<String> fromLedger = WarningChecker.checkWarnings(medication, dose, ledger, catalog);
+        assertEquals(fromLogs, fromLedger);
+        return fromLedger;
+    }
+
+    private int nextId = 1;
+
+    /** A dose taken {@code ago} before the test started. */
+    private DrugEntry entry(String name, double dose, long ago) {
+        return new DrugEntry(nextId++, name, null, dose, "mg", null, now - ago);
+    }
+}